@@ -22,6 +22,9 @@ import co.rsk.blocks.FileBlockRecorder;
 import co.rsk.config.RskSystemProperties;
 import co.rsk.core.Rsk;
 import co.rsk.core.RskImpl;
+import co.rsk.db.PruneService;
+import co.rsk.db.RepositoryImpl;
+import co.rsk.mine.BlockToMineBuilder;
 import co.rsk.mine.MinerClient;
 import co.rsk.mine.MinerServer;
 import co.rsk.mine.TxBuilder;
@@ -30,6 +33,8 @@ import co.rsk.net.*;
 import co.rsk.net.discovery.UDPServer;
 import co.rsk.rpc.netty.Web3HttpServer;
 import co.rsk.rpc.netty.Web3WebSocketServer;
+import co.rsk.trie.TrieStore;
+import co.rsk.trie.TrieStoreImpl;
 import org.ethereum.core.*;
 import org.ethereum.net.eth.EthVersion;
 import org.ethereum.net.server.ChannelManager;
@@ -68,6 +73,9 @@ public class FullNodeRunner implements NodeRunner {
     private final PeerServer peerServer;
     private final SyncPool.PeerClientFactory peerClientFactory;
     private final TransactionGateway transactionGateway;
+    private final BlockToMineBuilder blockToMineBuilder;
+
+    private PruneService pruneService;
 
     @Autowired
     public FullNodeRunner(
@@ -88,7 +96,8 @@ public class FullNodeRunner implements NodeRunner {
             TransactionPool transactionPool,
             PeerServer peerServer,
             SyncPool.PeerClientFactory peerClientFactory,
-            TransactionGateway transactionGateway) {
+            TransactionGateway transactionGateway,
+            BlockToMineBuilder blockToMineBuilder) {
         this.rsk = rsk;
         this.udpServer = udpServer;
         this.minerServer = minerServer;
@@ -107,6 +116,7 @@ public class FullNodeRunner implements NodeRunner {
         this.peerServer = peerServer;
         this.peerClientFactory = peerClientFactory;
         this.transactionGateway = transactionGateway;
+        this.blockToMineBuilder = blockToMineBuilder;
     }
 
     @Override
@@ -174,6 +184,21 @@ public class FullNodeRunner implements NodeRunner {
             }
         }
 
+        if (rskSystemProperties.isPruneEnabled()) {
+            startPruneService();
+        }
+    }
+
+    private void startPruneService() {
+        TrieStore stateStore = repository instanceof RepositoryImpl ? ((RepositoryImpl) repository).getTrieStore() : null;
+
+        if (!(stateStore instanceof TrieStoreImpl)) {
+            logger.warn("Prune service not started, the repository has no trie store");
+            return;
+        }
+
+        pruneService = new PruneService(rskSystemProperties, rskSystemProperties.pruneConfiguration(), blockchain, (TrieStoreImpl) stateStore);
+        pruneService.start();
     }
 
     private void startWeb3(RskSystemProperties rskSystemProperties) throws InterruptedException {
@@ -223,6 +248,10 @@ public class FullNodeRunner implements NodeRunner {
         logger.info("Shutting down RSK node");
         syncPool.stop();
 
+        if (pruneService != null) {
+            pruneService.stop();
+        }
+
         boolean rpcHttpEnabled = rskSystemProperties.isRpcHttpEnabled();
         boolean rpcWebSocketEnabled = rskSystemProperties.isRpcWebSocketEnabled();
         if (rpcHttpEnabled) {
@@ -252,6 +281,8 @@ public class FullNodeRunner implements NodeRunner {
         messageHandler.stop();
         channelManager.stop();
         transactionGateway.stop();
+        blockToMineBuilder.stop();
+        blockchain.stop();
 
         if (rskSystemProperties.isPeerDiscoveryEnabled()) {
             try {
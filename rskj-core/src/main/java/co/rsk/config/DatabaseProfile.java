@@ -0,0 +1,136 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.config;
+
+import com.typesafe.config.Config;
+import org.iq80.leveldb.CompressionType;
+
+import java.util.Locale;
+
+/**
+ * Wraps the LevelDB tuning options of a data source, usually derived from the
+ * database.profiles section of the configuration files.
+ */
+public class DatabaseProfile {
+    private static final long DEFAULT_CACHE_SIZE = 0;
+    private static final int DEFAULT_BLOCK_SIZE = 10 * 1024 * 1024;
+    private static final int DEFAULT_WRITE_BUFFER_SIZE = 10 * 1024 * 1024;
+    private static final int DEFAULT_MAX_OPEN_FILES = 1000;
+
+    public static final DatabaseProfile DEFAULT = new DatabaseProfile(
+            DEFAULT_CACHE_SIZE,
+            CompressionType.NONE,
+            DEFAULT_BLOCK_SIZE,
+            DEFAULT_WRITE_BUFFER_SIZE,
+            DEFAULT_MAX_OPEN_FILES,
+            true,
+            true);
+
+    private final long cacheSize;
+    private final CompressionType compression;
+    private final int blockSize;
+    private final int writeBufferSize;
+    private final int maxOpenFiles;
+    private final boolean paranoidChecks;
+    private final boolean verifyChecksums;
+
+    public DatabaseProfile(
+            long cacheSize,
+            CompressionType compression,
+            int blockSize,
+            int writeBufferSize,
+            int maxOpenFiles,
+            boolean paranoidChecks,
+            boolean verifyChecksums) {
+        this.cacheSize = cacheSize;
+        this.compression = compression;
+        this.blockSize = blockSize;
+        this.writeBufferSize = writeBufferSize;
+        this.maxOpenFiles = maxOpenFiles;
+        this.paranoidChecks = paranoidChecks;
+        this.verifyChecksums = verifyChecksums;
+    }
+
+    /**
+     * Reads a profile, missing options are taken from the fallback profile
+     */
+    public static DatabaseProfile fromConfig(Config config, DatabaseProfile fallback) {
+        return new DatabaseProfile(
+                config.hasPath("cacheSize") ? config.getBytes("cacheSize") : fallback.cacheSize,
+                config.hasPath("compression") ? parseCompression(config.getString("compression")) : fallback.compression,
+                config.hasPath("blockSize") ? getIntBytes(config, "blockSize") : fallback.blockSize,
+                config.hasPath("writeBufferSize") ? getIntBytes(config, "writeBufferSize") : fallback.writeBufferSize,
+                config.hasPath("maxOpenFiles") ? config.getInt("maxOpenFiles") : fallback.maxOpenFiles,
+                config.hasPath("paranoidChecks") ? config.getBoolean("paranoidChecks") : fallback.paranoidChecks,
+                config.hasPath("verifyChecksums") ? config.getBoolean("verifyChecksums") : fallback.verifyChecksums);
+    }
+
+    // LevelDB takes these sizes as int, a larger value would silently wrap around
+    private static int getIntBytes(Config config, String path) {
+        long value = config.getBytes(path);
+
+        if (value <= 0 || value > Integer.MAX_VALUE) {
+            throw new RskConfigurationException(String.format("Invalid database %s %d, expected a size between 1 byte and 2G - 1", path, value));
+        }
+
+        return (int) value;
+    }
+
+    private static CompressionType parseCompression(String value) {
+        try {
+            return CompressionType.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RskConfigurationException(String.format("Invalid database compression type '%s', expected none or snappy", value), e);
+        }
+    }
+
+    public long cacheSize() {
+        return cacheSize;
+    }
+
+    public CompressionType compression() {
+        return compression;
+    }
+
+    public int blockSize() {
+        return blockSize;
+    }
+
+    public int writeBufferSize() {
+        return writeBufferSize;
+    }
+
+    public int maxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public boolean paranoidChecks() {
+        return paranoidChecks;
+    }
+
+    public boolean verifyChecksums() {
+        return verifyChecksums;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cacheSize=%d, compression=%s, blockSize=%d, writeBufferSize=%d, maxOpenFiles=%d, paranoidChecks=%b, verifyChecksums=%b",
+                cacheSize, compression, blockSize, writeBufferSize, maxOpenFiles, paranoidChecks, verifyChecksums);
+    }
+}
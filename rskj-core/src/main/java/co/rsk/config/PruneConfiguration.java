@@ -0,0 +1,46 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.config;
+
+/**
+ * Wraps configuration for the online state pruning, which is usually derived from configuration files.
+ */
+public class PruneConfiguration {
+    private final int blocksToKeep;
+    private final int blocksInterval;
+    private final int batchSize;
+
+    public PruneConfiguration(int blocksToKeep, int blocksInterval, int batchSize) {
+        this.blocksToKeep = blocksToKeep;
+        this.blocksInterval = blocksInterval;
+        this.batchSize = batchSize;
+    }
+
+    public int getBlocksToKeep() {
+        return blocksToKeep;
+    }
+
+    public int getBlocksInterval() {
+        return blocksInterval;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
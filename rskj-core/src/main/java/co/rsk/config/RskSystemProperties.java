@@ -25,6 +25,8 @@ import co.rsk.net.eth.WriterMessageRecorder;
 import co.rsk.rpc.ModuleDescription;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigUtil;
+import com.typesafe.config.ConfigValue;
 import org.ethereum.config.Constants;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.Account;
@@ -43,7 +45,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by ajlopez on 3/3/2016.
@@ -56,6 +60,7 @@ public class RskSystemProperties extends SystemProperties {
     private static final String MINER_REWARD_ADDRESS_CONFIG = "miner.reward.address";
     private static final String MINER_COINBASE_SECRET_CONFIG = "miner.coinbase.secret";
     private static final int CHUNK_SIZE = 192;
+    private static final long DEFAULT_TRIE_CACHE_SIZE = 64L * 1024 * 1024;
 
     //TODO: REMOVE THIS WHEN THE LocalBLockTests starts working with REMASC
     private boolean remascEnabled = true;
@@ -234,6 +239,61 @@ public class RskSystemProperties extends SystemProperties {
                 configFromFiles.getInt("rpc.accept.queue.size") : 0;
     }
 
+    public int rpcExecutorThreads() {
+        return getInt("rpc.executor.threads", 0);
+    }
+
+    public int rpcExecutorQueueSize() {
+        return getInt("rpc.executor.queue_size", 1000);
+    }
+
+    public int rpcMaxBatchSize() {
+        return getInt("rpc.executor.batch.max_size", 1000);
+    }
+
+    public int rpcBatchConcurrency() {
+        return getInt("rpc.executor.batch.concurrency", 0);
+    }
+
+    public int rpcResultCacheSize() {
+        return getInt("rpc.result_cache.size", 0);
+    }
+
+    public int rpcCallResultCacheSize() {
+        return getInt("rpc.call_cache.size", 0);
+    }
+
+    public int rpcCallResultCacheBytes() {
+        return getInt("rpc.call_cache.bytes", 0);
+    }
+
+    public boolean vmDecodedCode() {
+        return configFromFiles.hasPath("vm.code.decoded") ? configFromFiles.getBoolean("vm.code.decoded") : true;
+    }
+
+    public int vmCodeCacheSize() {
+        return getInt("vm.code.cache.size", 0);
+    }
+
+    public int rpcSlowCallMillis() {
+        return getInt("rpc.metrics.slow_call_ms", 0);
+    }
+
+    public Map<String, Integer> rpcExecutorMethodLimits() {
+        Map<String, Integer> limits = new HashMap<>();
+
+        if (!configFromFiles.hasPath("rpc.executor.method_limits")) {
+            return limits;
+        }
+
+        // the method names are single keys, not paths
+        for (Map.Entry<String, ConfigValue> entry : configFromFiles.getObject("rpc.executor.method_limits").entrySet()) {
+            limits.put(entry.getKey(), ((Number) entry.getValue().unwrapped()).intValue());
+        }
+
+        return limits;
+    }
+
     public String multipleUsersAccountsFile()  {
         return configFromFiles.hasPath("multipleUser.file.path") ? configFromFiles.getString("multipleUser.file.path") : "";
     }
@@ -393,9 +453,58 @@ public class RskSystemProperties extends SystemProperties {
         return CHUNK_SIZE;
     }
 
+    public int senderRecoveryThreads() {
+        return getInt("transaction.senderRecovery.threads", 4);
+    }
+
+    public int blockExecutionThreads() {
+        return getInt("blockchain.execution.threads", 0);
+    }
+
+    public boolean isPruneEnabled() {
+        return getBooleanProperty("prune.enabled", false);
+    }
+
+    public PruneConfiguration pruneConfiguration() {
+        return new PruneConfiguration(
+                getInt("prune.blocks.toKeep", 1000),
+                getInt("prune.blocks.interval", 1000),
+                getInt("prune.batchSize", 10000));
+    }
+
+    public long trieCacheSize() {
+        return configFromFiles.hasPath("database.trieCache.size") ?
+                configFromFiles.getBytes("database.trieCache.size") : DEFAULT_TRIE_CACHE_SIZE;
+    }
+
+    /**
+     * Returns the LevelDB tuning profile of a data source. The profile name is the data source
+     * name up to the first slash (e.g. details-storage for the contract storage data sources).
+     * Missing options are taken from database.profiles.default, and then from the built in defaults.
+     */
+    public DatabaseProfile databaseProfile(String dataSourceName) {
+        int slash = dataSourceName.indexOf('/');
+        String profileName = slash < 0 ? dataSourceName : dataSourceName.substring(0, slash);
+
+        DatabaseProfile profile = DatabaseProfile.DEFAULT;
+        String defaultPath = ConfigUtil.joinPath("database", "profiles", "default");
+
+        if (configFromFiles.hasPath(defaultPath)) {
+            profile = DatabaseProfile.fromConfig(configFromFiles.getConfig(defaultPath), profile);
+        }
+
+        String profilePath = ConfigUtil.joinPath("database", "profiles", profileName);
+
+        if (configFromFiles.hasPath(profilePath)) {
+            profile = DatabaseProfile.fromConfig(configFromFiles.getConfig(profilePath), profile);
+        }
+
+        return profile;
+    }
+
     public VmConfig getVmConfig() {
         if (vmConfig == null) {
-            vmConfig = new VmConfig(vmTrace(), vmTraceInitStorageLimit(), dumpBlock(), dumpStyle());
+            vmConfig = new VmConfig(vmTrace(), vmTraceInitStorageLimit(), dumpBlock(), dumpStyle(), vmDecodedCode(), vmCodeCacheSize());
         }
 
         return vmConfig;
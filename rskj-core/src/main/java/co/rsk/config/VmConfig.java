@@ -18,6 +18,8 @@
 
 package co.rsk.config;
 
+import org.ethereum.vm.program.CodeAnalysisCache;
+
 /**
  * Wraps configuration for the VM, which is usually derived from configuration files.
  */
@@ -27,16 +29,22 @@ public class VmConfig {
     private final int vmTraceInitStorageLimit;
     private final int dumpBlock;
     private final String dumpStyle;
+    private final boolean decodedCode;
+    private final CodeAnalysisCache codeAnalysisCache;
 
     public VmConfig(
             boolean vmTrace,
             int vmTraceInitStorageLimit,
             int dumpBlock,
-            String dumpStyle) {
+            String dumpStyle,
+            boolean decodedCode,
+            long codeCacheSize) {
         this.vmTrace = vmTrace;
         this.vmTraceInitStorageLimit = vmTraceInitStorageLimit;
         this.dumpBlock = dumpBlock;
         this.dumpStyle = dumpStyle;
+        this.decodedCode = decodedCode;
+        this.codeAnalysisCache = new CodeAnalysisCache(codeCacheSize);
     }
 
     public int dumpBlock() {
@@ -54,4 +62,15 @@ public class VmConfig {
     public int vmTraceInitStorageLimit() {
         return vmTraceInitStorageLimit;
     }
+
+    public boolean decodedCode() {
+        return decodedCode;
+    }
+
+    /**
+     * The analyses of the codes shared by the programs run with this configuration
+     */
+    public CodeAnalysisCache codeAnalysisCache() {
+        return codeAnalysisCache;
+    }
 }
\ No newline at end of file
@@ -25,25 +25,47 @@ import org.ethereum.core.Repository;
 import org.ethereum.core.Transaction;
 import org.ethereum.core.TransactionExecutor;
 import org.ethereum.db.BlockStore;
+import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.db.ReceiptStore;
 import org.ethereum.vm.program.ProgramResult;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.spongycastle.util.BigIntegers;
 import org.springframework.stereotype.Component;
 
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Encapsulates the logic to execute a transaction in an
  * isolated environment (e.g. no persistent state changes).
+ *
+ * The transactions executed on the same block share a read only view of its state,
+ * and their results are kept by block and call arguments, if enabled. Only the return data,
+ * gas used, exception and revert of the cached results are kept, and each caller receives
+ * its own copy of them.
  */
 @Component
 public class ReversibleTransactionExecutor {
 
+    // state views of the last executed blocks, each one keeps its values and the trie nodes loaded by its snapshot
+    private static final int MAX_STATE_VIEWS = 4;
+    // executions of a gas estimation, the last ones refine it by less than the block gas limit / 2^18
+    private static final int MAX_ESTIMATION_ITERATIONS = 20;
+
     private final RskSystemProperties config;
     private final Repository track;
     private final BlockStore blockStore;
     private final ReceiptStore receiptStore;
     private final ProgramInvokeFactory programInvokeFactory;
 
+    private final Map<ByteArrayWrapper, SharedStateRepository> stateViews = Collections.synchronizedMap(new LruMap<>(MAX_STATE_VIEWS));
+    private final CallResultCache results;
+
     @Autowired
     public ReversibleTransactionExecutor(
             RskSystemProperties config,
@@ -56,6 +78,9 @@ public class ReversibleTransactionExecutor {
         this.blockStore = blockStore;
         this.receiptStore = receiptStore;
         this.programInvokeFactory = programInvokeFactory;
+
+        int resultCacheSize = config.rpcCallResultCacheSize();
+        this.results = resultCacheSize > 0 ? new CallResultCache(resultCacheSize, config.rpcCallResultCacheBytes()) : null;
     }
 
     public ProgramResult executeTransaction(
@@ -67,7 +92,99 @@ public class ReversibleTransactionExecutor {
             byte[] value,
             byte[] data,
             byte[] fromAddress) {
-        Repository repository = track.getSnapshotTo(executionBlock.getStateRoot()).startTracking();
+        CallKey key = null;
+
+        if (results != null) {
+            key = new CallKey(executionBlock.getHash().getBytes(), coinbase.getBytes(), gasPrice, gasLimit, toAddress, value, data, fromAddress);
+            CachedCallResult cached = results.get(key);
+
+            if (cached != null) {
+                return cached.toProgramResult();
+            }
+        }
+
+        SharedStateRepository stateView = getStateView(executionBlock.getStateRoot());
+        ProgramResult result = execute(stateView, executionBlock, coinbase, gasPrice, gasLimit, toAddress, value, data, fromAddress);
+        if (key != null) {
+            results.put(key, new CachedCallResult(result));
+        }
+
+        return result;
+    }
+
+    /**
+     * Estimates the gas limit a transaction needs, with a bounded binary search of the lowest
+     * gas limit it is executed with, without exception nor revert. The gas used with the given
+     * gas limit is a lower bound, and the transaction is executed with it first, so usually two
+     * executions are enough. The gas limits above the block gas limit are not tried.
+     *
+     * The executions share the state view of the block, each one on a new track that is discarded.
+     * If the transaction fails with the given gas limit, the estimation is its gas used. If it only
+     * succeeds with a given gas limit above the block gas limit, the estimation is the given gas limit.
+     */
+    public GasEstimation estimateGas(
+            Block executionBlock,
+            RskAddress coinbase,
+            byte[] gasPrice,
+            byte[] gasLimit,
+            byte[] toAddress,
+            byte[] value,
+            byte[] data,
+            byte[] fromAddress) {
+        SharedStateRepository stateView = getStateView(executionBlock.getStateRoot());
+        ProgramResult result = execute(stateView, executionBlock, coinbase, gasPrice, gasLimit, toAddress, value, data, fromAddress);
+        int iterations = 1;
+
+        if (!isSuccessful(result)) {
+            return new GasEstimation(result.getGasUsed(), iterations, result);
+        }
+
+        long blockGasLimit = new BigInteger(1, executionBlock.getGasLimit()).longValue();
+        long requestedGas = new BigInteger(1, gasLimit).longValue();
+        long low = result.getGasUsed() - 1;
+        long high = Math.min(requestedGas, Math.max(blockGasLimit, result.getGasUsed()));
+        long candidate = result.getGasUsed();
+
+        // the upper bound is known to succeed only if it is the given gas limit
+        if (high < requestedGas && low + 1 < high) {
+            ProgramResult highResult = execute(stateView, executionBlock, coinbase, gasPrice, BigIntegers.asUnsignedByteArray(BigInteger.valueOf(high)), toAddress, value, data, fromAddress);
+            iterations++;
+
+            if (!isSuccessful(highResult)) {
+                return new GasEstimation(requestedGas, iterations, result);
+            }
+
+            result = highResult;
+        }
+
+        while (low + 1 < high && iterations < MAX_ESTIMATION_ITERATIONS) {
+            ProgramResult candidateResult = execute(stateView, executionBlock, coinbase, gasPrice, BigIntegers.asUnsignedByteArray(BigInteger.valueOf(candidate)), toAddress, value, data, fromAddress);
+            iterations++;
+
+            if (isSuccessful(candidateResult)) {
+                high = candidate;
+                result = candidateResult;
+            } else {
+                low = candidate;
+            }
+
+            candidate = low + (high - low) / 2;
+        }
+
+        return new GasEstimation(high, iterations, result);
+    }
+
+    private ProgramResult execute(
+            SharedStateRepository stateView,
+            Block executionBlock,
+            RskAddress coinbase,
+            byte[] gasPrice,
+            byte[] gasLimit,
+            byte[] toAddress,
+            byte[] value,
+            byte[] data,
+            byte[] fromAddress) {
+        Repository repository = stateView.startTracking();
 
         byte[] nonce = repository.getNonce(new RskAddress(fromAddress)).toByteArray();
         UnsignedTransaction tx = new UnsignedTransaction(
@@ -99,6 +216,185 @@ public class ReversibleTransactionExecutor {
         return executor.getResult();
     }
 
+    int getCachedResultCount() {
+        return results == null ? 0 : results.size();
+    }
+
+    private static boolean isSuccessful(ProgramResult result) {
+        return result.getException() == null && !result.isRevert();
+    }
+
+    private SharedStateRepository getStateView(byte[] stateRoot) {
+        ByteArrayWrapper key = new ByteArrayWrapper(stateRoot);
+
+        synchronized (stateViews) {
+            return stateViews.computeIfAbsent(key, k -> new SharedStateRepository(config, track.getSnapshotTo(stateRoot)));
+        }
+    }
+
+    public static class GasEstimation {
+        private final long gas;
+        private final int iterations;
+        private final ProgramResult result;
+
+        GasEstimation(long gas, int iterations, ProgramResult result) {
+            this.gas = gas;
+            this.iterations = iterations;
+            this.result = result;
+        }
+
+        public long getGas() {
+            return gas;
+        }
+
+        /**
+         * Gets the number of executions of the transaction
+         */
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * Gets the result of the execution with the estimated gas, or else with the given gas limit
+         */
+        public ProgramResult getResult() {
+            return result;
+        }
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * The results of the calls, bounded by their number and by the size of their arguments and
+     * return data, evicting the least recently used ones
+     */
+    private static class CallResultCache {
+        // approximate size of an entry, besides its arguments and return data
+        private static final int ENTRY_OVERHEAD = 256;
+
+        private final int maxSize;
+        private final long maxBytes;
+        private final LinkedHashMap<CallKey, CachedCallResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        CallResultCache(int maxSize, long maxBytes) {
+            this.maxSize = maxSize;
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized CachedCallResult get(CallKey key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(CallKey key, CachedCallResult result) {
+            long size = getSize(key, result);
+
+            // a large result would evict many others
+            if (size > maxBytes / 16) {
+                return;
+            }
+
+            CachedCallResult previous = entries.put(key, result);
+
+            if (previous != null) {
+                bytes -= getSize(key, previous);
+            }
+
+            bytes += size;
+
+            Iterator<Map.Entry<CallKey, CachedCallResult>> iterator = entries.entrySet().iterator();
+
+            while ((bytes > maxBytes || entries.size() > maxSize) && iterator.hasNext()) {
+                Map.Entry<CallKey, CachedCallResult> eldest = iterator.next();
+                iterator.remove();
+                bytes -= getSize(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        private static long getSize(CallKey key, CachedCallResult result) {
+            return key.getSize() + result.hReturn.length + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * The immutable part of a result answered by the calls
+     */
+    private static class CachedCallResult {
+        private final byte[] hReturn;
+        private final long gasUsed;
+        private final RuntimeException exception;
+        private final boolean revert;
+
+        CachedCallResult(ProgramResult result) {
+            this.hReturn = Arrays.copyOf(result.getHReturn(), result.getHReturn().length);
+            this.gasUsed = result.getGasUsed();
+            this.exception = result.getException();
+            this.revert = result.isRevert();
+        }
+
+        ProgramResult toProgramResult() {
+            ProgramResult result = new ProgramResult();
+            result.setHReturn(Arrays.copyOf(hReturn, hReturn.length));
+            result.spendGas(gasUsed);
+            result.setException(exception);
+
+            if (revert) {
+                result.setRevert();
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * The block and arguments of a call, that determine its result
+     */
+    private static class CallKey {
+        private final byte[][] values;
+
+        CallKey(byte[]... values) {
+            this.values = values;
+        }
+
+        long getSize() {
+            long size = 0;
+
+            for (byte[] value : values) {
+                size += value == null ? 0 : value.length;
+            }
+
+            return size;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof CallKey && Arrays.deepEquals(this.values, ((CallKey) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.deepHashCode(this.values);
+        }
+    }
+
     private static class UnsignedTransaction extends Transaction {
 
         private UnsignedTransaction(
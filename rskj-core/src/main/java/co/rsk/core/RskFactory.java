@@ -21,6 +21,7 @@ package co.rsk.core;
 import co.rsk.config.RskSystemProperties;
 import co.rsk.core.bc.BlockChainImpl;
 import co.rsk.core.bc.TransactionPoolImpl;
+import co.rsk.db.BloomBitsIndex;
 import co.rsk.metrics.HashRateCalculator;
 import co.rsk.mine.MinerClient;
 import co.rsk.mine.MinerServer;
@@ -28,6 +29,10 @@ import co.rsk.net.*;
 import co.rsk.net.eth.RskWireProtocol;
 import co.rsk.net.sync.SyncConfiguration;
 import co.rsk.rpc.CorsConfiguration;
+import co.rsk.rpc.JsonRpcExecutor;
+import co.rsk.rpc.JsonRpcMethodFilter;
+import co.rsk.rpc.JsonRpcMetrics;
+import co.rsk.rpc.JsonRpcResultCache;
 import co.rsk.rpc.Web3RskImpl;
 import co.rsk.rpc.modules.debug.DebugModule;
 import co.rsk.rpc.modules.eth.*;
@@ -36,6 +41,8 @@ import co.rsk.rpc.modules.personal.PersonalModule;
 import co.rsk.rpc.modules.personal.PersonalModuleWalletDisabled;
 import co.rsk.rpc.modules.personal.PersonalModuleWalletEnabled;
 import co.rsk.rpc.modules.txpool.TxPoolModule;
+import co.rsk.rpc.netty.EthSubscriptionHandler;
+import co.rsk.rpc.netty.EthSubscriptionNotifier;
 import co.rsk.rpc.netty.JsonRpcWeb3FilterHandler;
 import co.rsk.rpc.netty.JsonRpcWeb3ServerHandler;
 import co.rsk.rpc.netty.Web3HttpServer;
@@ -164,7 +171,8 @@ public class RskFactory {
                         PeerServer peerServer,
                         BlockProcessor nodeBlockProcessor,
                         HashRateCalculator hashRateCalculator,
-                        ConfigCapabilities configCapabilities) {
+                        ConfigCapabilities configCapabilities,
+                        BloomBitsIndex bloomBitsIndex) {
         return new Web3RskImpl(
                 rsk,
                 blockchain,
@@ -186,7 +194,8 @@ public class RskFactory {
                 peerServer,
                 nodeBlockProcessor,
                 hashRateCalculator,
-                configCapabilities
+                configCapabilities,
+                bloomBitsIndex
         );
     }
 
@@ -196,17 +205,41 @@ public class RskFactory {
     }
 
     @Bean
-    public JsonRpcWeb3ServerHandler getJsonRpcWeb3ServerHandler(Web3 web3Service, RskSystemProperties rskSystemProperties) {
-        return new JsonRpcWeb3ServerHandler(web3Service, rskSystemProperties.getRpcModules());
+    public JsonRpcWeb3ServerHandler getJsonRpcWeb3ServerHandler(Web3 web3Service,
+                                                                Rsk rsk,
+                                                                Blockchain blockchain,
+                                                                RskSystemProperties rskSystemProperties) {
+        JsonRpcExecutor executor = new JsonRpcExecutor(
+            rskSystemProperties.rpcExecutorThreads(),
+            rskSystemProperties.rpcExecutorQueueSize(),
+            rskSystemProperties.rpcExecutorMethodLimits(),
+            rskSystemProperties.rpcBatchConcurrency()
+        );
+        JsonRpcResultCache resultCache = rskSystemProperties.rpcResultCacheSize() > 0 ?
+            new JsonRpcResultCache(rsk, blockchain, rskSystemProperties.rpcResultCacheSize()) : null;
+        return new JsonRpcWeb3ServerHandler(
+            web3Service,
+            rskSystemProperties.getRpcModules(),
+            executor,
+            rskSystemProperties.rpcMaxBatchSize(),
+            resultCache,
+            new JsonRpcMetrics(rskSystemProperties.rpcSlowCallMillis())
+        );
     }
 
     @Bean
     public Web3WebSocketServer getWeb3WebSocketServer(RskSystemProperties rskSystemProperties,
+                                                      Rsk rsk,
+                                                      Blockchain blockchain,
                                                       JsonRpcWeb3ServerHandler serverHandler) {
         return new Web3WebSocketServer(
             rskSystemProperties.rpcWebSocketBindAddress(),
             rskSystemProperties.rpcWebSocketPort(),
-            serverHandler
+            serverHandler,
+            new EthSubscriptionHandler(
+                new EthSubscriptionNotifier(rsk, blockchain),
+                new JsonRpcMethodFilter(rskSystemProperties.getRpcModules())
+            )
         );
     }
 
@@ -0,0 +1,342 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.core;
+
+import co.rsk.config.RskSystemProperties;
+import com.google.common.annotations.VisibleForTesting;
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Repository;
+import org.ethereum.db.AccountLoader;
+import org.ethereum.db.ContractDetails;
+import org.ethereum.db.ContractDetailsCacheImpl;
+import org.ethereum.db.RepositoryTrack;
+import org.ethereum.vm.DataWord;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SharedStateRepository is a read only view of the state of a block, shared by the concurrent
+ * calls executed on it, each one on its own track. The accounts, code and storage cells
+ * read from the snapshot repository are kept in concurrent maps, so the calls reading
+ * the same contracts decode them once, and read the snapshot one at a time.
+ *
+ * The view is only the account loader of the tracks, which lock on themselves, so the calls
+ * only wait for each other when they read the snapshot. The tracks can't be committed to it.
+ *
+ * The number of accounts and storage cells kept is capped, and the cap is one way: nothing is
+ * evicted, once it is reached the values not kept are read from the snapshot each time, until
+ * the view is dropped for the views of newer blocks. The trie nodes loaded by the snapshot are
+ * kept by the snapshot, and they are not counted.
+ */
+class SharedStateRepository implements AccountLoader {
+    // accounts and storage cells kept, of a few hundred bytes each, so a few tens of MB
+    private static final int MAX_CACHED_ENTRIES = 100000;
+
+    // the cached values can be null
+    private static final DataWord NULL_VALUE = new DataWord();
+    private static final byte[] NULL_BYTES = new byte[0];
+
+    private final RskSystemProperties config;
+    private final Repository snapshot;
+    private final int maxCachedEntries;
+
+    private final Map<RskAddress, SharedAccount> accounts = new ConcurrentHashMap<>();
+    private final Map<RskAddress, Boolean> existing = new ConcurrentHashMap<>();
+    private final AtomicInteger cachedEntries = new AtomicInteger();
+
+    SharedStateRepository(RskSystemProperties config, Repository snapshot) {
+        this(config, snapshot, MAX_CACHED_ENTRIES);
+    }
+
+    @VisibleForTesting
+    SharedStateRepository(RskSystemProperties config, Repository snapshot, int maxCachedEntries) {
+        this.config = config;
+        this.snapshot = snapshot;
+        this.maxCachedEntries = maxCachedEntries;
+    }
+
+    @Override
+    public void loadAccount(RskAddress addr,
+                            Map<RskAddress, AccountState> cacheAccounts,
+                            Map<RskAddress, ContractDetails> cacheDetails) {
+        SharedAccount account = this.accounts.get(addr);
+
+        if (account == null) {
+            Map<RskAddress, AccountState> loadedAccounts = new HashMap<>();
+            Map<RskAddress, ContractDetails> loadedDetails = new HashMap<>();
+
+            synchronized (this.snapshot) {
+                this.snapshot.loadAccount(addr, loadedAccounts, loadedDetails);
+            }
+
+            ContractDetails details = ((ContractDetailsCacheImpl) loadedDetails.get(addr)).getOriginalContractDetails();
+            account = new SharedAccount(loadedAccounts.get(addr), details == null ? null : new SharedContractDetails(details));
+
+            if (this.reserveEntry()) {
+                SharedAccount previous = this.accounts.putIfAbsent(addr, account);
+                account = previous != null ? previous : account;
+            }
+        }
+
+        cacheAccounts.put(addr, account.state.clone());
+        cacheDetails.put(addr, new ContractDetailsCacheImpl(account.details));
+    }
+
+    @Override
+    public boolean isExist(RskAddress addr) {
+        Boolean exists = this.existing.get(addr);
+
+        if (exists == null) {
+            synchronized (this.snapshot) {
+                exists = this.snapshot.isExist(addr);
+            }
+
+            if (this.reserveEntry()) {
+                this.existing.put(addr, exists);
+            }
+        }
+
+        return exists;
+    }
+
+    /**
+     * Creates a track for a call, its changes are discarded with it
+     */
+    public Repository startTracking() {
+        return new RepositoryTrack(this.config, this);
+    }
+
+    @VisibleForTesting
+    int getCachedEntries() {
+        return this.cachedEntries.get();
+    }
+
+    private boolean reserveEntry() {
+        if (this.cachedEntries.get() >= this.maxCachedEntries) {
+            return false;
+        }
+
+        this.cachedEntries.incrementAndGet();
+        return true;
+    }
+
+    private static class SharedAccount {
+        private final AccountState state;
+        private final SharedContractDetails details;
+
+        SharedAccount(AccountState state, @Nullable SharedContractDetails details) {
+            this.state = state;
+            this.details = details;
+        }
+    }
+
+    /**
+     * SharedContractDetails keeps the storage cells and code read from the original contract details.
+     * The values are cloned for each reader, since they can be changed by the VM.
+     */
+    private class SharedContractDetails implements ContractDetails {
+        private final ContractDetails details;
+
+        private final Map<DataWord, DataWord> values = new ConcurrentHashMap<>();
+        private final Map<DataWord, byte[]> bytes = new ConcurrentHashMap<>();
+        private volatile byte[] code;
+
+        SharedContractDetails(ContractDetails details) {
+            this.details = details;
+        }
+
+        @Override
+        public DataWord get(DataWord key) {
+            DataWord value = this.values.get(key);
+
+            if (value == null) {
+                synchronized (snapshot) {
+                    value = this.details.get(key);
+                }
+
+                value = value == null ? NULL_VALUE : value.clone();
+
+                if (reserveEntry()) {
+                    this.values.put(key.clone(), value);
+                }
+            }
+
+            return value == NULL_VALUE ? null : value.clone();
+        }
+
+        @Override
+        public byte[] getBytes(DataWord key) {
+            byte[] value = this.bytes.get(key);
+
+            if (value == null) {
+                synchronized (snapshot) {
+                    value = this.details.getBytes(key);
+                }
+
+                value = value == null ? NULL_BYTES : value.clone();
+
+                if (reserveEntry()) {
+                    this.bytes.put(key.clone(), value);
+                }
+            }
+
+            return value == NULL_BYTES ? null : value.clone();
+        }
+
+        @Override
+        public byte[] getCode() {
+            byte[] result = this.code;
+
+            if (result == null) {
+                synchronized (snapshot) {
+                    result = this.details.getCode();
+                }
+
+                this.code = result;
+            }
+
+            return result;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return this.details.isDeleted();
+        }
+
+        @Override
+        public byte[] getAddress() {
+            return this.details.getAddress();
+        }
+
+        @Override
+        public boolean isNullObject() {
+            return this.details.isNullObject();
+        }
+
+        @Override
+        public byte[] getStorageHash() {
+            synchronized (snapshot) {
+                return this.details.getStorageHash();
+            }
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            synchronized (snapshot) {
+                return this.details.getEncoded();
+            }
+        }
+
+        @Override
+        public int getStorageSize() {
+            synchronized (snapshot) {
+                return this.details.getStorageSize();
+            }
+        }
+
+        @Override
+        public Set<DataWord> getStorageKeys() {
+            synchronized (snapshot) {
+                return this.details.getStorageKeys();
+            }
+        }
+
+        @Override
+        public Map<DataWord, DataWord> getStorage(@Nullable Collection<DataWord> keys) {
+            synchronized (snapshot) {
+                return this.details.getStorage(keys);
+            }
+        }
+
+        @Override
+        public Map<DataWord, DataWord> getStorage() {
+            synchronized (snapshot) {
+                return this.details.getStorage();
+            }
+        }
+
+        @Override
+        public boolean isDirty() {
+            return false;
+        }
+
+        @Override
+        public ContractDetails getSnapshotTo(byte[] hash) {
+            synchronized (snapshot) {
+                return this.details.getSnapshotTo(hash);
+            }
+        }
+
+        // the next methods change the details, the view is read only and the tracks are not committed to it
+
+        @Override
+        public void put(DataWord key, DataWord value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void putBytes(DataWord key, byte[] value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setCode(byte[] code) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setDirty(boolean dirty) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setDeleted(boolean deleted) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setAddress(byte[] address) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void syncStorage() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void decode(byte[] rlpCode) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setStorage(List<DataWord> storageKeys, List<DataWord> storageValues) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setStorage(Map<DataWord, DataWord> storage) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -24,6 +24,7 @@ import co.rsk.core.BlockDifficulty;
 import co.rsk.net.Metrics;
 import co.rsk.panic.PanicProcessor;
 import co.rsk.trie.Trie;
+import co.rsk.trie.TrieBatchStats;
 import co.rsk.trie.TrieImpl;
 import co.rsk.validators.BlockValidator;
 import com.google.common.annotations.VisibleForTesting;
@@ -41,6 +42,8 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by ajlopez on 29/07/2016.
@@ -89,7 +92,7 @@ public class BlockChainImpl implements Blockchain {
     private BlockValidator blockValidator;
 
     private volatile BlockChainStatus status = new BlockChainStatus(null, BlockDifficulty.ZERO);
-    private final Object connectLock = new Object();
+    private final Lock connectLock = new ReentrantLock();
     private final Object accessLock = new Object();
     private final BlockExecutor blockExecutor;
     private BlockRecorder blockRecorder;
@@ -170,13 +173,20 @@ public class BlockChainImpl implements Blockchain {
                          block.getShortHash(),
                          block.getNumber());
 
-            synchronized (connectLock) {
+            connectLock.lock();
+
+            try {
                 logger.trace("Start try connect");
+                TrieBatchStats.take();
                 long saveTime = System.nanoTime();
                 ImportResult result = internalTryToConnect(block);
                 long totalTime = System.nanoTime() - saveTime;
+                TrieBatchStats trieStats = TrieBatchStats.take();
                 logger.info("block: num: [{}] hash: [{}], processed after: [{}]nano, result {}", block.getNumber(), block.getShortHash(), totalTime, result);
+                logger.info("block: num: [{}] trie batches: [{}], rows: [{}], bytes: [{}], saved after: [{}]nano", block.getNumber(), trieStats.getBatches(), trieStats.getRows(), trieStats.getBytes(), trieStats.getNanos());
                 return result;
+            } finally {
+                connectLock.unlock();
             }
         } catch (Throwable t) {
             logger.error("Unexpected error: ", t);
@@ -184,6 +194,20 @@ public class BlockChainImpl implements Blockchain {
         }
     }
 
+    /**
+     * suspendProcess waits for the block being connected, if any, and
+     * blocks the connection of new blocks until resumeProcess is called
+     */
+    @Override
+    public void suspendProcess() {
+        connectLock.lock();
+    }
+
+    @Override
+    public void resumeProcess() {
+        connectLock.unlock();
+    }
+
     private ImportResult internalTryToConnect(Block block) {
         if (blockStore.getBlockByHash(block.getHash().getBytes()) != null &&
                 !BlockDifficulty.ZERO.equals(blockStore.getTotalDifficultyForHash(block.getHash().getBytes()))) {
@@ -274,11 +298,13 @@ public class BlockChainImpl implements Blockchain {
 
         // It is the new best block
         if (SelectionRule.shouldWeAddThisBlock(totalDifficulty, status.getTotalDifficulty(),block, bestBlock)) {
+            BlockFork fork = null;
+
             if (bestBlock != null && !bestBlock.isParentOf(block)) {
                 logger.trace("Rebranching: {} ~> {} From block {} ~> {} Difficulty {} Challenger difficulty {}",
                         bestBlock.getShortHash(), block.getShortHash(), bestBlock.getNumber(), block.getNumber(),
                         status.getTotalDifficulty().toString(), totalDifficulty.toString());
-                BlockFork fork = new BlockFork();
+                fork = new BlockFork();
                 fork.calculate(bestBlock, block, blockStore);
                 Metrics.rebranch(bestBlock, block, fork.getNewBlocks().size() + fork.getOldBlocks().size());
                 blockStore.reBranch(block);
@@ -288,6 +314,8 @@ public class BlockChainImpl implements Blockchain {
             switchToBlockChain(block, totalDifficulty);
             logger.trace("Start saveReceipts");
             saveReceipts(block, result);
+            logger.trace("Start indexTransactions");
+            indexTransactions(block, fork);
             logger.trace("Start processBest");
             processBest(block);
             logger.trace("Start onBlock");
@@ -441,7 +469,11 @@ public class BlockChainImpl implements Blockchain {
      */
     @Override
     public TransactionInfo getTransactionInfo(byte[] hash) {
-        TransactionInfo txInfo = receiptStore.get(hash);
+        TransactionInfo txInfo = receiptStore.getInMainChain(hash, null);
+
+        if (txInfo == null) {
+            txInfo = receiptStore.get(hash);
+        }
 
         if (txInfo == null) {
             return null;
@@ -453,6 +485,22 @@ public class BlockChainImpl implements Blockchain {
         return txInfo;
     }
 
+    @Override
+    public List<TransactionReceipt> getBlockReceipts(Block block) {
+        List<TransactionReceipt> receipts = receiptStore.getBlockReceipts(block.getHash().getBytes());
+        List<Transaction> transactions = block.getTransactionsList();
+
+        if (receipts == null || receipts.size() != transactions.size()) {
+            return null;
+        }
+
+        for (int k = 0; k < receipts.size(); k++) {
+            receipts.get(k).setTransaction(transactions.get(k));
+        }
+
+        return receipts;
+    }
+
     @Override
     public void close() {
 
@@ -478,6 +526,11 @@ public class BlockChainImpl implements Blockchain {
         this.blockRecorder = blockRecorder;
     }
 
+    @Override
+    public void stop() {
+        blockExecutor.stop();
+    }
+
     private void switchToBlockChain(Block block, BlockDifficulty totalDifficulty) {
         synchronized (accessLock) {
             storeBlock(block, totalDifficulty, true);
@@ -508,6 +561,21 @@ public class BlockChainImpl implements Blockchain {
         receiptStore.saveMultiple(block.getHash().getBytes(), result.getTransactionReceipts());
     }
 
+    private void indexTransactions(Block block, BlockFork fork) {
+        if (fork == null) {
+            receiptStore.addToMainChain(block);
+            return;
+        }
+
+        for (Block oldBlock : fork.getOldBlocks()) {
+            receiptStore.removeFromMainChain(oldBlock);
+        }
+
+        for (Block newBlock : fork.getNewBlocks()) {
+            receiptStore.addToMainChain(newBlock);
+        }
+    }
+
     private void processBest(final Block block) {
         EventDispatchThread.invokeLater(() -> transactionPool.processBest(block));
     }
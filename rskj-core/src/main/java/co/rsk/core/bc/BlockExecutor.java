@@ -50,6 +50,8 @@ public class BlockExecutor {
     private final ReceiptStore receiptStore;
     private final BlockStore blockStore;
     private final EthereumListener listener;
+    private final boolean intermediateStateRoots;
+    private final ParallelBlockExecutor parallelExecutor;
 
     private final ProgramInvokeFactory programInvokeFactory = new ProgramInvokeFactoryImpl();
 
@@ -59,12 +61,56 @@ public class BlockExecutor {
         ReceiptStore receiptStore,
         BlockStore blockStore,
         EthereumListener listener) {
+        this(config, repository, receiptStore, blockStore, listener, false);
+    }
+
+    /**
+     * @param intermediateStateRoots  if true, the state root is calculated after each transaction,
+     *                                else only once, at the end of the block. The receipts keep the
+     *                                transaction status, not the post transaction state, so the
+     *                                intermediate roots are only needed for tracing
+     */
+    public BlockExecutor(
+        RskSystemProperties config,
+        Repository repository,
+        ReceiptStore receiptStore,
+        BlockStore blockStore,
+        EthereumListener listener,
+        boolean intermediateStateRoots) {
+        this(config, repository, receiptStore, blockStore, listener, intermediateStateRoots, config.blockExecutionThreads());
+    }
+
+    /**
+     * @param executionThreads  if greater than zero, the transactions are executed optimistically
+     *                          in parallel, with the same results as the serial execution
+     */
+    public BlockExecutor(
+        RskSystemProperties config,
+        Repository repository,
+        ReceiptStore receiptStore,
+        BlockStore blockStore,
+        EthereumListener listener,
+        boolean intermediateStateRoots,
+        int executionThreads) {
 
         this.config = config;
         this.repository = repository;
         this.receiptStore = receiptStore;
         this.blockStore = blockStore;
         this.listener = listener;
+        this.intermediateStateRoots = intermediateStateRoots;
+        this.parallelExecutor = executionThreads > 0
+                ? new ParallelBlockExecutor(config, blockStore, receiptStore, listener, programInvokeFactory, executionThreads)
+                : null;
+    }
+
+    /**
+     * Stops the threads of the parallel execution, if enabled.
+     */
+    public void stop() {
+        if (this.parallelExecutor != null) {
+            this.parallelExecutor.stop();
+        }
     }
 
     /**
@@ -195,7 +241,10 @@ public class BlockExecutor {
 
         Repository initialRepository = repository.getSnapshotTo(stateRoot);
 
-        byte[] lastStateRootHash = initialRepository.getRoot();
+        // the trace and the intermediate roots need the serial execution
+        if (this.parallelExecutor != null && !ignoreReadyToExecute && !this.intermediateStateRoots && !config.vmTrace()) {
+            return this.parallelExecutor.execute(block, initialRepository, discardInvalidTxs);
+        }
 
         Repository track = initialRepository.startTracking();
         int i = 1;
@@ -242,17 +291,14 @@ public class BlockExecutor {
                 totalPaidFees = totalPaidFees.add(paidFees);
             }
 
-            TransactionReceipt receipt = new TransactionReceipt();
-            receipt.setGasUsed(gasUsed);
-            receipt.setCumulativeGas(totalGasUsed);
-            lastStateRootHash = initialRepository.getRoot();
-            receipt.setTxStatus(txExecutor.getReceipt().isSuccessful());
-            receipt.setTransaction(tx);
-            receipt.setLogInfoList(txExecutor.getVMLogs());
-            receipt.setStatus(txExecutor.getReceipt().getStatus());
+            TransactionReceipt receipt = createReceipt(tx, txExecutor, gasUsed, totalGasUsed);
 
-            logger.trace("block: [{}] executed tx: [{}] state: [{}]", block.getNumber(), tx.getHash(),
-                         Hex.toHexString(lastStateRootHash));
+            if (this.intermediateStateRoots) {
+                logger.trace("block: [{}] executed tx: [{}] state: [{}]", block.getNumber(), tx.getHash(),
+                             Hex.toHexString(initialRepository.getRoot()));
+            } else {
+                logger.trace("block: [{}] executed tx: [{}]", block.getNumber(), tx.getHash());
+            }
 
             logger.trace("tx[{}].receipt", i);
 
@@ -263,6 +309,20 @@ public class BlockExecutor {
             logger.trace("tx done");
         }
 
-        return new BlockResult(executedTransactions, receipts, lastStateRootHash, totalGasUsed, totalPaidFees);
+        // the trie is hashed and saved once, with the changes of all the executed transactions
+        byte[] stateRootHash = initialRepository.getRoot();
+
+        return new BlockResult(executedTransactions, receipts, stateRootHash, totalGasUsed, totalPaidFees);
+    }
+
+    static TransactionReceipt createReceipt(Transaction tx, TransactionExecutor txExecutor, long gasUsed, long totalGasUsed) {
+        TransactionReceipt receipt = new TransactionReceipt();
+        receipt.setGasUsed(gasUsed);
+        receipt.setCumulativeGas(totalGasUsed);
+        receipt.setTxStatus(txExecutor.getReceipt().isSuccessful());
+        receipt.setTransaction(tx);
+        receipt.setLogInfoList(txExecutor.getVMLogs());
+        receipt.setStatus(txExecutor.getReceipt().getStatus());
+        return receipt;
     }
 }
@@ -0,0 +1,319 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.config.RskSystemProperties;
+import co.rsk.core.Coin;
+import co.rsk.core.RskAddress;
+import org.ethereum.core.*;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ReceiptStore;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.PrecompiledContracts;
+import org.ethereum.vm.program.InternalTransaction;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * ParallelBlockExecutor executes the transactions of a block optimistically in parallel,
+ * producing the same final state and receipts as the serial execution.
+ *
+ * - each transaction is executed speculatively on its own track over the initial state,
+ * recording the accounts and storage cells it reads, and capturing its changes
+ * - in block order, the captured changes of a transaction are applied to the block track
+ * if it didn't read anything written by the previous transactions, else the transaction
+ * is executed again, on the block track state
+ * - the fees are paid when the changes are applied, so the fee recipient account is
+ * not a conflict between transactions that don't read it
+ *
+ * Contract creations, calls to native contracts and transactions whose changes can't be
+ * captured are executed directly on the block track. After such a transaction, its
+ * writes are unknown, and the rest of the block is executed serially.
+ */
+class ParallelBlockExecutor {
+    private static final Logger logger = LoggerFactory.getLogger("blockexecutor");
+
+    private final RskSystemProperties config;
+    private final BlockStore blockStore;
+    private final ReceiptStore receiptStore;
+    private final EthereumListener listener;
+    private final ProgramInvokeFactory programInvokeFactory;
+    private final PrecompiledContracts precompiledContracts;
+    private final ForkJoinPool pool;
+
+    ParallelBlockExecutor(
+            RskSystemProperties config,
+            BlockStore blockStore,
+            ReceiptStore receiptStore,
+            EthereumListener listener,
+            ProgramInvokeFactory programInvokeFactory,
+            int threads) {
+        this.config = config;
+        this.blockStore = blockStore;
+        this.receiptStore = receiptStore;
+        this.listener = listener;
+        this.programInvokeFactory = programInvokeFactory;
+        this.precompiledContracts = new PrecompiledContracts(config);
+        this.pool = new ForkJoinPool(threads, ParallelBlockExecutor::newThread, null, false);
+    }
+
+    void stop() {
+        this.pool.shutdown();
+    }
+
+    BlockResult execute(Block block, Repository initialRepository, boolean discardInvalidTxs) {
+        List<Transaction> transactions = block.getTransactionsList();
+        List<Speculation> speculations = this.speculateAll(block, initialRepository);
+
+        Repository track = initialRepository.startTracking();
+        StateAccessSet written = new StateAccessSet();
+        boolean tracking = true;
+        int reexecuted = 0;
+        int serial = 0;
+
+        long totalGasUsed = 0;
+        Coin totalPaidFees = Coin.ZERO;
+        List<TransactionReceipt> receipts = new ArrayList<>();
+        List<Transaction> executedTransactions = new ArrayList<>();
+
+        for (int txindex = 0; txindex < transactions.size(); txindex++) {
+            Transaction tx = transactions.get(txindex);
+            Speculation speculation = tracking ? speculations.get(txindex) : null;
+
+            if (speculation != null && (!fitsInBlock(block, tx, totalGasUsed) || speculation.conflictsWith(written))) {
+                speculation = null;
+            }
+
+            if (speculation == null && tracking && this.isSpeculable(tx)) {
+                // executed again on the current state, the result is final
+                speculation = this.speculate(block, tx, txindex, track, totalGasUsed);
+                reexecuted++;
+
+                if (speculation != null && !speculation.isReadyToExecute()) {
+                    if (discardInvalidTxs) {
+                        logger.warn("block: [{}] discarded tx: [{}]", block.getNumber(), tx.getHash());
+                        continue;
+                    }
+
+                    logger.warn("block: [{}] execution interrupted because of invalid tx: [{}]",
+                                block.getNumber(), tx.getHash());
+                    return BlockResult.INTERRUPTED_EXECUTION_BLOCK_RESULT;
+                }
+            }
+
+            TransactionExecutor txExecutor;
+
+            if (speculation != null) {
+                speculation.applyTo(track, written);
+                txExecutor = speculation.getExecutor();
+            } else {
+                txExecutor = new TransactionExecutor(config, tx, txindex, block.getCoinbase(), track, blockStore, receiptStore, programInvokeFactory, block, listener, totalGasUsed);
+
+                if (!txExecutor.init()) {
+                    if (discardInvalidTxs) {
+                        logger.warn("block: [{}] discarded tx: [{}]", block.getNumber(), tx.getHash());
+                        continue;
+                    }
+
+                    logger.warn("block: [{}] execution interrupted because of invalid tx: [{}]",
+                                block.getNumber(), tx.getHash());
+                    return BlockResult.INTERRUPTED_EXECUTION_BLOCK_RESULT;
+                }
+
+                txExecutor.execute();
+                txExecutor.go();
+                txExecutor.finalization();
+
+                tracking = false;
+                serial++;
+            }
+
+            executedTransactions.add(tx);
+
+            track.commit();
+
+            long gasUsed = txExecutor.getGasUsed();
+            totalGasUsed += gasUsed;
+            Coin paidFees = txExecutor.getPaidFees();
+            if (paidFees != null) {
+                totalPaidFees = totalPaidFees.add(paidFees);
+            }
+
+            receipts.add(BlockExecutor.createReceipt(tx, txExecutor, gasUsed, totalGasUsed));
+
+            logger.trace("block: [{}] executed tx: [{}]", block.getNumber(), tx.getHash());
+        }
+
+        logger.trace("block: [{}] txs: [{}] executed again: [{}] serial: [{}]", block.getNumber(), transactions.size(), reexecuted, serial);
+
+        return new BlockResult(executedTransactions, receipts, initialRepository.getRoot(), totalGasUsed, totalPaidFees);
+    }
+
+    private List<Speculation> speculateAll(Block block, Repository initialRepository) {
+        List<Transaction> transactions = block.getTransactionsList();
+        boolean[] speculable = new boolean[transactions.size()];
+        Set<RskAddress> senders = new HashSet<>();
+
+        // the next transactions of a sender would be executed with an invalid nonce
+        for (int k = 0; k < speculable.length; k++) {
+            Transaction tx = transactions.get(k);
+            speculable[k] = senders.add(tx.getSender()) && this.isSpeculable(tx);
+        }
+
+        return this.pool.submit(() -> IntStream.range(0, speculable.length).parallel()
+                .mapToObj(k -> speculable[k] ? this.speculate(block, transactions.get(k), k, initialRepository, 0) : null)
+                .map(speculation -> speculation != null && speculation.isReadyToExecute() ? speculation : null)
+                .collect(Collectors.toList())).join();
+    }
+
+    /**
+     * speculate executes a transaction on a track over the given repository, without changing it
+     *
+     * @return the speculation, or null if its changes can't be captured
+     */
+    @Nullable
+    private Speculation speculate(Block block, Transaction tx, int txindex, Repository repository, long gasUsedInTheBlock) {
+        RecordingRepository recording = new RecordingRepository(config, repository);
+        Repository track = recording.startTracking();
+        SummaryListener summaryListener = new SummaryListener();
+
+        TransactionExecutor txExecutor = new TransactionExecutor(config, tx, txindex, block.getCoinbase(), track, blockStore, receiptStore, programInvokeFactory, block, summaryListener, gasUsedInTheBlock)
+                .setDeferFeePayment(true);
+
+        try {
+            if (!txExecutor.init()) {
+                return new Speculation(txExecutor, recording, null, false);
+            }
+
+            txExecutor.execute();
+            txExecutor.go();
+            txExecutor.finalization();
+
+            track.commit();
+        } catch (RuntimeException e) {
+            logger.trace("Speculative execution of tx [{}] failed", tx.getHash(), e);
+            return null;
+        }
+
+        if (recording.isUnsafe() || callsNativeContracts(txExecutor)) {
+            return null;
+        }
+
+        return new Speculation(txExecutor, recording, summaryListener.getSummary(), true);
+    }
+
+    private boolean isSpeculable(Transaction tx) {
+        if (tx.isContractCreation()) {
+            return false;
+        }
+
+        try {
+            return precompiledContracts.getContractForAddress(new DataWord(tx.getReceiveAddress().getBytes())) == null;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean callsNativeContracts(TransactionExecutor txExecutor) {
+        for (InternalTransaction internalTx : txExecutor.getResult().getInternalTransactions()) {
+            RskAddress address = internalTx.getReceiveAddress();
+
+            if (PrecompiledContracts.BRIDGE_ADDR.equals(address) || PrecompiledContracts.REMASC_ADDR.equals(address)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean fitsInBlock(Block block, Transaction tx, long gasUsedInTheBlock) {
+        BigInteger txGasLimit = new BigInteger(1, tx.getGasLimit());
+        BigInteger blockGasLimit = new BigInteger(1, block.getGasLimit());
+
+        return txGasLimit.add(BigInteger.valueOf(gasUsedInTheBlock)).compareTo(blockGasLimit) <= 0;
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("blockExecutor-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private class Speculation {
+        private final TransactionExecutor executor;
+        private final RecordingRepository recording;
+        private final TransactionExecutionSummary summary;
+        private final boolean readyToExecute;
+
+        Speculation(TransactionExecutor executor, RecordingRepository recording, TransactionExecutionSummary summary, boolean readyToExecute) {
+            this.executor = executor;
+            this.recording = recording;
+            this.summary = summary;
+            this.readyToExecute = readyToExecute;
+        }
+
+        TransactionExecutor getExecutor() {
+            return this.executor;
+        }
+
+        boolean isReadyToExecute() {
+            return this.readyToExecute;
+        }
+
+        boolean conflictsWith(StateAccessSet written) {
+            return this.recording.conflictsWith(written);
+        }
+
+        void applyTo(Repository track, StateAccessSet written) {
+            this.recording.applyTo(track, written);
+
+            this.executor.payFees(track);
+            written.addAccount(this.executor.getFeeRecipient());
+
+            if (listener != null && this.summary != null) {
+                listener.onTransactionExecuted(this.summary);
+            }
+        }
+    }
+
+    private static class SummaryListener extends EthereumListenerAdapter {
+        private TransactionExecutionSummary summary;
+
+        @Override
+        public void onTransactionExecuted(TransactionExecutionSummary summary) {
+            this.summary = summary;
+        }
+
+        TransactionExecutionSummary getSummary() {
+            return this.summary;
+        }
+    }
+}
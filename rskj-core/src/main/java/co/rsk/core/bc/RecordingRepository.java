@@ -0,0 +1,547 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.config.RskSystemProperties;
+import co.rsk.core.Coin;
+import co.rsk.core.RskAddress;
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.ContractDetails;
+import org.ethereum.db.ContractDetailsCacheImpl;
+import org.ethereum.db.DetailsDataStore;
+import org.ethereum.db.RepositoryTrack;
+import org.ethereum.vm.DataWord;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * RecordingRepository is a read only view of a repository, used as the parent
+ * of the track where a transaction is executed speculatively. It records the
+ * accounts and storage cells the transaction reads, and captures the changes
+ * committed by the track, so they can be checked against the changes of the
+ * previous transactions in the block, and applied to the block repository.
+ *
+ * Changes that can't be applied as a set of storage cells, balance and nonce
+ * updates (account creation or deletion, code changes, hibernation) mark the
+ * execution as unsafe, as any other unexpected use of this repository.
+ */
+class RecordingRepository implements Repository {
+    private static final byte[] EMPTY_DATA_HASH = HashUtil.keccak256(EMPTY_BYTE_ARRAY);
+
+    private final RskSystemProperties config;
+    private final Repository repository;
+
+    private final StateAccessSet reads = new StateAccessSet();
+    private final Map<RskAddress, AccountState> loadedAccounts = new HashMap<>();
+    private final Map<RskAddress, RecordingContractDetails> loadedDetails = new HashMap<>();
+    private final Map<RskAddress, AccountState> updatedAccounts = new HashMap<>();
+    private final Set<RskAddress> dirtyAccounts = new HashSet<>();
+
+    private boolean unsafe;
+
+    RecordingRepository(RskSystemProperties config, Repository repository) {
+        this.config = config;
+        this.repository = repository;
+    }
+
+    boolean isUnsafe() {
+        return this.unsafe;
+    }
+
+    void markUnsafe() {
+        this.unsafe = true;
+    }
+
+    /**
+     * @return true if the transaction read an account or a storage cell changed in the given set
+     */
+    boolean conflictsWith(StateAccessSet written) {
+        return this.reads.intersects(written);
+    }
+
+    /**
+     * applyTo applies the captured changes to a track, in the same way a transaction
+     * executed on it would leave them, and adds to the written set the accounts and
+     * storage cells whose values changed
+     */
+    void applyTo(Repository track, StateAccessSet written) {
+        for (Map.Entry<RskAddress, AccountState> entry : this.updatedAccounts.entrySet()) {
+            RskAddress address = entry.getKey();
+            AccountState updated = entry.getValue();
+            AccountState loaded = this.loadedAccounts.get(address);
+            boolean dirty = this.dirtyAccounts.contains(address);
+
+            ContractDetails details = track.getContractDetails(address);
+            boolean detailsDirty = details.isDirty();
+            this.loadedDetails.get(address).applyTo(details, written);
+            details.setDirty(detailsDirty || dirty);
+
+            if (!dirty) {
+                continue;
+            }
+
+            AccountState account = track.getAccountState(address);
+
+            if (!updated.getNonce().equals(account.getNonce())) {
+                account.setNonce(updated.getNonce());
+            }
+
+            account.addToBalance(updated.getBalance().subtract(loaded.getBalance()));
+
+            // a written account without code could be created by the write
+            boolean changed = !updated.getNonce().equals(loaded.getNonce()) || !updated.getBalance().equals(loaded.getBalance());
+
+            if (changed || Arrays.equals(updated.getCodeHash(), EMPTY_DATA_HASH)) {
+                written.addAccount(address);
+            }
+        }
+    }
+
+    @Override
+    public void loadAccount(RskAddress addr,
+                            Map<RskAddress, AccountState> cacheAccounts,
+                            Map<RskAddress, ContractDetails> cacheDetails) {
+        Map<RskAddress, AccountState> accounts = new HashMap<>();
+        Map<RskAddress, ContractDetails> details = new HashMap<>();
+
+        synchronized (this.repository) {
+            this.repository.loadAccount(addr, accounts, details);
+        }
+
+        if (this.loadedAccounts.containsKey(addr)) {
+            this.unsafe = true;
+        }
+
+        this.reads.addAccount(addr);
+
+        AccountState account = accounts.get(addr);
+        RecordingContractDetails recording = new RecordingContractDetails(addr, details.get(addr));
+
+        this.loadedAccounts.put(addr, account.clone());
+        this.loadedDetails.put(addr, recording);
+
+        cacheAccounts.put(addr, account);
+        cacheDetails.put(addr, new ContractDetailsCacheImpl(recording));
+    }
+
+    @Override
+    public boolean isExist(RskAddress addr) {
+        this.reads.addAccount(addr);
+
+        synchronized (this.repository) {
+            return this.repository.isExist(addr);
+        }
+    }
+
+    @Override
+    public void updateBatch(Map<RskAddress, AccountState> accountStates,
+                            Map<RskAddress, ContractDetails> contractDetails) {
+        if (!accountStates.keySet().equals(contractDetails.keySet())) {
+            this.unsafe = true;
+            return;
+        }
+
+        for (Map.Entry<RskAddress, AccountState> entry : accountStates.entrySet()) {
+            RskAddress address = entry.getKey();
+            AccountState account = entry.getValue();
+            AccountState loaded = this.loadedAccounts.get(address);
+            RecordingContractDetails recording = this.loadedDetails.get(address);
+            ContractDetailsCacheImpl details = (ContractDetailsCacheImpl) contractDetails.get(address);
+
+            if (recording == null || details.getOriginalContractDetails() != recording || recording.isCodeChanged()
+                    || account.isDeleted() || details.isDeleted()
+                    || account.getStateFlags() != loaded.getStateFlags()
+                    || !Arrays.equals(account.getCodeHash(), loaded.getCodeHash())) {
+                this.unsafe = true;
+                return;
+            }
+
+            this.updatedAccounts.put(address, account.clone());
+
+            if (details.isDirty()) {
+                this.dirtyAccounts.add(address);
+            }
+        }
+    }
+
+    @Override
+    public Repository startTracking() {
+        return new RepositoryTrack(this.config, this);
+    }
+
+    @Override
+    public AccountState createAccount(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public AccountState getAccountState(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public void delete(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public void hibernate(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public BigInteger increaseNonce(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public BigInteger getNonce(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public ContractDetails getContractDetails(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public void saveCode(RskAddress addr, byte[] code) {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getCode(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addStorageRow(RskAddress addr, DataWord key, DataWord value) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addStorageBytes(RskAddress addr, DataWord key, byte[] value) {
+        throw unsupported();
+    }
+
+    @Override
+    public DataWord getStorageValue(RskAddress addr, DataWord key) {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getStorageBytes(RskAddress addr, DataWord key) {
+        throw unsupported();
+    }
+
+    @Override
+    public Coin getBalance(RskAddress addr) {
+        throw unsupported();
+    }
+
+    @Override
+    public Coin addBalance(RskAddress addr, Coin value) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<RskAddress> getAccountsKeys() {
+        throw unsupported();
+    }
+
+    @Override
+    public void dumpState(Block block, long gasUsed, int txNumber, byte[] txHash) {
+        throw unsupported();
+    }
+
+    @Override
+    public void flush() {
+        throw unsupported();
+    }
+
+    @Override
+    public void flushNoReconnect() {
+        throw unsupported();
+    }
+
+    @Override
+    public void commit() {
+        throw unsupported();
+    }
+
+    @Override
+    public void rollback() {
+        throw unsupported();
+    }
+
+    @Override
+    public void syncToRoot(byte[] root) {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean isClosed() {
+        throw unsupported();
+    }
+
+    @Override
+    public void close() {
+        throw unsupported();
+    }
+
+    @Override
+    public void reset() {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getRoot() {
+        throw unsupported();
+    }
+
+    @Override
+    public Repository getSnapshotTo(byte[] root) {
+        throw unsupported();
+    }
+
+    @Override
+    public DetailsDataStore getDetailsDataStore() {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateContractDetails(RskAddress addr, ContractDetails contractDetails) {
+        throw unsupported();
+    }
+
+    @Override
+    public void updateAccountState(RskAddress addr, AccountState accountState) {
+        throw unsupported();
+    }
+
+    private UnsupportedOperationException unsupported() {
+        this.unsafe = true;
+        return new UnsupportedOperationException();
+    }
+
+    /**
+     * RecordingContractDetails records the storage cells read from the original contract details,
+     * and keeps the cells written by the track, instead of writing them
+     */
+    private class RecordingContractDetails implements ContractDetails {
+        private final RskAddress address;
+        private final ContractDetails details;
+
+        private final Map<DataWord, DataWord> readValues = new HashMap<>();
+        private final Map<DataWord, byte[]> readBytes = new HashMap<>();
+        private final Map<DataWord, DataWord> values = new LinkedHashMap<>();
+        private final Map<DataWord, byte[]> bytes = new LinkedHashMap<>();
+        private boolean codeChanged;
+
+        RecordingContractDetails(RskAddress address, ContractDetails details) {
+            this.address = address;
+            this.details = details;
+        }
+
+        boolean isCodeChanged() {
+            return this.codeChanged;
+        }
+
+        void applyTo(ContractDetails target, StateAccessSet written) {
+            for (Map.Entry<DataWord, DataWord> entry : this.values.entrySet()) {
+                DataWord key = entry.getKey();
+                DataWord value = entry.getValue();
+
+                if (!this.readValues.containsKey(key) || !sameValue(this.readValues.get(key), value)) {
+                    written.addStorage(this.address, key);
+                }
+
+                target.put(key, value);
+            }
+
+            for (Map.Entry<DataWord, byte[]> entry : this.bytes.entrySet()) {
+                written.addStorage(this.address, entry.getKey());
+                target.putBytes(entry.getKey(), entry.getValue());
+            }
+        }
+
+        @Override
+        public DataWord get(DataWord key) {
+            reads.addStorage(this.address, key);
+
+            DataWord value;
+
+            synchronized (repository) {
+                value = this.details.get(key);
+            }
+
+            this.readValues.put(key.clone(), value == null ? null : value.clone());
+
+            return value;
+        }
+
+        @Override
+        public byte[] getBytes(DataWord key) {
+            reads.addStorage(this.address, key);
+
+            byte[] value;
+
+            synchronized (repository) {
+                value = this.details.getBytes(key);
+            }
+
+            this.readBytes.put(key.clone(), value == null ? null : value.clone());
+
+            return value;
+        }
+
+        @Override
+        public void put(DataWord key, DataWord value) {
+            this.values.put(key.clone(), value == null ? null : value.clone());
+        }
+
+        @Override
+        public void putBytes(DataWord key, byte[] value) {
+            this.bytes.put(key.clone(), value == null ? null : value.clone());
+        }
+
+        @Override
+        public byte[] getCode() {
+            return this.details.getCode();
+        }
+
+        @Override
+        public void setCode(byte[] code) {
+            if (!Arrays.equals(code, this.details.getCode())) {
+                this.codeChanged = true;
+            }
+        }
+
+        @Override
+        public void setDirty(boolean dirty) {
+            // the dirty flag is taken from the track when the changes are captured
+        }
+
+        @Override
+        public boolean isDirty() {
+            return false;
+        }
+
+        @Override
+        public void setDeleted(boolean deleted) {
+            unsafe = true;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return this.details.isDeleted();
+        }
+
+        @Override
+        public byte[] getAddress() {
+            return this.details.getAddress();
+        }
+
+        @Override
+        public void setAddress(byte[] address) {
+            unsafe = true;
+        }
+
+        @Override
+        public boolean isNullObject() {
+            return this.details.isNullObject();
+        }
+
+        @Override
+        public void syncStorage() {
+            // the changes are never written to the original contract details
+        }
+
+        // the next methods read or replace the whole storage, they can't be recorded by cell
+
+        @Override
+        public byte[] getStorageHash() {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public void decode(byte[] rlpCode) {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public int getStorageSize() {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public Set<DataWord> getStorageKeys() {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public Map<DataWord, DataWord> getStorage(@Nullable Collection<DataWord> keys) {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public Map<DataWord, DataWord> getStorage() {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public void setStorage(List<DataWord> storageKeys, List<DataWord> storageValues) {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public void setStorage(Map<DataWord, DataWord> storage) {
+            throw unsupportedDetails();
+        }
+
+        @Override
+        public ContractDetails getSnapshotTo(byte[] hash) {
+            throw unsupportedDetails();
+        }
+
+        private UnsupportedOperationException unsupportedDetails() {
+            unsafe = true;
+            return new UnsupportedOperationException();
+        }
+    }
+
+    private static boolean sameValue(@Nullable DataWord value1, @Nullable DataWord value2) {
+        boolean zero1 = value1 == null || value1.isZero();
+        boolean zero2 = value2 == null || value2.isZero();
+
+        return zero1 ? zero2 : value1.equals(value2);
+    }
+}
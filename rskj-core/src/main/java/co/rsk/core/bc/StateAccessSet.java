@@ -0,0 +1,69 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.core.RskAddress;
+import org.ethereum.vm.DataWord;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * StateAccessSet keeps the accounts and the storage cells read or written
+ * by transactions. An account includes its nonce, balance, code and existence,
+ * but not its storage cells.
+ */
+class StateAccessSet {
+    private final Set<RskAddress> accounts = new HashSet<>();
+    private final Map<RskAddress, Set<DataWord>> storage = new HashMap<>();
+
+    void addAccount(RskAddress address) {
+        this.accounts.add(address);
+    }
+
+    void addStorage(RskAddress address, DataWord key) {
+        this.storage.computeIfAbsent(address, k -> new HashSet<>()).add(key.clone());
+    }
+
+    boolean intersects(StateAccessSet other) {
+        for (RskAddress address : this.accounts) {
+            if (other.accounts.contains(address)) {
+                return true;
+            }
+        }
+
+        for (Map.Entry<RskAddress, Set<DataWord>> entry : this.storage.entrySet()) {
+            Set<DataWord> otherKeys = other.storage.get(entry.getKey());
+
+            if (otherKeys == null) {
+                continue;
+            }
+
+            for (DataWord key : entry.getValue()) {
+                if (otherKeys.contains(key)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
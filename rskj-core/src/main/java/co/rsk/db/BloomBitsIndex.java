@@ -0,0 +1,242 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.db;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.core.Bloom;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.util.ByteUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * BloomBitsIndex keeps the log blooms of the main chain blocks by sections of consecutive blocks,
+ * transposed as Ethereum bloombits: for each of the bloom bits, a vector with the blocks of the
+ * section having that bit set. A filter bloom is matched in a whole section with the AND
+ * of the vectors of its bits, and only the matching blocks have to be loaded.
+ *
+ * Each section is saved with the hash of its last block, and used only while that block
+ * is in the main chain, so it is built again after a reorganization that changes it.
+ */
+public class BloomBitsIndex {
+    private static final Logger logger = LoggerFactory.getLogger("bloombits");
+
+    public static final int DEFAULT_SECTION_SIZE = 4096;
+
+    // blocks on top of a section before building it, so it is not usually reorganized
+    private static final int CONFIRMATIONS = 100;
+    private static final int BLOOM_BITS = 2048;
+
+    private final KeyValueDataSource bitsDS;
+    private final int sectionSize;
+
+    private long lastIndexedSection = -1;
+
+    public BloomBitsIndex(KeyValueDataSource bitsDS) {
+        this(bitsDS, DEFAULT_SECTION_SIZE);
+    }
+
+    public BloomBitsIndex(KeyValueDataSource bitsDS, int sectionSize) {
+        this.bitsDS = bitsDS;
+        this.sectionSize = sectionSize;
+    }
+
+    /**
+     * Builds the last section having enough confirmations, if it is not already built
+     */
+    public void onBestBlock(Block bestBlock, Blockchain blockchain) {
+        long section = (bestBlock.getNumber() - CONFIRMATIONS + 1) / sectionSize - 1;
+
+        if (section < 0 || section == this.lastIndexedSection) {
+            return;
+        }
+
+        Block lastBlock = blockchain.getBlockByNumber(this.getLastBlockNumber(section));
+
+        if (lastBlock != null && (this.isIndexed(section, lastBlock) || this.indexSection(section, lastBlock, blockchain) != null)) {
+            this.lastIndexedSection = section;
+        }
+    }
+
+    /**
+     * Gets the numbers of the blocks from and to (inclusive) whose log bloom could match the filter,
+     * using the complete sections of the main chain, indexing them if needed.
+     * The blocks of the last and incomplete section are all candidates.
+     *
+     * @param filterBlooms  a conjunction of disjunctions of blooms to match
+     * @return  the candidate block numbers, in ascending order
+     */
+    public List<Long> getCandidateBlocks(Bloom[][] filterBlooms, long from, long to, Blockchain blockchain) {
+        List<Long> candidates = new ArrayList<>();
+        long bestNumber = blockchain.getBestBlock().getNumber();
+        long number = from;
+
+        while (number <= to) {
+            long section = number / sectionSize;
+            long sectionFirst = section * sectionSize;
+            long sectionLast = this.getLastBlockNumber(section);
+            long last = Math.min(to, sectionLast);
+
+            BitSet matches = null;
+
+            if (sectionLast <= bestNumber) {
+                matches = this.getSectionMatches(section, filterBlooms, blockchain);
+            }
+
+            for (; number <= last; number++) {
+                if (matches == null || matches.get((int) (number - sectionFirst))) {
+                    candidates.add(number);
+                }
+            }
+        }
+
+        return candidates;
+    }
+
+    private BitSet getSectionMatches(long section, Bloom[][] filterBlooms, Blockchain blockchain) {
+        Block lastBlock = blockchain.getBlockByNumber(this.getLastBlockNumber(section));
+
+        if (lastBlock == null) {
+            return null;
+        }
+
+        Map<Integer, BitSet> rows = new HashMap<>();
+
+        if (!this.isIndexed(section, lastBlock)) {
+            BitSet[] built = this.indexSection(section, lastBlock, blockchain);
+
+            if (built == null) {
+                return null;
+            }
+
+            for (int k = 0; k < built.length; k++) {
+                rows.put(k, built[k]);
+            }
+        }
+
+        BitSet result = new BitSet(sectionSize);
+        result.set(0, sectionSize);
+
+        for (Bloom[] orBlooms : filterBlooms) {
+            BitSet orResult = new BitSet(sectionSize);
+
+            for (Bloom bloom : orBlooms) {
+                BitSet andResult = new BitSet(sectionSize);
+                andResult.set(0, sectionSize);
+
+                for (int bit : getBits(bloom)) {
+                    andResult.and(rows.computeIfAbsent(bit, k -> this.getRow(section, k)));
+                }
+
+                orResult.or(andResult);
+            }
+
+            result.and(orResult);
+        }
+
+        return result;
+    }
+
+    private boolean isIndexed(long section, Block lastBlock) {
+        byte[] hash = bitsDS.get(sectionKey(section));
+        return hash != null && Arrays.equals(hash, lastBlock.getHash().getBytes());
+    }
+
+    /**
+     * Builds and saves a section, walking back from its last block by parent hash
+     * so the blocks are of the same chain, even if it is reorganized meanwhile
+     *
+     * @return the built bit vectors, by bloom bit, or null if a block is missing
+     */
+    private synchronized BitSet[] indexSection(long section, Block lastBlock, Blockchain blockchain) {
+        long start = System.nanoTime();
+        long sectionFirst = section * sectionSize;
+        BitSet[] rows = new BitSet[BLOOM_BITS];
+
+        for (int k = 0; k < BLOOM_BITS; k++) {
+            rows[k] = new BitSet(sectionSize);
+        }
+
+        Block block = lastBlock;
+
+        for (int position = sectionSize - 1; position >= 0; position--) {
+            if (block == null || block.getNumber() != sectionFirst + position) {
+                return null;
+            }
+
+            for (int bit : getBits(new Bloom(block.getLogBloom()))) {
+                rows[bit].set(position);
+            }
+
+            if (position > 0) {
+                block = blockchain.getBlockByHash(block.getParentHash().getBytes());
+            }
+        }
+
+        Map<byte[], byte[]> batch = new HashMap<>();
+
+        // the empty vectors are saved too, replacing the ones of a previous version of the section
+        for (int k = 0; k < BLOOM_BITS; k++) {
+            batch.put(rowKey(section, k), rows[k].toByteArray());
+        }
+
+        batch.put(sectionKey(section), lastBlock.getHash().getBytes());
+
+        bitsDS.updateBatch(batch);
+
+        logger.trace("section: [{}] last block: [{}] indexed after: [{}]nano", section, lastBlock.getShortHash(), System.nanoTime() - start);
+
+        return rows;
+    }
+
+    private BitSet getRow(long section, int bit) {
+        byte[] row = bitsDS.get(rowKey(section, bit));
+        return row == null ? new BitSet() : BitSet.valueOf(row);
+    }
+
+    private long getLastBlockNumber(long section) {
+        return (section + 1) * sectionSize - 1;
+    }
+
+    private static List<Integer> getBits(Bloom bloom) {
+        List<Integer> bits = new ArrayList<>();
+        byte[] data = bloom.getData();
+
+        for (int k = 0; k < data.length; k++) {
+            for (int j = 0; j < 8; j++) {
+                if ((data[k] & (1 << j)) != 0) {
+                    bits.add(k * 8 + j);
+                }
+            }
+        }
+
+        return bits;
+    }
+
+    private static byte[] sectionKey(long section) {
+        return ByteUtil.longToBytes(section);
+    }
+
+    private static byte[] rowKey(long section, int bit) {
+        return ByteUtil.merge(ByteUtil.longToBytes(section), ByteUtil.shortToBytes((short) bit));
+    }
+}
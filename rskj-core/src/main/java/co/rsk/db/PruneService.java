@@ -0,0 +1,390 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.db;
+
+import co.rsk.config.PruneConfiguration;
+import co.rsk.config.RskSystemProperties;
+import co.rsk.core.RskAddress;
+import co.rsk.trie.Trie;
+import co.rsk.trie.TrieMarks;
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.datasource.KeyValueIterator;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.ethereum.datasource.DataSourcePool.closeDataSource;
+import static org.ethereum.datasource.DataSourcePool.levelDbByName;
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * PruneService removes in background the trie nodes that are not reachable
+ * from the states of the last blocks, using mark and sweep
+ *
+ * Each cycle prunes the account state store, and then the storage data source
+ * of each contract with external storage. For each store:
+ *
+ * - the block processing is suspended only to start recording the written keys
+ * - the nodes reachable from the roots of the kept blocks are marked, visiting each node once.
+ * The marks are kept in a temporary data source, deleted after the store is pruned,
+ * so the heap only holds a batch of them
+ * - the store keys are scanned, and the not marked ones are deleted in steps of
+ * batchSize keys; only the delete steps exclude the writes to the store
+ *
+ * The keys written while the cycle runs are never deleted, so the states of the
+ * blocks processed during the cycle are preserved. The states of blocks older than
+ * the kept ones are not available after a cycle, so forks deeper than blocksToKeep
+ * can't be processed. Reclaimed bytes are the sizes of the deleted rows, the disk
+ * space is released by the LevelDB compactions.
+ */
+public class PruneService {
+    private static final Logger logger = LoggerFactory.getLogger("prune");
+
+    private static final String CONTRACT_STORAGE_NAME = "details-storage";
+    private static final String MARKS_NAME = "prune-marks";
+    private static final long CHECK_DELAY_SECONDS = 60;
+
+    private final RskSystemProperties config;
+    private final PruneConfiguration pruneConfiguration;
+    private final Blockchain blockchain;
+    private final TrieStoreImpl stateStore;
+    private final ScheduledExecutorService executor;
+
+    private volatile boolean stopped;
+    private long nextBlockNumber;
+
+    // totals of all the cycles, and the longest suspension of the writes
+    private long cycles;
+    private long deletedKeys;
+    private long reclaimedBytes;
+    private long totalPauseTime;
+    private long maxPauseTime;
+
+    // the longest suspension of the writes in the current or last cycle
+    private long cycleMaxPauseTime;
+
+    public PruneService(RskSystemProperties config, PruneConfiguration pruneConfiguration, Blockchain blockchain, TrieStoreImpl stateStore) {
+        this.config = config;
+        this.pruneConfiguration = pruneConfiguration;
+        this.blockchain = blockchain;
+        this.stateStore = stateStore;
+        this.nextBlockNumber = pruneConfiguration.getBlocksToKeep();
+        this.executor = Executors.newSingleThreadScheduledExecutor(target -> new Thread(target, "pruneService"));
+    }
+
+    public void start() {
+        logger.info("Prune service started, keeping the state of the last {} blocks", pruneConfiguration.getBlocksToKeep());
+
+        executor.scheduleWithFixedDelay(
+            () -> {
+                try {
+                    pruneIfNeeded();
+                } catch (Throwable t) {
+                    logger.error("Unhandled exception", t);
+                }
+            }, CHECK_DELAY_SECONDS, CHECK_DELAY_SECONDS, TimeUnit.SECONDS
+        );
+    }
+
+    public void stop() {
+        this.stopped = true;
+        executor.shutdown();
+    }
+
+    private void pruneIfNeeded() {
+        long bestNumber = blockchain.getBestBlock().getNumber();
+
+        if (bestNumber < this.nextBlockNumber) {
+            return;
+        }
+
+        this.prune();
+        this.nextBlockNumber = bestNumber + pruneConfiguration.getBlocksInterval();
+    }
+
+    /**
+     * prune runs a full cycle over the state store and the contract storage data sources
+     */
+    public void prune() {
+        long start = System.nanoTime();
+        long previousDeletedKeys = this.deletedKeys;
+        long previousReclaimedBytes = this.reclaimedBytes;
+
+        synchronized (this) {
+            this.cycleMaxPauseTime = 0;
+        }
+
+        this.pruneStore("state", this.stateStore, Block::getStateRoot);
+
+        for (RskAddress address : this.getContractsWithExternalStorage()) {
+            if (this.stopped) {
+                return;
+            }
+
+            this.pruneContractStorage(address);
+        }
+
+        long totalTime = System.nanoTime() - start;
+
+        synchronized (this) {
+            this.cycles++;
+        }
+
+        logger.info("prune cycle: [{}] keys deleted, [{}] bytes reclaimed, [{}]nano, max pause [{}]nano",
+                this.deletedKeys - previousDeletedKeys, this.reclaimedBytes - previousReclaimedBytes, totalTime, this.getCycleMaxPauseTime());
+    }
+
+    private void pruneContractStorage(RskAddress address) {
+        String name = CONTRACT_STORAGE_NAME + "/" + address;
+
+        try {
+            TrieStoreImpl store = new TrieStoreImpl(levelDbByName(config, name));
+            this.pruneStore(name, store, block -> this.getStorageRoot(block, address));
+        } catch (RuntimeException ex) {
+            logger.warn("Error pruning {}", name, ex);
+        } finally {
+            closeDataSource(name);
+        }
+    }
+
+    /**
+     * pruneStore deletes the keys of a trie store not reachable from the roots
+     * of the kept blocks
+     *
+     * @param name          the store name, for logging
+     * @param store         the trie store to prune
+     * @param rootProvider  returns the trie root of a block in the store, or null
+     */
+    void pruneStore(String name, TrieStoreImpl store, Function<Block, byte[]> rootProvider) {
+        long bestNumber;
+
+        long pauseStart = System.nanoTime();
+        blockchain.suspendProcess();
+
+        try {
+            store.startSweep();
+            bestNumber = blockchain.getBestBlock().getNumber();
+        } finally {
+            blockchain.resumeProcess();
+        }
+
+        this.addPause(System.nanoTime() - pauseStart);
+
+        KeyValueDataSource marksDataSource = null;
+
+        try {
+            marksDataSource = this.openMarks();
+
+            long markStart = System.nanoTime();
+            TrieMarks marked = new TrieMarks(marksDataSource, pruneConfiguration.getBatchSize());
+            this.mark(store, marked, rootProvider, bestNumber);
+            long markTime = System.nanoTime() - markStart;
+
+            long sweepStart = System.nanoTime();
+            long[] swept = this.sweep(store, marked);
+            long sweepTime = System.nanoTime() - sweepStart;
+
+            logger.trace("prune {}: [{}] marked, [{}] keys deleted, [{}] bytes reclaimed, mark [{}]nano, sweep [{}]nano",
+                    name, marked.size(), swept[0], swept[1], markTime, sweepTime);
+        } finally {
+            store.stopSweep();
+
+            if (marksDataSource != null) {
+                this.closeMarks(marksDataSource);
+            }
+        }
+    }
+
+    /**
+     * openMarks opens an empty data source to keep the marks of a store
+     */
+    protected KeyValueDataSource openMarks() {
+        FileUtil.recursiveDelete(this.getDatabasePath().resolve(MARKS_NAME).toString());
+        return levelDbByName(config, MARKS_NAME);
+    }
+
+    protected void closeMarks(KeyValueDataSource marksDataSource) {
+        closeDataSource(MARKS_NAME);
+        FileUtil.recursiveDelete(this.getDatabasePath().resolve(MARKS_NAME).toString());
+    }
+
+    private void mark(TrieStoreImpl store, TrieMarks marked, Function<Block, byte[]> rootProvider, long bestNumber) {
+        long fromNumber = Math.max(0, bestNumber - pruneConfiguration.getBlocksToKeep() + 1);
+
+        for (long number = fromNumber; number <= bestNumber; number++) {
+            for (Block block : blockchain.getBlocksByNumber(number)) {
+                byte[] root = rootProvider.apply(block);
+
+                if (root != null) {
+                    store.mark(root, marked);
+                }
+            }
+        }
+    }
+
+    /**
+     * sweep deletes the not marked keys, in steps of at most batchSize keys.
+     * The iterator is closed before each step, so the data source is not held
+     * while the writes are excluded
+     *
+     * @return  the number of deleted keys and the reclaimed bytes
+     */
+    private long[] sweep(TrieStoreImpl store, TrieMarks marked) {
+        int batchSize = pruneConfiguration.getBatchSize();
+        long deleted = 0;
+        long reclaimed = 0;
+        byte[] next = null;
+
+        do {
+            Map<ByteArrayWrapper, Integer> candidates = new LinkedHashMap<>();
+
+            try (KeyValueIterator iterator = store.iterator(next)) {
+                next = null;
+
+                while (iterator.hasNext()) {
+                    Map.Entry<byte[], byte[]> entry = iterator.next();
+                    byte[] key = entry.getKey();
+
+                    if (candidates.size() >= batchSize) {
+                        next = key;
+                        break;
+                    }
+
+                    if (!marked.contains(key)) {
+                        candidates.put(wrap(key), key.length + entry.getValue().length);
+                    }
+                }
+            }
+
+            List<byte[]> keys = new ArrayList<>(candidates.size());
+
+            for (ByteArrayWrapper candidate : candidates.keySet()) {
+                keys.add(candidate.getData());
+            }
+
+            long pauseStart = System.nanoTime();
+            List<byte[]> deletedKeys = store.sweep(keys, marked);
+            this.addPause(System.nanoTime() - pauseStart);
+
+            for (byte[] key : deletedKeys) {
+                reclaimed += candidates.get(wrap(key));
+            }
+
+            deleted += deletedKeys.size();
+        } while (next != null && !this.stopped);
+
+        synchronized (this) {
+            this.deletedKeys += deleted;
+            this.reclaimedBytes += reclaimed;
+        }
+
+        return new long[] { deleted, reclaimed };
+    }
+
+    @Nullable
+    private byte[] getStorageRoot(Block block, RskAddress address) {
+        Trie state = this.stateStore.retrieve(block.getStateRoot());
+
+        if (state == null) {
+            return null;
+        }
+
+        byte[] accountData = state.get(address.getBytes());
+
+        if (accountData == null || accountData.length == 0) {
+            return null;
+        }
+
+        return new AccountState(accountData).getStateRoot();
+    }
+
+    private Path getDatabasePath() {
+        Path databasePath = Paths.get(config.databaseDir());
+
+        if (!databasePath.isAbsolute()) {
+            databasePath = Paths.get(System.getProperty("user.dir"), config.databaseDir());
+        }
+
+        return databasePath;
+    }
+
+    private List<RskAddress> getContractsWithExternalStorage() {
+        File[] directories = this.getDatabasePath().resolve(CONTRACT_STORAGE_NAME).toFile().listFiles(File::isDirectory);
+        List<RskAddress> addresses = new ArrayList<>();
+
+        if (directories == null) {
+            return addresses;
+        }
+
+        for (File directory : directories) {
+            try {
+                addresses.add(new RskAddress(directory.getName()));
+            } catch (RuntimeException ex) {
+                logger.warn("Unexpected contract storage directory {}", directory.getName());
+            }
+        }
+
+        return addresses;
+    }
+
+    private synchronized void addPause(long pauseTime) {
+        this.totalPauseTime += pauseTime;
+        this.maxPauseTime = Math.max(this.maxPauseTime, pauseTime);
+        this.cycleMaxPauseTime = Math.max(this.cycleMaxPauseTime, pauseTime);
+    }
+
+    public synchronized long getCycles() {
+        return this.cycles;
+    }
+
+    public synchronized long getDeletedKeys() {
+        return this.deletedKeys;
+    }
+
+    public synchronized long getReclaimedBytes() {
+        return this.reclaimedBytes;
+    }
+
+    public synchronized long getTotalPauseTime() {
+        return this.totalPauseTime;
+    }
+
+    public synchronized long getMaxPauseTime() {
+        return this.maxPauseTime;
+    }
+
+    public synchronized long getCycleMaxPauseTime() {
+        return this.cycleMaxPauseTime;
+    }
+}
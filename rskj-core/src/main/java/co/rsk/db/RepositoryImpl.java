@@ -254,11 +254,11 @@ public class RepositoryImpl implements Repository {
     public synchronized Set<RskAddress> getAccountsKeys() {
         Set<RskAddress> result = new HashSet<>();
 
-        for (RskAddress addr : detailsDataStore.keys()) {
+        detailsDataStore.forEachKey(addr -> {
             if (this.isExist(addr)) {
                 result.add(addr);
             }
-        }
+        });
 
         return result;
     }
@@ -399,6 +399,10 @@ public class RepositoryImpl implements Repository {
         return snapshotRepository;
     }
 
+    public TrieStore getTrieStore() {
+        return this.store;
+    }
+
     @Override
     public synchronized DetailsDataStore getDetailsDataStore() {
         return this.detailsDataStore;
@@ -0,0 +1,88 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts durations in buckets of powers of two microseconds,
+ * so it can be updated concurrently without locks and keeps a fixed size.
+ * The percentiles are approximated by the upper bound of their bucket.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(nanos / 1000, 0);
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile  between 0 and 100
+     * @return the upper bound of the bucket of the percentile, in nanoseconds, or zero if nothing is recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long recorded = 0;
+
+        for (int k = 0; k < BUCKETS; k++) {
+            recorded += counts.get(k);
+        }
+
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(recorded * percentile / 100);
+        long accumulated = 0;
+
+        for (int k = 0; k < BUCKETS; k++) {
+            accumulated += counts.get(k);
+
+            if (accumulated >= rank && accumulated > 0) {
+                return Math.min((1L << k) * 1000, max.get());
+            }
+        }
+
+        return max.get();
+    }
+}
@@ -96,6 +96,10 @@ public class BlockToMineBuilder {
         this.minerMinGasPriceTarget = Coin.valueOf(miningConfig.getMinGasPriceTarget());
     }
 
+    public void stop() {
+        executor.stop();
+    }
+
     /**
      * build creates a block to mine based on the given block as parent.
      *
@@ -59,6 +59,7 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
     private final ChannelManager channelManager;
     private final TransactionGateway transactionGateway;
     private final PeerScoringManager peerScoringManager;
+    private final TransactionSenderRecovery senderRecovery;
     private volatile long lastStatusSent = System.currentTimeMillis();
     private volatile long lastTickSent = System.currentTimeMillis();
 
@@ -70,7 +71,6 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
 
     private volatile boolean stopped;
 
-    @Autowired
     public NodeMessageHandler(RskSystemProperties config,
                               @Nonnull final BlockProcessor blockProcessor,
                               final SyncProcessor syncProcessor,
@@ -78,7 +78,20 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
                               @Nullable final TransactionGateway transactionGateway,
                               @Nullable final PeerScoringManager peerScoringManager,
                               @Nonnull BlockValidationRule blockValidationRule) {
+        this(config, blockProcessor, syncProcessor, channelManager, transactionGateway, peerScoringManager, blockValidationRule, null);
+    }
+
+    @Autowired
+    public NodeMessageHandler(RskSystemProperties config,
+                              @Nonnull final BlockProcessor blockProcessor,
+                              final SyncProcessor syncProcessor,
+                              @Nullable final ChannelManager channelManager,
+                              @Nullable final TransactionGateway transactionGateway,
+                              @Nullable final PeerScoringManager peerScoringManager,
+                              @Nonnull BlockValidationRule blockValidationRule,
+                              @Nullable final TransactionSenderRecovery senderRecovery) {
         this.config = config;
+        this.senderRecovery = senderRecovery;
         this.channelManager = channelManager;
         this.blockProcessor = blockProcessor;
         this.syncProcessor = syncProcessor;
@@ -164,6 +177,8 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
             }
             if (!this.queue.offer(new MessageTask(sender, message))){
                 logger.trace("Queue full, message not added to the queue");
+            } else {
+                recoverSenders(message);
             }
         } else {
             recordEvent(sender, EventType.REPEATED_MESSAGE);
@@ -171,6 +186,28 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
         }
     }
 
+    /**
+     * recoverSenders starts recovering the transaction senders of the queued message,
+     * while the message waits to be processed
+     */
+    private void recoverSenders(Message message) {
+        if (this.senderRecovery == null) {
+            return;
+        }
+
+        MessageType mType = message.getMessageType();
+
+        if (mType == MessageType.BLOCK_MESSAGE) {
+            this.senderRecovery.recoverAsync(((BlockMessage) message).getBlock().getTransactionsList());
+        } else if (mType == MessageType.BLOCK_RESPONSE_MESSAGE) {
+            this.senderRecovery.recoverAsync(((BlockResponseMessage) message).getBlock().getTransactionsList());
+        } else if (mType == MessageType.BODY_RESPONSE_MESSAGE) {
+            this.senderRecovery.recoverAsync(((BodyResponseMessage) message).getTransactions());
+        } else if (mType == MessageType.TRANSACTIONS) {
+            this.senderRecovery.recoverAsync(((TransactionsMessage) message).getTransactions());
+        }
+    }
+
     private void cleanExpiredMessages() {
         long currentTime = System.currentTimeMillis();
         if (currentTime - cleanMsgTimestamp > RECEIVED_MESSAGES_CACHE_DURATION) {
@@ -188,6 +225,10 @@ public class NodeMessageHandler implements MessageHandler, Runnable {
     @Override
     public void stop() {
         this.stopped = true;
+
+        if (this.senderRecovery != null) {
+            this.senderRecovery.stop();
+        }
     }
 
     @Override
@@ -0,0 +1,93 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.net;
+
+import co.rsk.config.RskSystemProperties;
+import org.ethereum.core.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * TransactionSenderRecovery recovers the senders of the received transactions in background,
+ * on a bounded fork join pool.
+ *
+ * The recovered sender is cached by each transaction, so when the block is executed,
+ * or the transactions are added to the pool, the signatures are already processed.
+ * If the sender is requested while it's being recovered, the caller waits for it,
+ * the signature is never processed twice.
+ */
+@Component
+public class TransactionSenderRecovery {
+    private static final Logger logger = LoggerFactory.getLogger("messagehandler");
+
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public TransactionSenderRecovery(RskSystemProperties config) {
+        this(config.senderRecoveryThreads());
+    }
+
+    public TransactionSenderRecovery(int threads) {
+        this.pool = threads > 0 ? new ForkJoinPool(threads, TransactionSenderRecovery::newThread, null, false) : null;
+    }
+
+    /**
+     * recoverAsync starts the recovery of the senders, without waiting for it
+     */
+    public void recoverAsync(List<Transaction> transactions) {
+        if (this.pool == null || transactions.isEmpty()) {
+            return;
+        }
+
+        this.pool.execute(() -> recoverAll(transactions));
+    }
+
+    public void stop() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+    }
+
+    // a parallel stream run inside a pool task uses the same pool
+    private static void recoverAll(List<Transaction> transactions) {
+        transactions.parallelStream().forEach(TransactionSenderRecovery::recoverSender);
+    }
+
+    private static void recoverSender(Transaction transaction) {
+        try {
+            transaction.getSender();
+        } catch (RuntimeException e) {
+            // invalid signatures are rejected when the transaction is validated
+            logger.trace("Sender recovery failed for transaction {}", transaction.getHash(), e);
+        }
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("senderRecovery-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
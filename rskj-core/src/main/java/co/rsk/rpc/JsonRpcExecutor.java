@@ -0,0 +1,219 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc;
+
+import co.rsk.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * JsonRpcExecutor executes the JSON-RPC requests in its own bounded pool, instead of the network threads.
+ *
+ * A request is rejected, instead of waiting, when the queue of the pool is full
+ * or one of its methods has already reached its limit of concurrent executions.
+ * Each element of a batch counts as an execution of its method, so a batch can't
+ * exceed the limits either.
+ * The execution time of each method is kept in a latency histogram.
+ *
+ * The elements of a batch can be executed concurrently by a second pool, helping the thread
+ * executing the batch, so a batch never waits for a thread of the pool executing it.
+ */
+public class JsonRpcExecutor {
+    private static final Logger logger = LoggerFactory.getLogger("jsonrpc");
+
+    // the labels of the requests with more than one method, or none known
+    public static final String BATCH = "batch";
+    public static final String UNKNOWN = "unknown";
+
+    private final ThreadPoolExecutor pool;
+    private final ThreadPoolExecutor batchPool;
+    private final int batchConcurrency;
+    private final Map<String, Semaphore> methodPermits = new HashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    public JsonRpcExecutor(int threads, int queueSize, Map<String, Integer> methodLimits) {
+        this(threads, queueSize, methodLimits, 0);
+    }
+
+    /**
+     * @param threads  the threads of each pool, or 0 to use the number of processors
+     * @param batchConcurrency  the maximum elements of a batch executed at the same time, or 0 to use the threads
+     */
+    public JsonRpcExecutor(int threads, int queueSize, Map<String, Integer> methodLimits, int batchConcurrency) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        this.pool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueSize, 1)),
+                newThreadFactory("jsonRpcExecutor-"));
+        this.batchPool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                newThreadFactory("jsonRpcBatchExecutor-"));
+        this.batchConcurrency = batchConcurrency > 0 ? batchConcurrency : poolSize;
+
+        for (Map.Entry<String, Integer> limit : methodLimits.entrySet()) {
+            this.methodPermits.put(limit.getKey(), new Semaphore(limit.getValue()));
+        }
+    }
+
+    /**
+     * Submits the execution of a request
+     *
+     * @param methods  the methods called by the request, one for each element of a batch, to apply their limits
+     * @return false if the request was rejected
+     */
+    public boolean submit(List<String> methods, Runnable task) {
+        Map<String, Integer> calls = new HashMap<>();
+
+        for (String method : methods) {
+            calls.merge(method, 1, Integer::sum);
+        }
+
+        Map<Semaphore, Integer> acquired = new HashMap<>();
+
+        for (Map.Entry<String, Integer> methodCalls : calls.entrySet()) {
+            Semaphore permits = methodPermits.get(methodCalls.getKey());
+
+            if (permits == null) {
+                continue;
+            }
+
+            if (!permits.tryAcquire(methodCalls.getValue())) {
+                logger.debug("Request of method {} rejected, too many concurrent executions", methodCalls.getKey());
+                acquired.forEach(Semaphore::release);
+                return false;
+            }
+
+            acquired.put(permits, methodCalls.getValue());
+        }
+
+        String label = calls.isEmpty() ? UNKNOWN : calls.size() == 1 ? calls.keySet().iterator().next() : BATCH;
+
+        try {
+            pool.execute(() -> {
+                long start = System.nanoTime();
+
+                try {
+                    task.run();
+                } finally {
+                    acquired.forEach(Semaphore::release);
+
+                    long time = System.nanoTime() - start;
+                    getLatencyHistogram(label).record(time);
+                    logger.trace("method: [{}] executed in: [{}]nano", label, time);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Request of method {} rejected, the queue is full", label);
+            acquired.forEach(Semaphore::release);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Executes the elements of a batch, in the calling thread and up to batch concurrency - 1
+     * threads of the batch pool
+     *
+     * @return the results, in the order of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> executeBatch(List<Supplier<T>> elements) {
+        Object[] results = new Object[elements.size()];
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch executed = new CountDownLatch(results.length);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Runnable worker = () -> {
+            for (int k = next.getAndIncrement(); k < results.length; k = next.getAndIncrement()) {
+                try {
+                    results[k] = elements.get(k).get();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    executed.countDown();
+                }
+            }
+        };
+
+        for (int k = 1; k < Math.min(batchConcurrency, results.length); k++) {
+            batchPool.execute(worker);
+        }
+
+        worker.run();
+
+        // the helpers not started yet have nothing left to do
+        try {
+            executed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        List<T> list = new ArrayList<>();
+
+        for (Object result : results) {
+            list.add((T) result);
+        }
+
+        return list;
+    }
+
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    public LatencyHistogram getLatencyHistogram(String method) {
+        return latencies.computeIfAbsent(method, m -> new LatencyHistogram());
+    }
+
+    public Map<String, LatencyHistogram> getLatencyHistograms() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        batchPool.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit) && batchPool.awaitTermination(timeout, unit);
+    }
+
+    private static ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
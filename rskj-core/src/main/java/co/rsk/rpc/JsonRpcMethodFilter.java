@@ -47,13 +47,22 @@ public class JsonRpcMethodFilter implements RequestInterceptor {
         }
     }
 
-    private void checkMethod(String methodName) throws IOException {
+    /**
+     * @return true if the method is enabled by any of the modules
+     */
+    public boolean isMethodEnabled(String methodName) {
         for (ModuleDescription module: this.modules) {
             if (module.methodIsEnable(methodName)) {
-                return;
+                return true;
             }
         }
 
-        throw new IOException("Method not supported: " + methodName);
+        return false;
+    }
+
+    private void checkMethod(String methodName) throws IOException {
+        if (!isMethodEnabled(methodName)) {
+            throw new IOException("Method not supported: " + methodName);
+        }
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc;
+
+import co.rsk.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JsonRpcMetrics counts the calls of each method, their errors, rejections, sizes,
+ * the calls in flight and their latencies, from the arrival of the request to its response,
+ * so they include the time waiting in the executor queue.
+ *
+ * It is updated concurrently without locks, and logs the calls slower than the given threshold.
+ */
+public class JsonRpcMetrics {
+    private static final Logger logger = LoggerFactory.getLogger("jsonrpc");
+
+    private final long slowCallNanos;
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    /**
+     * @param slowCallMillis  the minimum duration of the logged calls, or 0 to not log them
+     */
+    public JsonRpcMetrics(long slowCallMillis) {
+        this.slowCallNanos = slowCallMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowCallMillis) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Starts a call of a method
+     *
+     * @param arrivalNanos  the {@link System#nanoTime()} the request arrived
+     */
+    public Call start(String method, long requestBytes, long arrivalNanos) {
+        getMethodMetrics(method).inFlight.incrementAndGet();
+        return new Call(method, requestBytes, arrivalNanos);
+    }
+
+    /**
+     * Ends a call, logging it if it is slow
+     *
+     * @param client  the remote address of the client, to be logged
+     */
+    public void end(Call call, long responseBytes, boolean error, @Nullable Object client) {
+        long time = System.nanoTime() - call.arrivalNanos;
+        MethodMetrics metrics = getMethodMetrics(call.method);
+
+        metrics.inFlight.decrementAndGet();
+        metrics.calls.incrementAndGet();
+        metrics.requestBytes.addAndGet(call.requestBytes);
+        metrics.responseBytes.addAndGet(responseBytes);
+        metrics.latency.record(time);
+
+        if (error) {
+            metrics.errors.incrementAndGet();
+        }
+
+        if (time >= slowCallNanos) {
+            logger.warn("Slow call method: [{}] client: [{}] time: [{}]ms request: [{}]bytes response: [{}]bytes error: [{}]",
+                    call.method, client, TimeUnit.NANOSECONDS.toMillis(time), call.requestBytes, responseBytes, error);
+        }
+    }
+
+    /**
+     * Counts a call rejected because of the executor limits
+     */
+    public void reject(String method) {
+        getMethodMetrics(method).rejected.incrementAndGet();
+    }
+
+    /**
+     * @return the metrics by method, in the order of the method names
+     */
+    public Map<String, MethodMetrics> getMethodMetrics() {
+        return new TreeMap<>(methods);
+    }
+
+    public MethodMetrics getMethodMetrics(String method) {
+        return methods.computeIfAbsent(method, m -> new MethodMetrics());
+    }
+
+    public static final class Call {
+        private final String method;
+        private final long requestBytes;
+        private final long arrivalNanos;
+
+        private Call(String method, long requestBytes, long arrivalNanos) {
+            this.method = method;
+            this.requestBytes = requestBytes;
+            this.arrivalNanos = arrivalNanos;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    public static final class MethodMetrics {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.get();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.get();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc;
+
+import co.rsk.crypto.Keccak256;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.googlecode.jsonrpc4j.JsonRpcBasicServer;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.facade.Ethereum;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.rpc.TypeConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JsonRpcResultCache keeps the serialized results of the requests for a given block,
+ * which don't change, keyed by method, block hash and the rest of the params.
+ * A block number is resolved to the hash of the main chain block, so the numbers
+ * are cached too.
+ *
+ * The cache is bounded by the size of the results, evicting the least recently used ones.
+ * After a reorganization, the results of the blocks no longer in the main chain are removed,
+ * and the results of the keys resolved before it are not cached, as they could be
+ * executed on the new main chain.
+ */
+public class JsonRpcResultCache {
+    private static final Logger logger = LoggerFactory.getLogger("jsonrpc");
+
+    // approximate size of an entry, besides its key and result
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Blockchain blockchain;
+    private final long maxBytes;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    @GuardedBy("this")
+    private long bytes;
+    @GuardedBy("this")
+    private long reorganizations;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private Keccak256 lastBestHash;
+
+    public JsonRpcResultCache(Ethereum eth, Blockchain blockchain, long maxBytes) {
+        this.blockchain = blockchain;
+        this.maxBytes = maxBytes;
+
+        eth.addListener(new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(Block block, List<TransactionReceipt> receipts) {
+                onBestBlock(blockchain.getBestBlock());
+            }
+        });
+    }
+
+    /**
+     * @return the key of the result of a request, or null if it is not cached
+     */
+    @Nullable
+    public Key getKey(JsonNode request) {
+        if (request == null || !request.isObject() || !request.hasNonNull(JsonRpcBasicServer.ID)) {
+            return null;
+        }
+
+        JsonNode method = request.get(JsonRpcBasicServer.METHOD);
+        JsonNode params = request.get(JsonRpcBasicServer.PARAMS);
+
+        if (method == null || params == null || !params.isArray() || params.size() != 2 || !params.get(0).isTextual()) {
+            return null;
+        }
+
+        // read before resolving the block, so a reorganization in between is detected
+        long keyReorganizations = getReorganizations();
+        Block block;
+
+        switch (method.asText()) {
+            case "eth_getBlockByHash":
+            case "eth_getTransactionByBlockHashAndIndex":
+            case "eth_getUncleByBlockHashAndIndex":
+                block = getBlockByHash(params.get(0).asText());
+                break;
+            case "eth_getBlockByNumber":
+                block = getBlockByNumber(params.get(0).asText());
+                break;
+            default:
+                return null;
+        }
+
+        if (block == null) {
+            return null;
+        }
+
+        String key = method.asText() + ":" + block.getHash().toHexString() + ":" + params.get(1).toString();
+
+        return new Key(key, block.getNumber(), block.getHash(), keyReorganizations);
+    }
+
+    @Nullable
+    public synchronized byte[] get(Key key) {
+        Entry entry = entries.get(key.value);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+
+        return entry.result;
+    }
+
+    public synchronized void put(Key key, byte[] result) {
+        long size = getSize(key, result);
+
+        // a large result would evict many others
+        if (size > maxBytes / 16) {
+            return;
+        }
+
+        // the block of the key could be no longer the one of the result
+        if (key.reorganizations != reorganizations) {
+            return;
+        }
+
+        Entry previous = entries.put(key.value, new Entry(key, result));
+
+        if (previous != null) {
+            bytes -= getSize(previous.key, previous.result);
+        }
+
+        bytes += size;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            bytes -= getSize(eldest.key, eldest.result);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Removes the results of the blocks no longer in the main chain, when the new best block
+     * is not a child of the previous one
+     */
+    void onBestBlock(Block bestBlock) {
+        Keccak256 previousBestHash = lastBestHash;
+        lastBestHash = bestBlock.getHash();
+
+        if (previousBestHash == null || previousBestHash.equals(bestBlock.getHash()) || previousBestHash.equals(bestBlock.getParentHash())) {
+            return;
+        }
+
+        List<Entry> cached;
+
+        synchronized (this) {
+            reorganizations++;
+            cached = new ArrayList<>(entries.values());
+        }
+
+        // the blocks are looked up without holding the lock
+        List<Entry> outOfMainChain = new ArrayList<>();
+
+        for (Entry entry : cached) {
+            Block block = blockchain.getBlockByNumber(entry.key.blockNumber);
+
+            if (block == null || !block.getHash().equals(entry.key.blockHash)) {
+                outOfMainChain.add(entry);
+            }
+        }
+
+        int removed = 0;
+
+        synchronized (this) {
+            for (Entry entry : outOfMainChain) {
+                if (entries.remove(entry.key.value, entry)) {
+                    bytes -= getSize(entry.key, entry.result);
+                    removed++;
+                }
+            }
+        }
+
+        logger.debug("Results of {} blocks out of the main chain removed, hits: {} misses: {}", removed, hits.get(), misses.get());
+    }
+
+    private synchronized long getReorganizations() {
+        return reorganizations;
+    }
+
+    private Block getBlockByHash(String hash) {
+        try {
+            return blockchain.getBlockByHash(TypeConverter.stringHexToByteArray(hash));
+        } catch (RuntimeException e) {
+            // the server answers the invalid params
+            return null;
+        }
+    }
+
+    private Block getBlockByNumber(String number) {
+        if ("earliest".equalsIgnoreCase(number)) {
+            return blockchain.getBlockByNumber(0);
+        }
+
+        // latest and pending change, and the invalid numbers are answered by the server
+        try {
+            return blockchain.getBlockByNumber(TypeConverter.stringHexToBigInteger(number).longValue());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long getSize(Key key, byte[] result) {
+        return result.length + 2L * key.value.length() + ENTRY_OVERHEAD;
+    }
+
+    public static class Key {
+        private final String value;
+        private final long blockNumber;
+        private final Keccak256 blockHash;
+        private final long reorganizations;
+
+        Key(String value, long blockNumber, Keccak256 blockHash, long reorganizations) {
+            this.value = value;
+            this.blockNumber = blockNumber;
+            this.blockHash = blockHash;
+            this.reorganizations = reorganizations;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private static class Entry {
+        private final Key key;
+        private final byte[] result;
+
+        Entry(Key key, byte[] result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+}
@@ -20,6 +20,7 @@ package co.rsk.rpc;
 
 import co.rsk.config.RskSystemProperties;
 import co.rsk.core.NetworkStateExporter;
+import co.rsk.db.BloomBitsIndex;
 import co.rsk.metrics.HashRateCalculator;
 import co.rsk.mine.*;
 import co.rsk.net.BlockProcessor;
@@ -79,11 +80,12 @@ public class Web3RskImpl extends Web3Impl {
                        PeerServer peerServer,
                        BlockProcessor nodeBlockProcessor,
                        HashRateCalculator hashRateCalculator,
-                       ConfigCapabilities configCapabilities) {
+                       ConfigCapabilities configCapabilities,
+                       BloomBitsIndex bloomBitsIndex) {
         super(eth, blockchain, transactionPool, blockStore, receiptStore, properties, minerClient, minerServer,
               personalModule, ethModule, txPoolModule, mnrModule, debugModule,
               channelManager, repository, peerScoringManager, peerServer, nodeBlockProcessor,
-              hashRateCalculator, configCapabilities);
+              hashRateCalculator, configCapabilities, bloomBitsIndex);
 
         this.networkStateExporter = networkStateExporter;
         this.blockStore = blockStore;
@@ -114,8 +114,20 @@ public class EthModule
     public String estimateGas(Web3.CallArguments args) {
         String s = null;
         try {
-            ProgramResult res = callConstant(args, blockchain.getBestBlock());
-            return s = toJsonHex(res.getGasUsed());
+            Block bestBlock = blockchain.getBestBlock();
+            CallArgumentsToByteArray hexArgs = new CallArgumentsToByteArray(args);
+            ReversibleTransactionExecutor.GasEstimation estimation = reversibleTransactionExecutor.estimateGas(
+                    bestBlock,
+                    bestBlock.getCoinbase(),
+                    hexArgs.getGasPrice(),
+                    hexArgs.getGasLimit(),
+                    hexArgs.getToAddress(),
+                    hexArgs.getValue(),
+                    hexArgs.getData(),
+                    hexArgs.getFromAddress()
+            );
+            LOGGER.debug("eth_estimateGas() executions: {}", estimation.getIterations());
+            return s = toJsonHex(estimation.getGas());
         } finally {
             LOGGER.debug("eth_estimateGas(): {}", s);
         }
@@ -0,0 +1,165 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChunkedResultOutputStream writes a result in chunks of pooled buffers, sending each one
+ * to the next handlers as soon as it is full, instead of buffering the whole result.
+ *
+ * It waits for the previous chunk to be written while the channel is not writable,
+ * so it must not be used from the event loop of the channel. If the chunk is not written
+ * in the given time, as when the client doesn't read, the write fails and the caller
+ * is expected to abort the result.
+ */
+public class ChunkedResultOutputStream extends OutputStream {
+
+    private final ChannelHandlerContext ctx;
+    private final int chunkSize;
+    private final long writeTimeoutMillis;
+
+    private ByteBuf chunk;
+    private ChannelFuture previousWrite;
+    private long writtenBytes;
+    private boolean first = true;
+    private boolean closed;
+
+    public ChunkedResultOutputStream(ChannelHandlerContext ctx, int chunkSize, long writeTimeoutMillis) {
+        this.ctx = ctx;
+        this.chunkSize = chunkSize;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        getChunk().writeByte(b);
+
+        if (!chunk.isWritable()) {
+            send(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        int written = 0;
+
+        while (written < length) {
+            ByteBuf current = getChunk();
+            int size = Math.min(length - written, current.writableBytes());
+            current.writeBytes(bytes, offset + written, size);
+            written += size;
+
+            if (!current.isWritable()) {
+                send(false);
+            }
+        }
+    }
+
+    /**
+     * Sends the last chunk
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        getChunk();
+        send(true);
+        closed = true;
+    }
+
+    /**
+     * Discards the result, closing the channel if a chunk was already sent
+     */
+    public void abort() {
+        if (chunk != null) {
+            chunk.release();
+            chunk = null;
+        }
+
+        if (!first) {
+            ctx.channel().close();
+        }
+
+        closed = true;
+    }
+
+    public boolean isStarted() {
+        return !first;
+    }
+
+    /**
+     * @return the bytes of the chunks sent
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    private ByteBuf getChunk() {
+        if (chunk == null) {
+            chunk = ctx.alloc().buffer(chunkSize, chunkSize);
+        }
+
+        return chunk;
+    }
+
+    private void send(boolean last) throws IOException {
+        if (previousWrite != null && !ctx.channel().isWritable()) {
+            awaitPreviousWrite();
+        }
+
+        writtenBytes += chunk.readableBytes();
+        ChannelPromise promise = ctx.newPromise();
+        ctx.fireChannelRead(new Web3ResultChunk(chunk, first, last, promise));
+
+        previousWrite = promise;
+        chunk = null;
+        first = false;
+    }
+
+    private void awaitPreviousWrite() throws IOException {
+        try {
+            if (!previousWrite.await(writeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new WriteTimeoutException("Result chunk not written in " + writeTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing the result");
+        }
+    }
+
+    public static class WriteTimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        WriteTimeoutException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import co.rsk.rpc.JsonRpcMethodFilter;
+import co.rsk.rpc.netty.EthSubscriptionNotifier.SubscriptionType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.ErrorResolver;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.ethereum.rpc.AddressesTopicsFilter;
+import org.ethereum.rpc.LogFilter;
+import org.ethereum.rpc.Web3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * EthSubscriptionHandler answers the eth_subscribe and eth_unsubscribe requests of a WebSocket channel,
+ * passing the rest of the requests to the next handler. The requests of the methods not enabled
+ * are passed too, so they are answered as the other disabled methods.
+ */
+@ChannelHandler.Sharable
+public class EthSubscriptionHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger LOGGER = LoggerFactory.getLogger("jsonrpc");
+
+    private static final String SUBSCRIBE = "eth_subscribe";
+    private static final String UNSUBSCRIBE = "eth_unsubscribe";
+
+    private final EthSubscriptionNotifier notifier;
+    private final JsonRpcMethodFilter methodFilter;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonNodeFactory jsonNodeFactory = JsonNodeFactory.instance;
+
+    public EthSubscriptionHandler(EthSubscriptionNotifier notifier, JsonRpcMethodFilter methodFilter) {
+        this.notifier = notifier;
+        this.methodFilter = methodFilter;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        JsonNode request = msg instanceof TextWebSocketFrame ? readSubscriptionRequest(((TextWebSocketFrame) msg).text()) : null;
+
+        if (request == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        ((TextWebSocketFrame) msg).release();
+
+        ObjectNode response = SUBSCRIBE.equals(request.get("method").asText()) ?
+                subscribe(ctx, request) : unsubscribe(ctx, request);
+        response.put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+
+        ctx.writeAndFlush(new TextWebSocketFrame(Unpooled.wrappedBuffer(mapper.writeValueAsBytes(response))));
+    }
+
+    private ObjectNode subscribe(ChannelHandlerContext ctx, JsonNode request) {
+        JsonNode params = request.get("params");
+        SubscriptionType type = params != null && params.size() > 0 ? SubscriptionType.fromName(params.get(0).asText()) : null;
+
+        if (type == null) {
+            return buildInvalidParams("Unknown subscription type");
+        }
+
+        AddressesTopicsFilter filter = null;
+
+        if (type == SubscriptionType.LOGS) {
+            try {
+                Web3.FilterRequest filterRequest = params.size() > 1 ?
+                        mapper.treeToValue(params.get(1), Web3.FilterRequest.class) : new Web3.FilterRequest();
+                filter = LogFilter.createAddressesTopicsFilter(filterRequest);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Invalid logs subscription filter", e);
+                return buildInvalidParams("Invalid logs filter");
+            }
+        }
+
+        ObjectNode response = jsonNodeFactory.objectNode();
+        response.put("result", notifier.subscribe(ctx.channel(), type, filter));
+        return response;
+    }
+
+    private ObjectNode unsubscribe(ChannelHandlerContext ctx, JsonNode request) {
+        JsonNode params = request.get("params");
+
+        if (params == null || params.size() == 0) {
+            return buildInvalidParams("Missing subscription id");
+        }
+
+        ObjectNode response = jsonNodeFactory.objectNode();
+        response.put("result", notifier.unsubscribe(ctx.channel(), params.get(0).asText()));
+        return response;
+    }
+
+    private ObjectNode buildInvalidParams(String message) {
+        ObjectNode error = jsonNodeFactory.objectNode();
+        error.put("code", ErrorResolver.JsonError.METHOD_PARAMS_INVALID.code);
+        error.put("message", message);
+
+        ObjectNode response = jsonNodeFactory.objectNode();
+        response.set("error", error);
+        return response;
+    }
+
+    /**
+     * @return the request, if it is a single eth_subscribe or eth_unsubscribe request of an enabled method
+     */
+    private JsonNode readSubscriptionRequest(String text) {
+        // most of the requests are not parsed here
+        if (!text.contains("subscribe")) {
+            return null;
+        }
+
+        try {
+            JsonNode request = mapper.readTree(text);
+
+            if (request == null || !request.isObject() || !request.has("method")) {
+                return null;
+            }
+
+            String method = request.get("method").asText();
+
+            if (!SUBSCRIBE.equals(method) && !UNSUBSCRIBE.equals(method)) {
+                return null;
+            }
+
+            methodFilter.interceptRequest(request);
+            return request;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.facade.Ethereum;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.rpc.AddressesTopicsFilter;
+import org.ethereum.rpc.LogFilterElement;
+import org.ethereum.rpc.TypeConverter;
+import org.ethereum.vm.LogInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EthSubscriptionNotifier keeps the eth_subscribe subscriptions of the WebSocket channels,
+ * and pushes their notifications from the blockchain and transaction pool events.
+ *
+ * Only the blocks of the main chain are notified. After a reorganization, the logs of the blocks
+ * no longer in the main chain are notified again as removed, and then the headers and logs of
+ * the new main chain blocks.
+ *
+ * Each result is serialized once, for all the subscriptions receiving it. The notifications
+ * of an event are dropped for the subscriptions whose channel is not writable, so a slow client
+ * doesn't make the node buffer them. The subscriptions of a channel are removed when it is closed.
+ */
+public class EthSubscriptionNotifier {
+    private static final Logger logger = LoggerFactory.getLogger("jsonrpc");
+
+    private static final byte[] NOTIFICATION_END = "}}".getBytes(StandardCharsets.UTF_8);
+
+    public enum SubscriptionType {
+        NEW_HEADS("newHeads"),
+        LOGS("logs"),
+        NEW_PENDING_TRANSACTIONS("newPendingTransactions");
+
+        private final String name;
+
+        SubscriptionType(String name) {
+            this.name = name;
+        }
+
+        public static SubscriptionType fromName(String name) {
+            for (SubscriptionType type : values()) {
+                if (type.name.equals(name)) {
+                    return type;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong droppedNotifications = new AtomicLong();
+    private final Blockchain blockchain;
+
+    private Block lastBestBlock;
+
+    public EthSubscriptionNotifier(Ethereum eth, Blockchain blockchain) {
+        this.blockchain = blockchain;
+
+        eth.addListener(new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(Block block, List<TransactionReceipt> receipts) {
+                EthSubscriptionNotifier.this.onBlock(block, receipts);
+            }
+
+            @Override
+            public void onPendingTransactionsReceived(List<Transaction> transactions) {
+                EthSubscriptionNotifier.this.onPendingTransactions(transactions);
+            }
+        });
+    }
+
+    /**
+     * Subscribes a channel to the notifications of a type
+     *
+     * @param filter  the addresses and topics of the logs, or null for the other types
+     * @return the subscription id
+     */
+    public String subscribe(Channel channel, SubscriptionType type, AddressesTopicsFilter filter) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String id = TypeConverter.toJsonHex(bytes);
+
+        subscriptions.put(id, new Subscription(id, channel, type, filter));
+        channel.closeFuture().addListener(future -> subscriptions.remove(id));
+
+        return id;
+    }
+
+    /**
+     * Removes a subscription, only if it belongs to the channel
+     *
+     * @return true if the subscription was removed
+     */
+    public boolean unsubscribe(Channel channel, String id) {
+        Subscription subscription = subscriptions.get(id);
+        return subscription != null && subscription.channel == channel && subscriptions.remove(id, subscription);
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    public long getDroppedNotifications() {
+        return droppedNotifications.get();
+    }
+
+    public void onBlock(Block block, List<TransactionReceipt> receipts) {
+        // the blocks out of the main chain are notified if they become part of it
+        if (!block.getHash().equals(blockchain.getBestBlock().getHash())) {
+            return;
+        }
+
+        Block previousBestBlock = lastBestBlock;
+        lastBestBlock = block;
+
+        if (previousBestBlock != null && !previousBestBlock.getHash().equals(block.getParentHash())
+                && !previousBestBlock.getHash().equals(block.getHash())) {
+            onReorganization(previousBestBlock, block);
+        }
+
+        notifyBlock(block, receipts, false);
+    }
+
+    private void onReorganization(Block previousBestBlock, Block bestBlock) {
+        Block removed = previousBestBlock;
+
+        // from the previous best block to the common ancestor
+        while (removed != null && !isInMainChain(removed)) {
+            notifyBlock(removed, blockchain.getBlockReceipts(removed), true);
+            removed = blockchain.getBlockByHash(removed.getParentHash().getBytes());
+        }
+
+        if (removed == null) {
+            return;
+        }
+
+        for (long number = removed.getNumber() + 1; number < bestBlock.getNumber(); number++) {
+            Block added = blockchain.getBlockByNumber(number);
+
+            if (added != null) {
+                notifyBlock(added, blockchain.getBlockReceipts(added), false);
+            }
+        }
+    }
+
+    private boolean isInMainChain(Block block) {
+        Block mainChainBlock = blockchain.getBlockByNumber(block.getNumber());
+        return mainChainBlock != null && mainChainBlock.getHash().equals(block.getHash());
+    }
+
+    /**
+     * Notifies the header and logs of a block, or only its logs if they were removed from the main chain
+     */
+    private void notifyBlock(Block block, List<TransactionReceipt> receipts, boolean removed) {
+        byte[] header = null;
+        Bloom bloom = null;
+        // the logs matched by several subscriptions, by transaction and log index
+        Map<Long, byte[]> logs = new HashMap<>();
+
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.type == SubscriptionType.NEW_HEADS && !removed) {
+                if (header == null) {
+                    header = serialize(new HeaderNotification(block));
+                }
+
+                subscription.send(header);
+            } else if (subscription.type == SubscriptionType.LOGS && receipts != null) {
+                if (bloom == null) {
+                    bloom = new Bloom(block.getLogBloom());
+                }
+
+                if (subscription.filter.matchBloom(bloom)) {
+                    subscription.send(getMatchingLogs(subscription.filter, block, receipts, logs, removed));
+                }
+            }
+        }
+    }
+
+    public void onPendingTransactions(List<Transaction> transactions) {
+        List<byte[]> hashes = null;
+
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.type != SubscriptionType.NEW_PENDING_TRANSACTIONS) {
+                continue;
+            }
+
+            if (hashes == null) {
+                hashes = new ArrayList<>(transactions.size());
+
+                for (Transaction tx : transactions) {
+                    hashes.add(serialize(tx.getHash().toJsonString()));
+                }
+            }
+
+            subscription.send(hashes);
+        }
+    }
+
+    private List<byte[]> getMatchingLogs(AddressesTopicsFilter filter, Block block, List<TransactionReceipt> receipts, Map<Long, byte[]> logs, boolean removed) {
+        List<byte[]> matching = new ArrayList<>();
+        List<Transaction> transactions = block.getTransactionsList();
+
+        for (int txIndex = 0; txIndex < receipts.size() && txIndex < transactions.size(); txIndex++) {
+            List<LogInfo> logInfos = receipts.get(txIndex).getLogInfoList();
+
+            for (int logIndex = 0; logIndex < logInfos.size(); logIndex++) {
+                LogInfo logInfo = logInfos.get(logIndex);
+
+                if (filter.matchesExactly(logInfo)) {
+                    int tx = txIndex;
+                    int log = logIndex;
+                    matching.add(logs.computeIfAbsent(((long) tx << 32) | log,
+                            k -> serializeLog(new LogFilterElement(logInfo, block, tx, transactions.get(tx), log), removed)));
+                }
+            }
+        }
+
+        return matching;
+    }
+
+    private byte[] serializeLog(LogFilterElement log, boolean removed) {
+        ObjectNode node = mapper.valueToTree(log);
+        node.put("removed", removed);
+        return serialize(node);
+    }
+
+    private byte[] serialize(Object result) {
+        try {
+            return mapper.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private class Subscription {
+        private final Channel channel;
+        private final SubscriptionType type;
+        private final AddressesTopicsFilter filter;
+        private final byte[] notificationStart;
+
+        Subscription(String id, Channel channel, SubscriptionType type, AddressesTopicsFilter filter) {
+            this.channel = channel;
+            this.type = type;
+            this.filter = filter;
+            this.notificationStart = ("{\"jsonrpc\":\"2.0\",\"method\":\"eth_subscription\",\"params\":{\"subscription\":\"" + id + "\",\"result\":")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        void send(byte[] result) {
+            if (isWritable(1)) {
+                channel.writeAndFlush(createFrame(result));
+            }
+        }
+
+        void send(List<byte[]> results) {
+            if (results.isEmpty() || !isWritable(results.size())) {
+                return;
+            }
+
+            for (byte[] result : results) {
+                channel.write(createFrame(result));
+            }
+
+            channel.flush();
+        }
+
+        private boolean isWritable(int notifications) {
+            if (channel.isWritable()) {
+                return true;
+            }
+
+            droppedNotifications.addAndGet(notifications);
+            logger.debug("Dropped {} notifications to the not writable channel {}", notifications, channel);
+            return false;
+        }
+
+        private NotificationFrame createFrame(byte[] result) {
+            ByteBuf content = channel.alloc().buffer(notificationStart.length + result.length + NOTIFICATION_END.length);
+            content.writeBytes(notificationStart);
+            content.writeBytes(result);
+            content.writeBytes(NOTIFICATION_END);
+            return new NotificationFrame(content);
+        }
+    }
+
+    /**
+     * A pushed notification, which is not the result of a request read from the channel
+     */
+    public static class NotificationFrame extends TextWebSocketFrame {
+        public NotificationFrame(ByteBuf content) {
+            super(content);
+        }
+    }
+
+    public static class HeaderNotification {
+        public final String number;
+        public final String hash;
+        public final String parentHash;
+        public final String sha3Uncles;
+        public final String logsBloom;
+        public final String transactionsRoot;
+        public final String stateRoot;
+        public final String receiptsRoot;
+        public final String miner;
+        public final String difficulty;
+        public final String extraData;
+        public final String gasLimit;
+        public final String gasUsed;
+        public final String timestamp;
+
+        HeaderNotification(Block block) {
+            number = TypeConverter.toJsonHex(block.getNumber());
+            hash = block.getHashJsonString();
+            parentHash = block.getParentHashJsonString();
+            sha3Uncles = TypeConverter.toJsonHex(block.getUnclesHash());
+            logsBloom = TypeConverter.toJsonHex(block.getLogBloom());
+            transactionsRoot = TypeConverter.toJsonHex(block.getTxTrieRoot());
+            stateRoot = TypeConverter.toJsonHex(block.getStateRoot());
+            receiptsRoot = TypeConverter.toJsonHex(block.getReceiptsRoot());
+            miner = TypeConverter.toJsonHex(block.getCoinbase().getBytes());
+            difficulty = TypeConverter.toJsonHex(block.getDifficulty().getBytes());
+            extraData = TypeConverter.toJsonHex(block.getExtraData());
+            gasLimit = TypeConverter.toJsonHex(block.getGasLimit());
+            gasUsed = TypeConverter.toJsonHex(block.getGasUsed());
+            timestamp = TypeConverter.toJsonHex(block.getTimestamp());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import co.rsk.rpc.JsonRpcMethodFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcBasicServer;
+import org.ethereum.rpc.Web3;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * JsonRpcStreamingServer answers the requests of the methods with large results,
+ * serializing the result straight to the output instead of building a JSON tree of it
+ * and buffering the whole response, as JsonRpcBasicServer does.
+ *
+ * The results are still built by the service as objects, as the blocks and their transactions
+ * or the log filter elements, only their JSON tree and the buffered response are avoided.
+ *
+ * Only successful requests are answered here, the others are left to JsonRpcBasicServer.
+ */
+public class JsonRpcStreamingServer {
+
+    private static final Set<String> STREAMED_METHODS = new HashSet<>(Arrays.asList(
+            "eth_getBlockByNumber",
+            "eth_getLogs",
+            "txpool_content"
+    ));
+
+    private final Web3 service;
+    private final JsonRpcMethodFilter methodFilter;
+    private final ObjectMapper mapper;
+
+    public JsonRpcStreamingServer(Web3 service, JsonRpcMethodFilter methodFilter, ObjectMapper mapper) {
+        this.service = service;
+        this.methodFilter = methodFilter;
+        this.mapper = mapper;
+    }
+
+    /**
+     * @return true if the result of the request is streamed, blocks only with full transactions
+     */
+    public boolean isStreamed(JsonNode request) {
+        if (request == null || !request.isObject() || !request.hasNonNull(JsonRpcBasicServer.ID)) {
+            return false;
+        }
+
+        JsonNode method = request.get(JsonRpcBasicServer.METHOD);
+
+        if (method == null || !STREAMED_METHODS.contains(method.asText())) {
+            return false;
+        }
+
+        JsonNode params = request.get(JsonRpcBasicServer.PARAMS);
+
+        switch (method.asText()) {
+            case "eth_getBlockByNumber":
+                return params != null && params.isArray() && params.size() == 2
+                        && params.get(0).isTextual() && params.get(1).isBoolean() && params.get(1).asBoolean();
+            case "eth_getLogs":
+                return params != null && params.isArray() && params.size() == 1 && params.get(0).isObject();
+            default:
+                return params == null || (params.isArray() && params.size() == 0);
+        }
+    }
+
+    /**
+     * Invokes the method of a streamed request
+     *
+     * @throws Exception  if the method is not enabled or fails
+     */
+    public Object invoke(JsonNode request) throws Exception {
+        methodFilter.interceptRequest(request);
+
+        JsonNode params = request.get(JsonRpcBasicServer.PARAMS);
+
+        switch (request.get(JsonRpcBasicServer.METHOD).asText()) {
+            case "eth_getBlockByNumber":
+                return service.eth_getBlockByNumber(params.get(0).asText(), true);
+            case "eth_getLogs":
+                return service.eth_getLogs(mapper.treeToValue(params.get(0), Web3.FilterRequest.class));
+            case "txpool_content":
+                return service.txpool_content();
+            default:
+                throw new IllegalArgumentException("Method not streamed");
+        }
+    }
+
+    /**
+     * @return the method of the service invoked by a streamed request, to resolve its errors
+     */
+    public Method getMethod(JsonNode request) throws NoSuchMethodException {
+        switch (request.get(JsonRpcBasicServer.METHOD).asText()) {
+            case "eth_getBlockByNumber":
+                return service.getClass().getMethod("eth_getBlockByNumber", String.class, boolean.class);
+            case "eth_getLogs":
+                return service.getClass().getMethod("eth_getLogs", Web3.FilterRequest.class);
+            case "txpool_content":
+                return service.getClass().getMethod("txpool_content");
+            default:
+                throw new IllegalArgumentException("Method not streamed");
+        }
+    }
+
+    /**
+     * Writes the response of a request with its result, without closing the output
+     */
+    public void write(JsonNode request, Object result, OutputStream os) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(os);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        generator.writeStartObject();
+        generator.writeStringField(JsonRpcBasicServer.JSONRPC, JsonRpcBasicServer.VERSION);
+        generator.writeFieldName(JsonRpcBasicServer.ID);
+        generator.writeTree(request.get(JsonRpcBasicServer.ID));
+        generator.writeFieldName(JsonRpcBasicServer.RESULT);
+        generator.writeObject(result);
+        generator.writeEndObject();
+        generator.close();
+    }
+}
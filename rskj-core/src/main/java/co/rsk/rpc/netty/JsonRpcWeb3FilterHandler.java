@@ -96,6 +96,10 @@ public class JsonRpcWeb3FilterHandler extends SimpleChannelInboundHandler<FullHt
                 ctx.fireChannelRead(request);
                 return;
             }
+        } else if (HttpMethod.GET.equals(httpMethod)) {
+            // answered by the metrics handler, the rest are rejected by the method filter
+            ctx.fireChannelRead(request);
+            return;
         } else {
             response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_IMPLEMENTED);
         }
@@ -18,12 +18,17 @@
 
 package co.rsk.rpc.netty;
 
+import co.rsk.rpc.JsonRpcExecutor;
 import co.rsk.rpc.JsonRpcMethodFilter;
+import co.rsk.rpc.JsonRpcMetrics;
+import co.rsk.rpc.JsonRpcResultCache;
 import co.rsk.rpc.ModuleDescription;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.googlecode.jsonrpc4j.*;
 import io.netty.buffer.*;
 import io.netty.channel.ChannelHandler;
@@ -34,45 +39,376 @@ import org.ethereum.rpc.exception.RskErrorResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Supplier;
 
 @ChannelHandler.Sharable
 public class JsonRpcWeb3ServerHandler extends SimpleChannelInboundHandler<ByteBufHolder> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("jsonrpc");
 
+    // server error reserved for limit exceeded
+    public static final int LIMIT_EXCEEDED_ERROR = -32005;
+
+    // answered by the handler, with the metrics of the calls
+    public static final String METRICS_METHOD = "rpc_metrics";
+
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    private static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+    // the time a streamed result waits for a client not reading it, before closing the channel
+    private static final long STREAMING_WRITE_TIMEOUT_MILLIS = 30000;
+
     private final ObjectMapper mapper = new ObjectMapper();
     private final JsonNodeFactory jsonNodeFactory = JsonNodeFactory.instance;
-    private final JsonRpcBasicServer jsonRpcServer;
+    private final NodeJsonRpcServer jsonRpcServer;
+    private final JsonRpcStreamingServer streamingServer;
+    private final ErrorResolver errorResolver;
+    private final JsonRpcMethodFilter methodFilter;
+    private final JsonRpcExecutor executor;
+    private final int maxBatchSize;
+    private final JsonRpcResultCache resultCache;
+    private final JsonRpcMetrics metrics;
+    private final Set<String> knownMethods = new HashSet<>();
 
     public JsonRpcWeb3ServerHandler(Web3 service, List<ModuleDescription> filteredModules) {
-        this.jsonRpcServer = new JsonRpcBasicServer(service, service.getClass());
-        jsonRpcServer.setRequestInterceptor(new JsonRpcMethodFilter(filteredModules));
-        jsonRpcServer.setErrorResolver(new MultipleErrorResolver(new RskErrorResolver(), AnnotationsErrorResolver.INSTANCE, DefaultErrorResolver.INSTANCE));
+        this(service, filteredModules, new JsonRpcExecutor(0, DEFAULT_QUEUE_SIZE, Collections.emptyMap()), DEFAULT_MAX_BATCH_SIZE, null, new JsonRpcMetrics(0));
+    }
+
+    public JsonRpcWeb3ServerHandler(
+            Web3 service,
+            List<ModuleDescription> filteredModules,
+            JsonRpcExecutor executor,
+            int maxBatchSize,
+            @Nullable JsonRpcResultCache resultCache,
+            JsonRpcMetrics metrics) {
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+        this.resultCache = resultCache;
+        this.metrics = metrics;
+        this.jsonRpcServer = new NodeJsonRpcServer(service);
+        this.methodFilter = new JsonRpcMethodFilter(filteredModules);
+        jsonRpcServer.setRequestInterceptor(methodFilter);
+        this.errorResolver = new MultipleErrorResolver(new RskErrorResolver(), AnnotationsErrorResolver.INSTANCE, DefaultErrorResolver.INSTANCE);
+        jsonRpcServer.setErrorResolver(errorResolver);
+        this.streamingServer = new JsonRpcStreamingServer(service, methodFilter, mapper);
+
+        // the metrics of other methods are counted as unknown, so their number is bounded;
+        // the methods of the modules are named module_method, unlike start and stop
+        for (Method method : Web3.class.getMethods()) {
+            if (method.getName().contains("_")) {
+                this.knownMethods.add(method.getName());
+            }
+        }
+
+        this.knownMethods.add(METRICS_METHOD);
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, ByteBufHolder request) throws Exception {
-        ByteBuf responseContent = Unpooled.buffer();
-        int responseCode;
-        try (ByteBufOutputStream os = new ByteBufOutputStream(responseContent);
-             ByteBufInputStream is = new ByteBufInputStream(request.content().retain())){
+        long arrivalNanos = System.nanoTime();
+        // the request is released when this method returns, and executed later;
+        // it is retained as before, since the previous handlers release it too
+        ByteBuf requestContent = request.content().retain();
+        byte[] content = new byte[requestContent.readableBytes()];
+        requestContent.getBytes(requestContent.readerIndex(), content);
+        JsonNode requestNode = readRequest(content);
+        boolean batch = requestNode != null && requestNode.isArray() && requestNode.size() > 1;
+
+        if (batch && requestNode.size() > maxBatchSize) {
+            String message = String.format("Batch of %d requests exceeds the maximum of %d", requestNode.size(), maxBatchSize);
+            int errorCode = ErrorResolver.JsonError.INVALID_REQUEST.code;
+            ctx.fireChannelRead(new Web3Result(writeContent(buildErrorResponse(null, errorCode, message)), errorCode));
+            return;
+        }
+
+        List<String> methods = getLabels(requestNode);
+        boolean submitted = executor.submit(methods, () -> {
+            if (batch) {
+                ctx.fireChannelRead(executeBatch(ctx, (ArrayNode) requestNode, arrivalNanos));
+                return;
+            }
+
+            // the cached results are not streamed
+            JsonRpcResultCache.Key key = getCacheKey(requestNode);
+
+            if (key == null && streamingServer.isStreamed(requestNode)) {
+                stream(ctx, requestNode, content, arrivalNanos);
+            } else {
+                ctx.fireChannelRead(execute(ctx, requestNode, key, content, arrivalNanos));
+            }
+        });
+
+        if (!submitted) {
+            methods.forEach(metrics::reject);
+            ctx.fireChannelRead(new Web3Result(buildLimitExceededContent(requestNode), LIMIT_EXCEEDED_ERROR));
+        }
+    }
+
+    /**
+     * Stops the executor of the requests, the ones already submitted are completed
+     */
+    public void stop() {
+        executor.shutdown();
+    }
+
+    public JsonRpcExecutor getExecutor() {
+        return executor;
+    }
+
+    @Nullable
+    public JsonRpcResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public JsonRpcMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return true if the metrics are exposed, when the rpc_metrics method is enabled
+     */
+    public boolean isMetricsEnabled() {
+        return methodFilter.isMethodEnabled(METRICS_METHOD);
+    }
+
+    /**
+     * @return the metrics of the calls, the executor and the result cache, as answered by rpc_metrics
+     */
+    public ObjectNode getMetricsNode() {
+        ObjectNode node = jsonNodeFactory.objectNode();
+        ObjectNode methodsNode = node.putObject("methods");
+
+        for (Map.Entry<String, JsonRpcMetrics.MethodMetrics> entry : metrics.getMethodMetrics().entrySet()) {
+            JsonRpcMetrics.MethodMetrics methodMetrics = entry.getValue();
+            ObjectNode methodNode = methodsNode.putObject(entry.getKey());
+            methodNode.put("calls", methodMetrics.getCalls());
+            methodNode.put("errors", methodMetrics.getErrors());
+            methodNode.put("rejected", methodMetrics.getRejected());
+            methodNode.put("inFlight", methodMetrics.getInFlight());
+            methodNode.put("requestBytes", methodMetrics.getRequestBytes());
+            methodNode.put("responseBytes", methodMetrics.getResponseBytes());
+            methodNode.put("p50Millis", toMillis(methodMetrics.getLatency().getPercentileNanos(50)));
+            methodNode.put("p99Millis", toMillis(methodMetrics.getLatency().getPercentileNanos(99)));
+            methodNode.put("maxMillis", toMillis(methodMetrics.getLatency().getMaxNanos()));
+        }
+
+        node.put("queueDepth", executor.getQueueDepth());
+
+        if (resultCache != null) {
+            ObjectNode cacheNode = node.putObject("resultCache");
+            cacheNode.put("hits", resultCache.getHits());
+            cacheNode.put("misses", resultCache.getMisses());
+            cacheNode.put("size", resultCache.getSize());
+            cacheNode.put("bytes", resultCache.getBytes());
+        }
+
+        return node;
+    }
+
+    /**
+     * Executes a request counting it in the metrics, and answers rpc_metrics
+     */
+    private Web3Result execute(ChannelHandlerContext ctx, @Nullable JsonNode requestNode, @Nullable JsonRpcResultCache.Key key, byte[] content, long arrivalNanos) {
+        JsonRpcMetrics.Call call = metrics.start(getLabel(requestNode), content.length, arrivalNanos);
+        Web3Result response = null;
+
+        try {
+            if (METRICS_METHOD.equals(call.getMethod())) {
+                response = executeMetrics(ctx.alloc(), requestNode, content);
+            } else {
+                response = execute(ctx.alloc(), requestNode, key, content);
+            }
 
-            responseCode = jsonRpcServer.handleRequest(is, os);
+            return response;
+        } finally {
+            endCall(ctx, call, response);
+        }
+    }
+
+    private Web3Result executeMetrics(ByteBufAllocator allocator, JsonNode requestNode, byte[] content) {
+        try {
+            methodFilter.interceptRequest(requestNode);
+        } catch (IOException e) {
+            // the server answers the disabled method
+            return execute(allocator, requestNode, content);
+        }
+
+        // a notification has no response
+        if (!requestNode.has(JsonRpcBasicServer.ID)) {
+            return new Web3Result(allocator.buffer(0), ErrorResolver.JsonError.OK.code);
+        }
+
+        return new Web3Result(buildResultContent(allocator, requestNode.get(JsonRpcBasicServer.ID), writeBytes(getMetricsNode())), ErrorResolver.JsonError.OK.code);
+    }
+
+    private void endCall(ChannelHandlerContext ctx, JsonRpcMetrics.Call call, @Nullable Web3Result response) {
+        long responseBytes = response == null ? 0 : response.getContent().readableBytes();
+        boolean error = response == null || response.getCode() != ErrorResolver.JsonError.OK.code;
+        metrics.end(call, responseBytes, error, ctx.channel().remoteAddress());
+    }
+
+    /**
+     * Executes a request, using the cached result if it has a cache key
+     */
+    private Web3Result execute(ByteBufAllocator allocator, JsonNode requestNode, @Nullable JsonRpcResultCache.Key key, byte[] content) {
+        if (key == null) {
+            return execute(allocator, requestNode, content);
+        }
+
+        try {
+            // as the server does, the cached results of disabled methods are not answered
+            methodFilter.interceptRequest(requestNode);
+        } catch (IOException e) {
+            return execute(allocator, requestNode, content);
+        }
+
+        byte[] result = resultCache.get(key);
+
+        if (result != null) {
+            return new Web3Result(buildResultContent(allocator, requestNode.get(JsonRpcBasicServer.ID), result), ErrorResolver.JsonError.OK.code);
+        }
+
+        Web3Result response = execute(allocator, requestNode, content);
+
+        if (response.getCode() == ErrorResolver.JsonError.OK.code) {
+            JsonNode responseNode = readResponse(response.getContent());
+            JsonNode resultNode = responseNode == null ? null : responseNode.get(JsonRpcBasicServer.RESULT);
+
+            // a missing block or transaction could be found later
+            if (resultNode != null && !resultNode.isNull() && !responseNode.has(JsonRpcBasicServer.ERROR)) {
+                resultCache.put(key, writeBytes(resultNode));
+            }
+        }
+
+        return response;
+    }
+
+    @Nullable
+    private JsonRpcResultCache.Key getCacheKey(JsonNode requestNode) {
+        return resultCache == null ? null : resultCache.getKey(requestNode);
+    }
+
+    /**
+     * Executes a request with the server, from its parsed node, or its content if it couldn't be parsed
+     */
+    private Web3Result execute(ByteBufAllocator allocator, @Nullable JsonNode requestNode, byte[] content) {
+        ByteBuf responseContent = allocator.buffer();
+        int responseCode;
+        try (ByteBufOutputStream os = new ByteBufOutputStream(responseContent)) {
+            if (requestNode != null) {
+                responseCode = jsonRpcServer.handleNode(requestNode, os);
+            } else {
+                // the server answers the parse error
+                responseCode = jsonRpcServer.handleRequest(new ByteArrayInputStream(content), os);
+            }
         } catch (Exception e) {
             String unexpectedErrorMsg = "Unexpected error";
             LOGGER.error(unexpectedErrorMsg, e);
             int errorCode = ErrorResolver.JsonError.CUSTOM_SERVER_ERROR_LOWER;
+            responseContent.release();
             responseContent = buildErrorContent(errorCode, unexpectedErrorMsg);
             responseCode = errorCode;
         }
 
-        ctx.fireChannelRead(new Web3Result(
+        return new Web3Result(
             responseContent,
             responseCode
-        ));
+        );
+    }
+
+    /**
+     * Executes the elements of a batch concurrently, writing their responses in the order of the requests
+     */
+    private Web3Result executeBatch(ChannelHandlerContext ctx, ArrayNode requestNode, long arrivalNanos) {
+        List<Supplier<Web3Result>> elements = new ArrayList<>();
+
+        for (JsonNode node : requestNode) {
+            elements.add(() -> execute(ctx, node, getCacheKey(node), writeBytes(node), arrivalNanos));
+        }
+
+        ByteBuf responseContent = ctx.alloc().buffer();
+        int responseCode = ErrorResolver.JsonError.OK.code;
+        boolean first = true;
+
+        responseContent.writeByte('[');
+
+        for (Web3Result result : executor.executeBatch(elements)) {
+            // the notifications have no response
+            if (result.getContent().isReadable()) {
+                if (!first) {
+                    responseContent.writeByte(',');
+                }
+
+                responseContent.writeBytes(result.getContent());
+                first = false;
+            }
+
+            if (result.getCode() != ErrorResolver.JsonError.OK.code) {
+                responseCode = ErrorResolver.JsonError.BULK_ERROR.code;
+            }
+
+            result.getContent().release();
+        }
+
+        // a batch of notifications has no response
+        if (first) {
+            responseContent.clear();
+        } else {
+            responseContent.writeByte(']');
+        }
+
+        return new Web3Result(responseContent, responseCode);
+    }
+
+    /**
+     * Writes the response of a request in chunks while its result is serialized
+     */
+    private void stream(ChannelHandlerContext ctx, JsonNode requestNode, byte[] content, long arrivalNanos) {
+        JsonRpcMetrics.Call call = metrics.start(getLabel(requestNode), content.length, arrivalNanos);
+        Object result;
+
+        try {
+            result = streamingServer.invoke(requestNode);
+        } catch (Exception e) {
+            // the error is answered as the server does, without invoking the method again
+            Web3Result response = buildErrorResult(requestNode, e);
+            endCall(ctx, call, response);
+            ctx.fireChannelRead(response);
+            return;
+        }
+
+        ChunkedResultOutputStream os = new ChunkedResultOutputStream(ctx, STREAMING_CHUNK_SIZE, STREAMING_WRITE_TIMEOUT_MILLIS);
+        boolean error = false;
+
+        try {
+            streamingServer.write(requestNode, result, os);
+            os.close();
+        } catch (ChunkedResultOutputStream.WriteTimeoutException e) {
+            // the client doesn't read the result, the channel is closed
+            LOGGER.warn("Streamed result not written to {}: {}", ctx.channel().remoteAddress(), e.getMessage());
+            os.abort();
+            error = true;
+        } catch (Exception e) {
+            String unexpectedErrorMsg = "Unexpected error";
+            LOGGER.error(unexpectedErrorMsg, e);
+            boolean started = os.isStarted();
+            os.abort();
+            error = true;
+
+            if (!started) {
+                int errorCode = ErrorResolver.JsonError.CUSTOM_SERVER_ERROR_LOWER;
+                ctx.fireChannelRead(new Web3Result(buildErrorContent(errorCode, unexpectedErrorMsg), errorCode));
+            }
+        } finally {
+            metrics.end(call, os.getWrittenBytes(), error, ctx.channel().remoteAddress());
+        }
     }
 
     @Override
@@ -81,11 +417,161 @@ public class JsonRpcWeb3ServerHandler extends SimpleChannelInboundHandler<ByteBu
         ctx.close();
     }
 
-    private ByteBuf buildErrorContent(int errorCode, String errorMessage) throws JsonProcessingException {
+    /**
+     * Builds the response of a request failed with an exception, with the error resolver of the server
+     */
+    private Web3Result buildErrorResult(JsonNode requestNode, Exception exception) {
+        LOGGER.warn("Error in JSON-RPC Service", exception);
+        List<JsonNode> arguments = new ArrayList<>();
+        JsonNode params = requestNode.get(JsonRpcBasicServer.PARAMS);
+
+        if (params != null) {
+            params.forEach(arguments::add);
+        }
+
+        ErrorResolver.JsonError error;
+
+        try {
+            error = errorResolver.resolveError(exception, streamingServer.getMethod(requestNode), arguments);
+        } catch (NoSuchMethodException e) {
+            error = null;
+        }
+
+        if (error == null) {
+            error = new ErrorResolver.JsonError(ErrorResolver.JsonError.ERROR_NOT_HANDLED.code, exception.getMessage(), exception.getClass().getName());
+        }
+
+        ObjectNode response = buildErrorResponse(requestNode.get(JsonRpcBasicServer.ID), error.code, error.message);
+
+        if (error.data != null) {
+            ((ObjectNode) response.get("error")).set("data", mapper.valueToTree(error.data));
+        }
+
+        return new Web3Result(writeContent(response), error.code);
+    }
+
+    private ByteBuf buildErrorContent(int errorCode, String errorMessage) {
         Map<String, JsonNode> errorProperties = new HashMap<>();
         errorProperties.put("code", jsonNodeFactory.numberNode(errorCode));
         errorProperties.put("message", jsonNodeFactory.textNode(errorMessage));
         JsonNode error = jsonNodeFactory.objectNode().set("error", jsonNodeFactory.objectNode().setAll(errorProperties));
-        return Unpooled.wrappedBuffer(mapper.writeValueAsBytes(mapper.treeToValue(error, Object.class)));
+        return writeContent(error);
+    }
+
+    private ByteBuf buildLimitExceededContent(JsonNode requestNode) {
+        if (requestNode != null && requestNode.isArray() && requestNode.size() > 0) {
+            ArrayNode responses = jsonNodeFactory.arrayNode();
+
+            for (JsonNode node : requestNode) {
+                responses.add(buildLimitExceededResponse(node));
+            }
+
+            return writeContent(responses);
+        }
+
+        return writeContent(buildLimitExceededResponse(requestNode));
+    }
+
+    private ObjectNode buildLimitExceededResponse(JsonNode requestNode) {
+        JsonNode id = requestNode != null && requestNode.has("id") ? requestNode.get("id") : null;
+        return buildErrorResponse(id, LIMIT_EXCEEDED_ERROR, "Too many requests, try again later");
+    }
+
+    private ObjectNode buildErrorResponse(JsonNode id, int errorCode, String errorMessage) {
+        ObjectNode error = jsonNodeFactory.objectNode();
+        error.put("code", errorCode);
+        error.put("message", errorMessage);
+
+        ObjectNode response = jsonNodeFactory.objectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", id != null ? id : jsonNodeFactory.nullNode());
+        response.set("error", error);
+        return response;
+    }
+
+    private ByteBuf buildResultContent(ByteBufAllocator allocator, JsonNode id, byte[] result) {
+        ByteBuf content = allocator.buffer(result.length + 64);
+        content.writeBytes("{\"jsonrpc\":\"2.0\",\"id\":".getBytes(StandardCharsets.UTF_8));
+        content.writeBytes(writeBytes(id));
+        content.writeBytes(",\"result\":".getBytes(StandardCharsets.UTF_8));
+        content.writeBytes(result);
+        content.writeByte('}');
+        return content;
+    }
+
+    private ByteBuf writeContent(JsonNode node) {
+        return Unpooled.wrappedBuffer(writeBytes(node));
+    }
+
+    private byte[] writeBytes(JsonNode node) {
+        try {
+            return mapper.writeValueAsBytes(node);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JsonNode readResponse(ByteBuf content) {
+        try {
+            return mapper.readTree(new ByteBufInputStream(content.duplicate()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private JsonNode readRequest(byte[] content) {
+        try {
+            return mapper.readTree(content);
+        } catch (IOException e) {
+            // the server answers the parse error
+            return null;
+        }
+    }
+
+    private String getLabel(@Nullable JsonNode requestNode) {
+        JsonNode method = requestNode == null ? null : requestNode.get("method");
+        return getLabel(method != null && method.isTextual() ? method.asText() : null);
+    }
+
+    private String getLabel(@Nullable String method) {
+        return method != null && knownMethods.contains(method) ? method : JsonRpcExecutor.UNKNOWN;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    /**
+     * @return the labels of the methods called by a request, so the unknown ones share a label
+     */
+    private List<String> getLabels(JsonNode requestNode) {
+        List<String> labels = new ArrayList<>();
+
+        if (requestNode == null) {
+            return labels;
+        }
+
+        for (JsonNode node : requestNode.isArray() ? requestNode : Collections.singletonList(requestNode)) {
+            JsonNode method = node.get("method");
+
+            if (method != null && method.isTextual()) {
+                labels.add(getLabel(method.asText()));
+            }
+        }
+
+        return labels;
+    }
+
+    /**
+     * NodeJsonRpcServer handles the requests already parsed by the handler
+     */
+    private static class NodeJsonRpcServer extends JsonRpcBasicServer {
+        NodeJsonRpcServer(Web3 service) {
+            super(service, service.getClass());
+        }
+
+        int handleNode(JsonNode requestNode, OutputStream os) throws IOException {
+            return handleJsonNodeRequest(requestNode, os).code;
+        }
     }
 }
@@ -72,6 +72,7 @@ public class Web3HttpServer {
                         );
                     }
                     p.addLast(jsonRpcWeb3FilterHandler);
+                    p.addLast(new Web3MetricsHttpHandler(jsonRpcWeb3ServerHandler));
                     p.addLast(new Web3HttpMethodFilterHandler());
                     p.addLast(jsonRpcWeb3ServerHandler);
                     p.addLast(new Web3ResultHttpResponseHandler());
@@ -83,5 +84,6 @@ public class Web3HttpServer {
     public void stop() {
         bossGroup.shutdownGracefully();
         workerGroup.shutdownGracefully();
+        jsonRpcWeb3ServerHandler.stop();
     }
 }
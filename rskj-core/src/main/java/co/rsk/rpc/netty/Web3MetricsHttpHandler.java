@@ -0,0 +1,145 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import co.rsk.metrics.LatencyHistogram;
+import co.rsk.rpc.JsonRpcMetrics;
+import co.rsk.rpc.JsonRpcResultCache;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Web3MetricsHttpHandler answers GET /metrics with the metrics of the RPC calls, the executor
+ * and the result cache, in the Prometheus text exposition format. They are not found if the
+ * rpc_metrics method is not enabled. The rest of the requests are passed to the next handlers.
+ */
+public class Web3MetricsHttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final JsonRpcWeb3ServerHandler serverHandler;
+
+    public Web3MetricsHttpHandler(JsonRpcWeb3ServerHandler serverHandler) {
+        this.serverHandler = serverHandler;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        if (!HttpMethod.GET.equals(request.getMethod()) || !PATH.equals(new QueryStringDecoder(request.getUri()).path())) {
+            // retain the request so it isn't released automatically by SimpleChannelInboundHandler
+            ctx.fireChannelRead(request.retain());
+            return;
+        }
+
+        FullHttpResponse response;
+
+        if (serverHandler.isMetricsEnabled()) {
+            response = new DefaultFullHttpResponse(
+                HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK,
+                Unpooled.wrappedBuffer(getMetricsText().getBytes(StandardCharsets.UTF_8))
+            );
+            response.headers().set(HttpHeaders.Names.CONTENT_TYPE, CONTENT_TYPE);
+        } else {
+            response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND);
+        }
+
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    public String getMetricsText() {
+        StringBuilder text = new StringBuilder();
+        Map<String, JsonRpcMetrics.MethodMetrics> methods = serverHandler.getMetrics().getMethodMetrics();
+
+        appendType(text, "rsk_rpc_calls_total", "counter");
+        methods.forEach((method, metrics) -> appendMethodValue(text, "rsk_rpc_calls_total", method, metrics.getCalls()));
+        appendType(text, "rsk_rpc_errors_total", "counter");
+        methods.forEach((method, metrics) -> appendMethodValue(text, "rsk_rpc_errors_total", method, metrics.getErrors()));
+        appendType(text, "rsk_rpc_rejected_total", "counter");
+        methods.forEach((method, metrics) -> appendMethodValue(text, "rsk_rpc_rejected_total", method, metrics.getRejected()));
+        appendType(text, "rsk_rpc_in_flight", "gauge");
+        methods.forEach((method, metrics) -> appendMethodValue(text, "rsk_rpc_in_flight", method, metrics.getInFlight()));
+        appendType(text, "rsk_rpc_request_bytes_total", "counter");
+        methods.forEach((method, metrics) -> appendMethodValue(text, "rsk_rpc_request_bytes_total", method, metrics.getRequestBytes()));
+        appendType(text, "rsk_rpc_response_bytes_total", "counter");
+        methods.forEach((method, metrics) -> appendMethodValue(text, "rsk_rpc_response_bytes_total", method, metrics.getResponseBytes()));
+
+        // from the arrival of the requests, and the execution only, by label of the executor
+        appendType(text, "rsk_rpc_latency_seconds", "summary");
+        methods.forEach((method, metrics) -> appendSummary(text, "rsk_rpc_latency_seconds", method, metrics.getLatency()));
+        appendType(text, "rsk_rpc_latency_max_seconds", "gauge");
+        methods.forEach((method, metrics) -> appendMethodValue(text, "rsk_rpc_latency_max_seconds", method, toSeconds(metrics.getLatency().getMaxNanos())));
+        appendType(text, "rsk_rpc_execution_seconds", "summary");
+        serverHandler.getExecutor().getLatencyHistograms().forEach((label, histogram) -> appendSummary(text, "rsk_rpc_execution_seconds", label, histogram));
+
+        appendType(text, "rsk_rpc_queue_depth", "gauge");
+        appendValue(text, "rsk_rpc_queue_depth", serverHandler.getExecutor().getQueueDepth());
+
+        JsonRpcResultCache resultCache = serverHandler.getResultCache();
+
+        if (resultCache != null) {
+            appendType(text, "rsk_rpc_result_cache_hits_total", "counter");
+            appendValue(text, "rsk_rpc_result_cache_hits_total", resultCache.getHits());
+            appendType(text, "rsk_rpc_result_cache_misses_total", "counter");
+            appendValue(text, "rsk_rpc_result_cache_misses_total", resultCache.getMisses());
+            appendType(text, "rsk_rpc_result_cache_bytes", "gauge");
+            appendValue(text, "rsk_rpc_result_cache_bytes", resultCache.getBytes());
+        }
+
+        return text.toString();
+    }
+
+    private static void appendSummary(StringBuilder text, String name, String method, LatencyHistogram histogram) {
+        text.append(name).append("{method=\"").append(escape(method)).append("\",quantile=\"0.5\"} ")
+            .append(toSeconds(histogram.getPercentileNanos(50))).append('\n');
+        text.append(name).append("{method=\"").append(escape(method)).append("\",quantile=\"0.99\"} ")
+            .append(toSeconds(histogram.getPercentileNanos(99))).append('\n');
+        appendMethodValue(text, name + "_sum", method, toSeconds(histogram.getTotalNanos()));
+        appendMethodValue(text, name + "_count", method, histogram.getCount());
+    }
+
+    private static void appendType(StringBuilder text, String name, String type) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendMethodValue(StringBuilder text, String name, String method, Number value) {
+        text.append(name).append("{method=\"").append(escape(method)).append("\"} ").append(value).append('\n');
+    }
+
+    private static void appendValue(StringBuilder text, String name, Number value) {
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    // the labels are the known methods of the modules or unknown, escaped in case they change
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / 1000000000.0;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * A chunk of a result streamed to the client, written with the given promise
+ */
+public class Web3ResultChunk extends Web3Result {
+
+    private final boolean first;
+    private final boolean last;
+    private final ChannelPromise promise;
+
+    public Web3ResultChunk(ByteBuf content, boolean first, boolean last, ChannelPromise promise) {
+        super(content, 0);
+        this.first = first;
+        this.last = last;
+        this.promise = promise;
+    }
+
+    public boolean isFirst() {
+        return first;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public ChannelPromise getPromise() {
+        return promise;
+    }
+}
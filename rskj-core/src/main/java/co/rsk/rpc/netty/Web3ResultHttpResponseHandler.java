@@ -21,23 +21,37 @@ import com.googlecode.jsonrpc4j.DefaultHttpStatusCodeProvider;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.handler.codec.http.DefaultFullHttpResponse;
-import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.*;
 
 public class Web3ResultHttpResponseHandler extends SimpleChannelInboundHandler<Web3Result> {
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Web3Result msg) {
-        ctx.write(new DefaultFullHttpResponse(
+        if (msg instanceof Web3ResultChunk) {
+            writeChunk(ctx, (Web3ResultChunk) msg);
+            return;
+        }
+
+        // the result is produced off the event loop, after the read is complete
+        ctx.writeAndFlush(new DefaultFullHttpResponse(
             HttpVersion.HTTP_1_1,
             HttpResponseStatus.valueOf(DefaultHttpStatusCodeProvider.INSTANCE.getHttpStatusCode(msg.getCode())),
             msg.getContent()
         )).addListener(ChannelFutureListener.CLOSE);
     }
 
-    @Override
-    public void channelReadComplete(ChannelHandlerContext ctx) {
-        ctx.flush();
+    private void writeChunk(ChannelHandlerContext ctx, Web3ResultChunk chunk) {
+        if (chunk.isFirst()) {
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            HttpHeaders.setTransferEncodingChunked(response);
+            ctx.write(response);
+        }
+
+        if (chunk.isLast()) {
+            ctx.writeAndFlush(new DefaultLastHttpContent(chunk.getContent()), chunk.getPromise())
+                .addListener(ChannelFutureListener.CLOSE);
+        } else {
+            ctx.writeAndFlush(new DefaultHttpContent(chunk.getContent()), chunk.getPromise());
+        }
     }
 }
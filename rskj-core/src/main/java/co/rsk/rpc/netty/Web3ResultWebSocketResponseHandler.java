@@ -19,17 +19,28 @@ package co.rsk.rpc.netty;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 
 public class Web3ResultWebSocketResponseHandler extends SimpleChannelInboundHandler<Web3Result> {
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Web3Result msg) {
-        ctx.write(new TextWebSocketFrame(msg.getContent()));
+        if (msg instanceof Web3ResultChunk) {
+            writeChunk(ctx, (Web3ResultChunk) msg);
+            return;
+        }
+
+        // the result is produced off the event loop, after the read is complete
+        ctx.writeAndFlush(new TextWebSocketFrame(msg.getContent()));
     }
 
-    @Override
-    public void channelReadComplete(ChannelHandlerContext ctx) {
-        ctx.flush();
+    private void writeChunk(ChannelHandlerContext ctx, Web3ResultChunk chunk) {
+        WebSocketFrame frame = chunk.isFirst() ?
+            new TextWebSocketFrame(chunk.isLast(), 0, chunk.getContent()) :
+            new ContinuationWebSocketFrame(chunk.isLast(), 0, chunk.getContent());
+
+        ctx.writeAndFlush(frame, chunk.getPromise());
     }
 }
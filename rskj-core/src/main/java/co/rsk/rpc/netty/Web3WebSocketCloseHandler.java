@@ -0,0 +1,90 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * Web3WebSocketCloseHandler holds the close frame of a channel until the results of the requests
+ * read before it are written, since the requests are executed out of the event loop
+ * and the close frame would be answered first, closing the channel.
+ *
+ * It handles a single channel, and it is only called from its event loop.
+ */
+public class Web3WebSocketCloseHandler extends ChannelDuplexHandler {
+
+    private int pendingResults;
+    private CloseWebSocketFrame closeFrame;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame) {
+            pendingResults++;
+        } else if (msg instanceof CloseWebSocketFrame && pendingResults > 0) {
+            closeFrame = (CloseWebSocketFrame) msg;
+            return;
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        ctx.write(msg, promise);
+
+        // the results can be written in fragments
+        if (!isResultEnd(msg) || pendingResults == 0) {
+            return;
+        }
+
+        pendingResults--;
+
+        if (pendingResults == 0 && closeFrame != null) {
+            CloseWebSocketFrame frame = closeFrame;
+            closeFrame = null;
+            // after the flush of the last result
+            ctx.executor().execute(() -> ctx.fireChannelRead(frame));
+        }
+    }
+
+    private static boolean isResultEnd(Object msg) {
+        if (msg instanceof EthSubscriptionNotifier.NotificationFrame) {
+            return false;
+        }
+
+        return (msg instanceof TextWebSocketFrame || msg instanceof ContinuationWebSocketFrame)
+                && ((WebSocketFrame) msg).isFinalFragment();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (closeFrame != null) {
+            closeFrame.release();
+            closeFrame = null;
+        }
+    }
+}
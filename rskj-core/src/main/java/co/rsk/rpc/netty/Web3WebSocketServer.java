@@ -37,6 +37,7 @@ public class Web3WebSocketServer {
     private final InetAddress host;
     private final int port;
     private final JsonRpcWeb3ServerHandler web3ServerHandler;
+    private final @Nullable EthSubscriptionHandler subscriptionHandler;
     private final EventLoopGroup bossGroup;
     private final EventLoopGroup workerGroup;
     private @Nullable ChannelFuture webSocketChannel;
@@ -44,9 +45,17 @@ public class Web3WebSocketServer {
     public Web3WebSocketServer(InetAddress host,
                                int port,
                                JsonRpcWeb3ServerHandler web3ServerHandler) {
+        this(host, port, web3ServerHandler, null);
+    }
+
+    public Web3WebSocketServer(InetAddress host,
+                               int port,
+                               JsonRpcWeb3ServerHandler web3ServerHandler,
+                               @Nullable EthSubscriptionHandler subscriptionHandler) {
         this.host = host;
         this.port = port;
         this.web3ServerHandler = web3ServerHandler;
+        this.subscriptionHandler = subscriptionHandler;
         this.bossGroup = new NioEventLoopGroup();
         this.workerGroup = new NioEventLoopGroup();
     }
@@ -61,7 +70,11 @@ public class Web3WebSocketServer {
                     ChannelPipeline p = ch.pipeline();
                     p.addLast(new HttpServerCodec());
                     p.addLast(new HttpObjectAggregator(1024 * 1024 * 5));
+                    p.addLast(new Web3WebSocketCloseHandler());
                     p.addLast(new WebSocketServerProtocolHandler("/websocket"));
+                    if (subscriptionHandler != null) {
+                        p.addLast(subscriptionHandler);
+                    }
                     p.addLast(web3ServerHandler);
                     p.addLast(new Web3ResultWebSocketResponseHandler());
                 }
@@ -76,5 +89,6 @@ public class Web3WebSocketServer {
         }
         this.bossGroup.shutdownGracefully();
         this.workerGroup.shutdownGracefully();
+        this.web3ServerHandler.stop();
     }
 }
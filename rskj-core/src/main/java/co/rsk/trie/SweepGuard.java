@@ -0,0 +1,131 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.trie;
+
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * SweepGuard coordinates the writes to a trie data source with the deletes of a prune sweep
+ *
+ * There is one guard by data source, shared by all the trie stores created over it.
+ * While a sweep is in progress, the written keys are recorded, so a node saved
+ * again by the block processing is never deleted. Writes take the read lock,
+ * and sweep steps take the write lock, so a key can't be written between
+ * the check and the delete
+ */
+final class SweepGuard {
+    private static final Map<KeyValueDataSource, SweepGuard> guards = new WeakHashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // keys written since the sweep started, null if there is no sweep in progress
+    private volatile Set<ByteArrayWrapper> written;
+
+    private SweepGuard() {
+    }
+
+    static synchronized SweepGuard forDataSource(KeyValueDataSource dataSource) {
+        return guards.computeIfAbsent(dataSource, ds -> new SweepGuard());
+    }
+
+    void write(Collection<byte[]> keys, Runnable writer) {
+        lock.readLock().lock();
+
+        try {
+            Set<ByteArrayWrapper> keySet = this.written;
+
+            if (keySet != null) {
+                for (byte[] key : keys) {
+                    keySet.add(wrap(key));
+                }
+            }
+
+            writer.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void startTracking() {
+        lock.writeLock().lock();
+
+        try {
+            this.written = ConcurrentHashMap.newKeySet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void stopTracking() {
+        this.written = null;
+    }
+
+    boolean isTracking() {
+        return this.written != null;
+    }
+
+    /**
+     * sweep runs the deleter with the write lock held, over the keys
+     * not written since the tracking started and not marked as reachable
+     *
+     * @return  the deleted keys
+     */
+    List<byte[]> sweep(Collection<byte[]> keys, TrieMarks marked, Consumer<byte[]> deleter) {
+        lock.writeLock().lock();
+
+        try {
+            Set<ByteArrayWrapper> keySet = this.written;
+
+            if (keySet == null) {
+                throw new IllegalStateException("Sweep without tracking the written keys");
+            }
+
+            List<byte[]> deleted = new ArrayList<>();
+
+            for (byte[] key : keys) {
+                ByteArrayWrapper wrapped = wrap(key);
+
+                if (keySet.contains(wrapped) || marked.contains(key)) {
+                    continue;
+                }
+
+                deleter.accept(key);
+                deleted.add(key);
+            }
+
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
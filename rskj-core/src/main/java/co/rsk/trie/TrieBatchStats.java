@@ -0,0 +1,70 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TrieBatchStats sums the node batches saved by every trie store.
+ *
+ * The state trie and each contract storage trie have their own store and save
+ * their own batch, so the block import takes the sums once per block and
+ * reports them together with the block timings.
+ */
+public final class TrieBatchStats {
+    private static final AtomicLong totalBatches = new AtomicLong();
+    private static final AtomicLong totalRows = new AtomicLong();
+    private static final AtomicLong totalBytes = new AtomicLong();
+    private static final AtomicLong totalNanos = new AtomicLong();
+
+    private final long batches;
+    private final long rows;
+    private final long bytes;
+    private final long nanos;
+
+    private TrieBatchStats(long batches, long rows, long bytes, long nanos) {
+        this.batches = batches;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.nanos = nanos;
+    }
+
+    static void add(int rows, long bytes, long nanos) {
+        totalBatches.incrementAndGet();
+        totalRows.addAndGet(rows);
+        totalBytes.addAndGet(bytes);
+        totalNanos.addAndGet(nanos);
+    }
+
+    /**
+     * take returns the sums of the batches saved since the previous call, and restarts them
+     */
+    public static TrieBatchStats take() {
+        return new TrieBatchStats(totalBatches.getAndSet(0), totalRows.getAndSet(0), totalBytes.getAndSet(0), totalNanos.getAndSet(0));
+    }
+
+    public long getBatches() { return this.batches; }
+
+    public long getRows() { return this.rows; }
+
+    public long getBytes() { return this.bytes; }
+
+    public long getNanos() { return this.nanos; }
+}
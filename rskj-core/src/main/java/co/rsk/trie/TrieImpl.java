@@ -148,6 +148,22 @@ public class TrieImpl implements Trie {
         return trie;
     }
 
+    /**
+     * cloneSavedNode returns a copy of this persisted node, without its in memory subnodes,
+     * associated to the given store. Used by the trie store node cache
+     *
+     * @param hash  the known hash of this node, the key used to retrieve it from the store
+     * @param store the store to associate to the copy
+     *
+     * @return a new node, marked as saved
+     */
+    TrieImpl cloneSavedNode(Keccak256 hash, TrieStore store) {
+        TrieImpl trie = new TrieImpl(this.encodedSharedPath, this.sharedPathLength, this.value, null, cloneHashes(), store).withSecure(this.isSecure);
+        trie.hash = hash;
+        trie.saved = true;
+        return trie;
+    }
+
     @Override
     public void removeNode(int position) {
         if (this.nodes != null) {
@@ -271,6 +287,51 @@ public class TrieImpl implements Trie {
         }
     }
 
+    /**
+     * readReferences reads the keys referenced by an encoded node, without decoding it
+     *
+     * @param message   the encoded node, as saved in the store
+     * @param subnodes  the list where the subnode hashes are added
+     *
+     * @return  the long value hash, null if the value is included in the message
+     */
+    @Nullable
+    static byte[] readReferences(byte[] message, List<byte[]> subnodes) {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+
+        int arity = buffer.get();
+
+        if (arity != ARITY) {
+            throw new IllegalArgumentException(INVALID_ARITY);
+        }
+
+        int flags = buffer.get();
+        boolean hasLongVal = (flags & 0x02) == 2;
+        int bhashes = buffer.getShort();
+        int lshared = buffer.getShort();
+
+        buffer.position(buffer.position() + TrieImpl.getEncodedPathLength(lshared));
+
+        for (int k = 0; k < arity; k++) {
+            if ((bhashes & (1 << k)) == 0) {
+                continue;
+            }
+
+            byte[] hash = new byte[Keccak256Helper.DEFAULT_SIZE_BYTES];
+            buffer.get(hash);
+            subnodes.add(hash);
+        }
+
+        if (!hasLongVal) {
+            return null;
+        }
+
+        byte[] valueHash = new byte[Keccak256Helper.DEFAULT_SIZE_BYTES];
+        buffer.get(valueHash);
+
+        return valueHash;
+    }
+
     /**
      * getHash calculates and/or returns the hash associated with this node content
      *
@@ -509,6 +570,8 @@ public class TrieImpl implements Trie {
     /**
      * save saves the unsaved current trie and subnodes to their associated store
      *
+     * All the unsaved nodes are collected and saved in a single batch
+     *
      */
     @Override
     public void save() {
@@ -516,16 +579,37 @@ public class TrieImpl implements Trie {
             return;
         }
 
+        List<Trie> unsaved = new ArrayList<>();
+
+        this.collectUnsaved(unsaved);
+
+        this.store.saveAll(unsaved);
+
+        for (Trie node : unsaved) {
+            ((TrieImpl) node).saved = true;
+        }
+    }
+
+    /**
+     * collectUnsaved adds the unsaved current trie and subnodes to a list,
+     * subnodes first
+     *
+     * @param unsaved   the list to fill
+     */
+    private void collectUnsaved(List<Trie> unsaved) {
+        if (this.saved) {
+            return;
+        }
+
         if (this.nodes != null) {
             for (TrieImpl node : this.nodes) {
                 if (node != null) {
-                    node.save();
+                    node.collectUnsaved(unsaved);
                 }
             }
         }
 
-        this.store.save(this);
-        this.saved = true;
+        unsaved.add(this);
     }
 
     @Override
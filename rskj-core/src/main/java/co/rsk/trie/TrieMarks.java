@@ -0,0 +1,89 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.trie;
+
+import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.ethereum.util.ByteUtil.wrap;
+
+/**
+ * TrieMarks is the set of keys marked as reachable by a prune cycle
+ *
+ * The marks are kept in a data source, so the heap doesn't have to hold every
+ * reachable node of the state. Only the last marked keys are buffered in memory,
+ * and written in batches of at most bufferSize keys.
+ */
+public class TrieMarks {
+    private static final byte[] MARK = new byte[] { 1 };
+
+    private final KeyValueDataSource dataSource;
+    private final int bufferSize;
+    private final Set<ByteArrayWrapper> buffer = new HashSet<>();
+
+    private long size;
+
+    public TrieMarks(KeyValueDataSource dataSource, int bufferSize) {
+        this.dataSource = dataSource;
+        this.bufferSize = Math.max(1, bufferSize);
+    }
+
+    public boolean contains(byte[] key) {
+        return buffer.contains(wrap(key)) || dataSource.get(key) != null;
+    }
+
+    /**
+     * @return true if the key was not marked yet
+     */
+    public boolean add(byte[] key) {
+        if (this.contains(key)) {
+            return false;
+        }
+
+        buffer.add(wrap(key));
+        size++;
+
+        if (buffer.size() >= bufferSize) {
+            this.flush();
+        }
+
+        return true;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    private void flush() {
+        Map<byte[], byte[]> rows = new HashMap<>();
+
+        for (ByteArrayWrapper key : buffer) {
+            rows.put(key.getData(), MARK);
+        }
+
+        dataSource.updateBatch(rows);
+        buffer.clear();
+    }
+}
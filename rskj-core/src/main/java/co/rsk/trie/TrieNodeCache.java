@@ -0,0 +1,141 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.trie;
+
+import co.rsk.crypto.Keccak256;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TrieNodeCache keeps decoded trie nodes by hash, in least recently used order
+ *
+ * The cache is bounded by the estimated size in bytes of the cached nodes,
+ * not by the number of entries. The cached nodes are never handed out:
+ * TrieStoreImpl returns a fresh copy on every hit, so lazily loaded subnodes
+ * are not retained by the cache
+ */
+public class TrieNodeCache {
+    // estimated per entry overhead: map entry, key, node instance and hashes array
+    private static final int ENTRY_OVERHEAD = 200;
+
+    private final long maxSizeInBytes;
+    private final LinkedHashMap<Keccak256, Entry> nodes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long sizeInBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TrieNodeCache(long maxSizeInBytes) {
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    public synchronized TrieImpl get(Keccak256 hash) {
+        Entry entry = this.nodes.get(hash);
+
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+
+        this.hits++;
+
+        return entry.node;
+    }
+
+    public synchronized void put(Keccak256 hash, TrieImpl node, int length) {
+        int size = length + ENTRY_OVERHEAD;
+
+        if (size > this.maxSizeInBytes) {
+            return;
+        }
+
+        Entry previous = this.nodes.put(hash, new Entry(node, size));
+
+        if (previous != null) {
+            this.sizeInBytes -= previous.size;
+        }
+
+        this.sizeInBytes += size;
+
+        Iterator<Entry> iterator = this.nodes.values().iterator();
+
+        while (this.sizeInBytes > this.maxSizeInBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            this.sizeInBytes -= eldest.size;
+            this.evictions++;
+        }
+    }
+
+    public synchronized void remove(Keccak256 hash) {
+        Entry entry = this.nodes.remove(hash);
+
+        if (entry != null) {
+            this.sizeInBytes -= entry.size;
+        }
+    }
+
+    public synchronized void clear() {
+        this.nodes.clear();
+        this.sizeInBytes = 0;
+    }
+
+    public synchronized int getCount() {
+        return this.nodes.size();
+    }
+
+    public synchronized long getSizeInBytes() {
+        return this.sizeInBytes;
+    }
+
+    public long getMaxSizeInBytes() {
+        return this.maxSizeInBytes;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("nodes %d, bytes %d/%d, hits %d, misses %d, evictions %d",
+                this.nodes.size(), this.sizeInBytes, this.maxSizeInBytes, this.hits, this.misses, this.evictions);
+    }
+
+    private static class Entry {
+        private final TrieImpl node;
+        private final int size;
+
+        Entry(TrieImpl node, int size) {
+            this.node = node;
+            this.size = size;
+        }
+    }
+}
@@ -18,26 +18,29 @@
 
 package co.rsk.trie;
 
+import co.rsk.crypto.Keccak256;
 import co.rsk.panic.PanicProcessor;
 import org.ethereum.datasource.HashMapDB;
 import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.datasource.KeyValueIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * TrieStoreImpl store and retrieve Trie node by hash
  *
  * It saves/retrieves the serialized form (byte array) of a Trie node
  *
- * Internally, it uses a key value data source
+ * Internally, it uses a key value data source, and an optional
+ * node cache, that keeps the decoded nodes to avoid reading and parsing them again
  *
  * Created by ajlopez on 08/01/2017.
  */
@@ -46,16 +49,29 @@ public class TrieStoreImpl implements TrieStore {
     private static final PanicProcessor panicProcessor = new PanicProcessor();
     private static final String PANIC_TOPIC = "triestore";
     private static final String ERROR_CREATING_STORE = "Error creating trie store";
+    private static final int COPY_BATCH_SIZE = 10000;
 
     // a key value data source to use
     private KeyValueDataSource store;
 
+    // decoded nodes cache, could be null
+    private final TrieNodeCache cache;
+
+    // coordinates the writes with the prune sweeps over the same data source
+    private final SweepGuard guard;
+
     // internal variables, count of saves and retrieves
     private int saveCount = 0;
     private int retrieveCount = 0;
 
     public TrieStoreImpl(KeyValueDataSource store) {
+        this(store, null);
+    }
+
+    public TrieStoreImpl(KeyValueDataSource store, TrieNodeCache cache) {
         this.store = store;
+        this.cache = cache;
+        this.guard = SweepGuard.forDataSource(store);
     }
 
     /**
@@ -65,14 +81,70 @@ public class TrieStoreImpl implements TrieStore {
     @Override
     public void save(Trie trie) {
         this.saveCount++;
-        this.store.put(trie.getHash().getBytes(), trie.toMessage());
+        Keccak256 hash = trie.getHash();
+        byte[] message = trie.toMessage();
 
         if (trie.hasLongValue()) {
             this.saveCount++;
-            this.store.put(trie.getValueHash(), trie.getValue());
+            byte[] valueHash = trie.getValueHash();
+            this.guard.write(Arrays.asList(hash.getBytes(), valueHash), () -> {
+                this.store.put(hash.getBytes(), message);
+                this.store.put(valueHash, trie.getValue());
+            });
+        } else {
+            this.guard.write(Collections.singletonList(hash.getBytes()), () -> this.store.put(hash.getBytes(), message));
+        }
+
+        if (this.cache != null) {
+            this.cache.put(hash, ((TrieImpl) trie).cloneSavedNode(hash, null), getCachedSize(trie, message));
         }
     }
 
+    /**
+     * saveAll saves a list of Trie nodes to the store, using a single batch
+     * @param tries
+     */
+    @Override
+    public void saveAll(List<Trie> tries) {
+        long saveTime = System.nanoTime();
+
+        Map<byte[], byte[]> rows = new LinkedHashMap<>();
+        List<Keccak256> hashes = new ArrayList<>(tries.size());
+        List<byte[]> messages = new ArrayList<>(tries.size());
+        int size = 0;
+
+        for (Trie trie : tries) {
+            this.saveCount++;
+            Keccak256 hash = trie.getHash();
+            byte[] message = trie.toMessage();
+            rows.put(hash.getBytes(), message);
+            hashes.add(hash);
+            messages.add(message);
+            size += message.length;
+
+            if (trie.hasLongValue()) {
+                this.saveCount++;
+                rows.put(trie.getValueHash(), trie.getValue());
+                size += trie.getValue().length;
+            }
+        }
+
+        this.guard.write(rows.keySet(), () -> this.store.updateBatch(rows));
+
+        if (this.cache != null) {
+            for (int k = 0; k < tries.size(); k++) {
+                Trie trie = tries.get(k);
+                this.cache.put(hashes.get(k), ((TrieImpl) trie).cloneSavedNode(hashes.get(k), null), getCachedSize(trie, messages.get(k)));
+            }
+        }
+
+        long totalTime = System.nanoTime() - saveTime;
+
+        TrieBatchStats.add(rows.size(), size, totalTime);
+
+        logger.trace("trie batch save: [{}] nodes, [{}] rows, [{}] bytes, [{}]nano", tries.size(), rows.size(), size, totalTime);
+    }
+
     @Override
     public int getSaveCount() { return this.saveCount; }
 
@@ -87,9 +159,25 @@ public class TrieStoreImpl implements TrieStore {
     public Trie retrieve(byte[] hash) {
         this.retrieveCount++;
 
+        if (this.cache == null) {
+            return TrieImpl.fromMessage(this.store.get(hash), this);
+        }
+
+        Keccak256 key = new Keccak256(hash);
+        TrieImpl cached = this.cache.get(key);
+
+        if (cached != null) {
+            return cached.cloneSavedNode(key, this);
+        }
+
         byte[] message = this.store.get(hash);
+        TrieImpl trie = TrieImpl.fromMessage(message, this);
+
+        if (trie != null) {
+            this.cache.put(key, trie.cloneSavedNode(key, null), getCachedSize(trie, message));
+        }
 
-        return TrieImpl.fromMessage(message, this);
+        return trie;
     }
 
     public byte[] retrieveValue(byte[] hash) {
@@ -99,6 +187,8 @@ public class TrieStoreImpl implements TrieStore {
     @Override
     public int getRetrieveCount() { return this.retrieveCount; }
 
+    public TrieNodeCache getCache() { return this.cache; }
+
     @Override
     public byte[] serialize() {
         List<byte[]> keys = new ArrayList<>();
@@ -107,18 +197,22 @@ public class TrieStoreImpl implements TrieStore {
         int lkeys = 0;
         int lvalues = 0;
 
-        for (byte[] key : this.store.keys()) {
-            byte[] value = this.store.get(key);
+        try (KeyValueIterator iterator = this.store.iterator()) {
+            while (iterator.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+                byte[] key = entry.getKey();
+                byte[] value = entry.getValue();
 
-            if (value == null || value.length == 0) {
-                continue;
-            }
+                if (value == null || value.length == 0) {
+                    continue;
+                }
 
-            keys.add(key);
-            values.add(value);
+                keys.add(key);
+                values.add(value);
 
-            lkeys += key.length;
-            lvalues += value.length;
+                lkeys += key.length;
+                lvalues += value.length;
+            }
         }
 
         int nkeys = keys.size();
@@ -145,9 +239,112 @@ public class TrieStoreImpl implements TrieStore {
     public void copyFrom(TrieStoreImpl originalTrieStore) {
         KeyValueDataSource ds = originalTrieStore.store;
 
-        for (byte[] key : ds.keys()) {
-            this.store.put(key, ds.get(key));
+        Map<byte[], byte[]> rows = new HashMap<>();
+
+        // stream the original store, writing the rows in bounded batches
+        try (KeyValueIterator iterator = ds.iterator()) {
+            while (iterator.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+                rows.put(entry.getKey(), entry.getValue());
+
+                if (rows.size() >= COPY_BATCH_SIZE) {
+                    this.guard.write(rows.keySet(), () -> this.store.updateBatch(rows));
+                    rows.clear();
+                }
+            }
         }
+
+        if (!rows.isEmpty()) {
+            this.guard.write(rows.keySet(), () -> this.store.updateBatch(rows));
+        }
+    }
+
+    /**
+     * mark adds to the marked set the keys of the nodes and long values reachable from a root,
+     * the nodes already marked are not visited again, so marking consecutive states
+     * only reads the nodes that changed between them
+     *
+     * @param root      the hash of the root node
+     * @param marked    the keys already marked
+     *
+     * @return  the number of keys added to the marked set
+     */
+    public int mark(byte[] root, TrieMarks marked) {
+        Deque<byte[]> pending = new ArrayDeque<>();
+        List<byte[]> subnodes = new ArrayList<>();
+        int count = 0;
+
+        pending.push(root);
+
+        while (!pending.isEmpty()) {
+            byte[] hash = pending.pop();
+
+            if (marked.contains(hash)) {
+                continue;
+            }
+
+            byte[] message = this.store.get(hash);
+
+            // unknown nodes are not marked, there is nothing to keep
+            if (message == null) {
+                continue;
+            }
+
+            marked.add(hash);
+            count++;
+
+            subnodes.clear();
+            byte[] valueHash = TrieImpl.readReferences(message, subnodes);
+
+            if (valueHash != null && marked.add(valueHash)) {
+                count++;
+            }
+
+            for (byte[] subnode : subnodes) {
+                pending.push(subnode);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * startSweep starts recording the keys written to the data source,
+     * the recorded keys are never deleted by the sweep
+     */
+    public void startSweep() {
+        this.guard.startTracking();
+    }
+
+    public void stopSweep() {
+        this.guard.stopTracking();
+    }
+
+    /**
+     * iterator iterates over the stored keys, starting at the given one
+     */
+    public KeyValueIterator iterator(@Nullable byte[] from) {
+        return this.store.iterator(from, null);
+    }
+
+    /**
+     * sweep deletes the given keys, except the marked ones and the ones written
+     * since the sweep started. The writes to the data source wait until it finishes
+     *
+     * @return  the deleted keys
+     */
+    public List<byte[]> sweep(Collection<byte[]> keys, TrieMarks marked) {
+        return this.guard.sweep(keys, marked, key -> {
+            this.store.delete(key);
+
+            if (this.cache != null) {
+                this.cache.remove(new Keccak256(key));
+            }
+        });
+    }
+
+    private static int getCachedSize(Trie trie, byte[] message) {
+        return trie.hasLongValue() ? message.length + trie.getValue().length : message.length;
     }
 
     public static TrieStoreImpl deserialize(byte[] bytes) {
@@ -22,6 +22,7 @@ package org.ethereum.config;
 import co.rsk.config.RskSystemProperties;
 import co.rsk.core.DifficultyCalculator;
 import co.rsk.db.RepositoryImpl;
+import co.rsk.trie.TrieNodeCache;
 import co.rsk.trie.TrieStoreImpl;
 import org.ethereum.core.Repository;
 import org.ethereum.core.Transaction;
@@ -60,7 +61,10 @@ public class CommonConfig {
         KeyValueDataSource ds = makeDataSource(config, "state");
         KeyValueDataSource detailsDS = makeDataSource(config, "details");
 
-        return new RepositoryImpl(config, new TrieStoreImpl(ds), detailsDS);
+        long trieCacheSize = config.trieCacheSize();
+        TrieNodeCache trieCache = trieCacheSize > 0 ? new TrieNodeCache(trieCacheSize) : null;
+
+        return new RepositoryImpl(config, new TrieStoreImpl(ds, trieCache), detailsDS);
     }
 
     private KeyValueDataSource makeDataSource(RskSystemProperties config, String name) {
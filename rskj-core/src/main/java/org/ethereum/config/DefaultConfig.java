@@ -24,6 +24,7 @@ import co.rsk.config.*;
 import co.rsk.core.DifficultyCalculator;
 import co.rsk.core.NetworkStateExporter;
 import co.rsk.crypto.Keccak256;
+import co.rsk.db.BloomBitsIndex;
 import co.rsk.metrics.BlockHeaderElement;
 import co.rsk.metrics.HashRateCalculator;
 import co.rsk.metrics.HashRateCalculatorMining;
@@ -101,7 +102,16 @@ public class DefaultConfig {
     public ReceiptStore receiptStore(RskSystemProperties config) {
         KeyValueDataSource ds = new LevelDbDataSource(config, "receipts");
         ds.init();
-        return new ReceiptStoreImpl(ds);
+        KeyValueDataSource indexDS = new LevelDbDataSource(config, "txindex");
+        indexDS.init();
+        return new ReceiptStoreImpl(ds, indexDS);
+    }
+
+    @Bean
+    public BloomBitsIndex bloomBitsIndex(RskSystemProperties config) {
+        KeyValueDataSource ds = new LevelDbDataSource(config, "bloombits");
+        ds.init();
+        return new BloomBitsIndex(ds);
     }
 
     @Bean
@@ -59,6 +59,8 @@ public interface Blockchain {
 
     void setBlockRecorder(BlockRecorder blockRecorder);
 
+    void stop();
+
     long getSize();
 
     ImportResult tryToConnect(Block block);
@@ -71,6 +73,13 @@ public interface Blockchain {
 
     TransactionInfo getTransactionInfo(byte[] hash);
 
+    /**
+     * Returns the receipts of a block, with their transactions
+     *
+     * @return the receipts in transaction order, null if they are not available
+     */
+    List<TransactionReceipt> getBlockReceipts(Block block);
+
     void close();
 
     void setTotalDifficulty(BlockDifficulty totalDifficulty);
@@ -96,4 +105,8 @@ public interface Blockchain {
     List<BlockInformation> getBlocksInformationByNumber(long number);
 
     boolean hasBlockInSomeBlockchain(byte[] hash);
+
+    void suspendProcess();
+
+    void resumeProcess();
 }
@@ -21,6 +21,7 @@ package org.ethereum.core;
 
 import co.rsk.core.Coin;
 import co.rsk.core.RskAddress;
+import org.ethereum.db.AccountLoader;
 import org.ethereum.db.ContractDetails;
 import org.ethereum.db.DetailsDataStore;
 import org.ethereum.vm.DataWord;
@@ -33,7 +34,7 @@ import java.util.Set;
  * @author Roman Mandeleil
  * @since 08.09.2014
  */
-public interface Repository {
+public interface Repository extends AccountLoader {
 
     /**
      * Create a new account in the database
@@ -49,6 +50,7 @@ public interface Repository {
      * @return - true if account exist,
      *           false otherwise
      */
+    @Override
     boolean isExist(RskAddress addr);
 
     /**
@@ -223,6 +225,7 @@ public interface Repository {
 
     byte[] getRoot();
 
+    @Override
     void loadAccount(RskAddress addr,
                      Map<RskAddress, AccountState> cacheAccounts,
                      Map<RskAddress, ContractDetails> cacheDetails);
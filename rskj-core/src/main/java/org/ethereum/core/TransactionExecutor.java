@@ -94,6 +94,7 @@ public class TransactionExecutor {
     private List<LogInfo> logs = null;
 
     private boolean localCall = false;
+    private boolean deferFeePayment = false;
 
     public TransactionExecutor(RskSystemProperties config, Transaction tx, int txindex, RskAddress coinbase, Repository track, BlockStore blockStore, ReceiptStore receiptStore,
                                ProgramInvokeFactory programInvokeFactory, Block executionBlock) {
@@ -290,7 +291,9 @@ public class TransactionExecutor {
 
                 this.vm = new VM(vmConfig, precompiledContracts);
                 BlockchainConfig configForBlock = config.getBlockchainConfig().getConfigForBlock(executionBlock.getNumber());
-                this.program = new Program(vmConfig, precompiledContracts, configForBlock, code, programInvoke, tx);
+                AccountState targetAccount = track.getAccountState(targetAddress);
+                byte[] codeHash = targetAccount == null ? null : targetAccount.getCodeHash();
+                this.program = new Program(vmConfig, precompiledContracts, configForBlock, code, codeHash, programInvoke, tx);
             }
         }
 
@@ -477,18 +480,12 @@ public class TransactionExecutor {
         logger.trace("Pay total refund to sender: [{}], refund val: [{}]", tx.getSender(), summary.getRefund());
 
         // Transfer fees to miner
-        Coin summaryFee = summary.getFee();
+        this.paidFees = summary.getFee();
 
-        //TODO: REMOVE THIS WHEN THE LocalBLockTests starts working with REMASC
-        if(config.isRemascEnabled()) {
-            logger.trace("Adding fee to remasc contract account");
-            track.addBalance(PrecompiledContracts.REMASC_ADDR, summaryFee);
-        } else {
-            track.addBalance(coinbase, summaryFee);
+        if (!deferFeePayment) {
+            payFees(track);
         }
 
-        this.paidFees = summaryFee;
-
         logger.trace("Processing result");
         logs = notRejectedLogInfos;
 
@@ -525,6 +522,27 @@ public class TransactionExecutor {
         return this;
     }
 
+    /**
+     * If set, the finalization doesn't transfer the paid fees, so the transaction
+     * can be executed on a repository other than the one it's committed to;
+     * payFees must be called after committing it
+     */
+    public TransactionExecutor setDeferFeePayment(boolean deferFeePayment) {
+        this.deferFeePayment = deferFeePayment;
+        return this;
+    }
+
+    public void payFees(Repository repository) {
+        RskAddress feeRecipient = getFeeRecipient();
+        logger.trace("Adding fee to account [{}]", feeRecipient);
+        repository.addBalance(feeRecipient, paidFees);
+    }
+
+    public RskAddress getFeeRecipient() {
+        //TODO: REMOVE THIS WHEN THE LocalBLockTests starts working with REMASC
+        return config.isRemascEnabled() ? PrecompiledContracts.REMASC_ADDR : coinbase;
+    }
+
     public List<LogInfo> getVMLogs() {
         return logs;
     }
@@ -635,15 +635,32 @@ public class ECKey implements Serializable {
         if (signatureEncoded.length < 65) {
             throw new SignatureException("Signature truncated, expected 65 bytes and got " + signatureEncoded.length);
         }
-        int header = signatureEncoded[0] & 0xFF;
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(signatureEncoded, 1, 33));
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(signatureEncoded, 33, 65));
+        return signatureToKey(messageHash, signatureEncoded[0], new ECDSASignature(r, s));
+    }
+
+    /**
+     * Given a piece of text and a message signature, recover the public key,
+     * without encoding the signature to base64 and decoding it back
+     *
+     * @param messageHash a piece of human readable text that was signed
+     * @param signature The Ethereum-format message signature, including the v selector value
+     *
+     * @return -
+     * @throws SignatureException If the public key could not be recovered or if there was a signature format error.
+     */
+    public static ECKey signatureToKey(byte[] messageHash, ECDSASignature signature) throws SignatureException {
+        return signatureToKey(messageHash, signature.v, signature);
+    }
+
+    private static ECKey signatureToKey(byte[] messageHash, byte v, ECDSASignature sig) throws SignatureException {
+        int header = v & 0xFF;
         // The header byte: 0x1B = first key with even y, 0x1C = first key with odd y,
         //                  0x1D = second key with even y, 0x1E = second key with odd y
         if (header < 27 || header > 34) {
             throw new SignatureException("Header byte out of range: " + header);
         }
-        BigInteger r = new BigInteger(1, Arrays.copyOfRange(signatureEncoded, 1, 33));
-        BigInteger s = new BigInteger(1, Arrays.copyOfRange(signatureEncoded, 33, 65));
-        ECDSASignature sig = new ECDSASignature(r, s);
         boolean compressed = false;
         if (header >= 31) {
             compressed = true;
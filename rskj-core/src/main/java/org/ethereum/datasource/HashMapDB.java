@@ -20,6 +20,7 @@
 package org.ethereum.datasource;
 
 import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.FastByteComparisons;
 import org.iq80.leveldb.DBException;
 
 import java.util.*;
@@ -83,6 +84,24 @@ public class HashMapDB implements KeyValueDataSource {
                 forEach(entry -> storage.put(wrap(entry.getKey()), entry.getValue()));
     }
 
+    /**
+     * Iterates over a sorted snapshot of the matching keys, the values are read while iterating
+     */
+    @Override
+    public synchronized KeyValueIterator iterator(byte[] from, byte[] to) {
+        List<byte[]> keys = storage.keySet().stream()
+                .map(ByteArrayWrapper::getData)
+                .filter(key -> (from == null || compare(key, from) >= 0) && (to == null || compare(key, to) < 0))
+                .sorted(HashMapDB::compare)
+                .collect(Collectors.toList());
+
+        return new HashMapDBIterator(keys.iterator());
+    }
+
+    private static int compare(byte[] key1, byte[] key2) {
+        return FastByteComparisons.compareTo(key1, 0, key1.length, key2, 0, key2.length);
+    }
+
     public synchronized HashMapDB setClearOnClose(boolean clearOnClose) {
         this.clearOnClose = clearOnClose;
         return this;
@@ -94,4 +113,44 @@ public class HashMapDB implements KeyValueDataSource {
             this.storage.clear();
         }
     }
-}
\ No newline at end of file
+
+    private class HashMapDBIterator implements KeyValueIterator {
+        private final Iterator<byte[]> keys;
+        private Map.Entry<byte[], byte[]> nextEntry;
+
+        HashMapDBIterator(Iterator<byte[]> keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // skip the keys deleted after taking the snapshot
+            while (nextEntry == null && keys.hasNext()) {
+                byte[] key = keys.next();
+                byte[] value = storage.get(wrap(key));
+
+                if (value != null) {
+                    nextEntry = new AbstractMap.SimpleImmutableEntry<>(key, value);
+                }
+            }
+
+            return nextEntry != null;
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<byte[], byte[]> entry = nextEntry;
+            nextEntry = null;
+            return entry;
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
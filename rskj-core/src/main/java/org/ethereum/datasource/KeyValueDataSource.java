@@ -19,6 +19,8 @@
 
 package org.ethereum.datasource;
 
+import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,4 +39,39 @@ public interface KeyValueDataSource extends DataSource {
     Set<byte[]> keys();
 
     void updateBatch(Map<byte[], byte[]> rows);
+
+    /**
+     * Iterates the entries with keys between from (inclusive) and to (exclusive),
+     * in ascending unsigned byte order, without loading all of them in memory
+     *
+     * @param from  the first key, null to start at the first entry
+     * @param to    the key to stop at, null to iterate until the last entry
+     */
+    KeyValueIterator iterator(@Nullable byte[] from, @Nullable byte[] to);
+
+    default KeyValueIterator iterator() {
+        return iterator(null, null);
+    }
+
+    /**
+     * Iterates the entries with keys starting with prefix, in ascending unsigned byte order
+     */
+    default KeyValueIterator prefixIterator(byte[] prefix) {
+        // the bound is the shortest key after all the keys with the prefix: the prefix without
+        // its trailing 0xff bytes, and its last byte incremented. 01ff is bound by 02, not by 0200
+        int length = prefix.length;
+
+        while (length > 0 && prefix[length - 1] == (byte) 0xff) {
+            length--;
+        }
+
+        if (length == 0) {
+            return iterator(prefix.length == 0 ? null : prefix, null);
+        }
+
+        byte[] to = Arrays.copyOf(prefix, length);
+        to[length - 1]++;
+
+        return iterator(prefix, to);
+    }
 }
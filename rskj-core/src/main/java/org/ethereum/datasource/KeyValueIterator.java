@@ -0,0 +1,32 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.datasource;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Streaming iterator over the entries of a key value data source, in ascending key order.
+ *
+ * It must be closed once used, usually in a try-with-resources block, by the thread that created it.
+ */
+public interface KeyValueIterator extends Iterator<Map.Entry<byte[], byte[]>>, AutoCloseable {
+    @Override
+    void close();
+}
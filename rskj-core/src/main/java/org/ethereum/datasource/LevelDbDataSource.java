@@ -19,8 +19,10 @@
 
 package org.ethereum.datasource;
 
+import co.rsk.config.DatabaseProfile;
 import co.rsk.config.RskSystemProperties;
 import co.rsk.panic.PanicProcessor;
+import org.ethereum.util.FastByteComparisons;
 import org.iq80.leveldb.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +35,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -82,14 +85,18 @@ public class LevelDbDataSource implements KeyValueDataSource {
                 throw new NullPointerException("no name set to the db");
             }
 
+            DatabaseProfile profile = config.databaseProfile(name);
+            logger.debug("Database profile for '{}': {}", name, profile);
+
             Options options = new Options();
             options.createIfMissing(true);
-            options.compressionType(CompressionType.NONE);
-            options.blockSize(10 * 1024 * 1024);
-            options.writeBufferSize(10 * 1024 * 1024);
-            options.cacheSize(0);
-            options.paranoidChecks(true);
-            options.verifyChecksums(true);
+            options.compressionType(profile.compression());
+            options.blockSize(profile.blockSize());
+            options.writeBufferSize(profile.writeBufferSize());
+            options.cacheSize(profile.cacheSize());
+            options.maxOpenFiles(profile.maxOpenFiles());
+            options.paranoidChecks(profile.paranoidChecks());
+            options.verifyChecksums(profile.verifyChecksums());
 
             try {
                 logger.debug("Opening database");
@@ -254,6 +261,33 @@ public class LevelDbDataSource implements KeyValueDataSource {
         }
     }
 
+    /**
+     * The returned iterator holds the read lock until it is closed, so the
+     * database can't be closed while it is being iterated
+     */
+    @Override
+    public KeyValueIterator iterator(byte[] from, byte[] to) {
+        resetDbLock.readLock().lock();
+        try {
+            if (logger.isTraceEnabled()) {
+                logger.trace("~> LevelDbDataSource.iterator(): " + name);
+            }
+
+            DBIterator iterator = db.iterator();
+
+            if (from == null) {
+                iterator.seekToFirst();
+            } else {
+                iterator.seek(from);
+            }
+
+            return new LevelDbIterator(iterator, to);
+        } catch (RuntimeException e) {
+            resetDbLock.readLock().unlock();
+            throw e;
+        }
+    }
+
     private void updateBatchInternal(Map<byte[], byte[]> rows) throws IOException {
         try (WriteBatch batch = db.createWriteBatch()) {
             for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
@@ -318,4 +352,58 @@ public class LevelDbDataSource implements KeyValueDataSource {
             resetDbLock.writeLock().unlock();
         }
     }
+
+    private class LevelDbIterator implements KeyValueIterator {
+        private final DBIterator iterator;
+        private final byte[] to;
+        private boolean closed;
+
+        LevelDbIterator(DBIterator iterator, byte[] to) {
+            this.iterator = iterator;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed || !iterator.hasNext()) {
+                return false;
+            }
+
+            if (to == null) {
+                return true;
+            }
+
+            byte[] key = iterator.peekNext().getKey();
+
+            return FastByteComparisons.compareTo(key, 0, key.length, to, 0, to.length) < 0;
+        }
+
+        @Override
+        public Map.Entry<byte[], byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return iterator.next();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                logger.error("Unexpected", e);
+                panicProcessor.panic("leveldb", String.format("Unexpected %s", e.getMessage()));
+                throw new RuntimeException(e);
+            } finally {
+                resetDbLock.readLock().unlock();
+            }
+        }
+    }
 }
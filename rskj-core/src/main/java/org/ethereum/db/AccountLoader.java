@@ -0,0 +1,46 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.db;
+
+import co.rsk.core.RskAddress;
+import org.ethereum.core.AccountState;
+
+import java.util.Map;
+
+/**
+ * The source of the accounts a track reads, when they are not in the track yet
+ */
+public interface AccountLoader {
+
+    /**
+     * @param addr - account to check
+     * @return - true if account exist,
+     *           false otherwise
+     */
+    boolean isExist(RskAddress addr);
+
+    /**
+     * Puts the state and the details of the account in the given maps,
+     * as copies that can be changed by the caller
+     */
+    void loadAccount(RskAddress addr,
+                     Map<RskAddress, AccountState> cacheAccounts,
+                     Map<RskAddress, ContractDetails> cacheDetails);
+}
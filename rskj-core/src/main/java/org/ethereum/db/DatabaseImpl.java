@@ -20,13 +20,14 @@
 package org.ethereum.db;
 
 import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.datasource.KeyValueIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * Generic interface for Ethereum database
@@ -96,9 +97,14 @@ public class DatabaseImpl implements Database {
     }
 
     public <T> List<T> dumpKeys(Function<byte[], T> mapper) {
-        return keyValueDataSource.keys()
-                .stream()
-                .map(mapper)
-                .collect(Collectors.toList());
+        List<T> keys = new ArrayList<>();
+
+        try (KeyValueIterator iterator = keyValueDataSource.iterator()) {
+            while (iterator.hasNext()) {
+                keys.add(mapper.apply(iterator.next().getKey()));
+            }
+        }
+
+        return keys;
     }
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ package org.ethereum.db;
 import co.rsk.config.RskSystemProperties;
 import co.rsk.core.RskAddress;
 import co.rsk.db.ContractDetailsImpl;
+import org.ethereum.datasource.KeyValueIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +31,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static java.lang.String.format;
 
@@ -134,10 +136,27 @@ public class DetailsDataStore {
 
     public synchronized Set<RskAddress> keys() {
         Set<RskAddress> keys = new HashSet<>();
-        keys.addAll(cache.keySet());
-        keys.addAll(db.dumpKeys(RskAddress::new));
+        forEachKey(keys::add);
 
         return keys;
     }
 
+    /**
+     * Visits the cached and the stored keys, iterating the store without loading all its keys in memory.
+     * A key both cached and stored is visited once.
+     */
+    public synchronized void forEachKey(Consumer<RskAddress> consumer) {
+        cache.keySet().forEach(consumer);
+
+        try (KeyValueIterator iterator = db.getDb().iterator()) {
+            while (iterator.hasNext()) {
+                RskAddress key = new RskAddress(iterator.next().getKey());
+
+                if (!cache.containsKey(key)) {
+                    consumer.accept(key);
+                }
+            }
+        }
+    }
+
 }
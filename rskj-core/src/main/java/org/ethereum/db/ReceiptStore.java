@@ -19,6 +19,7 @@
 
 package org.ethereum.db;
 
+import org.ethereum.core.Block;
 import org.ethereum.core.TransactionReceipt;
 
 import java.util.List;
@@ -41,4 +42,21 @@ public interface ReceiptStore {
     List<TransactionInfo> getAll(byte[] transactionHash);
 
     void saveMultiple(byte[] blockHash, List<TransactionReceipt> receipts);
+
+    /**
+     * Gets the receipts of a block saved with saveMultiple, in transaction order
+     *
+     * @return the receipts, without their transactions, or null if they weren't saved
+     */
+    List<TransactionReceipt> getBlockReceipts(byte[] blockHash);
+
+    /**
+     * Indexes the transactions of a block that is now part of the main chain
+     */
+    void addToMainChain(Block block);
+
+    /**
+     * Removes from the index the transactions of a block that is no longer part of the main chain
+     */
+    void removeFromMainChain(Block block);
 }
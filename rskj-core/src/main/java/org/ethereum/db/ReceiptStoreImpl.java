@@ -22,10 +22,16 @@ package org.ethereum.db;
 import co.rsk.crypto.Keccak256;
 import org.ethereum.core.Block;
 import org.ethereum.core.TransactionReceipt;
+import org.ethereum.core.Transaction;
+import org.ethereum.datasource.HashMapDB;
 import org.ethereum.datasource.KeyValueDataSource;
+import org.ethereum.datasource.KeyValueIterator;
+import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
 import org.ethereum.util.RLPList;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -34,31 +40,32 @@ import java.util.*;
  */
 
 public class ReceiptStoreImpl implements ReceiptStore {
+    // shorter than a transaction hash, so it is never found iterating the entries of a transaction
+    private static final byte[] SEQUENCE_KEY = "sequence".getBytes(StandardCharsets.UTF_8);
+
+    // the receipts of each block, to be read in one go
+    private static final byte BLOCK_RECEIPTS_PREFIX = 'r';
+
     private KeyValueDataSource receiptsDS;
+    // main chain transactions, by hash, and block receipts
+    private KeyValueDataSource indexDS;
+    private long sequence;
 
     public ReceiptStoreImpl(KeyValueDataSource receiptsDS){
+        this(receiptsDS, new HashMapDB());
+    }
+
+    public ReceiptStoreImpl(KeyValueDataSource receiptsDS, KeyValueDataSource indexDS){
         this.receiptsDS = receiptsDS;
+        this.indexDS = indexDS;
+
+        byte[] sequenceBytes = receiptsDS.get(SEQUENCE_KEY);
+        this.sequence = sequenceBytes == null ? 0 : ByteUtil.byteArrayToLong(sequenceBytes);
     }
 
     @Override
     public void add(byte[] blockHash, int transactionIndex, TransactionReceipt receipt){
-        byte[] txHash = receipt.getTransaction().getHash().getBytes();
-
-        TransactionInfo newTxInfo = new TransactionInfo(receipt, blockHash, transactionIndex);
-
-        List<TransactionInfo> txsInfo = getAll(txHash);
-
-        txsInfo.add(newTxInfo);
-
-        List<byte[]> encodedTxs = new ArrayList<>();
-
-        for (TransactionInfo ti : txsInfo) {
-            encodedTxs.add(ti.getEncoded());
-        }
-
-        byte[][] txsBytes = encodedTxs.toArray(new byte[encodedTxs.size()][]);
-
-        receiptsDS.put(receipt.getTransaction().getHash().getBytes(), RLP.encodeList(txsBytes));
+        this.saveMultiple(blockHash, transactionIndex, Collections.singletonList(receipt), false);
     }
 
     @Override
@@ -74,6 +81,12 @@ public class ReceiptStoreImpl implements ReceiptStore {
 
     @Override
     public TransactionInfo get(byte[] transactionHash, byte[] blockHash, BlockStore store) {
+        TransactionInfo inBlock = this.getInBlock(transactionHash, blockHash);
+
+        if (inBlock != null) {
+            return inBlock;
+        }
+
         List<TransactionInfo> txsInfo = getAll(transactionHash);
 
         if (txsInfo.isEmpty()) {
@@ -147,8 +160,27 @@ public class ReceiptStoreImpl implements ReceiptStore {
         }
     }
 
+    /**
+     * Looks up the main chain transaction index, falling back to check the blocks of every
+     * stored receipt for transactions not indexed, like the ones saved before the index existed
+     */
     @Override
     public TransactionInfo getInMainChain(byte[] transactionHash, BlockStore store) {
+        byte[] indexed = indexDS.get(transactionHash);
+
+        if (indexed != null) {
+            RLPList rlpData = (RLPList) RLP.decode2(indexed).get(0);
+            TransactionInfo txInfo = this.getInBlock(transactionHash, rlpData.get(0).getRLPData());
+
+            if (txInfo != null) {
+                return txInfo;
+            }
+        }
+
+        if (store == null) {
+            return null;
+        }
+
         List<TransactionInfo> tis = this.getAll(transactionHash);
 
         if (tis.isEmpty()) {
@@ -180,28 +212,167 @@ public class ReceiptStoreImpl implements ReceiptStore {
 
     @Override
     public List<TransactionInfo> getAll(byte[] transactionHash) {
-        byte[] txsBytes = receiptsDS.get(transactionHash);
+        List<SequencedInfo> entries = new ArrayList<>();
 
-        if (txsBytes == null || txsBytes.length == 0) {
-            return new ArrayList<TransactionInfo>();
+        try (KeyValueIterator iterator = receiptsDS.prefixIterator(transactionHash)) {
+            while (iterator.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+
+                if (entry.getKey().length == transactionHash.length) {
+                    addLegacyEntries(entries, entry.getValue());
+                } else {
+                    entries.add(decodeEntry(entry.getValue()));
+                }
+            }
         }
 
+        // in the order they were saved, the entries keys are sorted by block hash
+        entries.sort(Comparator.comparingLong(entry -> entry.sequence));
+
         List<TransactionInfo> txsInfo = new ArrayList<>();
-        RLPList txsList = (RLPList) RLP.decode2(txsBytes).get(0);
 
-        for (int i = 0; i < txsList.size(); ++i) {
-            RLPList rlpData = ((RLPList) txsList.get(i));
-            txsInfo.add(new TransactionInfo(rlpData.getRLPData()));
+        for (SequencedInfo entry : entries) {
+            txsInfo.add(entry.info);
         }
 
         return txsInfo;
     }
 
     @Override
-    public void saveMultiple(byte[] blockHash, List<TransactionReceipt> receipts) {
+    public List<TransactionReceipt> getBlockReceipts(byte[] blockHash) {
+        byte[] receiptsBytes = indexDS.get(blockReceiptsKey(blockHash));
+
+        if (receiptsBytes == null) {
+            return null;
+        }
+
+        List<TransactionReceipt> receipts = new ArrayList<>();
+        RLPList receiptsList = (RLPList) RLP.decode2(receiptsBytes).get(0);
+
+        for (int i = 0; i < receiptsList.size(); ++i) {
+            receipts.add(new TransactionReceipt(receiptsList.get(i).getRLPData()));
+        }
+
+        return receipts;
+    }
+
+    @Override
+    public void addToMainChain(Block block) {
+        byte[] blockHash = block.getHash().getBytes();
+        byte[] blockNumberRLP = RLP.encodeBigInteger(BigInteger.valueOf(block.getNumber()));
+        Map<byte[], byte[]> rows = new HashMap<>();
         int i = 0;
+
+        for (Transaction tx : block.getTransactionsList()) {
+            byte[] indexed = RLP.encodeList(RLP.encodeElement(blockHash), blockNumberRLP, RLP.encodeInt(i++));
+            rows.put(tx.getHash().getBytes(), indexed);
+        }
+
+        if (!rows.isEmpty()) {
+            indexDS.updateBatch(rows);
+        }
+    }
+
+    @Override
+    public void removeFromMainChain(Block block) {
+        byte[] blockHash = block.getHash().getBytes();
+
+        for (Transaction tx : block.getTransactionsList()) {
+            byte[] txHash = tx.getHash().getBytes();
+            byte[] indexed = indexDS.get(txHash);
+
+            // the transaction could be already indexed in another block of the new chain
+            if (indexed != null && Arrays.equals(blockHash, ((RLPList) RLP.decode2(indexed).get(0)).get(0).getRLPData())) {
+                indexDS.delete(txHash);
+            }
+        }
+    }
+
+    @Override
+    public void saveMultiple(byte[] blockHash, List<TransactionReceipt> receipts) {
+        this.saveMultiple(blockHash, 0, receipts, true);
+    }
+
+    private TransactionInfo getInBlock(byte[] transactionHash, byte[] blockHash) {
+        byte[] entry = receiptsDS.get(ByteUtil.merge(transactionHash, blockHash));
+
+        if (entry == null) {
+            return null;
+        }
+
+        return decodeEntry(entry).info;
+    }
+
+    /**
+     * Writes the receipts of a block in a single batch, without reading the stored ones.
+     * Each receipt is saved with key transaction hash + block hash, so the receipts of the same
+     * transaction in other blocks are kept, and found iterating the transaction hash prefix.
+     * The receipts of a whole block are also saved together, keyed by the block hash, before
+     * the receipts by transaction: if the node stops between the writes, the block receipts
+     * are still found, instead of the readers looking for them one by one.
+     */
+    private synchronized void saveMultiple(byte[] blockHash, int firstIndex, List<TransactionReceipt> receipts, boolean wholeBlock) {
+        if (wholeBlock) {
+            byte[][] receiptsBytes = new byte[receipts.size()][];
+
+            for (int k = 0; k < receiptsBytes.length; k++) {
+                receiptsBytes[k] = receipts.get(k).getEncoded();
+            }
+
+            indexDS.put(blockReceiptsKey(blockHash), RLP.encodeList(receiptsBytes));
+        }
+
+        this.sequence++;
+        byte[] sequenceRLP = RLP.encodeBigInteger(BigInteger.valueOf(this.sequence));
+
+        Map<byte[], byte[]> rows = new HashMap<>();
+        int i = firstIndex;
+
         for (TransactionReceipt receipt : receipts) {
-            this.add(blockHash, i++, receipt);
+            byte[] txHash = receipt.getTransaction().getHash().getBytes();
+            TransactionInfo txInfo = new TransactionInfo(receipt, blockHash, i++);
+
+            rows.put(ByteUtil.merge(txHash, blockHash), RLP.encodeList(sequenceRLP, txInfo.getEncoded()));
+        }
+
+        rows.put(SEQUENCE_KEY, ByteUtil.longToBytes(this.sequence));
+
+        receiptsDS.updateBatch(rows);
+    }
+
+    private static SequencedInfo decodeEntry(byte[] entry) {
+        RLPList rlpData = (RLPList) RLP.decode2(entry).get(0);
+        long entrySequence = ByteUtil.byteArrayToLong(rlpData.get(0).getRLPData());
+        return new SequencedInfo(entrySequence, new TransactionInfo(rlpData.get(1).getRLPData()));
+    }
+
+    private static byte[] blockReceiptsKey(byte[] blockHash) {
+        return ByteUtil.merge(new byte[] { BLOCK_RECEIPTS_PREFIX }, blockHash);
+    }
+
+    /**
+     * Entries written before keying them by block, a list of transaction infos saved before any other entry
+     */
+    private static void addLegacyEntries(List<SequencedInfo> entries, byte[] txsBytes) {
+        if (txsBytes == null || txsBytes.length == 0) {
+            return;
+        }
+
+        RLPList txsList = (RLPList) RLP.decode2(txsBytes).get(0);
+
+        for (int i = 0; i < txsList.size(); ++i) {
+            RLPList rlpData = ((RLPList) txsList.get(i));
+            entries.add(new SequencedInfo(0, new TransactionInfo(rlpData.getRLPData())));
+        }
+    }
+
+    private static class SequencedInfo {
+        private final long sequence;
+        private final TransactionInfo info;
+
+        SequencedInfo(long sequence, TransactionInfo info) {
+            this.sequence = sequence;
+            this.info = info;
         }
     }
 }
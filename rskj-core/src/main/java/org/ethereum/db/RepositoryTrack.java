@@ -56,19 +56,37 @@ public class RepositoryTrack implements Repository {
 
     private final RskSystemProperties config;
     private final DetailsDataStore dds;
+    private final AccountLoader loader;
+    private final Object lock;
 
+    // null if the track only loads the accounts from its loader
     Repository repository;
 
     public RepositoryTrack(RskSystemProperties config, Repository repository) {
         this.config = config;
         this.repository = repository;
+        this.loader = repository;
+        this.lock = repository;
+        dds = new DetailsDataStore(this.config, new DatabaseImpl(new HashMapDB()));
+    }
+
+    /**
+     * Creates a track that loads the accounts from the given loader, as a shared view of a state.
+     * The track locks on itself instead of its loader, so the loader has to be thread safe,
+     * and the track can't be committed.
+     */
+    public RepositoryTrack(RskSystemProperties config, AccountLoader loader) {
+        this.config = config;
+        this.repository = null;
+        this.loader = loader;
+        this.lock = this;
         dds = new DetailsDataStore(this.config, new DatabaseImpl(new HashMapDB()));
     }
 
     @Override
     public AccountState createAccount(RskAddress addr) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             logger.trace("createAccount: [{}]", addr);
 
             AccountState accountState = new AccountState();
@@ -85,12 +103,12 @@ public class RepositoryTrack implements Repository {
     @Override
     public AccountState getAccountState(RskAddress addr) {
 
-        synchronized (repository) {
+        synchronized (lock) {
 
             AccountState accountState = cacheAccounts.get(addr);
 
             if (accountState == null) {
-                repository.loadAccount(addr, cacheAccounts, cacheDetails);
+                loader.loadAccount(addr, cacheAccounts, cacheDetails);
 
                 accountState = cacheAccounts.get(addr);
             }
@@ -101,24 +119,24 @@ public class RepositoryTrack implements Repository {
     @Override
     public boolean isExist(RskAddress addr) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             AccountState accountState = cacheAccounts.get(addr);
             if (accountState != null) {
                 return !accountState.isDeleted();
             }
 
-            return repository.isExist(addr);
+            return loader.isExist(addr);
         }
     }
 
     @Override
     public ContractDetails getContractDetails(RskAddress addr) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             ContractDetails contractDetails = cacheDetails.get(addr);
 
             if (contractDetails == null) {
-                repository.loadAccount(addr, cacheAccounts, cacheDetails);
+                loader.loadAccount(addr, cacheAccounts, cacheDetails);
                 contractDetails = cacheDetails.get(addr);
             }
 
@@ -130,12 +148,12 @@ public class RepositoryTrack implements Repository {
     public void loadAccount(RskAddress addr, Map<RskAddress, AccountState> cacheAccounts,
                             Map<RskAddress, ContractDetails> cacheDetails) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             AccountState accountState = this.cacheAccounts.get(addr);
             ContractDetails contractDetails = this.cacheDetails.get(addr);
 
             if (accountState == null) {
-                repository.loadAccount(addr, this.cacheAccounts, this.cacheDetails);
+                loader.loadAccount(addr, this.cacheAccounts, this.cacheDetails);
                 accountState = this.cacheAccounts.get(addr);
                 contractDetails = this.cacheDetails.get(addr);
             }
@@ -151,7 +169,7 @@ public class RepositoryTrack implements Repository {
     public void delete(RskAddress addr) {
         logger.trace("delete account: [{}]", addr);
 
-        synchronized (repository) {
+        synchronized (lock) {
             getAccountState(addr).setDeleted(true);
             getContractDetails(addr).setDeleted(true);
         }
@@ -160,7 +178,7 @@ public class RepositoryTrack implements Repository {
     @Override
     public BigInteger increaseNonce(RskAddress addr) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             AccountState accountState = getAccountState(addr);
 
             if (accountState == null) {
@@ -182,7 +200,7 @@ public class RepositoryTrack implements Repository {
     @Override
     public void hibernate(RskAddress addr) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             AccountState accountState = getAccountState(addr);
 
             if (accountState == null) {
@@ -197,7 +215,7 @@ public class RepositoryTrack implements Repository {
     }
 
     public BigInteger setNonce(RskAddress addr, BigInteger bigInteger) {
-        synchronized (repository) {
+        synchronized (lock) {
             AccountState accountState = getAccountState(addr);
 
             if (accountState == null) {
@@ -232,7 +250,7 @@ public class RepositoryTrack implements Repository {
     @Override
     public Coin addBalance(RskAddress addr, Coin value) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             AccountState accountState = getAccountState(addr);
             if (accountState == null) {
                 accountState = createAccount(addr);
@@ -252,7 +270,7 @@ public class RepositoryTrack implements Repository {
     public void saveCode(RskAddress addr, byte[] code) {
         logger.trace("saving code addr: [{}], code: [{}]", addr,
                 Hex.toHexString(code));
-        synchronized (repository) {
+        synchronized (lock) {
             getContractDetails(addr).setCode(code);
             getContractDetails(addr).setDirty(true);
             getAccountState(addr).setCodeHash(Keccak256Helper.keccak256(code));
@@ -262,7 +280,7 @@ public class RepositoryTrack implements Repository {
     @Override
     public byte[] getCode(RskAddress addr) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             if (!isExist(addr)) {
                 return EMPTY_BYTE_ARRAY;
             }
@@ -282,7 +300,7 @@ public class RepositoryTrack implements Repository {
         logger.trace("add storage row, addr: [{}], key: [{}] val: [{}]", addr,
                 key.toString(), value.toString());
 
-        synchronized (repository) {
+        synchronized (lock) {
             getContractDetails(addr).put(key, value);
         }
     }
@@ -293,21 +311,21 @@ public class RepositoryTrack implements Repository {
         logger.trace("add storage bytes, addr: [{}], key: [{}]", addr,
                 key.toString());
 
-        synchronized (repository) {
+        synchronized (lock) {
             getContractDetails(addr).putBytes(key, value);
         }
     }
 
     @Override
     public DataWord getStorageValue(RskAddress addr, DataWord key) {
-        synchronized (repository) {
+        synchronized (lock) {
             return getContractDetails(addr).get(key);
         }
     }
 
     @Override
     public byte[] getStorageBytes(RskAddress addr, DataWord key) {
-        synchronized (repository) {
+        synchronized (lock) {
             return getContractDetails(addr).getBytes(key);
         }
     }
@@ -343,8 +361,11 @@ public class RepositoryTrack implements Repository {
 
     @Override
     public void commit() {
+        if (repository == null) {
+            throw new UnsupportedOperationException();
+        }
 
-        synchronized (repository) {
+        synchronized (lock) {
             applyCacheDetailsChanges();
 
             repository.updateBatch(cacheAccounts, cacheDetails);
@@ -355,7 +376,7 @@ public class RepositoryTrack implements Repository {
     }
 
     public void applyCacheDetailsChanges(){
-        synchronized (repository) {
+        synchronized (lock) {
             for (ContractDetails contractDetails : cacheDetails.values()) {
 
                 ContractDetailsCacheImpl contractDetailsCache = (ContractDetailsCacheImpl) contractDetails;
@@ -400,7 +421,7 @@ public class RepositoryTrack implements Repository {
     public void updateBatch(Map<RskAddress, AccountState> accountStates,
                             Map<RskAddress, ContractDetails> contractDetails) {
 
-        synchronized (repository) {
+        synchronized (lock) {
             for (Map.Entry<RskAddress, AccountState> entry : accountStates.entrySet()) {
                 cacheAccounts.put(entry.getKey(), entry.getValue());
             }
@@ -444,6 +465,10 @@ public class RepositoryTrack implements Repository {
     }
 
     public Repository getOriginRepository() {
+        if (repository == null) {
+            return this;
+        }
+
         return (repository instanceof RepositoryTrack)
                 ? ((RepositoryTrack) repository).getOriginRepository()
                 : repository;
@@ -456,7 +481,7 @@ public class RepositoryTrack implements Repository {
 
     @Override
     public void updateContractDetails(RskAddress addr, ContractDetails contractDetails) {
-        synchronized (repository) {
+        synchronized (lock) {
             logger.trace("updateContractDetails: [{}]", addr);
             ContractDetails contractDetailsCache = new ContractDetailsCacheImpl(null);
             contractDetails.setDirty(true);
@@ -466,7 +491,7 @@ public class RepositoryTrack implements Repository {
 
     @Override
     public void updateAccountState(RskAddress addr, AccountState accountState) {
-        synchronized (repository) {
+        synchronized (lock) {
             logger.trace("updateAccountState: [{}]", addr);
             cacheAccounts.put(addr, accountState);
         }
@@ -103,6 +103,24 @@ public class AddressesTopicsFilter {
         return true;
     }
 
+    /**
+     * Gets the blooms to match, a conjunction of disjunctions
+     */
+    public Bloom[][] getFilterBlooms() {
+        return filterBlooms;
+    }
+
+    RskAddress[] getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Gets the topics to match in the first position, or null if any topic matches
+     */
+    Topic[] getFirstTopics() {
+        return topics.isEmpty() || topics.get(0).length == 0 ? null : topics.get(0);
+    }
+
     boolean matchesContractAddress(RskAddress toAddr) {
         for (RskAddress address : addresses) {
             if (address.equals(toAddr)) {
@@ -24,31 +24,38 @@ import org.ethereum.core.TransactionReceipt;
 import org.ethereum.facade.Ethereum;
 import org.ethereum.listener.EthereumListenerAdapter;
 
-import javax.annotation.concurrent.GuardedBy;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by ajlopez on 17/01/2018.
+ *
+ * The filters are kept in concurrent structures, so the registration, polling and dispatch
+ * of events don't wait for each other. The log filters receiving new blocks are indexed,
+ * and the logs of a block are routed only to the filters that could match them.
  */
 public class FilterManager {
     private static final long filterTimeout = 5 * 60 * 1000L; // 5 minutes in milliseconds
     private static final long filterCleanupPeriod = 1 * 60 * 1000L; // 1 minute in milliseconds
 
-    private long latestFilterCleanup = System.currentTimeMillis();
-
-    private final Object filterLock = new Object();
+    private final AtomicLong latestFilterCleanup = new AtomicLong(System.currentTimeMillis());
 
     private AtomicInteger filterCounter = new AtomicInteger(1);
 
-    @GuardedBy("filterLock")
-    private Map<Integer, Filter> installedFilters = new HashMap<>();
+    private final Map<Integer, Filter> installedFilters = new ConcurrentHashMap<>();
+
+    // the filters receiving every event, that are not in the log filter index
+    private final Set<Filter> eventFilters = ConcurrentHashMap.newKeySet();
+
+    private final LogFilterIndex logFilterIndex = new LogFilterIndex();
 
     public FilterManager(Ethereum eth) {
         eth.addListener(new EthereumListenerAdapter() {
             @Override
             public void onBlock(Block block, List<TransactionReceipt> receipts) {
-                newBlockReceived(block);
+                newBlockReceived(block, receipts);
             }
 
             @Override
@@ -59,67 +66,94 @@ public class FilterManager {
     }
 
     public int registerFilter(Filter filter) {
-        synchronized (filterLock) {
-            filtersCleanup();
+        filtersCleanup();
 
-            int id = filterCounter.getAndIncrement();
-            installedFilters.put(id, filter);
+        int id = filterCounter.getAndIncrement();
+        installedFilters.put(id, filter);
 
-            return id;
+        if (isIndexed(filter)) {
+            logFilterIndex.add((LogFilter) filter);
+        } else {
+            eventFilters.add(filter);
         }
+
+        return id;
     }
 
     public boolean removeFilter(int id) {
-        synchronized (filterLock) {
-            return installedFilters.remove(id) != null;
+        Filter filter = installedFilters.remove(id);
+
+        if (filter == null) {
+            return false;
         }
+
+        if (isIndexed(filter)) {
+            logFilterIndex.remove((LogFilter) filter);
+        } else {
+            eventFilters.remove(filter);
+        }
+
+        return true;
     }
 
     public Object[] getFilterEvents(int id, boolean newevents) {
-        synchronized (filterLock) {
-            filtersCleanup();
+        filtersCleanup();
 
-            Filter filter = installedFilters.get(id);
+        Filter filter = installedFilters.get(id);
 
-            if (filter == null) {
-                return null;
-            }
+        if (filter == null) {
+            return null;
+        }
 
-            if (newevents) {
-                return filter.getNewEvents();
-            }
-            else {
-                return filter.getEvents();
-            }
+        if (newevents) {
+            return filter.getNewEvents();
+        }
+        else {
+            return filter.getEvents();
         }
     }
 
     public void newBlockReceived(Block block) {
-        synchronized (filterLock) {
-            filtersCleanup();
+        newBlockReceived(block, null);
+    }
 
+    /**
+     * @param receipts  the receipts of the block transactions, or null to get them by each log filter
+     */
+    public void newBlockReceived(Block block, List<TransactionReceipt> receipts) {
+        filtersCleanup();
+
+        if (receipts == null || receipts.size() != block.getTransactionsList().size()) {
             for (Filter filter : installedFilters.values()) {
                 filter.newBlockReceived(block);
             }
+
+            return;
         }
+
+        for (Filter filter : eventFilters) {
+            filter.newBlockReceived(block);
+        }
+
+        logFilterIndex.newBlockReceived(block, receipts);
     }
 
     public void newPendingTx(List<Transaction> transactions) {
-        synchronized (filterLock) {
-            filtersCleanup();
+        filtersCleanup();
 
-            for (Filter filter : installedFilters.values()) {
-                for (Transaction tx : transactions) {
-                    filter.newPendingTx(tx);
-                }
+        for (Filter filter : eventFilters) {
+            for (Transaction tx : transactions) {
+                filter.newPendingTx(tx);
             }
         }
     }
 
     private void filtersCleanup() {
         long now = System.currentTimeMillis();
+        long latest = latestFilterCleanup.get();
 
-        if (latestFilterCleanup + filterCleanupPeriod > now) {
+        // a single thread cleans up the filters of each period
+        if (latest + filterCleanupPeriod > now || !latestFilterCleanup.compareAndSet(latest, now)) {
             return;
         }
 
@@ -134,9 +168,11 @@ public class FilterManager {
         }
 
         for (Integer id : toremove) {
-            installedFilters.remove(id);
+            removeFilter(id);
         }
+    }
 
-        latestFilterCleanup = now;
+    private static boolean isIndexed(Filter filter) {
+        return filter instanceof LogFilter && ((LogFilter) filter).receivesNewBlocks();
     }
 }
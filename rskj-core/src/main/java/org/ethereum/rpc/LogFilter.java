@@ -19,11 +19,13 @@
 package org.ethereum.rpc;
 
 import co.rsk.core.RskAddress;
+import co.rsk.db.BloomBitsIndex;
 import org.ethereum.core.*;
 import org.ethereum.db.TransactionInfo;
 import org.ethereum.vm.LogInfo;
 
 import java.util.Collection;
+import java.util.List;
 
 import static org.ethereum.rpc.TypeConverter.stringHexToByteArray;
 
@@ -57,13 +59,34 @@ public class LogFilter extends Filter {
     }
 
     void onLogMatch(LogInfo logInfo, Block b, int txIndex, Transaction tx, int logIdx) {
-        add(new LogFilterEvent(new LogFilterElement(logInfo, b, txIndex, tx, logIdx)));
+        onLogMatch(new LogFilterElement(logInfo, b, txIndex, tx, logIdx));
+    }
+
+    void onLogMatch(LogFilterElement element) {
+        add(new LogFilterEvent(element));
+    }
+
+    AddressesTopicsFilter getAddressesTopicsFilter() {
+        return addressesTopicsFilter;
+    }
+
+    boolean isFromLatestBlock() {
+        return fromLatestBlock;
+    }
+
+    /**
+     * Returns true if the filter receives the logs of the new blocks
+     */
+    boolean receivesNewBlocks() {
+        return fromLatestBlock || toLatestBlock;
     }
 
     void onTransaction(Transaction tx, Block b, int txIndex) {
         TransactionInfo txInfo = blockchain.getTransactionInfo(tx.getHash().getBytes());
-        TransactionReceipt receipt = txInfo.getReceipt();
+        onTransactionReceipt(txInfo.getReceipt(), b, txIndex);
+    }
 
+    private void onTransactionReceipt(TransactionReceipt receipt, Block b, int txIndex) {
         LogFilterElement[] logs = new LogFilterElement[receipt.getLogInfoList().size()];
 
         for (int i = 0; i < logs.length; i++) {
@@ -77,10 +100,16 @@ public class LogFilter extends Filter {
 
     void onBlock(Block b) {
         if (addressesTopicsFilter.matchBloom(new Bloom(b.getLogBloom()))) {
+            List<TransactionReceipt> receipts = blockchain.getBlockReceipts(b);
             int txIdx = 0;
 
             for (Transaction tx : b.getTransactionsList()) {
-                onTransaction(tx, b, txIdx);
+                if (receipts != null) {
+                    onTransactionReceipt(receipts.get(txIdx), b, txIdx);
+                } else {
+                    onTransaction(tx, b, txIdx);
+                }
+
                 txIdx++;
             }
         }
@@ -103,6 +132,39 @@ public class LogFilter extends Filter {
     }
 
     public static LogFilter fromFilterRequest(Web3.FilterRequest fr, Blockchain blockchain) throws Exception {
+        return fromFilterRequest(fr, blockchain, null);
+    }
+
+    public static LogFilter fromFilterRequest(Web3.FilterRequest fr, Blockchain blockchain, BloomBitsIndex bloomBitsIndex) throws Exception {
+        AddressesTopicsFilter addressesTopicsFilter = createAddressesTopicsFilter(fr);
+
+        // TODO review pending transaction processing
+        // when fromBlock and/or toBlock are "pending"
+
+        // Default from block value
+        if (fr.fromBlock == null) {
+            fr.fromBlock = "latest";
+        }
+
+        // Default to block value
+        if (fr.toBlock == null) {
+            fr.toBlock = "latest";
+        }
+
+        boolean fromLatestBlock = "latest".equalsIgnoreCase(fr.fromBlock);
+        boolean toLatestBlock = "latest".equalsIgnoreCase(fr.toBlock);
+
+        LogFilter filter = new LogFilter(addressesTopicsFilter, blockchain, fromLatestBlock, toLatestBlock);
+
+        retrieveHistoricalData(fr, blockchain, bloomBitsIndex, filter);
+
+        return filter;
+    }
+
+    /**
+     * Creates the filter of the addresses and topics of a filter request, ignoring its blocks
+     */
+    public static AddressesTopicsFilter createAddressesTopicsFilter(Web3.FilterRequest fr) {
         RskAddress[] addresses;
 
         // TODO get array of topics, with topics, and array of topics inside (the OR operation over topics)
@@ -146,32 +208,10 @@ public class LogFilter extends Filter {
             topics = null;
         }
 
-        AddressesTopicsFilter addressesTopicsFilter = new AddressesTopicsFilter(addresses, topics);
-
-        // TODO review pending transaction processing
-        // when fromBlock and/or toBlock are "pending"
-
-        // Default from block value
-        if (fr.fromBlock == null) {
-            fr.fromBlock = "latest";
-        }
-
-        // Default to block value
-        if (fr.toBlock == null) {
-            fr.toBlock = "latest";
-        }
-
-        boolean fromLatestBlock = "latest".equalsIgnoreCase(fr.fromBlock);
-        boolean toLatestBlock = "latest".equalsIgnoreCase(fr.toBlock);
-
-        LogFilter filter = new LogFilter(addressesTopicsFilter, blockchain, fromLatestBlock, toLatestBlock);
-
-        retrieveHistoricalData(fr, blockchain, filter);
-
-        return filter;
+        return new AddressesTopicsFilter(addresses, topics);
     }
 
-    private static void retrieveHistoricalData(Web3.FilterRequest fr, Blockchain blockchain, LogFilter filter) throws Exception {
+    private static void retrieveHistoricalData(Web3.FilterRequest fr, Blockchain blockchain, BloomBitsIndex bloomBitsIndex, LogFilter filter) throws Exception {
         Block blockFrom = isBlockWord(fr.fromBlock) ? null : Web3Impl.getBlockByNumberOrStr(fr.fromBlock, blockchain);
         Block blockTo = isBlockWord(fr.toBlock) ? null : Web3Impl.getBlockByNumberOrStr(fr.toBlock, blockchain);
 
@@ -183,8 +223,16 @@ public class LogFilter extends Filter {
             // need to add historical data
             blockTo = blockTo == null ? blockchain.getBestBlock() : blockTo;
 
-            for (long blockNum = blockFrom.getNumber(); blockNum <= blockTo.getNumber(); blockNum++) {
-                filter.onBlock(blockchain.getBlockByNumber(blockNum));
+            if (bloomBitsIndex != null) {
+                List<Long> candidates = bloomBitsIndex.getCandidateBlocks(filter.addressesTopicsFilter.getFilterBlooms(), blockFrom.getNumber(), blockTo.getNumber(), blockchain);
+
+                for (long blockNum : candidates) {
+                    filter.onBlock(blockchain.getBlockByNumber(blockNum));
+                }
+            } else {
+                for (long blockNum = blockFrom.getNumber(); blockNum <= blockTo.getNumber(); blockNum++) {
+                    filter.onBlock(blockchain.getBlockByNumber(blockNum));
+                }
             }
         }
         else if ("latest".equalsIgnoreCase(fr.fromBlock)) {
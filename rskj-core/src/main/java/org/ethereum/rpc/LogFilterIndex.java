@@ -0,0 +1,163 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.rpc;
+
+import co.rsk.core.RskAddress;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LogFilterIndex routes the logs of the new blocks to the log filters that could match them.
+ *
+ * A filter is indexed by its addresses, or else by its first position topics, since a matching log
+ * has one of them. The filters matching any address and topic are candidates for every log.
+ * The logs of a block are read once from its receipts, and each matched log is shared by its filters.
+ */
+class LogFilterIndex {
+    private final Map<RskAddress, Set<LogFilter>> byAddress = new ConcurrentHashMap<>();
+    private final Map<Topic, Set<LogFilter>> byFirstTopic = new ConcurrentHashMap<>();
+    private final Set<LogFilter> unindexed = ConcurrentHashMap.newKeySet();
+    private final Set<LogFilter> fromLatestBlock = ConcurrentHashMap.newKeySet();
+
+    void add(LogFilter filter) {
+        AddressesTopicsFilter addressesTopicsFilter = filter.getAddressesTopicsFilter();
+        RskAddress[] addresses = addressesTopicsFilter.getAddresses();
+        Topic[] topics = addressesTopicsFilter.getFirstTopics();
+
+        if (addresses.length > 0) {
+            for (RskAddress address : addresses) {
+                add(byAddress, address, filter);
+            }
+        } else if (topics != null) {
+            for (Topic topic : topics) {
+                add(byFirstTopic, topic, filter);
+            }
+        } else {
+            unindexed.add(filter);
+        }
+
+        if (filter.isFromLatestBlock()) {
+            fromLatestBlock.add(filter);
+        }
+    }
+
+    void remove(LogFilter filter) {
+        AddressesTopicsFilter addressesTopicsFilter = filter.getAddressesTopicsFilter();
+        Topic[] topics = addressesTopicsFilter.getFirstTopics();
+
+        for (RskAddress address : addressesTopicsFilter.getAddresses()) {
+            remove(byAddress, address, filter);
+        }
+
+        if (topics != null) {
+            for (Topic topic : topics) {
+                remove(byFirstTopic, topic, filter);
+            }
+        }
+
+        unindexed.remove(filter);
+        fromLatestBlock.remove(filter);
+    }
+
+    void newBlockReceived(Block block, List<TransactionReceipt> receipts) {
+        // the filters from the latest block only keep its logs
+        for (LogFilter filter : fromLatestBlock) {
+            filter.clearEvents();
+        }
+
+        List<Transaction> transactions = block.getTransactionsList();
+
+        for (int txIndex = 0; txIndex < receipts.size() && txIndex < transactions.size(); txIndex++) {
+            List<LogInfo> logInfos = receipts.get(txIndex).getLogInfoList();
+
+            for (int logIndex = 0; logIndex < logInfos.size(); logIndex++) {
+                LogInfo logInfo = logInfos.get(logIndex);
+                LogMatch match = new LogMatch(logInfo, block, txIndex, transactions.get(txIndex), logIndex);
+                List<DataWord> topics = logInfo.getTopics();
+
+                match.dispatch(byAddress.get(new RskAddress(logInfo.getAddress())));
+
+                if (!topics.isEmpty()) {
+                    match.dispatch(byFirstTopic.get(new Topic(topics.get(0).getData())));
+                }
+
+                match.dispatch(unindexed);
+            }
+        }
+    }
+
+    private static <K> void add(Map<K, Set<LogFilter>> index, K key, LogFilter filter) {
+        index.compute(key, (k, filters) -> {
+            Set<LogFilter> result = filters == null ? ConcurrentHashMap.newKeySet() : filters;
+            result.add(filter);
+            return result;
+        });
+    }
+
+    private static <K> void remove(Map<K, Set<LogFilter>> index, K key, LogFilter filter) {
+        index.computeIfPresent(key, (k, filters) -> {
+            filters.remove(filter);
+            return filters.isEmpty() ? null : filters;
+        });
+    }
+
+    private static class LogMatch {
+        private final LogInfo logInfo;
+        private final Block block;
+        private final int txIndex;
+        private final Transaction tx;
+        private final int logIndex;
+        private LogFilterElement element;
+
+        LogMatch(LogInfo logInfo, Block block, int txIndex, Transaction tx, int logIndex) {
+            this.logInfo = logInfo;
+            this.block = block;
+            this.txIndex = txIndex;
+            this.tx = tx;
+            this.logIndex = logIndex;
+        }
+
+        void dispatch(Set<LogFilter> candidates) {
+            if (candidates == null) {
+                return;
+            }
+
+            for (LogFilter filter : candidates) {
+                if (!filter.getAddressesTopicsFilter().matchesExactly(logInfo)) {
+                    continue;
+                }
+
+                if (element == null) {
+                    element = new LogFilterElement(logInfo, block, txIndex, tx, logIndex);
+                }
+
+                filter.onLogMatch(element);
+            }
+        }
+    }
+}
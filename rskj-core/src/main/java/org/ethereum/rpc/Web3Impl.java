@@ -23,6 +23,7 @@ import co.rsk.core.Coin;
 import co.rsk.core.RskAddress;
 import co.rsk.core.SnapshotManager;
 import co.rsk.crypto.Keccak256;
+import co.rsk.db.BloomBitsIndex;
 import co.rsk.metrics.HashRateCalculator;
 import co.rsk.mine.MinerClient;
 import co.rsk.mine.MinerManager;
@@ -44,6 +45,7 @@ import org.ethereum.db.BlockStore;
 import org.ethereum.db.ReceiptStore;
 import org.ethereum.db.TransactionInfo;
 import org.ethereum.facade.Ethereum;
+import org.ethereum.listener.EthereumListenerAdapter;
 import org.ethereum.net.client.Capability;
 import org.ethereum.net.client.ConfigCapabilities;
 import org.ethereum.net.server.Channel;
@@ -97,6 +99,7 @@ public class Web3Impl implements Web3 {
     private final RskSystemProperties config;
 
     private final FilterManager filterManager;
+    private final BloomBitsIndex bloomBitsIndex;
     private final SnapshotManager snapshotManager;
 
     private final PersonalModule personalModule;
@@ -125,7 +128,8 @@ public class Web3Impl implements Web3 {
             PeerServer peerServer,
             BlockProcessor nodeBlockProcessor,
             HashRateCalculator hashRateCalculator,
-            ConfigCapabilities configCapabilities) {
+            ConfigCapabilities configCapabilities,
+            BloomBitsIndex bloomBitsIndex) {
         this.eth = eth;
         this.blockchain = blockchain;
         this.blockStore = blockStore;
@@ -146,7 +150,17 @@ public class Web3Impl implements Web3 {
         this.hashRateCalculator = hashRateCalculator;
         this.configCapabilities = configCapabilities;
         this.config = config;
+        this.bloomBitsIndex = bloomBitsIndex;
         filterManager = new FilterManager(eth);
+
+        if (bloomBitsIndex != null) {
+            eth.addListener(new EthereumListenerAdapter() {
+                @Override
+                public void onBlock(Block block, List<TransactionReceipt> receipts) {
+                    bloomBitsIndex.onBestBlock(blockchain.getBestBlock(), blockchain);
+                }
+            });
+        }
         snapshotManager = new SnapshotManager(blockchain, transactionPool);
         initialBlockNumber = this.blockchain.getBestBlock().getNumber();
 
@@ -861,7 +875,7 @@ public class Web3Impl implements Web3 {
         String str = null;
 
         try {
-            Filter filter = LogFilter.fromFilterRequest(fr, blockchain);
+            Filter filter = LogFilter.fromFilterRequest(fr, blockchain, bloomBitsIndex);
             int id = filterManager.registerFilter(filter);
 
             return str = toJsonHex(id);
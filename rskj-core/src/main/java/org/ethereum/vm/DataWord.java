@@ -370,96 +370,49 @@ public final class DataWord implements Comparable<DataWord> {
         this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
     }
 
-    // TODO: mul can be done in more efficient way
-    // TODO:     with shift left shift right trick
-    // TODO      without BigInteger quick hack
     public void mul(DataWord word) {
-        BigInteger result = value().multiply(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        assignWord(new Word256(data).mul(new Word256(word.data)));
     }
 
-    // TODO: improve with no BigInteger
     public void div(DataWord word) {
-
-        if (word.isZero()) {
-            this.and(ZERO);
-            return;
-        }
-
-        BigInteger result = value().divide(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        assignWord(new Word256(data).div(new Word256(word.data)));
     }
 
-    // TODO: improve with no BigInteger
     public void sDiv(DataWord word) {
-
-        if (word.isZero()) {
-            this.and(ZERO);
-            return;
-        }
-
-        BigInteger result = sValue().divide(word.sValue());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        assignWord(new Word256(data).sDiv(new Word256(word.data)));
     }
 
-
-    // TODO: improve with no BigInteger
     public void sub(DataWord word) {
-        BigInteger result = value().subtract(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        assignWord(new Word256(data).sub(new Word256(word.data)));
     }
 
-    // TODO: improve with no BigInteger
     public void exp(DataWord word) {
-        BigInteger result = value().modPow(word.value(), _2_256);
-        this.data = ByteUtil.copyToArray(result);
+        assignWord(new Word256(data).exp(new Word256(word.data)));
     }
 
-    // TODO: improve with no BigInteger
     public void mod(DataWord word) {
-
-        if (word.isZero()) {
-            this.and(ZERO);
-            return;
-        }
-
-        BigInteger result = value().mod(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        assignWord(new Word256(data).mod(new Word256(word.data)));
     }
 
     public void sMod(DataWord word) {
-
-        if (word.isZero()) {
-            this.and(ZERO);
-            return;
-        }
-
-        BigInteger result = sValue().abs().mod(word.sValue().abs());
-        result = (sValue().signum() == -1) ? result.negate() : result;
-
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        assignWord(new Word256(data).sMod(new Word256(word.data)));
     }
 
     public void addmod(DataWord word1, DataWord word2) {
-        if (word1.data[0] != 0 || data[0] != 0) {
-            // overflow possible: slower path
-            this.mod(word2);
-            word1 = word1.clone();
-            word1.mod(word2);
-        }
-        this.add(word1);
-        this.mod(word2);
+        assignWord(new Word256(data).addMod(new Word256(word1.data), new Word256(word2.data)));
     }
 
     public void mulmod(DataWord word1, DataWord word2) {
+        assignWord(new Word256(data).mulMod(new Word256(word1.data), new Word256(word2.data)));
+    }
 
-        if (word2.isZero()) {
-            this.data = new byte[32];
-            return;
+    // the words are computed in place, except the empty ones
+    private void assignWord(Word256 word) {
+        if (data.length != 32) {
+            data = new byte[32];
         }
 
-        BigInteger result = value().multiply(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        word.store(data);
     }
 
     @JsonValue
@@ -534,11 +487,24 @@ public final class DataWord implements Comparable<DataWord> {
         }
     }
 
+    /**
+     * Compares the words as two's complement signed numbers
+     */
+    public int sCompareTo(DataWord o) {
+        boolean negative = isNegative();
+
+        if (negative != o.isNegative()) {
+            return negative ? -1 : 1;
+        }
+
+        return compareTo(o);
+    }
+
     public void signExtend(byte k) {
         if (0 > k || k > 31) {
             throw new IndexOutOfBoundsException();
         }
-        byte mask = this.sValue().testBit((k * 8) + 7) ? (byte) 0xff : 0;
+        byte mask = this.data[31 - k] < 0 ? (byte) 0xff : 0;
         for (int i = 31; i > k; i--) {
             this.data[31 - i] = mask;
         }
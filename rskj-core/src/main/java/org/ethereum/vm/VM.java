@@ -24,6 +24,7 @@ import co.rsk.core.RskAddress;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.db.ContractDetails;
 import org.ethereum.vm.MessageCall.MsgType;
+import org.ethereum.vm.program.DecodedCode;
 import org.ethereum.vm.program.Program;
 import org.ethereum.vm.program.Stack;
 import org.slf4j.Logger;
@@ -102,6 +103,7 @@ public class VM {
     private long gasCost;
     private long gasBefore; // only for tracing
     private boolean isLogEnabled;
+    private boolean blockGasSpent; // the gas of the instructions was spent by their block
 
     public VM(VmConfig vmConfig, PrecompiledContracts precompiledContracts) {
         this.vmConfig = vmConfig;
@@ -185,7 +187,7 @@ public class VM {
     }
 
     protected void spendOpCodeGas() {
-        if (!computeGas) {
+        if (!computeGas || blockGasSpent) {
             return;
         }
         program.spendGas(gasCost, op.name());
@@ -371,7 +373,6 @@ public class VM {
     protected void doLT() {
         spendOpCodeGas();
         // EXECUTION PHASE
-        // TODO: can be improved by not using BigInteger
         DataWord word1 = program.stackPop();
         DataWord word2 = program.stackPop();
 
@@ -379,7 +380,6 @@ public class VM {
             hint = word1.value() + " < " + word2.value();
         }
 
-        // TODO: We should compare the performance of BigInteger comparison with DataWord comparison:
         if (word1.compareTo(word2) < 0) {
             word1.setTrue();
         } else {
@@ -393,7 +393,6 @@ public class VM {
     protected void doSLT() {
         spendOpCodeGas();
         // EXECUTION PHASE
-        // TODO: can be improved by not using BigInteger
         DataWord word1 = program.stackPop();
         DataWord word2 = program.stackPop();
 
@@ -401,7 +400,7 @@ public class VM {
             hint = word1.sValue() + " < " + word2.sValue();
         }
 
-        if (word1.sValue().compareTo(word2.sValue()) < 0) {
+        if (word1.sCompareTo(word2) < 0) {
             word1.setTrue();
         } else {
             word1.zero();
@@ -414,7 +413,6 @@ public class VM {
     protected void doSGT() {
         spendOpCodeGas();
         // EXECUTION PHASE
-        // TODO: can be improved by not using BigInteger
         DataWord word1 = program.stackPop();
         DataWord word2 = program.stackPop();
 
@@ -422,7 +420,7 @@ public class VM {
             hint = word1.sValue() + " > " + word2.sValue();
         }
 
-        if (word1.sValue().compareTo(word2.sValue()) > 0) {
+        if (word1.sCompareTo(word2) > 0) {
             word1.setTrue();
         } else {
             word1.zero();
@@ -436,7 +434,6 @@ public class VM {
     protected void doGT() {
         spendOpCodeGas();
         // EXECUTION PHASE
-        // TODO: can be improved by not using BigInteger
         DataWord word1 = program.stackPop();
         DataWord word2 = program.stackPop();
 
@@ -444,7 +441,7 @@ public class VM {
             hint = word1.value() + " > " + word2.value();
         }
 
-        if (word1.value().compareTo(word2.value()) > 0) {
+        if (word1.compareTo(word2) > 0) {
             word1.setTrue();
         } else {
             word1.zero();
@@ -836,38 +833,13 @@ public class VM {
         int codeOffset = codeOffsetDW.intValueSafe(); // where to start reading
         int lengthData = lengthDataDW.intValueSafe(); // amount of bytes to copy
 
-        int sizeToBeCopied;
-        if ((long) codeOffset + lengthData > fullCode.length) {
-            // if user wants to read more info from code what actual code has then..
-            // if all code that users wants lies after code has ended..
-            if (codeOffset >=fullCode.length) {
-                sizeToBeCopied=0; // do not copy anything
-            } else {
-                sizeToBeCopied = fullCode.length - codeOffset; // copy only the remaining
-            }
-
-        } else
-           // Code is longer, so limit by user length value
-        {
-            sizeToBeCopied =lengthData;
-        }
-
-        // The part not copied must be filled with zeros, so here we allocate
-        // enough space to contain filling also.
-        byte[] codeCopy = new byte[lengthData];
-
-        if (codeOffset < fullCode.length) {
-            System.arraycopy(fullCode, codeOffset, codeCopy, 0, sizeToBeCopied);
-        }
+        // The part not copied is filled with zeros
+        program.memoryCopy(memOffset, fullCode, codeOffset, lengthData);
 
         if (isLogEnabled) {
-            hint = "code: " + Hex.toHexString(codeCopy);
+            hint = "code: " + Hex.toHexString(program.memoryChunk(memOffset, lengthData));
         }
 
-        // TODO: an optimization to avoid double-copying would be to override programSave
-        // to receive a byte[] buffer and a length, and to create another method memoryZero(offset,length)
-        // to fill the gap.
-        program.memorySave(memOffset, codeCopy);
         program.disposeWord(memOffsetDW);
         program.disposeWord(codeOffsetDW);
         program.disposeWord(lengthDataDW);
@@ -895,19 +867,17 @@ public class VM {
         DataWord dataOffsetData = program.stackPop();
         DataWord lengthData = program.stackPop();
 
-        byte[] msgData = program.getReturnDataBufferData(dataOffsetData, lengthData)
-                .orElseThrow(() -> {
-                    long returnDataSize = program.getReturnDataBufferSize().longValueSafe();
-                    return new RuntimeException(String.format(
-                            "Illegal RETURNDATACOPY arguments: offset (%s) + size (%s) > RETURNDATASIZE (%d)",
-                            dataOffsetData, lengthData, returnDataSize));
-                });
+        if (!program.memorySaveReturnData(memOffsetData.intValueSafe(), dataOffsetData, lengthData)) {
+            long returnDataSize = program.getReturnDataBufferSize().longValueSafe();
+            throw new RuntimeException(String.format(
+                    "Illegal RETURNDATACOPY arguments: offset (%s) + size (%s) > RETURNDATASIZE (%d)",
+                    dataOffsetData, lengthData, returnDataSize));
+        }
 
         if (isLogEnabled) {
-            hint = "data: " + Hex.toHexString(msgData);
+            hint = "data: " + Hex.toHexString(program.memoryChunk(memOffsetData.intValueSafe(), lengthData.intValueSafe()));
         }
 
-        program.memorySave(memOffsetData.intValueSafe(), msgData);
         program.step();
     }
 
@@ -1138,14 +1108,14 @@ public class VM {
         }
         // EXECUTION PHASE
         DataWord addr = program.stackPop();
-        DataWord data = program.memoryLoad(addr);
+        // the popped address word is reused for the loaded data
+        DataWord data = program.memoryLoad(addr, addr);
 
         if (isLogEnabled) {
             hint = "data: " + data;
         }
 
         program.stackPush(data);
-        program.disposeWord(addr);
         program.step();
     }
 
@@ -1183,9 +1153,7 @@ public class VM {
         // EXECUTION PHASE
         DataWord addr = program.stackPop();
         DataWord value = program.stackPop();
-        byte[] byteVal = {value.getData()[31]};
-        //TODO: non-standard single byte memory storage, this should be documented
-        program.memorySave(addr.intValue(), byteVal);
+        program.memorySaveByte(addr.intValue(), value.getData()[31]);
         program.disposeWord(addr);
         program.disposeWord(value);
         program.step();
@@ -1872,59 +1840,132 @@ public class VM {
                     break;
                 }
 
-                if (vmConfig.vmTrace()) {
-                    program.saveOpTrace();
-                }
+                executeStep();
+            } // for
+        } catch (RuntimeException e) {
+                halt(e);
+                throw e;
+        } finally {
+            if (isLogEnabled) // this must be prevented because it's slow!
+            {
+                program.fullTrace();
+            }
+        }
+    }
 
-                op = OpCode.code(program.getCurrentOp());
+    private void executeStep() {
+        if (vmConfig.vmTrace()) {
+            program.saveOpTrace();
+        }
 
-                checkOpcode();
-                program.setLastOp(op.val());
-                program.verifyStackSize(op.require());
-                program.verifyStackOverflow(op.require(), op.ret()); //Check not exceeding stack limits
+        op = OpCode.code(program.getCurrentOp());
 
-                //TODO: There is no need to compute oldMemSize for arithmetic opcodes.
-                //But this three initializations and memory computations could be done
-                //in opcodes requiring memory access only.
-                oldMemSize = program.getMemSize();
+        checkOpcode();
+        program.setLastOp(op.val());
+        program.verifyStackSize(op.require());
+        program.verifyStackOverflow(op.require(), op.ret()); //Check not exceeding stack limits
 
+        //TODO: There is no need to compute oldMemSize for arithmetic opcodes.
+        //But this three initializations and memory computations could be done
+        //in opcodes requiring memory access only.
+        oldMemSize = program.getMemSize();
 
-                if (isLogEnabled) {
-                    hint = "";
-                }
 
-                gasCost = op.getTier().asInt();
+        if (isLogEnabled) {
+            hint = "";
+        }
 
-                if (vmConfig.dumpBlock() >= 0) {
-                    gasBefore = program.getRemainingGas();
-                    memWords = 0; // parameters for logging
-                }
+        gasCost = op.getTier().asInt();
+
+        if (vmConfig.dumpBlock() >= 0) {
+            gasBefore = program.getRemainingGas();
+            memWords = 0; // parameters for logging
+        }
+
+        // Log debugging line for VM
+        if (vmConfig.dumpBlock() >= 0 && program.getNumber().intValue() == vmConfig.dumpBlock()) {
+            this.dumpLine(op, gasBefore, gasCost , memWords, program);
+        }
+
+        if (vmHook != null) {
+            vmHook.step(program, op);
+        }
+        executeOpcode();
+        program.setPreviouslyExecutedOp(op.val());
+        logOpCode();
+        vmCounter++;
+    }
+
+    private void halt(RuntimeException e) {
+        logger.error("VM halted", e);
+        program.spendAllGas();
+        program.resetFutureRefund();
+        program.stop();
+    }
+
+    /**
+     * Runs the program on its decoded code: each block is entered checking its stack and spending
+     * its gas at once, and its instructions run without further checks.
+     * When a block can't be entered, because of the stack or the gas, it runs step by step instead,
+     * so the program fails at the same instruction and with the same result.
+     * The instructions out of the blocks run step by step.
+     */
+    private void playDecoded(Program aprogram) {
+        program = aprogram;
+        stack = program.getStack();
+
+        DecodedCode code = program.getDecodedCode();
 
-                // Log debugging line for VM
-                if (vmConfig.dumpBlock() >= 0 && program.getNumber().intValue() == vmConfig.dumpBlock()) {
-                    this.dumpLine(op, gasBefore, gasCost , memWords, program);
+        try {
+            while (!program.isStopped()) {
+                int block = code.getBlockAt(program.getPC());
+
+                if (block < 0 || !executeBlock(code, block)) {
+                    executeStep();
                 }
+            }
+        } catch (RuntimeException e) {
+            halt(e);
+            throw e;
+        }
+    }
 
-                if (vmHook != null) {
-                    vmHook.step(program, op);
+    private boolean executeBlock(DecodedCode code, int block) {
+        int stackSize = stack.size();
+        long blockGas = code.getBlockGas(block);
+
+        if (stackSize < code.getBlockRequiredStack(block)
+                || stackSize + code.getBlockMaxStackGrowth(block) > Stack.CAPACITY
+                || program.getRemainingGas() < blockGas) {
+            return false;
+        }
+
+        program.spendGas(blockGas, "BLOCK");
+
+        blockGasSpent = true;
+
+        try {
+            for (int k = code.getBlockFirst(block), last = code.getBlockLast(block); k <= last; k++) {
+                op = code.getOp(k);
+                program.setLastOp(op.val());
+
+                DataWord pushWord = code.getPushWord(k);
+
+                if (pushWord != null) {
+                    program.stackPush(program.newDataWord(pushWord));
+                    program.setPC(code.getPc(k) + op.val() - OpCode.PUSH1.val() + 2);
+                } else {
+                    executeOpcode();
                 }
-                executeOpcode();
+
                 program.setPreviouslyExecutedOp(op.val());
-                logOpCode();
                 vmCounter++;
-            } // for
-        } catch (RuntimeException e) {
-                logger.error("VM halted", e);
-                program.spendAllGas();
-                program.resetFutureRefund();
-                program.stop();
-                throw e;
-        } finally {
-            if (isLogEnabled) // this must be prevented because it's slow!
-            {
-                program.fullTrace();
             }
+        } finally {
+            blockGasSpent = false;
         }
+
+        return true;
     }
 
     public void initDebugData() {
@@ -1939,7 +1980,12 @@ public class VM {
             }
 
             initDebugData();
-            this.steps(program,Long.MAX_VALUE);
+
+            if (canPlayDecoded(program)) {
+                this.playDecoded(program);
+            } else {
+                this.steps(program, Long.MAX_VALUE);
+            }
 
             if (vmHook != null) {
                 vmHook.stopPlay(program);
@@ -1957,6 +2003,13 @@ public class VM {
         VM.vmHook = vmHook;
     }
 
+    // the decoded code skips the per instruction logs, traces and gas logs,
+    // and the codes run once, as the init codes, are not worth decoding
+    private boolean canPlayDecoded(Program program) {
+        return vmConfig.decodedCode() && !isLogEnabled && !vmConfig.vmTrace() && vmConfig.dumpBlock() < 0
+                && vmHook == null && !program.isGasLogEnabled() && program.hasSharedCodeAnalysis();
+    }
+
     /**
      * Utility to calculate new total memory size needed for an operation.
      * <br/> Basically just offset + size, unless size is 0, in which case the result is also 0.
@@ -0,0 +1,750 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.vm;
+
+/**
+ * Word256 is a 256-bit word held in four longs, most significant first, implementing
+ * the arithmetic and comparison operations of the VM without BigInteger. The operations
+ * change the word in place, as the DataWord ones do.
+ *
+ * DataWord creates a word for each operand of an operation. The division of words with
+ * more than 64 significant bits, and the mulmod of large words, also use arrays of
+ * 32-bit digits.
+ */
+final class Word256 {
+    private static final long DIGIT_MASK = 0xffffffffL;
+
+    // u0 holds the most significant bits
+    private long u0;
+    private long u1;
+    private long u2;
+    private long u3;
+
+    Word256() {
+    }
+
+    Word256(long u0, long u1, long u2, long u3) {
+        set(u0, u1, u2, u3);
+    }
+
+    Word256(Word256 word) {
+        set(word.u0, word.u1, word.u2, word.u3);
+    }
+
+    /**
+     * @param data  a big endian value of up to 32 bytes
+     */
+    Word256(byte[] data) {
+        load(data);
+    }
+
+    Word256 load(byte[] data) {
+        if (data.length == 32) {
+            return set(readLong(data, 0), readLong(data, 8), readLong(data, 16), readLong(data, 24));
+        }
+
+        set(0, 0, 0, 0);
+
+        for (int k = 0; k < data.length; k++) {
+            int index = 32 - data.length + k;
+            setLimb(3 - (index >>> 3), getLimb(3 - (index >>> 3)) | (data[k] & 0xffL) << (8 * (7 - (index & 7))));
+        }
+
+        return this;
+    }
+
+    /**
+     * Writes the word as 32 big endian bytes
+     */
+    void store(byte[] data) {
+        writeLong(data, 0, u0);
+        writeLong(data, 8, u1);
+        writeLong(data, 16, u2);
+        writeLong(data, 24, u3);
+    }
+
+    byte[] getBytes() {
+        byte[] data = new byte[32];
+        store(data);
+        return data;
+    }
+
+    boolean isZero() {
+        return (u0 | u1 | u2 | u3) == 0;
+    }
+
+    boolean isNegative() {
+        return u0 < 0;
+    }
+
+    private int bitLength() {
+        if (u0 != 0) {
+            return 256 - Long.numberOfLeadingZeros(u0);
+        }
+
+        if (u1 != 0) {
+            return 192 - Long.numberOfLeadingZeros(u1);
+        }
+
+        if (u2 != 0) {
+            return 128 - Long.numberOfLeadingZeros(u2);
+        }
+
+        return 64 - Long.numberOfLeadingZeros(u3);
+    }
+
+    private boolean testBit(int bit) {
+        return (getLimb(bit >>> 6) & (1L << (bit & 63))) != 0;
+    }
+
+    /**
+     * Compares the words as unsigned
+     */
+    int compareTo(Word256 word) {
+        if (u0 != word.u0) {
+            return Long.compareUnsigned(u0, word.u0);
+        }
+
+        if (u1 != word.u1) {
+            return Long.compareUnsigned(u1, word.u1);
+        }
+
+        if (u2 != word.u2) {
+            return Long.compareUnsigned(u2, word.u2);
+        }
+
+        return Long.compareUnsigned(u3, word.u3);
+    }
+
+    /**
+     * Compares the words as two's complement signed
+     */
+    int sCompareTo(Word256 word) {
+        if (isNegative() != word.isNegative()) {
+            return isNegative() ? -1 : 1;
+        }
+
+        return compareTo(word);
+    }
+
+    private Word256 negate() {
+        set(~u0, ~u1, ~u2, ~u3 + 1);
+
+        if (u3 == 0) {
+            u2++;
+
+            if (u2 == 0) {
+                u1++;
+
+                if (u1 == 0) {
+                    u0++;
+                }
+            }
+        }
+
+        return this;
+    }
+
+    Word256 add(Word256 word) {
+        addWithCarry(word);
+        return this;
+    }
+
+    Word256 sub(Word256 word) {
+        long r3 = u3 - word.u3;
+        long borrow = isLessUnsigned(u3, word.u3) ? 1 : 0;
+
+        long d2 = u2 - word.u2;
+        long r2 = d2 - borrow;
+        borrow = isLessUnsigned(u2, word.u2) || isLessUnsigned(d2, borrow) ? 1 : 0;
+
+        long d1 = u1 - word.u1;
+        long r1 = d1 - borrow;
+        borrow = isLessUnsigned(u1, word.u1) || isLessUnsigned(d1, borrow) ? 1 : 0;
+
+        long r0 = u0 - word.u0 - borrow;
+
+        return set(r0, r1, r2, r3);
+    }
+
+    /**
+     * Multiplies the words, keeping the 256 less significant bits of the product
+     */
+    Word256 mul(Word256 word) {
+        long x0 = u3;
+        long x1 = u2;
+        long x2 = u1;
+        long x3 = u0;
+        long y0 = word.u3;
+        long y1 = word.u2;
+        long y2 = word.u1;
+        long y3 = word.u0;
+
+        // schoolbook multiplication of the limbs, less significant first
+        long r0 = x0 * y0;
+        long carry = multiplyHigh(x0, y0);
+        long r1 = x0 * y1 + carry;
+        carry = multiplyAddHigh(x0, y1, carry, 0);
+        long r2 = x0 * y2 + carry;
+        carry = multiplyAddHigh(x0, y2, carry, 0);
+        long r3 = x0 * y3 + carry;
+
+        long t = x1 * y0 + r1;
+        carry = multiplyAddHigh(x1, y0, r1, 0);
+        r1 = t;
+        t = x1 * y1 + r2 + carry;
+        carry = multiplyAddHigh(x1, y1, r2, carry);
+        r2 = t;
+        r3 += x1 * y2 + carry;
+
+        t = x2 * y0 + r2;
+        carry = multiplyAddHigh(x2, y0, r2, 0);
+        r2 = t;
+        r3 += x2 * y1 + carry;
+
+        r3 += x3 * y0;
+
+        return set(r3, r2, r1, r0);
+    }
+
+    /**
+     * Divides the words as unsigned, the quotient is zero if the divisor is zero
+     */
+    Word256 div(Word256 divisor) {
+        return divide(divisor, false);
+    }
+
+    /**
+     * Gets the remainder of the unsigned division, zero if the divisor is zero
+     */
+    Word256 mod(Word256 divisor) {
+        return divide(divisor, true);
+    }
+
+    /**
+     * Divides the words as signed, truncating the quotient
+     */
+    Word256 sDiv(Word256 divisor) {
+        boolean negative = isNegative() != divisor.isNegative();
+
+        if (isNegative()) {
+            negate();
+        }
+
+        div(divisor.isNegative() ? new Word256(divisor).negate() : divisor);
+
+        return negative ? negate() : this;
+    }
+
+    /**
+     * Gets the remainder of the signed division, with the sign of the dividend
+     */
+    Word256 sMod(Word256 divisor) {
+        boolean negative = isNegative();
+
+        if (negative) {
+            negate();
+        }
+
+        mod(divisor.isNegative() ? new Word256(divisor).negate() : divisor);
+
+        return negative ? negate() : this;
+    }
+
+    /**
+     * Adds the words modulo the given modulus, as DataWord.addmod does: when they could overflow,
+     * they are reduced before adding them, but the sum of the reduced words still wraps at 2^256
+     */
+    Word256 addMod(Word256 word, Word256 modulus) {
+        if (modulus.isZero()) {
+            return set(0, 0, 0, 0);
+        }
+
+        if ((u0 >>> 56) != 0 || (word.u0 >>> 56) != 0) {
+            mod(modulus);
+            addWithCarry(new Word256(word).mod(modulus));
+        } else {
+            addWithCarry(word);
+        }
+
+        return mod(modulus);
+    }
+
+    /**
+     * Multiplies the words modulo the given modulus, using the full 512-bit product
+     */
+    Word256 mulMod(Word256 word, Word256 modulus) {
+        if (modulus.isZero() || isZero() || word.isZero()) {
+            return set(0, 0, 0, 0);
+        }
+
+        if (bitLength() + word.bitLength() <= 256) {
+            return mul(word).mod(modulus);
+        }
+
+        int[] product = new int[16];
+        int[] x = toDigits();
+        int[] y = word.toDigits();
+
+        for (int i = 0; i < 8; i++) {
+            long carry = 0;
+            long xi = x[i] & DIGIT_MASK;
+
+            for (int j = 0; j < 8; j++) {
+                long t = xi * (y[j] & DIGIT_MASK) + (product[i + j] & DIGIT_MASK) + carry;
+                product[i + j] = (int) t;
+                carry = t >>> 32;
+            }
+
+            product[i + 8] = (int) carry;
+        }
+
+        return fromDigits(divideDigits(product, modulus.toDigits(), null));
+    }
+
+    /**
+     * Raises the word to the given power, modulo 2^256
+     */
+    Word256 exp(Word256 exponent) {
+        if (exponent.isZero()) {
+            return set(0, 0, 0, 1);
+        }
+
+        if (isZero()) {
+            return this;
+        }
+
+        int bitLength = bitLength();
+
+        // powers of two, as 256^n, are shifts
+        if (isPowerOfTwo()) {
+            if (bitLength == 1) {
+                return this;
+            }
+
+            if (exponent.bitLength() > 8) {
+                return set(0, 0, 0, 0);
+            }
+
+            long shift = (bitLength - 1) * exponent.u3;
+            return shift < 256 ? set(0, 0, 0, 1).shiftLeft((int) shift) : set(0, 0, 0, 0);
+        }
+
+        Word256 base = new Word256(this);
+        set(0, 0, 0, 1);
+
+        for (int bit = exponent.bitLength() - 1; bit >= 0; bit--) {
+            mul(this);
+
+            if (exponent.testBit(bit)) {
+                mul(base);
+            }
+        }
+
+        return this;
+    }
+
+    private Word256 shiftLeft(int bits) {
+        if (bits >= 256) {
+            return set(0, 0, 0, 0);
+        }
+
+        int limbs = bits >>> 6;
+        int shift = bits & 63;
+
+        for (int k = 3; k >= 0; k--) {
+            long value = k - limbs >= 0 ? getLimb(k - limbs) << shift : 0;
+
+            if (shift != 0 && k - limbs - 1 >= 0) {
+                value |= getLimb(k - limbs - 1) >>> (64 - shift);
+            }
+
+            setLimb(k, value);
+        }
+
+        return this;
+    }
+
+    private Word256 shiftRight(int bits) {
+        if (bits >= 256) {
+            return set(0, 0, 0, 0);
+        }
+
+        int limbs = bits >>> 6;
+        int shift = bits & 63;
+
+        for (int k = 0; k < 4; k++) {
+            long value = k + limbs < 4 ? getLimb(k + limbs) >>> shift : 0;
+
+            if (shift != 0 && k + limbs + 1 < 4) {
+                value |= getLimb(k + limbs + 1) << (64 - shift);
+            }
+
+            setLimb(k, value);
+        }
+
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        Word256 word = (Word256) o;
+        return u0 == word.u0 && u1 == word.u1 && u2 == word.u2 && u3 == word.u3;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(u0) * 31 * 31 * 31 + Long.hashCode(u1) * 31 * 31 + Long.hashCode(u2) * 31 + Long.hashCode(u3);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x%016x%016x", u0, u1, u2, u3);
+    }
+
+    private boolean isPowerOfTwo() {
+        return Long.bitCount(u0) + Long.bitCount(u1) + Long.bitCount(u2) + Long.bitCount(u3) == 1;
+    }
+
+    private boolean addWithCarry(Word256 word) {
+        long r3 = u3 + word.u3;
+        long carry = isLessUnsigned(r3, u3) ? 1 : 0;
+
+        long s2 = u2 + word.u2;
+        long r2 = s2 + carry;
+        carry = isLessUnsigned(s2, u2) || isLessUnsigned(r2, s2) ? 1 : 0;
+
+        long s1 = u1 + word.u1;
+        long r1 = s1 + carry;
+        carry = isLessUnsigned(s1, u1) || isLessUnsigned(r1, s1) ? 1 : 0;
+
+        long s0 = u0 + word.u0;
+        long r0 = s0 + carry;
+        boolean overflow = isLessUnsigned(s0, u0) || isLessUnsigned(r0, s0);
+
+        set(r0, r1, r2, r3);
+
+        return overflow;
+    }
+
+    private Word256 divide(Word256 divisor, boolean remainder) {
+        if (divisor.isZero()) {
+            return set(0, 0, 0, 0);
+        }
+
+        int comparison = compareTo(divisor);
+
+        if (comparison < 0) {
+            return remainder ? this : set(0, 0, 0, 0);
+        }
+
+        if (comparison == 0) {
+            return remainder ? set(0, 0, 0, 0) : set(0, 0, 0, 1);
+        }
+
+        // the divisor is lower, so both fit in a long
+        if ((u0 | u1 | u2) == 0) {
+            long quotient = divideUnsigned(u3, divisor.u3);
+            return set(0, 0, 0, remainder ? u3 - quotient * divisor.u3 : quotient);
+        }
+
+        if (divisor.isPowerOfTwo()) {
+            int bits = divisor.bitLength() - 1;
+
+            // the remainder keeps the less significant bits
+            if (remainder) {
+                return shiftLeft(256 - bits).shiftRight(256 - bits);
+            }
+
+            return shiftRight(bits);
+        }
+
+        int[] quotient = remainder ? null : new int[8];
+        int[] rest = divideDigits(toDigits(), divisor.toDigits(), quotient);
+
+        return fromDigits(remainder ? rest : quotient);
+    }
+
+    /**
+     * Divides numbers of 32-bit digits, less significant first, as the algorithm D of Knuth
+     * in the version of Hacker's Delight
+     *
+     * @param quotient  the digits of the quotient, if not null
+     * @return the digits of the remainder
+     */
+    private static int[] divideDigits(int[] dividend, int[] divisor, int[] quotient) {
+        int m = significantDigits(dividend);
+        int n = significantDigits(divisor);
+        int[] rest = new int[Math.max(n, 8)];
+
+        if (m < n) {
+            System.arraycopy(dividend, 0, rest, 0, m);
+            return rest;
+        }
+
+        if (n == 1) {
+            long d = divisor[0] & DIGIT_MASK;
+            long r = 0;
+
+            for (int j = m - 1; j >= 0; j--) {
+                long current = (r << 32) | (dividend[j] & DIGIT_MASK);
+                long q = divideUnsigned(current, d);
+
+                if (quotient != null) {
+                    quotient[j] = (int) q;
+                }
+
+                r = current - q * d;
+            }
+
+            rest[0] = (int) r;
+            return rest;
+        }
+
+        // normalizes the divisor, so its most significant digit has the highest bit set
+        int s = Integer.numberOfLeadingZeros(divisor[n - 1]);
+        int[] vn = new int[n];
+        int[] un = new int[m + 1];
+
+        for (int i = n - 1; i > 0; i--) {
+            vn[i] = (int) (((divisor[i] & DIGIT_MASK) << s) | ((divisor[i - 1] & DIGIT_MASK) >>> (32 - s)));
+        }
+
+        vn[0] = divisor[0] << s;
+
+        un[m] = (int) ((dividend[m - 1] & DIGIT_MASK) >>> (32 - s));
+
+        for (int i = m - 1; i > 0; i--) {
+            un[i] = (int) (((dividend[i] & DIGIT_MASK) << s) | ((dividend[i - 1] & DIGIT_MASK) >>> (32 - s)));
+        }
+
+        un[0] = dividend[0] << s;
+
+        long vTop = vn[n - 1] & DIGIT_MASK;
+        long vNext = vn[n - 2] & DIGIT_MASK;
+
+        for (int j = m - n; j >= 0; j--) {
+            long numerator = ((un[j + n] & DIGIT_MASK) << 32) | (un[j + n - 1] & DIGIT_MASK);
+            long qhat = divideUnsigned(numerator, vTop);
+            long rhat = numerator - qhat * vTop;
+
+            while (qhat > DIGIT_MASK || isLessUnsigned((rhat << 32) | (un[j + n - 2] & DIGIT_MASK), qhat * vNext)) {
+                qhat--;
+                rhat += vTop;
+
+                if (rhat > DIGIT_MASK) {
+                    break;
+                }
+            }
+
+            // multiplies and subtracts
+            long borrow = 0;
+            long t;
+
+            for (int i = 0; i < n; i++) {
+                long p = qhat * (vn[i] & DIGIT_MASK);
+                t = (un[i + j] & DIGIT_MASK) - borrow - (p & DIGIT_MASK);
+                un[i + j] = (int) t;
+                borrow = (p >>> 32) - (t >> 32);
+            }
+
+            t = (un[j + n] & DIGIT_MASK) - borrow;
+            un[j + n] = (int) t;
+
+            // the estimation was one too large, adds back
+            if (t < 0) {
+                qhat--;
+                long carry = 0;
+
+                for (int i = 0; i < n; i++) {
+                    t = (un[i + j] & DIGIT_MASK) + (vn[i] & DIGIT_MASK) + carry;
+                    un[i + j] = (int) t;
+                    carry = t >>> 32;
+                }
+
+                un[j + n] += (int) carry;
+            }
+
+            if (quotient != null) {
+                quotient[j] = (int) qhat;
+            }
+        }
+
+        // unnormalizes the remainder
+        for (int i = 0; i < n; i++) {
+            rest[i] = (int) (((un[i] & DIGIT_MASK) >>> s) | ((un[i + 1] & DIGIT_MASK) << (32 - s)));
+        }
+
+        return rest;
+    }
+
+    private static int significantDigits(int[] digits) {
+        int length = digits.length;
+
+        while (length > 0 && digits[length - 1] == 0) {
+            length--;
+        }
+
+        return length;
+    }
+
+    private int[] toDigits() {
+        int[] digits = new int[8];
+
+        for (int k = 0; k < 4; k++) {
+            long limb = getLimb(k);
+            digits[2 * k] = (int) limb;
+            digits[2 * k + 1] = (int) (limb >>> 32);
+        }
+
+        return digits;
+    }
+
+    private Word256 fromDigits(int[] digits) {
+        for (int k = 0; k < 4; k++) {
+            setLimb(k, ((digits[2 * k + 1] & DIGIT_MASK) << 32) | (digits[2 * k] & DIGIT_MASK));
+        }
+
+        return this;
+    }
+
+    private Word256 set(long u0, long u1, long u2, long u3) {
+        this.u0 = u0;
+        this.u1 = u1;
+        this.u2 = u2;
+        this.u3 = u3;
+        return this;
+    }
+
+    /**
+     * @param index  the index of the limb, from the less significant
+     */
+    private long getLimb(int index) {
+        switch (index) {
+            case 0:
+                return u3;
+            case 1:
+                return u2;
+            case 2:
+                return u1;
+            default:
+                return u0;
+        }
+    }
+
+    private void setLimb(int index, long value) {
+        switch (index) {
+            case 0:
+                u3 = value;
+                break;
+            case 1:
+                u2 = value;
+                break;
+            case 2:
+                u1 = value;
+                break;
+            default:
+                u0 = value;
+                break;
+        }
+    }
+
+    private static boolean isLessUnsigned(long a, long b) {
+        return a + Long.MIN_VALUE < b + Long.MIN_VALUE;
+    }
+
+    /**
+     * Gets the high 64 bits of the unsigned 128-bit product
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x0 = x & DIGIT_MASK;
+        long x1 = x >>> 32;
+        long y0 = y & DIGIT_MASK;
+        long y1 = y >>> 32;
+
+        long p01 = x0 * y1;
+        long p10 = x1 * y0;
+        long middle = ((x0 * y0) >>> 32) + (p01 & DIGIT_MASK) + (p10 & DIGIT_MASK);
+
+        return x1 * y1 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+    }
+
+    /**
+     * Gets the high 64 bits of x * y + a + b, which doesn't overflow 128 bits
+     */
+    private static long multiplyAddHigh(long x, long y, long a, long b) {
+        long low = x * y;
+        long high = multiplyHigh(x, y);
+
+        long sum = low + a;
+        if (isLessUnsigned(sum, low)) {
+            high++;
+        }
+
+        long total = sum + b;
+        if (isLessUnsigned(total, sum)) {
+            high++;
+        }
+
+        return high;
+    }
+
+    /**
+     * Divides as unsigned, as Long.divideUnsigned without its BigInteger path for large dividends
+     */
+    private static long divideUnsigned(long dividend, long divisor) {
+        if (divisor < 0) {
+            return isLessUnsigned(dividend, divisor) ? 0 : 1;
+        }
+
+        if (dividend >= 0) {
+            return dividend / divisor;
+        }
+
+        long quotient = ((dividend >>> 1) / divisor) << 1;
+        long rest = dividend - quotient * divisor;
+        return quotient + (isLessUnsigned(rest, divisor) ? 0 : 1);
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+
+        for (int k = offset; k < offset + 8; k++) {
+            value = (value << 8) | (data[k] & 0xffL);
+        }
+
+        return value;
+    }
+
+    private static void writeLong(byte[] data, int offset, long value) {
+        for (int k = offset + 7; k >= offset; k--) {
+            data[k] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.vm.program;
+
+import co.rsk.vm.BitSet;
+import org.ethereum.vm.OpCode;
+
+/**
+ * The analysis of a code before executing it: the header with the versions and the start address,
+ * and the valid jump destinations. It is immutable, so it is shared by the programs running the same code.
+ * The code decoded into blocks is computed the first time it is needed, and it is worth
+ * computing it only when the analysis is shared.
+ */
+public class CodeAnalysis {
+    private final int codeLength;
+    private final byte exeVersion;    // currently limited to 0..127
+    private final byte scriptVersion; // currently limited to 0..127
+    private final int startAddr;
+    private final BitSet jumpdestSet;
+    private final boolean shared;
+
+    // a race decodes the same code twice, with equal results
+    private volatile DecodedCode decodedCode;
+
+    private CodeAnalysis(int codeLength, byte exeVersion, byte scriptVersion, int startAddr, BitSet jumpdestSet, boolean shared) {
+        this.codeLength = codeLength;
+        this.exeVersion = exeVersion;
+        this.scriptVersion = scriptVersion;
+        this.startAddr = startAddr;
+        this.jumpdestSet = jumpdestSet;
+        this.shared = shared;
+    }
+
+    public static CodeAnalysis analyze(byte[] ops) {
+        return analyze(ops, false);
+    }
+
+    static CodeAnalysis analyze(byte[] ops, boolean shared) {
+        byte exeVersion = 0;
+        byte scriptVersion = 0;
+        int startAddr = 0;
+
+        if (ops.length >= 4) {
+            OpCode op = OpCode.code(ops[0]);
+            if ((op != null) && op == OpCode.HEADER) {
+                // next byte is executable format version
+                // header length in bytes
+                int exe = ops[1] & 0xff;
+                // limit to positive to prevent version 0xff < 0x00
+                exeVersion = (byte) Math.min(exe, 127);
+
+                // limit to positive to prevent version 0xff < 0x00
+                int script = ops[2] & 0xff;
+                scriptVersion = (byte) Math.min(script, 127);
+                int extHeaderLen = ops[3] & 0xff;
+                startAddr = 4 + extHeaderLen;
+            }
+        }
+
+        return new CodeAnalysis(ops.length, exeVersion, scriptVersion, startAddr, computeJumpDests(ops, startAddr), shared);
+    }
+
+    private static BitSet computeJumpDests(byte[] ops, int start) {
+        BitSet jumpdestSet = new BitSet(ops.length);
+
+        for (int i = start; i < ops.length; ++i) {
+            OpCode op = OpCode.code(ops[i]);
+
+            if (op == null) {
+                continue;
+            }
+
+            if (op == OpCode.JUMPDEST) {
+                jumpdestSet.set(i);
+            }
+
+            if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
+                i += op.asInt() - OpCode.PUSH1.asInt() + 1;
+            }
+        }
+
+        return jumpdestSet;
+    }
+
+    public int getCodeLength() {
+        return codeLength;
+    }
+
+    public byte getExeVersion() {
+        return exeVersion;
+    }
+
+    public byte getScriptVersion() {
+        return scriptVersion;
+    }
+
+    public int getStartAddr() {
+        return startAddr;
+    }
+
+    public BitSet getJumpdestSet() {
+        return jumpdestSet;
+    }
+
+    /**
+     * @return true if the analysis is kept in a cache, so it is used by the next programs running the code
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    public DecodedCode getDecodedCode(byte[] ops) {
+        DecodedCode decoded = decodedCode;
+
+        if (decoded == null) {
+            decoded = DecodedCode.decode(ops, this);
+            decodedCode = decoded;
+        }
+
+        return decoded;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.vm.program;
+
+import co.rsk.crypto.Keccak256;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the analysis of the codes of the accounts, by code hash,
+ * so the contracts called again and again are not analyzed on each call.
+ * It keeps the least recently used analyses up to a total code size.
+ */
+public class CodeAnalysisCache {
+    private static final int HASH_LENGTH = 32;
+
+    private final long maxCodeSize;
+    private final Map<Keccak256, CodeAnalysis> analyses = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long codeSize;
+    private long hits;
+    private long misses;
+
+    public CodeAnalysisCache(long maxCodeSize) {
+        this.maxCodeSize = maxCodeSize;
+    }
+
+    /**
+     * Gets the analysis of the code, from the cache if its hash is known
+     *
+     * The codes without hash, as the init codes, and the codes larger than the cache
+     * are analyzed each time, and their analyses are not shared
+     *
+     * @param codeHash  the hash of the code, or null if it is not the code of an account
+     */
+    public CodeAnalysis getAnalysis(byte[] ops, @Nullable byte[] codeHash) {
+        if (codeHash == null || codeHash.length != HASH_LENGTH || ops.length > maxCodeSize) {
+            return CodeAnalysis.analyze(ops);
+        }
+
+        Keccak256 key = new Keccak256(codeHash.clone());
+        CodeAnalysis analysis;
+
+        synchronized (this) {
+            analysis = analyses.get(key);
+        }
+
+        // the length is checked to discard an analysis for other code with a stale hash
+        if (analysis != null && analysis.getCodeLength() == ops.length) {
+            synchronized (this) {
+                hits++;
+            }
+
+            return analysis;
+        }
+
+        // analyzed outside the lock, the same code could be analyzed twice but not blocking the other programs
+        analysis = CodeAnalysis.analyze(ops, true);
+
+        synchronized (this) {
+            misses++;
+
+            CodeAnalysis previous = analyses.put(key, analysis);
+
+            if (previous != null) {
+                codeSize -= previous.getCodeLength();
+            }
+
+            codeSize += analysis.getCodeLength();
+
+            while (codeSize > maxCodeSize && !analyses.isEmpty()) {
+                Map.Entry<Keccak256, CodeAnalysis> eldest = analyses.entrySet().iterator().next();
+                analyses.remove(eldest.getKey());
+                codeSize -= eldest.getValue().getCodeLength();
+            }
+        }
+
+        return analysis;
+    }
+
+    public synchronized int size() {
+        return analyses.size();
+    }
+
+    public synchronized long getCodeSize() {
+        return codeSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        analyses.clear();
+        codeSize = 0;
+    }
+}
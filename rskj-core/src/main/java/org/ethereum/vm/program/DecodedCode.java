@@ -0,0 +1,227 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.vm.program;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The code decoded into basic blocks of instructions that only work on the stack, and have a static gas cost.
+ * For each block, it precomputes its total gas, the stack it requires and how much the stack can grow,
+ * so the VM checks them once when entering the block instead of on each instruction.
+ * The values of the PUSH instructions are decoded too.
+ *
+ * A block begins after any other instruction and at each JUMPDEST, and ends after a JUMP or JUMPI.
+ * The words are shared by the programs running the code, so they must be copied, not pushed.
+ */
+public class DecodedCode {
+    private static final Set<OpCode> BLOCK_OPCODES = EnumSet.of(
+            OpCode.ADD, OpCode.MUL, OpCode.SUB, OpCode.DIV, OpCode.SDIV, OpCode.MOD, OpCode.SMOD,
+            OpCode.ADDMOD, OpCode.MULMOD, OpCode.SIGNEXTEND,
+            OpCode.LT, OpCode.GT, OpCode.SLT, OpCode.SGT, OpCode.EQ, OpCode.ISZERO,
+            OpCode.AND, OpCode.OR, OpCode.XOR, OpCode.NOT, OpCode.BYTE,
+            OpCode.POP, OpCode.PC, OpCode.JUMPDEST, OpCode.JUMP, OpCode.JUMPI);
+
+    private final int[] blockAt;
+    private final int[] blockFirst;
+    private final int[] blockLast;
+    private final long[] blockGas;
+    private final int[] blockRequiredStack;
+    private final int[] blockMaxStackGrowth;
+
+    private final OpCode[] instructionOps;
+    private final int[] instructionPcs;
+    private final DataWord[] pushWords;
+
+    private DecodedCode(
+            int[] blockAt, int[] blockFirst, int[] blockLast, long[] blockGas, int[] blockRequiredStack, int[] blockMaxStackGrowth,
+            OpCode[] instructionOps, int[] instructionPcs, DataWord[] pushWords) {
+        this.blockAt = blockAt;
+        this.blockFirst = blockFirst;
+        this.blockLast = blockLast;
+        this.blockGas = blockGas;
+        this.blockRequiredStack = blockRequiredStack;
+        this.blockMaxStackGrowth = blockMaxStackGrowth;
+        this.instructionOps = instructionOps;
+        this.instructionPcs = instructionPcs;
+        this.pushWords = pushWords;
+    }
+
+    public static DecodedCode decode(byte[] ops, CodeAnalysis analysis) {
+        int length = ops.length;
+
+        int[] blockAt = new int[length];
+        Arrays.fill(blockAt, -1);
+
+        int[] blockFirst = new int[length + 1];
+        long[] blockGas = new long[length];
+        int[] blockRequiredStack = new int[length];
+        int[] blockMaxStackGrowth = new int[length];
+
+        OpCode[] instructionOps = new OpCode[length];
+        int[] instructionPcs = new int[length];
+        DataWord[] pushWords = new DataWord[length];
+
+        int nblocks = 0;
+        int ninstructions = 0;
+        boolean inBlock = false;
+        int height = 0;
+
+        for (int pc = analysis.getStartAddr(); pc < length;) {
+            OpCode op = OpCode.code(ops[pc]);
+            int size = 1 + pushSize(op);
+
+            if (!isBlockOpCode(op, pc, length, analysis.getScriptVersion()) || (inBlock && op == OpCode.JUMPDEST)) {
+                if (inBlock) {
+                    blockFirst[++nblocks] = ninstructions;
+                    inBlock = false;
+                }
+
+                if (!isBlockOpCode(op, pc, length, analysis.getScriptVersion())) {
+                    pc += size;
+                    continue;
+                }
+            }
+
+            if (!inBlock) {
+                blockAt[pc] = nblocks;
+                blockFirst[nblocks] = ninstructions;
+                inBlock = true;
+                height = 0;
+            }
+
+            instructionOps[ninstructions] = op;
+            instructionPcs[ninstructions] = pc;
+
+            if (size > 1) {
+                DataWord word = new DataWord();
+                word.assignDataRange(ops, pc + 1, size - 1);
+                pushWords[ninstructions] = word;
+            }
+
+            ninstructions++;
+
+            blockGas[nblocks] += op.getTier().asInt();
+            blockRequiredStack[nblocks] = Math.max(blockRequiredStack[nblocks], op.require() - height);
+            height += op.ret() - op.require();
+            blockMaxStackGrowth[nblocks] = Math.max(blockMaxStackGrowth[nblocks], height);
+
+            if (op == OpCode.JUMP || op == OpCode.JUMPI) {
+                blockFirst[++nblocks] = ninstructions;
+                inBlock = false;
+            }
+
+            pc += size;
+        }
+
+        if (inBlock) {
+            blockFirst[++nblocks] = ninstructions;
+        }
+
+        int[] blockLast = new int[nblocks];
+
+        for (int k = 0; k < nblocks; k++) {
+            blockLast[k] = blockFirst[k + 1] - 1;
+        }
+
+        return new DecodedCode(
+                blockAt,
+                Arrays.copyOf(blockFirst, nblocks),
+                blockLast,
+                Arrays.copyOf(blockGas, nblocks),
+                Arrays.copyOf(blockRequiredStack, nblocks),
+                Arrays.copyOf(blockMaxStackGrowth, nblocks),
+                Arrays.copyOf(instructionOps, ninstructions),
+                Arrays.copyOf(instructionPcs, ninstructions),
+                Arrays.copyOf(pushWords, ninstructions));
+    }
+
+    private static boolean isBlockOpCode(OpCode op, int pc, int length, int scriptVersion) {
+        if (op == null || op.scriptVersion() > scriptVersion) {
+            return false;
+        }
+
+        if (isPush(op) || isDup(op) || isSwap(op)) {
+            // a PUSH with its data cut by the end of the code is left to the VM
+            return pc + 1 + pushSize(op) <= length;
+        }
+
+        return BLOCK_OPCODES.contains(op);
+    }
+
+    private static int pushSize(OpCode op) {
+        return isPush(op) ? op.asInt() - OpCode.PUSH1.asInt() + 1 : 0;
+    }
+
+    private static boolean isPush(OpCode op) {
+        return op != null && op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt();
+    }
+
+    private static boolean isDup(OpCode op) {
+        return op.asInt() >= OpCode.DUP1.asInt() && op.asInt() <= OpCode.DUP16.asInt();
+    }
+
+    private static boolean isSwap(OpCode op) {
+        return op.asInt() >= OpCode.SWAP1.asInt() && op.asInt() <= OpCode.SWAP16.asInt();
+    }
+
+    /**
+     * @return the block beginning at the pc, or -1 if there is none
+     */
+    public int getBlockAt(int pc) {
+        return pc < blockAt.length ? blockAt[pc] : -1;
+    }
+
+    public int getBlockFirst(int block) {
+        return blockFirst[block];
+    }
+
+    public int getBlockLast(int block) {
+        return blockLast[block];
+    }
+
+    public long getBlockGas(int block) {
+        return blockGas[block];
+    }
+
+    public int getBlockRequiredStack(int block) {
+        return blockRequiredStack[block];
+    }
+
+    public int getBlockMaxStackGrowth(int block) {
+        return blockMaxStackGrowth[block];
+    }
+
+    public OpCode getOp(int instruction) {
+        return instructionOps[instruction];
+    }
+
+    public int getPc(int instruction) {
+        return instructionPcs[instruction];
+    }
+
+    public DataWord getPushWord(int instruction) {
+        return pushWords[instruction];
+    }
+}
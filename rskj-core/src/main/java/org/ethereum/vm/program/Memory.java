@@ -23,21 +23,26 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
-import static java.lang.Math.ceil;
 import static java.lang.Math.min;
 import static java.lang.String.format;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.ByteUtil.oneByteToHexString;
 
+/**
+ * The VM memory, a contiguous buffer whose capacity is doubled when it has to grow.
+ * The size seen by the program, softSize, grows by words, as the gas is charged for it.
+ */
 public class Memory implements ProgramListenerAware {
 
     private static final int CHUNK_SIZE = 1024;
     private static final int WORD_SIZE = 32;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - CHUNK_SIZE;
 
-    private List<byte[]> chunks = new LinkedList<>();
+    private byte[] buffer = EMPTY_BYTE_ARRAY;
     private int softSize;
     private ProgramListener traceListener;
 
@@ -52,27 +57,8 @@ public class Memory implements ProgramListenerAware {
         }
 
         extend(address, size);
-        byte[] data = new byte[size];
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        int toGrab = data.length;
-        int start = 0;
-
-        while (toGrab > 0) {
-            int copied = grabMax(chunkIndex, chunkOffset, toGrab, data, start);
-
-            // read next chunk from the start
-            ++chunkIndex;
-            chunkOffset = 0;
 
-            // mark remind
-            toGrab -= copied;
-            start += copied;
-        }
-
-        return data;
+        return Arrays.copyOfRange(buffer, address, address + size);
     }
 
     public void write(int address, byte[] data, int dataSize, boolean limited) {
@@ -85,9 +71,6 @@ public class Memory implements ProgramListenerAware {
             extend(address, dataSize);
         }
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
         int toCapture = 0;
         if (limited) {
             toCapture = (address + dataSize > softSize) ? softSize - address : dataSize;
@@ -95,24 +78,49 @@ public class Memory implements ProgramListenerAware {
             toCapture = dataSize;
         }
 
-        int start = 0;
-        while (toCapture > 0) {
-            int captured = captureMax(chunkIndex, chunkOffset, toCapture, data, start);
+        if (toCapture > 0) {
+            System.arraycopy(data, 0, buffer, address, toCapture);
+        }
 
-            // capture next chunk
-            ++chunkIndex;
-            chunkOffset = 0;
+        if (traceListener != null) {
+            traceListener.onMemoryWrite(address, data, dataSize);
+        }
+    }
+
+    /**
+     * Writes length bytes from src at srcOffset, filling with zeros the ones after the end of src
+     */
+    public void copy(int address, byte[] src, int srcOffset, int length) {
+        extend(address, length);
+
+        if (length > 0) {
+            int toCopy = srcOffset < 0 || srcOffset >= src.length ? 0 : min(length, src.length - srcOffset);
 
-            // mark remind
-            toCapture -= captured;
-            start += captured;
+            if (toCopy > 0) {
+                System.arraycopy(src, srcOffset, buffer, address, toCopy);
+            }
+
+            Arrays.fill(buffer, address + toCopy, address + length, (byte) 0);
         }
 
         if (traceListener != null) {
-            traceListener.onMemoryWrite(address, data, dataSize);
+            traceListener.onMemoryWrite(address, length > 0 ? Arrays.copyOfRange(buffer, address, address + length) : EMPTY_BYTE_ARRAY, length);
         }
     }
 
+    public void writeWord(int address, DataWord word) {
+        write(address, word.getData(), WORD_SIZE, false);
+    }
+
+    public void writeByte(int address, byte value) {
+        extend(address, 1);
+
+        buffer[address] = value;
+
+        if (traceListener != null) {
+            traceListener.onMemoryWrite(address, new byte[] { value }, 1);
+        }
+    }
 
     public void extendAndWrite(int address, int allocSize, byte[] data) {
         extend(address, allocSize);
@@ -126,14 +134,13 @@ public class Memory implements ProgramListenerAware {
 
         final int newSize = address + size;
 
-        int toAllocate = newSize - internalSize();
-        if (toAllocate > 0) {
-            addChunks((int) ceil((double) toAllocate / CHUNK_SIZE));
+        if (newSize > buffer.length) {
+            grow(newSize);
         }
 
-        toAllocate = newSize - softSize;
+        int toAllocate = newSize - softSize;
         if (toAllocate > 0) {
-            toAllocate = (int) ceil((double) toAllocate / WORD_SIZE) * WORD_SIZE;
+            toAllocate = (int) roundUp(toAllocate, WORD_SIZE);
             softSize += toAllocate;
 
             if (traceListener != null) {
@@ -143,18 +150,21 @@ public class Memory implements ProgramListenerAware {
     }
 
     public DataWord readWord(int address) {
-        return new DataWord(read(address, 32));
+        return new DataWord(read(address, WORD_SIZE));
+    }
+
+    /**
+     * Reads the word at the address into the given one, without allocating
+     */
+    public DataWord readWord(int address, DataWord word) {
+        extend(address, WORD_SIZE);
+        word.assignDataRange(buffer, address, WORD_SIZE);
+        return word;
     }
 
     // just access expecting all data valid
     public byte readByte(int address) {
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        byte[] chunk = chunks.get(chunkIndex);
-
-        return chunk[chunkOffset];
+        return buffer[address];
     }
 
     @Override
@@ -193,36 +203,35 @@ public class Memory implements ProgramListenerAware {
         return softSize;
     }
 
+    /**
+     * The extended memory, in chunks of 1 KB, regardless of the capacity of the buffer
+     */
     public int internalSize() {
-        return chunks.size() * CHUNK_SIZE;
+        return (int) roundUp(softSize, CHUNK_SIZE);
     }
 
+    /**
+     * Copies of the extended memory, by chunks of 1 KB
+     */
     public List<byte[]> getChunks() {
-        return new LinkedList<>(chunks);
-    }
-
-    private int captureMax(int chunkIndex, int chunkOffset, int size, byte[] src, int srcPos) {
+        List<byte[]> chunks = new LinkedList<>();
 
-        byte[] chunk = chunks.get(chunkIndex);
-        int toCapture = min(size, chunk.length - chunkOffset);
+        for (int address = 0; address < internalSize(); address += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(buffer, address, address + CHUNK_SIZE));
+        }
 
-        System.arraycopy(src, srcPos, chunk, chunkOffset, toCapture);
-        return toCapture;
+        return chunks;
     }
 
-    private int grabMax(int chunkIndex, int chunkOffset, int size, byte[] dest, int destPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toGrab = min(size, chunk.length - chunkOffset);
+    private void grow(int newSize) {
+        long required = roundUp(newSize, CHUNK_SIZE);
+        long doubled = 2L * buffer.length;
+        long capacity = Math.max(required, min(doubled, MAX_CAPACITY));
 
-        System.arraycopy(chunk, chunkOffset, dest, destPos, toGrab);
-
-        return toGrab;
+        buffer = Arrays.copyOf(buffer, (int) capacity);
     }
 
-    private void addChunks(int num) {
-        for (int i = 0; i < num; ++i) {
-            chunks.add(new byte[CHUNK_SIZE]);
-        }
+    private static long roundUp(long size, int unit) {
+        return (size + unit - 1) / unit * unit;
     }
 }
@@ -28,6 +28,7 @@ import co.rsk.vm.BitSet;
 import com.google.common.annotations.VisibleForTesting;
 import org.ethereum.config.BlockchainConfig;
 import org.ethereum.config.Constants;
+import org.ethereum.core.AccountState;
 import org.ethereum.core.Block;
 import org.ethereum.core.Repository;
 import org.ethereum.core.Transaction;
@@ -50,6 +51,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
+import javax.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.util.*;
@@ -85,7 +87,7 @@ public class Program {
     public static final long MAX_MEMORY = (1<<30);
 
     //Max size for stack checks
-    private static final int MAX_STACKSIZE = 1024;
+    private static final int MAX_STACKSIZE = Stack.CAPACITY;
 
     private final BlockchainConfig blockchainConfig;
     private final Transaction transaction;
@@ -106,15 +108,12 @@ public class Program {
     private final ProgramTrace trace;
 
     private final byte[] ops;
+    private final CodeAnalysis analysis;
     private int pc;
     private byte lastOp;
     private byte previouslyExecutedOp;
     private boolean stopped;
-    private byte exeVersion;    // currently limited to 0..127
-    private byte scriptVersion; // currently limited to 0..127
-    private int startAddr;
 
-    private BitSet jumpdestSet;
     /**********************************************************************************************************
      * About DataWord Pool:
      *---------------------------------------------------------------------------------------------------------
@@ -193,6 +192,21 @@ public class Program {
             byte[] ops,
             ProgramInvoke programInvoke,
             Transaction transaction) {
+        this(config, precompiledContracts, blockchainConfig, ops, null, programInvoke, transaction);
+    }
+
+    /**
+     * @param codeHash  the hash of the code of the account being run, to reuse the analysis of the code,
+     *                  or null if it is not the code of an account
+     */
+    public Program(
+            VmConfig config,
+            PrecompiledContracts precompiledContracts,
+            BlockchainConfig blockchainConfig,
+            byte[] ops,
+            @Nullable byte[] codeHash,
+            ProgramInvoke programInvoke,
+            Transaction transaction) {
         this.config = config;
         this.precompiledContracts = precompiledContracts;
         this.blockchainConfig = blockchainConfig;
@@ -211,10 +225,11 @@ public class Program {
         this.invoke = programInvoke;
 
         this.ops = nullToEmpty(ops);
+        this.analysis = config.codeAnalysisCache().getAnalysis(this.ops, codeHash);
+        this.pc = this.analysis.getStartAddr();
 
         this.memory = setupProgramListener(new Memory());
         this.stack = setupProgramListener(new Stack());
-        this.stack.ensureCapacity(1024); // faster?
         this.storage = setupProgramListener(new Storage(programInvoke));
         this.trace = new ProgramTrace(config, programInvoke);
 
@@ -225,7 +240,6 @@ public class Program {
             this.dataWordPool = null;
         }
 
-        precompile();
         traceListener = new ProgramTraceListener(config);
     }
 
@@ -483,8 +497,11 @@ public class Program {
     }
 
     public void memorySave(DataWord addrB, DataWord value) {
-        //
-        memory.write(addrB.intValue(), value.getData(), value.getData().length, false);
+        memory.writeWord(addrB.intValue(), value);
+    }
+
+    public void memorySaveByte(int addr, byte value) {
+        memory.writeByte(addr, value);
     }
 
     public void memorySaveLimited(int addr, byte[] data, int dataSize) {
@@ -495,6 +512,13 @@ public class Program {
         memory.write(addr, value, value.length, false);
     }
 
+    /**
+     * Copies size bytes of data from the offset to memory, filling with zeros the ones after its end
+     */
+    public void memoryCopy(int addr, byte[] data, int offset, int size) {
+        memory.copy(addr, data, offset, size);
+    }
+
     public void memoryExpand(DataWord outDataOffs, DataWord outDataSize) {
         if (!outDataSize.isZero()) {
             memory.extend(outDataOffs.intValue(), outDataSize.intValue());
@@ -521,6 +545,13 @@ public class Program {
         return memory.readWord(address);
     }
 
+    /**
+     * Loads the word at the address into the given one
+     */
+    public DataWord memoryLoad(DataWord addr, DataWord word) {
+        return memory.readWord(addr.intValue(), word);
+    }
+
     public byte[] memoryChunk(int offset, int size) {
         return memory.read(offset, size);
     }
@@ -848,7 +879,7 @@ public class Program {
         boolean callResult;
 
         if (isNotEmpty(programCode)) {
-            callResult = executeCode(msg, contextAddress, contextBalance, internalTx, track, programCode, senderAddress, data);
+            callResult = executeCode(msg, contextAddress, contextBalance, internalTx, track, programCode, getCodeHash(codeAddress), senderAddress, data);
         }
         else {
             track.commit();
@@ -865,6 +896,12 @@ public class Program {
         }
     }
 
+    @Nullable
+    private byte[] getCodeHash(RskAddress address) {
+        AccountState accountState = getStorage().getAccountState(address);
+        return accountState == null ? null : accountState.getCodeHash();
+    }
+
     public boolean executeCode(
             MessageCall msg,
             RskAddress contextAddress,
@@ -872,6 +909,7 @@ public class Program {
             InternalTransaction internalTx,
             Repository track,
             byte[] programCode,
+            @Nullable byte[] codeHash,
             RskAddress senderAddress,
             byte[] data ) {
 
@@ -884,7 +922,7 @@ public class Program {
                 limitToMaxLong(msg.getGas()), contextBalance, data, track, this.invoke.getBlockStore(), byTestingSuite());
 
         VM vm = new VM(config, precompiledContracts);
-        Program program = new Program(config, precompiledContracts, blockchainConfig, programCode, programInvoke, internalTx);
+        Program program = new Program(config, precompiledContracts, blockchainConfig, programCode, codeHash, programInvoke, internalTx);
         vm.play(program);
         childResult  = program.getResult();
 
@@ -957,7 +995,7 @@ public class Program {
     }
 
     public void restart() {
-        setPC(startAddr);
+        setPC(analysis.getStartAddr());
         stackClear();
         clearUsedGas();
         stopped=false;
@@ -1278,61 +1316,6 @@ public class Program {
         return trace;
     }
 
-    public int processAndSkipCodeHeader(int offset) {
-        int ret = offset;
-        if (ops.length >= 4) {
-            OpCode op = OpCode.code(ops[0]);
-            if ((op != null) && op == OpCode.HEADER) {
-                // next byte is executable format version
-                // header length in bytes
-                int exe = ops[1] & 0xff;
-                // limit to positive to prevent version 0xff < 0x00
-                exeVersion = (byte) Math.min(exe, 127);
-
-                // limit to positive to prevent version 0xff < 0x00
-                int script = ops[2] & 0xff;
-                scriptVersion = (byte) Math.min(script, 127);
-                int extHeaderLen = ops[3] & 0xff;
-                ret = offset + 4 + extHeaderLen;
-                startAddr = ret;
-                pc = ret;
-            }
-        }
-        return ret;
-    }
-
-    private void precompile() {
-        int i = 0;
-        exeVersion = 0;
-        scriptVersion = 0;
-        startAddr = 0;
-        pc = 0;
-        i = processAndSkipCodeHeader(i);
-        computeJumpDests(i);
-    }
-
-    public void computeJumpDests(int start) {
-        if (jumpdestSet == null) {
-            jumpdestSet = new BitSet(ops.length);
-        }
-
-        for (int i = start; i < ops.length; ++i) {
-            OpCode op = OpCode.code(ops[i]);
-
-            if (op == null) {
-                continue;
-            }
-
-            if (op == OpCode.JUMPDEST) {
-                jumpdestSet.set(i);
-            }
-
-            if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
-                i += op.asInt() - OpCode.PUSH1.asInt() + 1;
-            }
-        }
-    }
-
     static String formatBinData(byte[] binData, int startPC) {
         StringBuilder ret = new StringBuilder();
         for (int i = 0; i < binData.length; i+= 16) {
@@ -1425,6 +1408,22 @@ public class Program {
         return Optional.of(copiedData);
     }
 
+    /**
+     * Copies a range of the return data buffer to memory, without an intermediate copy
+     *
+     * @return false if the range exceeds the return data buffer, and nothing is copied
+     */
+    public boolean memorySaveReturnData(int addr, DataWord off, DataWord size) {
+        long endPosition = (long) off.intValueSafe() + size.intValueSafe();
+        if (endPosition > getReturnDataBufferSizeI()) {
+            return false;
+        }
+
+        byte[] data = returnDataBuffer == null ? EMPTY_BYTE_ARRAY : returnDataBuffer;
+        memory.copy(addr, data, off.intValueSafe(), size.intValueSafe());
+        return true;
+    }
+
     static class ByteCodeIterator {
         private byte[] code;
         private int pc;
@@ -1510,6 +1509,7 @@ public class Program {
             throw ExceptionHelper.badJumpDestination(-1);
         }
         int ret = nextPC.intValue(); // could be negative
+        BitSet jumpdestSet = analysis.getJumpdestSet();
         if (ret < 0 || ret >= jumpdestSet.size() || !jumpdestSet.get(ret)) {
             throw ExceptionHelper.badJumpDestination(ret);
         }
@@ -1690,15 +1690,27 @@ public class Program {
     }
 
     public byte getExeVersion() {
-        return exeVersion;
+        return analysis.getExeVersion();
     }
     public byte getScriptVersion() {
-        return scriptVersion;
+        return analysis.getScriptVersion();
     }
     public int getStartAddr(){
-        return startAddr;
+        return analysis.getStartAddr();
     }
 
     @VisibleForTesting
-    public BitSet getJumpdestSet() { return this.jumpdestSet; }
+    public BitSet getJumpdestSet() { return analysis.getJumpdestSet(); }
+
+    public DecodedCode getDecodedCode() {
+        return analysis.getDecodedCode(ops);
+    }
+
+    public boolean hasSharedCodeAnalysis() {
+        return analysis.isShared();
+    }
+
+    public boolean isGasLogEnabled() {
+        return isGasLogEnabled;
+    }
 }
@@ -23,7 +23,22 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-public class Stack extends java.util.Stack<DataWord> implements ProgramListenerAware {
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The VM stack, a fixed capacity array of words, owned by a single program.
+ * The top of the stack is the last element, index size() - 1.
+ * It is not synchronized, and the trace listener is only invoked when it is set.
+ */
+public class Stack implements ProgramListenerAware, Iterable<DataWord> {
+
+    public static final int CAPACITY = 1024;
+
+    private final DataWord[] words = new DataWord[CAPACITY];
+    private int size;
 
     private ProgramListener traceListener;
 
@@ -32,20 +47,60 @@ public class Stack extends java.util.Stack<DataWord> implements ProgramListenerA
         this.traceListener = listener;
     }
 
-    @Override
-    public synchronized DataWord pop() {
+    public DataWord pop() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+
         if (traceListener != null) {
             traceListener.onStackPop();
         }
-        return super.pop();
+
+        DataWord item = words[--size];
+        words[size] = null;
+        return item;
     }
 
-    @Override
     public DataWord push(DataWord item) {
+        if (size == CAPACITY) {
+            throw new IllegalStateException("Stack capacity exceeded: " + CAPACITY);
+        }
+
         if (traceListener != null) {
             traceListener.onStackPush(item);
         }
-        return super.push(item);
+
+        words[size++] = item;
+        return item;
+    }
+
+    public DataWord peek() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+
+        return words[size - 1];
+    }
+
+    public DataWord get(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+
+        return words[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0, size, null);
+        size = 0;
     }
 
     public void swap(int from, int to) {
@@ -53,12 +108,38 @@ public class Stack extends java.util.Stack<DataWord> implements ProgramListenerA
             if (traceListener != null) {
                 traceListener.onStackSwap(from, to);
             }
-            DataWord tmp = get(from);
-            set(from, set(to, tmp));
+            DataWord tmp = words[from];
+            words[from] = words[to];
+            words[to] = tmp;
         }
     }
 
+    public DataWord[] toArray() {
+        return Arrays.copyOf(words, size);
+    }
+
+    @Override
+    public Iterator<DataWord> iterator() {
+        return new Iterator<DataWord>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public DataWord next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+
+                return words[index++];
+            }
+        };
+    }
+
     private boolean isAccessible(int from) {
-        return from >= 0 && from < size();
+        return from >= 0 && from < size;
     }
 }
@@ -18,6 +18,10 @@
 
 package co.rsk.config;
 
+import co.rsk.cli.CliArgs;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.iq80.leveldb.CompressionType;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -38,6 +42,8 @@ public class RskSystemPropertiesTest {
         Assert.assertEquals(0, config.minerGasUnitInDollars(), 0.001);
         Assert.assertEquals(0, config.minerMinFeesNotifyInDollars(), 0.001);
         Assert.assertTrue(config.isFlushEnabled());
+        Assert.assertTrue(config.getVmConfig().decodedCode());
+        Assert.assertEquals(8 * 1024 * 1024, config.vmCodeCacheSize());
     }
 
     @Test
@@ -50,4 +56,76 @@ public class RskSystemPropertiesTest {
         Assert.assertTrue(commands.contains("TRANSACTIONS"));
         Assert.assertTrue(commands.contains("RSK_MESSAGE:BLOCK_MESSAGE"));
     }
+
+    @Test
+    public void defaultDatabaseProfile() {
+        DatabaseProfile profile = config.databaseProfile("state");
+
+        Assert.assertEquals(0, profile.cacheSize());
+        Assert.assertEquals(CompressionType.NONE, profile.compression());
+        Assert.assertEquals(10 * 1024 * 1024, profile.blockSize());
+        Assert.assertEquals(10 * 1024 * 1024, profile.writeBufferSize());
+        Assert.assertTrue(profile.paranoidChecks());
+        Assert.assertTrue(profile.verifyChecksums());
+    }
+
+    @Test
+    public void databaseProfilesByDataSourceName() {
+        RskSystemProperties props = new RskSystemProperties(new ConfigLoader(CliArgs.empty()) {
+            @Override
+            public Config getConfig() {
+                return ConfigFactory.parseString(
+                        "database.profiles.default.verifyChecksums = false\n" +
+                        "database.profiles.state.cacheSize = 256M\n" +
+                        "database.profiles.blocks.compression = snappy\n" +
+                        "database.profiles.blocks.blockSize = 64K\n" +
+                        "database.profiles.details-storage.writeBufferSize = 4M\n")
+                        .withFallback(ConfigFactory.load("config/regtest"));
+            }
+        });
+
+        DatabaseProfile state = props.databaseProfile("state");
+        Assert.assertEquals(256 * 1024 * 1024, state.cacheSize());
+        Assert.assertEquals(CompressionType.NONE, state.compression());
+        Assert.assertFalse(state.verifyChecksums());
+
+        DatabaseProfile blocks = props.databaseProfile("blocks");
+        Assert.assertEquals(0, blocks.cacheSize());
+        Assert.assertEquals(CompressionType.SNAPPY, blocks.compression());
+        Assert.assertEquals(64 * 1024, blocks.blockSize());
+
+        DatabaseProfile storage = props.databaseProfile("details-storage/0102030405060708090a0b0c0d0e0f1011121314");
+        Assert.assertEquals(4 * 1024 * 1024, storage.writeBufferSize());
+        Assert.assertEquals(10 * 1024 * 1024, storage.blockSize());
+
+        DatabaseProfile receipts = props.databaseProfile("receipts");
+        Assert.assertEquals(0, receipts.cacheSize());
+        Assert.assertFalse(receipts.verifyChecksums());
+    }
+
+    @Test(expected = RskConfigurationException.class)
+    public void invalidDatabaseProfileCompression() {
+        RskSystemProperties props = new RskSystemProperties(new ConfigLoader(CliArgs.empty()) {
+            @Override
+            public Config getConfig() {
+                return ConfigFactory.parseString("database.profiles.state.compression = zip")
+                        .withFallback(ConfigFactory.load("config/regtest"));
+            }
+        });
+
+        props.databaseProfile("state");
+    }
+
+    @Test(expected = RskConfigurationException.class)
+    public void invalidDatabaseProfileWriteBufferSize() {
+        RskSystemProperties props = new RskSystemProperties(new ConfigLoader(CliArgs.empty()) {
+            @Override
+            public Config getConfig() {
+                return ConfigFactory.parseString("database.profiles.state.writeBufferSize = 2G")
+                        .withFallback(ConfigFactory.load("config/regtest"));
+            }
+        });
+
+        props.databaseProfile("state");
+    }
 }
@@ -59,6 +59,11 @@ public class BlockchainDummy implements Blockchain {
 
     }
 
+    @Override
+    public void stop() {
+
+    }
+
     @Override
     public BlockChainStatus getStatus() {
         return null;
@@ -74,6 +79,11 @@ public class BlockchainDummy implements Blockchain {
         return null;
     }
 
+    @Override
+    public List<TransactionReceipt> getBlockReceipts(Block block) {
+        return null;
+    }
+
     @Override
     public void close() {
 
@@ -145,4 +155,14 @@ public class BlockchainDummy implements Blockchain {
         return false;
     }
 
+    @Override
+    public void suspendProcess() {
+        // unused
+    }
+
+    @Override
+    public void resumeProcess() {
+        // unused
+    }
+
 }
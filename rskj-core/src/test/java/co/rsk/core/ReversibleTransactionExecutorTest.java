@@ -30,6 +30,13 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class ReversibleTransactionExecutorTest {
 
     private final RskTestFactory factory = new RskTestFactory();
@@ -168,4 +175,157 @@ public class ReversibleTransactionExecutorTest {
                 new String[]{"calls: 1"},
                 callsFn.decodeResult(result2.getHReturn()));
     }
+
+    @Test
+    public void executeTransactionResultCachedByBlockAndArguments() {
+        TestContract greeter = TestContract.greeter();
+        CallTransaction.Function greeterFn = greeter.functions.get("greet");
+        ContractDetails contract = contractRunner.addContract(greeter.runtimeBytecode);
+
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+
+        ProgramResult result = executeCall(bestBlock, contract.getAddress(), greeterFn.encode("greet me"), RskAddress.nullAddress());
+        ProgramResult result2 = executeCall(bestBlock, contract.getAddress(), greeterFn.encode("greet me"), RskAddress.nullAddress());
+        ProgramResult result3 = executeCall(bestBlock, contract.getAddress(), greeterFn.encode("greet you"), RskAddress.nullAddress());
+
+        Assert.assertEquals(2, reversibleTransactionExecutor.getCachedResultCount());
+        Assert.assertArrayEquals(result.getHReturn(), result2.getHReturn());
+        Assert.assertEquals(result.getGasUsed(), result2.getGasUsed());
+        Assert.assertArrayEquals(
+                new String[]{"greet you"},
+                greeterFn.decodeResult(result3.getHReturn()));
+
+        // each call gets its own copy of the cached result
+        Assert.assertNotSame(result2.getHReturn(), executeCall(bestBlock, contract.getAddress(), greeterFn.encode("greet me"), RskAddress.nullAddress()).getHReturn());
+        result2.getHReturn()[0] ^= 1;
+        Assert.assertArrayEquals(
+                new String[]{"greet me"},
+                greeterFn.decodeResult(executeCall(bestBlock, contract.getAddress(), greeterFn.encode("greet me"), RskAddress.nullAddress()).getHReturn()));
+    }
+
+    @Test
+    public void executeConcurrentTransactionsOnTheSameBlock() throws Exception {
+        TestContract countcalls = TestContract.countcalls();
+        CallTransaction.Function callsFn = countcalls.functions.get("calls");
+        ContractDetails contract = contractRunner.addContract(countcalls.runtimeBytecode);
+
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        List<Future<ProgramResult>> futures = new ArrayList<>();
+
+        // a different sender for each call, so the results are not cached
+        for (int k = 0; k < 20; k++) {
+            RskAddress from = new RskAddress(String.format("%040x", k + 1));
+            futures.add(executorService.submit(() -> executeCall(bestBlock, contract.getAddress(), callsFn.encodeSignature(), from)));
+        }
+
+        for (Future<ProgramResult> future : futures) {
+            ProgramResult result = future.get();
+
+            Assert.assertNull(result.getException());
+            Assert.assertArrayEquals(
+                    new String[]{"calls: 1"},
+                    callsFn.decodeResult(result.getHReturn()));
+        }
+
+        executorService.shutdown();
+    }
+
+    private ProgramResult executeCall(Block block, byte[] to, byte[] data, RskAddress from) {
+        return reversibleTransactionExecutor.executeTransaction(
+                block,
+                block.getCoinbase(),
+                Hex.decode("00"),
+                Hex.decode("f424"),
+                to,
+                Hex.decode("00"),
+                data,
+                from.getBytes()
+        );
+    }
+
+    @Test
+    public void estimateGasOfATransfer() {
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+        RskAddress to = new RskAddress("0000000000000000000000000000000000000023");
+
+        ReversibleTransactionExecutor.GasEstimation estimation = estimateGas(bestBlock, to.getBytes(), Hex.decode("0f4240"));
+
+        Assert.assertEquals(21000, estimation.getGas());
+        Assert.assertEquals(2, estimation.getIterations());
+    }
+
+    @Test
+    public void estimateGasOfAContractCheckingTheGasLeft() {
+        // fails with a bad jump if the gas left is less than 100000
+        ContractDetails contract = contractRunner.addContract("5a620186a01160ff5700");
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+
+        ReversibleTransactionExecutor.GasEstimation estimation = estimateGas(bestBlock, contract.getAddress(), Hex.decode("0f4240"));
+        long gas = estimation.getGas();
+
+        Assert.assertTrue(gas > 121000);
+        Assert.assertTrue(estimation.getIterations() > 2);
+        Assert.assertNull(estimation.getResult().getException());
+        Assert.assertNull(executeCall(bestBlock, contract.getAddress(), gas, RskAddress.nullAddress()).getException());
+        Assert.assertNotNull(executeCall(bestBlock, contract.getAddress(), gas - 100, RskAddress.nullAddress()).getException());
+    }
+
+    @Test
+    public void estimateGasAboveTheBlockGasLimit() {
+        // fails with a bad jump if the gas left is less than 12000000, above the block gas limit
+        ContractDetails contract = contractRunner.addContract("5a6300b71b001160ff5700");
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+        long blockGasLimit = new BigInteger(1, bestBlock.getGasLimit()).longValue();
+
+        Assert.assertTrue(blockGasLimit < 12000000);
+
+        ReversibleTransactionExecutor.GasEstimation estimation = estimateGas(bestBlock, contract.getAddress(), Hex.decode("e4e1c0"));
+
+        Assert.assertEquals(15000000, estimation.getGas());
+        Assert.assertEquals(2, estimation.getIterations());
+        Assert.assertNull(estimation.getResult().getException());
+        Assert.assertNotNull(executeCall(bestBlock, contract.getAddress(), blockGasLimit, RskAddress.nullAddress()).getException());
+    }
+
+    @Test
+    public void estimateGasWithAGasLimitAboveTheBlockGasLimit() {
+        ContractDetails contract = contractRunner.addContract("5a620186a01160ff5700");
+        Block bestBlock = factory.getBlockchain().getBestBlock();
+
+        ReversibleTransactionExecutor.GasEstimation estimation = estimateGas(bestBlock, contract.getAddress(), Hex.decode("e4e1c0"));
+        long gas = estimation.getGas();
+
+        Assert.assertTrue(gas > 121000);
+        Assert.assertTrue(gas < new BigInteger(1, bestBlock.getGasLimit()).longValue());
+        Assert.assertNull(estimation.getResult().getException());
+        Assert.assertNull(executeCall(bestBlock, contract.getAddress(), gas, RskAddress.nullAddress()).getException());
+        Assert.assertNotNull(executeCall(bestBlock, contract.getAddress(), gas - 100, RskAddress.nullAddress()).getException());
+    }
+
+    private ReversibleTransactionExecutor.GasEstimation estimateGas(Block block, byte[] to, byte[] gasLimit) {
+        return reversibleTransactionExecutor.estimateGas(
+                block,
+                block.getCoinbase(),
+                Hex.decode("00"),
+                gasLimit,
+                to,
+                Hex.decode("00"),
+                null,
+                RskAddress.nullAddress().getBytes()
+        );
+    }
+
+    private ProgramResult executeCall(Block block, byte[] to, long gasLimit, RskAddress from) {
+        return reversibleTransactionExecutor.executeTransaction(
+                block,
+                block.getCoinbase(),
+                Hex.decode("00"),
+                BigInteger.valueOf(gasLimit).toByteArray(),
+                to,
+                Hex.decode("00"),
+                null,
+                from.getBytes()
+        );
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.core;
+
+import co.rsk.config.TestSystemProperties;
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Repository;
+import org.ethereum.db.ContractDetails;
+import org.ethereum.db.ContractDetailsCacheImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class SharedStateRepositoryTest {
+    private static final RskAddress SLOW_ADDRESS = new RskAddress("0000000000000000000000000000000000000001");
+    private static final RskAddress ADDRESS = new RskAddress("0000000000000000000000000000000000000002");
+    private static final RskAddress OTHER_ADDRESS = new RskAddress("0000000000000000000000000000000000000003");
+
+    private final TestSystemProperties config = new TestSystemProperties();
+    private final Repository snapshot = Mockito.mock(Repository.class);
+
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void accountLoadsOfTheTracksNotSerialized() throws Exception {
+        mockSnapshot();
+
+        SharedStateRepository view = new SharedStateRepository(config, snapshot);
+        Assert.assertEquals(Coin.valueOf(10), view.startTracking().getBalance(ADDRESS));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+
+        try {
+            // the first call waits in the snapshot, loading an account
+            Future<Coin> slowBalance = executorService.submit(() -> view.startTracking().getBalance(SLOW_ADDRESS));
+            Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            // the second one loads a kept account meanwhile
+            Future<Coin> balance = executorService.submit(() -> view.startTracking().getBalance(ADDRESS));
+            Assert.assertEquals(Coin.valueOf(10), balance.get(5, TimeUnit.SECONDS));
+            Assert.assertFalse(slowBalance.isDone());
+
+            release.countDown();
+            Assert.assertEquals(Coin.valueOf(10), slowBalance.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void valuesNotKeptOnceTheCapIsReached() {
+        mockSnapshot();
+        release.countDown();
+
+        SharedStateRepository view = new SharedStateRepository(config, snapshot, 1);
+
+        view.startTracking().getBalance(ADDRESS);
+        view.startTracking().getBalance(OTHER_ADDRESS);
+        view.startTracking().getBalance(OTHER_ADDRESS);
+        view.startTracking().getBalance(ADDRESS);
+
+        Assert.assertEquals(1, view.getCachedEntries());
+        Mockito.verify(snapshot, Mockito.times(1)).loadAccount(Mockito.eq(ADDRESS), Mockito.anyMap(), Mockito.anyMap());
+        Mockito.verify(snapshot, Mockito.times(2)).loadAccount(Mockito.eq(OTHER_ADDRESS), Mockito.anyMap(), Mockito.anyMap());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockSnapshot() {
+        Mockito.doAnswer(invocation -> {
+            RskAddress addr = (RskAddress) invocation.getArguments()[0];
+
+            if (addr.equals(SLOW_ADDRESS)) {
+                loading.countDown();
+                release.await();
+            }
+
+            Map<RskAddress, AccountState> accounts = (Map<RskAddress, AccountState>) invocation.getArguments()[1];
+            Map<RskAddress, ContractDetails> details = (Map<RskAddress, ContractDetails>) invocation.getArguments()[2];
+            accounts.put(addr, new AccountState(BigInteger.ZERO, Coin.valueOf(10)));
+            details.put(addr, new ContractDetailsCacheImpl(null));
+
+            return null;
+        }).when(snapshot).loadAccount(Mockito.any(RskAddress.class), Mockito.anyMap(), Mockito.anyMap());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.config.TestSystemProperties;
+import org.ethereum.core.Block;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the block execution time calculating the state root after each transaction,
+ * and only at the end of the block.
+ *
+ * To execute as a standalone application, run main.
+ */
+public class BlockExecutorPerformanceTest {
+    private static final TestSystemProperties config = new TestSystemProperties();
+
+    private static final int[] TRANSACTIONS = { 10, 100, 500 };
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        new BlockExecutorPerformanceTest().executeBlocksWithManyTransactions();
+    }
+
+    @Ignore
+    @Test
+    public void executeBlocksWithManyTransactions() {
+        for (int ntxs : TRANSACTIONS) {
+            BlockExecutorTest.TestObjects objects = BlockExecutorTest.generateBlockWithManyTransactions(ntxs);
+
+            long intermediate = measure(new BlockExecutor(config, objects.getRepository(), null, null, null, true), objects);
+            long finalOnly = measure(new BlockExecutor(config, objects.getRepository(), null, null, null), objects);
+
+            System.out.println(String.format("txs: %5d intermediate roots: %10d nano final root: %10d nano speedup: %.2f",
+                    ntxs, intermediate, finalOnly, (double) intermediate / finalOnly));
+        }
+    }
+
+    private static long measure(BlockExecutor executor, BlockExecutorTest.TestObjects objects) {
+        Block block = objects.getBlock();
+        Block parent = objects.getParent();
+
+        for (int k = 0; k < WARMUP_ROUNDS; k++) {
+            executor.execute(block, parent.getStateRoot(), false);
+        }
+
+        long start = System.nanoTime();
+
+        for (int k = 0; k < ROUNDS; k++) {
+            BlockResult result = executor.execute(block, parent.getStateRoot(), false);
+            Assert.assertArrayEquals(block.getStateRoot(), result.getStateRoot());
+        }
+
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+}
@@ -377,6 +377,28 @@ public class BlockExecutorTest {
         Assert.assertFalse(executor.executeAndValidate(block, parent));
     }
 
+    @Test
+    public void executeBlockWithManyTransactionsWithoutIntermediateStateRoots() {
+        TestObjects objects = generateBlockWithManyTransactions(10);
+        Block parent = objects.getParent();
+        Block block = objects.getBlock();
+
+        BlockExecutor executor = new BlockExecutor(config, objects.getRepository(), null, null, null);
+        BlockExecutor tracingExecutor = new BlockExecutor(config, objects.getRepository(), null, null, null, true);
+
+        BlockResult result = executor.execute(block, parent.getStateRoot(), false);
+        BlockResult tracingResult = tracingExecutor.execute(block, parent.getStateRoot(), false);
+
+        Assert.assertEquals(10, result.getTransactionReceipts().size());
+        Assert.assertArrayEquals(block.getStateRoot(), result.getStateRoot());
+        Assert.assertArrayEquals(tracingResult.getStateRoot(), result.getStateRoot());
+        Assert.assertArrayEquals(tracingResult.getReceiptsRoot(), result.getReceiptsRoot());
+        Assert.assertEquals(tracingResult.getGasUsed(), result.getGasUsed());
+
+        Assert.assertTrue(executor.executeAndValidate(block, parent));
+        Assert.assertTrue(tracingExecutor.executeAndValidate(block, parent));
+    }
+
     public static TestObjects generateBlockWithOneTransaction() {
         BlockChainImpl blockchain = new BlockChainBuilder().build();
         Repository repository = blockchain.getRepository();
@@ -407,6 +429,42 @@ public class BlockExecutorTest {
         return new TestObjects(repository, block, genesis, tx, account);
     }
 
+    public static TestObjects generateBlockWithManyTransactions(int ntxs) {
+        BlockChainImpl blockchain = new BlockChainBuilder().build();
+        Repository repository = blockchain.getRepository();
+
+        Repository track = repository.startTracking();
+
+        List<Account> senders = new ArrayList<>();
+
+        for (int k = 0; k < ntxs; k++) {
+            senders.add(createAccount("sender" + k, track, Coin.valueOf(30000)));
+        }
+
+        Account receiver = createAccount("receiver", track, Coin.valueOf(10L));
+
+        track.commit();
+
+        BlockExecutor executor = new BlockExecutor(config, repository, null, null, null);
+
+        List<Transaction> txs = new ArrayList<>();
+
+        for (Account sender : senders) {
+            txs.add(createTransaction(sender, receiver, BigInteger.TEN, repository.getNonce(sender.getAddress())));
+        }
+
+        List<BlockHeader> uncles = new ArrayList<>();
+
+        Block genesis = BlockChainImplTest.getGenesisBlock(blockchain);
+        genesis.setStateRoot(repository.getRoot());
+        byte[] gasLimit = BigInteger.valueOf(21000L * ntxs).toByteArray();
+        Block block = new BlockGenerator().createChildBlock(genesis, txs, uncles, 1, null, gasLimit);
+
+        executor.executeAndFill(block, genesis);
+
+        return new TestObjects(repository, block, genesis, txs.get(0), senders.get(0));
+    }
+
     private static Transaction createTransaction(Account sender, Account receiver, BigInteger value, BigInteger nonce) {
         String toAddress = Hex.toHexString(receiver.getAddress().getBytes());
         byte[] privateKeyBytes = sender.getEcKey().getPrivKeyBytes();
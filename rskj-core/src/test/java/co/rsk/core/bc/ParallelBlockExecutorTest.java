@@ -0,0 +1,197 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.core.bc;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import co.rsk.config.TestSystemProperties;
+import co.rsk.core.Coin;
+import co.rsk.core.RskAddress;
+import co.rsk.test.builders.BlockChainBuilder;
+import org.ethereum.core.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executes the same blocks serially and in parallel, comparing the results
+ */
+public class ParallelBlockExecutorTest {
+    private static final TestSystemProperties config = new TestSystemProperties();
+
+    // stores the call value in the cell of the caller, and emits an empty log
+    private static final byte[] CALLER_CELLS_CODE = Hex.decode("34335560006000a000");
+    // increments the counter in cell 0
+    private static final byte[] COUNTER_CODE = Hex.decode("600054600101600055" + "00");
+    // returns the counter contract code
+    private static final String CREATE_COUNTER_CODE = "600a600c600039600a6000f3" + "60005460010160005500";
+
+    private Repository repository;
+    private Block genesis;
+    private List<Account> senders;
+    private Account receiver;
+    private RskAddress callerCells;
+    private RskAddress counter;
+
+    @Before
+    public void setup() {
+        BlockChainImpl blockchain = new BlockChainBuilder().build();
+        repository = blockchain.getRepository();
+
+        Repository track = repository.startTracking();
+
+        senders = new ArrayList<>();
+
+        for (int k = 0; k < 10; k++) {
+            senders.add(BlockExecutorTest.createAccount("sender" + k, track, Coin.valueOf(10000000)));
+        }
+
+        receiver = BlockExecutorTest.createAccount("receiver", track, Coin.valueOf(10));
+
+        callerCells = createContract("callerCells", track, CALLER_CELLS_CODE);
+        counter = createContract("counter", track, COUNTER_CODE);
+
+        track.commit();
+
+        genesis = BlockChainImplTest.getGenesisBlock(blockchain);
+        genesis.setStateRoot(repository.getRoot());
+    }
+
+    @Test
+    public void executeIndependentTransfers() {
+        List<Transaction> txs = new ArrayList<>();
+
+        for (int k = 0; k < senders.size(); k++) {
+            RskAddress newAccount = BlockExecutorTest.createAccount("receiver" + k).getAddress();
+            txs.add(createTransaction(senders.get(k), newAccount, k + 1, 0, null));
+        }
+
+        assertSameResults(txs);
+    }
+
+    @Test
+    public void executeContractCallsOnDisjointAndSameCells() {
+        List<Transaction> txs = new ArrayList<>();
+
+        for (int k = 0; k < 4; k++) {
+            txs.add(createTransaction(senders.get(k), callerCells, 0, 0, null));
+        }
+
+        for (int k = 4; k < 8; k++) {
+            txs.add(createTransaction(senders.get(k), counter, 0, 0, null));
+        }
+
+        assertSameResults(txs);
+    }
+
+    @Test
+    public void executeDependentTransactions() {
+        List<Transaction> txs = new ArrayList<>();
+
+        // the same sender, and a sender funded by a previous transaction
+        txs.add(createTransaction(senders.get(0), senders.get(1).getAddress(), 1000, 0, null));
+        txs.add(createTransaction(senders.get(0), receiver.getAddress(), 10, 1, null));
+        txs.add(createTransaction(senders.get(1), senders.get(2).getAddress(), 1000000, 0, null));
+        txs.add(createTransaction(senders.get(2), callerCells, 5, 0, null));
+        txs.add(createTransaction(senders.get(3), senders.get(2).getAddress(), 1, 0, null));
+
+        assertSameResults(txs);
+    }
+
+    @Test
+    public void executeWithContractCreation() {
+        List<Transaction> txs = new ArrayList<>();
+
+        txs.add(createTransaction(senders.get(0), counter, 0, 0, null));
+        txs.add(createTransaction(senders.get(1), null, 0, 0, CREATE_COUNTER_CODE));
+        txs.add(createTransaction(senders.get(2), counter, 0, 0, null));
+        txs.add(createTransaction(senders.get(3), receiver.getAddress(), 1, 0, null));
+
+        assertSameResults(txs);
+    }
+
+    @Test
+    public void executeWithInvalidTransaction() {
+        List<Transaction> txs = new ArrayList<>();
+
+        txs.add(createTransaction(senders.get(0), receiver.getAddress(), 1, 0, null));
+        // invalid nonce
+        txs.add(createTransaction(senders.get(1), receiver.getAddress(), 1, 5, null));
+        txs.add(createTransaction(senders.get(2), callerCells, 1, 0, null));
+
+        Block block = createBlock(txs);
+
+        BlockResult serial = createExecutor(0).execute(block, genesis.getStateRoot(), true);
+        BlockResult parallel = createExecutor(4).execute(block, genesis.getStateRoot(), true);
+
+        Assert.assertEquals(2, parallel.getExecutedTransactions().size());
+        assertSameResults(serial, parallel);
+
+        Assert.assertSame(BlockResult.INTERRUPTED_EXECUTION_BLOCK_RESULT, createExecutor(4).execute(block, genesis.getStateRoot(), false));
+    }
+
+    private void assertSameResults(List<Transaction> txs) {
+        Block block = createBlock(txs);
+
+        BlockResult serial = createExecutor(0).execute(block, genesis.getStateRoot(), false);
+        BlockResult parallel = createExecutor(4).execute(block, genesis.getStateRoot(), false);
+
+        Assert.assertEquals(txs.size(), serial.getExecutedTransactions().size());
+        assertSameResults(serial, parallel);
+    }
+
+    private static void assertSameResults(BlockResult serial, BlockResult parallel) {
+        Assert.assertArrayEquals(serial.getStateRoot(), parallel.getStateRoot());
+        Assert.assertArrayEquals(serial.getReceiptsRoot(), parallel.getReceiptsRoot());
+        Assert.assertArrayEquals(serial.getLogsBloom(), parallel.getLogsBloom());
+        Assert.assertEquals(serial.getGasUsed(), parallel.getGasUsed());
+        Assert.assertEquals(serial.getPaidFees(), parallel.getPaidFees());
+        Assert.assertEquals(serial.getExecutedTransactions(), parallel.getExecutedTransactions());
+
+        for (int k = 0; k < serial.getTransactionReceipts().size(); k++) {
+            Assert.assertArrayEquals(serial.getTransactionReceipts().get(k).getEncoded(), parallel.getTransactionReceipts().get(k).getEncoded());
+        }
+    }
+
+    private BlockExecutor createExecutor(int threads) {
+        return new BlockExecutor(config, repository, null, null, null, false, threads);
+    }
+
+    private Block createBlock(List<Transaction> txs) {
+        byte[] gasLimit = BigInteger.valueOf(100000L * txs.size()).toByteArray();
+        return new BlockGenerator().createChildBlock(genesis, txs, new ArrayList<>(), 1, null, gasLimit);
+    }
+
+    private static RskAddress createContract(String seed, Repository track, byte[] code) {
+        RskAddress address = BlockExecutorTest.createAccount(seed, track, Coin.ZERO).getAddress();
+        track.saveCode(address, code);
+        return address;
+    }
+
+    private static Transaction createTransaction(Account sender, RskAddress receiver, long value, long nonce, String data) {
+        String toAddress = receiver == null ? null : Hex.toHexString(receiver.getBytes());
+        Transaction tx = Transaction.create(config, toAddress, BigInteger.valueOf(value), BigInteger.valueOf(nonce), BigInteger.ONE, BigInteger.valueOf(100000), data);
+        tx.sign(sender.getEcKey().getPrivKeyBytes());
+        return tx;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.db;
+
+import co.rsk.crypto.Keccak256;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.core.Bloom;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.datasource.HashMapDB;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class BloomBitsIndexTest {
+    private static final byte[] ADDRESS1 = new byte[] { 0x01 };
+    private static final byte[] ADDRESS2 = new byte[] { 0x02 };
+
+    private Blockchain blockchain;
+    private List<Block> blocks;
+
+    @Before
+    public void setup() {
+        blockchain = mock(Blockchain.class);
+        blocks = new ArrayList<>();
+    }
+
+    @Test
+    public void getCandidatesFromCompleteSectionsOnly() {
+        // sections [0, 3], [4, 7], and the incomplete [8, 9]
+        createChain(10, Arrays.asList(1L, 6L, 9L), Arrays.asList(2L, 6L));
+
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB(), 4);
+
+        Assert.assertEquals(Arrays.asList(1L, 6L, 8L, 9L), index.getCandidateBlocks(filterBlooms(ADDRESS1), 0, 9, blockchain));
+        Assert.assertEquals(Arrays.asList(2L, 6L, 8L, 9L), index.getCandidateBlocks(filterBlooms(ADDRESS2), 0, 9, blockchain));
+        Assert.assertEquals(Arrays.asList(6L), index.getCandidateBlocks(filterBlooms(ADDRESS1), 2, 7, blockchain));
+    }
+
+    @Test
+    public void matchAnyAddress() {
+        createChain(8, Arrays.asList(1L), Arrays.asList(5L));
+
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB(), 4);
+        Bloom[][] anyAddress = new Bloom[][] { { createBloom(ADDRESS1), createBloom(ADDRESS2) } };
+
+        Assert.assertEquals(Arrays.asList(1L, 5L), index.getCandidateBlocks(anyAddress, 0, 7, blockchain));
+    }
+
+    @Test
+    public void reuseIndexedSections() {
+        createChain(8, Arrays.asList(1L), Arrays.asList(5L));
+
+        HashMapDB ds = new HashMapDB();
+
+        new BloomBitsIndex(ds, 4).getCandidateBlocks(filterBlooms(ADDRESS1), 0, 7, blockchain);
+        verify(blockchain, times(6)).getBlockByHash(any());
+
+        BloomBitsIndex index = new BloomBitsIndex(ds, 4);
+
+        Assert.assertEquals(Arrays.asList(5L), index.getCandidateBlocks(filterBlooms(ADDRESS2), 0, 7, blockchain));
+        verify(blockchain, times(6)).getBlockByHash(any());
+    }
+
+    @Test
+    public void indexSectionAgainAfterReorganization() {
+        createChain(8, Arrays.asList(1L), Arrays.asList(5L));
+
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB(), 4);
+
+        Assert.assertEquals(Arrays.asList(1L), index.getCandidateBlocks(filterBlooms(ADDRESS1), 0, 7, blockchain));
+
+        // a new main chain from block 2
+        blocks = new ArrayList<>(blocks.subList(0, 2));
+        createChain(8, Arrays.asList(3L, 6L), Arrays.asList());
+
+        Assert.assertEquals(Arrays.asList(1L, 3L, 6L), index.getCandidateBlocks(filterBlooms(ADDRESS1), 0, 7, blockchain));
+        Assert.assertEquals(Arrays.asList(), index.getCandidateBlocks(filterBlooms(ADDRESS2), 0, 7, blockchain));
+    }
+
+    @Test
+    public void indexSectionsWithEnoughConfirmations() {
+        createChain(105, Arrays.asList(1L), Arrays.asList());
+
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB(), 4);
+
+        // the first section ends at block 3
+        index.onBestBlock(blocks.get(102), blockchain);
+        verify(blockchain, never()).getBlockByHash(any());
+
+        index.onBestBlock(blocks.get(103), blockchain);
+        verify(blockchain, times(3)).getBlockByHash(any());
+
+        index.onBestBlock(blocks.get(104), blockchain);
+        verify(blockchain, times(3)).getBlockByHash(any());
+
+        Assert.assertEquals(Arrays.asList(1L), index.getCandidateBlocks(filterBlooms(ADDRESS1), 0, 3, blockchain));
+        verify(blockchain, times(3)).getBlockByHash(any());
+    }
+
+    private void createChain(int size, List<Long> withAddress1, List<Long> withAddress2) {
+        byte[] parentHash = blocks.isEmpty() ? new byte[32] : blocks.get(blocks.size() - 1).getHash().getBytes();
+
+        for (long number = blocks.size(); number < size; number++) {
+            Bloom bloom = new Bloom();
+
+            if (withAddress1.contains(number)) {
+                bloom.or(createBloom(ADDRESS1));
+            }
+
+            if (withAddress2.contains(number)) {
+                bloom.or(createBloom(ADDRESS2));
+            }
+
+            byte[] hash = HashUtil.keccak256(("block" + number + Arrays.toString(parentHash) + Arrays.toString(bloom.getData())).getBytes());
+
+            Block block = mock(Block.class);
+            when(block.getNumber()).thenReturn(number);
+            when(block.getHash()).thenReturn(new Keccak256(hash));
+            when(block.getParentHash()).thenReturn(new Keccak256(parentHash));
+            when(block.getLogBloom()).thenReturn(bloom.getData());
+
+            blocks.add(block);
+            parentHash = hash;
+        }
+
+        reset(blockchain);
+
+        for (Block block : blocks) {
+            when(blockchain.getBlockByNumber(block.getNumber())).thenReturn(block);
+            when(blockchain.getBlockByHash(block.getHash().getBytes())).thenReturn(block);
+        }
+
+        when(blockchain.getBestBlock()).thenReturn(blocks.get(blocks.size() - 1));
+    }
+
+    private static Bloom[][] filterBlooms(byte[] address) {
+        return new Bloom[][] { { createBloom(address) } };
+    }
+
+    private static Bloom createBloom(byte[] address) {
+        return Bloom.create(HashUtil.keccak256(address));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.db;
+
+import co.rsk.config.PruneConfiguration;
+import co.rsk.trie.Trie;
+import co.rsk.trie.TrieImpl;
+import co.rsk.trie.TrieStoreImpl;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.datasource.HashMapDB;
+import org.ethereum.datasource.KeyValueDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.*;
+
+public class PruneServiceTest {
+    private HashMapDB map;
+    private TrieStoreImpl store;
+    private Blockchain blockchain;
+
+    private Trie state1;
+    private Trie state2;
+    private Trie state3;
+
+    @Before
+    public void setup() {
+        map = new HashMapDB();
+        store = new TrieStoreImpl(map);
+        blockchain = mock(Blockchain.class);
+
+        state1 = new TrieImpl(store, true)
+                .put("foo".getBytes(), "bar".getBytes())
+                .put("bar".getBytes(), new byte[100]);
+        state1.save();
+
+        state2 = state1.put("foo".getBytes(), "baz".getBytes());
+        state2.save();
+
+        state3 = state2.put("baz".getBytes(), new byte[200]);
+        state3.save();
+
+        addBlock(1, state1);
+        addBlock(2, state2);
+        Block best = addBlock(3, state3);
+
+        when(blockchain.getBestBlock()).thenReturn(best);
+    }
+
+    @Test
+    public void keepAllStates() {
+        int keys = map.keys().size();
+
+        PruneService service = createService(new PruneConfiguration(3, 10, 100));
+
+        service.pruneStore("state", store, Block::getStateRoot);
+
+        Assert.assertEquals(keys, map.keys().size());
+        Assert.assertEquals(0, service.getDeletedKeys());
+        Assert.assertEquals(0, service.getReclaimedBytes());
+        verify(blockchain, times(1)).suspendProcess();
+        verify(blockchain, times(1)).resumeProcess();
+    }
+
+    @Test
+    public void removeNodesOfOldStates() {
+        PruneService service = createService(new PruneConfiguration(2, 10, 100));
+
+        service.pruneStore("state", store, Block::getStateRoot);
+
+        Assert.assertNull(map.get(state1.getHash().getBytes()));
+        Assert.assertTrue(service.getDeletedKeys() > 0);
+        Assert.assertTrue(service.getReclaimedBytes() > 0);
+        Assert.assertTrue(service.getMaxPauseTime() > 0);
+
+        assertStateIsComplete(state2);
+        assertStateIsComplete(state3);
+    }
+
+    @Test
+    public void removeNodesOfOldStatesInManySteps() {
+        PruneService service = createService(new PruneConfiguration(1, 10, 1));
+
+        service.pruneStore("state", store, Block::getStateRoot);
+
+        Assert.assertNull(map.get(state1.getHash().getBytes()));
+        Assert.assertNull(map.get(state2.getHash().getBytes()));
+
+        assertStateIsComplete(state3);
+
+        Trie retrieved = store.retrieve(state3.getHash().getBytes());
+        Assert.assertArrayEquals(new byte[100], retrieved.get("bar".getBytes()));
+        Assert.assertArrayEquals(new byte[200], retrieved.get("baz".getBytes()));
+        Assert.assertArrayEquals("baz".getBytes(), retrieved.get("foo".getBytes()));
+    }
+
+    @Test
+    public void keepNodesWrittenWhilePruning() {
+        PruneService service = createService(new PruneConfiguration(1, 10, 100));
+
+        // the state of block 1 is saved again by the block processing, after the prune started
+        when(blockchain.getBlocksByNumber(3)).thenAnswer(invocation -> {
+            new TrieImpl(store, true)
+                    .put("foo".getBytes(), "bar".getBytes())
+                    .put("bar".getBytes(), new byte[100])
+                    .save();
+
+            return Collections.singletonList(blockchain.getBestBlock());
+        });
+
+        service.pruneStore("state", store, Block::getStateRoot);
+
+        Assert.assertNotNull(map.get(state1.getHash().getBytes()));
+        Assert.assertNull(map.get(state2.getHash().getBytes()));
+
+        assertStateIsComplete(state1);
+        assertStateIsComplete(state3);
+    }
+
+    private PruneService createService(PruneConfiguration pruneConfiguration) {
+        return new PruneService(null, pruneConfiguration, blockchain, store) {
+            @Override
+            protected KeyValueDataSource openMarks() {
+                return new HashMapDB();
+            }
+
+            @Override
+            protected void closeMarks(KeyValueDataSource marksDataSource) {
+            }
+        };
+    }
+
+    private Block addBlock(long number, Trie state) {
+        Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getStateRoot()).thenReturn(state.getHash().getBytes());
+        when(blockchain.getBlocksByNumber(number)).thenReturn(Collections.singletonList(block));
+        return block;
+    }
+
+    private void assertStateIsComplete(Trie state) {
+        TrieStoreImpl target = new TrieStoreImpl(new HashMapDB());
+
+        store.retrieve(state.getHash().getBytes()).copyTo(target);
+
+        Assert.assertNotNull(target.retrieve(state.getHash().getBytes()));
+        Assert.assertEquals(state.trieSize(), target.retrieve(state.getHash().getBytes()).trieSize());
+    }
+}
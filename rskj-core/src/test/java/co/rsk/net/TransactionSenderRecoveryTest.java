@@ -0,0 +1,89 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.net;
+
+import co.rsk.config.TestSystemProperties;
+import co.rsk.core.RskAddress;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.crypto.HashUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TransactionSenderRecoveryTest {
+    private static final TestSystemProperties config = new TestSystemProperties();
+
+    @Test
+    public void recoverSenders() {
+        List<ECKey> keys = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>();
+
+        for (int k = 0; k < 20; k++) {
+            ECKey key = ECKey.fromPrivate(HashUtil.keccak256(("sender" + k).getBytes()));
+            keys.add(key);
+            transactions.add(createTransaction(key, k));
+        }
+
+        TransactionSenderRecovery recovery = new TransactionSenderRecovery(4);
+
+        recovery.recoverAsync(transactions);
+
+        // each sender is the recovered one, or waits for its recovery
+        for (int k = 0; k < transactions.size(); k++) {
+            Assert.assertEquals(new RskAddress(keys.get(k).getAddress()), transactions.get(k).getSender());
+        }
+
+        recovery.stop();
+    }
+
+    @Test
+    public void recoverSendersInBackground() throws InterruptedException {
+        ECKey key = ECKey.fromPrivate(HashUtil.keccak256("sender".getBytes()));
+        Transaction transaction = createTransaction(key, 0);
+
+        TransactionSenderRecovery recovery = new TransactionSenderRecovery(2);
+
+        recovery.recoverAsync(Collections.singletonList(transaction));
+
+        Assert.assertEquals(new RskAddress(key.getAddress()), transaction.getSender());
+
+        recovery.stop();
+    }
+
+    @Test
+    public void disabledRecoveryDoesNothing() {
+        TransactionSenderRecovery recovery = new TransactionSenderRecovery(0);
+        Transaction transaction = createTransaction(ECKey.fromPrivate(HashUtil.keccak256("sender".getBytes())), 0);
+
+        recovery.recoverAsync(Collections.singletonList(transaction));
+        recovery.stop();
+    }
+
+    private static Transaction createTransaction(ECKey sender, long nonce) {
+        String toAddress = "0000000000000000000000000000000000000001";
+        Transaction tx = Transaction.create(config, toAddress, BigInteger.ONE, BigInteger.valueOf(nonce), BigInteger.ONE, BigInteger.valueOf(21000));
+        tx.sign(sender.getPrivKeyBytes());
+        return tx;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class JsonRpcExecutorTest {
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private JsonRpcExecutor executor;
+
+    @After
+    public void tearDown() {
+        blocked.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void executeAndRecordLatencyByMethod() throws InterruptedException {
+        executor = new JsonRpcExecutor(2, 10, Collections.emptyMap());
+        CountDownLatch executed = new CountDownLatch(2);
+
+        Assert.assertTrue(executor.submit(Collections.singletonList("eth_blockNumber"), executed::countDown));
+        Assert.assertTrue(executor.submit(Arrays.asList("eth_blockNumber", "eth_call"), executed::countDown));
+
+        Assert.assertTrue(executed.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assert.assertTrue(awaitTermination());
+
+        Assert.assertEquals(1, executor.getLatencyHistogram("eth_blockNumber").getCount());
+        Assert.assertEquals(1, executor.getLatencyHistogram(JsonRpcExecutor.BATCH).getCount());
+    }
+
+    @Test
+    public void rejectWhenTheQueueIsFull() {
+        executor = new JsonRpcExecutor(1, 1, Collections.emptyMap());
+
+        Assert.assertTrue(executor.submit(Collections.singletonList("eth_call"), this::block));
+        Assert.assertTrue(executor.submit(Collections.singletonList("eth_call"), this::block));
+        Assert.assertFalse(executor.submit(Collections.singletonList("eth_call"), this::block));
+    }
+
+    @Test
+    public void rejectWhenTheMethodLimitIsReached() throws InterruptedException {
+        executor = new JsonRpcExecutor(4, 10, Collections.singletonMap("eth_getLogs", 1));
+
+        Assert.assertTrue(executor.submit(Collections.singletonList("eth_getLogs"), this::block));
+        Assert.assertFalse(executor.submit(Collections.singletonList("eth_getLogs"), this::block));
+        Assert.assertFalse(executor.submit(Arrays.asList("eth_call", "eth_getLogs"), this::block));
+        Assert.assertTrue(executor.submit(Collections.singletonList("eth_call"), () -> { }));
+
+        // the permit is released after the execution
+        blocked.countDown();
+        executor.shutdown();
+        Assert.assertTrue(awaitTermination());
+        Assert.assertEquals(1, executor.getLatencyHistogram("eth_getLogs").getCount());
+    }
+
+    @Test
+    public void batchElementsCountedInTheMethodLimit() throws InterruptedException {
+        executor = new JsonRpcExecutor(4, 10, Collections.singletonMap("eth_getLogs", 2));
+
+        Assert.assertFalse(executor.submit(Arrays.asList("eth_getLogs", "eth_call", "eth_getLogs", "eth_getLogs"), this::block));
+        Assert.assertTrue(executor.submit(Arrays.asList("eth_getLogs", "eth_call", "eth_getLogs"), this::block));
+        Assert.assertFalse(executor.submit(Collections.singletonList("eth_getLogs"), this::block));
+
+        blocked.countDown();
+        executor.shutdown();
+        Assert.assertTrue(awaitTermination());
+        Assert.assertEquals(1, executor.getLatencyHistogram(JsonRpcExecutor.BATCH).getCount());
+    }
+
+    @Test
+    public void releasePermitsAfterTheExecution() throws InterruptedException {
+        executor = new JsonRpcExecutor(1, 10, Collections.singletonMap("eth_getLogs", 1));
+        CountDownLatch executed = new CountDownLatch(1);
+
+        Assert.assertTrue(executor.submit(Collections.singletonList("eth_getLogs"), executed::countDown));
+        Assert.assertTrue(executed.await(5, TimeUnit.SECONDS));
+
+        for (int k = 0; k < 100 && !executor.submit(Collections.singletonList("eth_getLogs"), () -> { }); k++) {
+            Thread.sleep(10);
+        }
+
+        executor.shutdown();
+        Assert.assertTrue(awaitTermination());
+        Assert.assertEquals(2, executor.getLatencyHistogram("eth_getLogs").getCount());
+    }
+
+    @Test
+    public void executeBatchInOrderWithLimitedConcurrency() {
+        executor = new JsonRpcExecutor(4, 10, Collections.emptyMap(), 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Supplier<Integer>> elements = new ArrayList<>();
+
+        for (int k = 0; k < 20; k++) {
+            int value = k;
+            elements.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(20 - value);
+                running.decrementAndGet();
+                return value;
+            });
+        }
+
+        List<Integer> results = executor.executeBatch(elements);
+
+        for (int k = 0; k < 20; k++) {
+            Assert.assertEquals(k, (int) results.get(k));
+        }
+
+        Assert.assertTrue(maxRunning.get() <= 2);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void block() {
+        try {
+            blocked.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean awaitTermination() throws InterruptedException {
+        return executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
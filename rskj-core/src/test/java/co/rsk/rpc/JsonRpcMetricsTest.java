@@ -0,0 +1,69 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class JsonRpcMetricsTest {
+    @Test
+    public void countCallsByMethod() {
+        JsonRpcMetrics metrics = new JsonRpcMetrics(0);
+
+        JsonRpcMetrics.Call call1 = metrics.start("eth_call", 100, System.nanoTime());
+        JsonRpcMetrics.Call call2 = metrics.start("eth_call", 50, System.nanoTime());
+        JsonRpcMetrics.Call call3 = metrics.start("eth_blockNumber", 10, System.nanoTime());
+
+        Assert.assertEquals(2, metrics.getMethodMetrics("eth_call").getInFlight());
+
+        metrics.end(call1, 1000, false, null);
+        metrics.end(call2, 20, true, null);
+        metrics.reject("eth_call");
+
+        JsonRpcMetrics.MethodMetrics ethCall = metrics.getMethodMetrics("eth_call");
+        Assert.assertEquals(2, ethCall.getCalls());
+        Assert.assertEquals(1, ethCall.getErrors());
+        Assert.assertEquals(1, ethCall.getRejected());
+        Assert.assertEquals(0, ethCall.getInFlight());
+        Assert.assertEquals(150, ethCall.getRequestBytes());
+        Assert.assertEquals(1020, ethCall.getResponseBytes());
+        Assert.assertEquals(2, ethCall.getLatency().getCount());
+
+        Assert.assertEquals(1, metrics.getMethodMetrics("eth_blockNumber").getInFlight());
+        Assert.assertEquals(0, metrics.getMethodMetrics("eth_blockNumber").getCalls());
+        Assert.assertEquals(Arrays.asList("eth_blockNumber", "eth_call"), Arrays.asList(metrics.getMethodMetrics().keySet().toArray()));
+
+        metrics.end(call3, 10, false, null);
+        Assert.assertEquals(0, metrics.getMethodMetrics("eth_blockNumber").getInFlight());
+    }
+
+    @Test
+    public void latencyFromTheArrival() {
+        JsonRpcMetrics metrics = new JsonRpcMetrics(1);
+        long arrival = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+
+        metrics.end(metrics.start("eth_getLogs", 10, arrival), 10, false, "127.0.0.1");
+
+        Assert.assertTrue(metrics.getMethodMetrics("eth_getLogs").getLatency().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+}
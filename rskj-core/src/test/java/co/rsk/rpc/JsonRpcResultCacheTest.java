@@ -0,0 +1,202 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc;
+
+import co.rsk.crypto.Keccak256;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.facade.Ethereum;
+import org.ethereum.listener.EthereumListener;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+
+import static org.mockito.Mockito.*;
+
+public class JsonRpcResultCacheTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private Blockchain blockchain;
+    private EthereumListener listener;
+    private JsonRpcResultCache cache;
+    private Block block1;
+    private Block block2;
+
+    @Before
+    public void setup() {
+        blockchain = mock(Blockchain.class);
+        Ethereum eth = mock(Ethereum.class);
+
+        block1 = createBlock(1, 0x01, 0x00);
+        block2 = createBlock(2, 0x02, 0x01);
+        mainChain(block1, block2);
+
+        cache = new JsonRpcResultCache(eth, blockchain, 16 * 1024);
+
+        ArgumentCaptor<EthereumListener> captor = ArgumentCaptor.forClass(EthereumListener.class);
+        verify(eth).addListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    @Test
+    public void keyOfABlockByNumberAndByHash() throws IOException {
+        JsonRpcResultCache.Key byNumber = cache.getKey(request("eth_getBlockByNumber", "\"0x2\",false"));
+        JsonRpcResultCache.Key byHash = cache.getKey(request("eth_getBlockByHash", "\"" + block2.getHash().toJsonString() + "\",false"));
+
+        Assert.assertEquals("eth_getBlockByNumber:" + block2.getHash().toHexString() + ":false", byNumber.toString());
+        Assert.assertEquals("eth_getBlockByHash:" + block2.getHash().toHexString() + ":false", byHash.toString());
+        Assert.assertNotNull(cache.getKey(request("eth_getTransactionByBlockHashAndIndex", "\"" + block1.getHash().toJsonString() + "\",\"0x0\"")));
+        Assert.assertNotNull(cache.getKey(request("eth_getUncleByBlockHashAndIndex", "\"" + block1.getHash().toJsonString() + "\",\"0x0\"")));
+    }
+
+    @Test
+    public void noKeyOfChangingOrUnknownResults() throws IOException {
+        Assert.assertNull(cache.getKey(request("eth_getBlockByNumber", "\"latest\",false")));
+        Assert.assertNull(cache.getKey(request("eth_getBlockByNumber", "\"0x3\",false")));
+        Assert.assertNull(cache.getKey(request("eth_getBlockByHash", "\"0x03\",false")));
+        Assert.assertNull(cache.getKey(request("eth_getBalance", "\"0x01\",\"0x2\"")));
+        Assert.assertNull(cache.getKey(OBJECT_MAPPER.readTree("{\"jsonrpc\":\"2.0\",\"method\":\"eth_getBlockByNumber\",\"params\":[\"0x2\",false]}")));
+    }
+
+    @Test
+    public void countHitsAndMisses() throws IOException {
+        JsonRpcResultCache.Key key = cache.getKey(request("eth_getBlockByNumber", "\"0x2\",false"));
+
+        Assert.assertNull(cache.get(key));
+        cache.put(key, new byte[] { 0x01 });
+        Assert.assertArrayEquals(new byte[] { 0x01 }, cache.get(key));
+        Assert.assertArrayEquals(new byte[] { 0x01 }, cache.get(cache.getKey(request("eth_getBlockByNumber", "\"0x2\",false"))));
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictTheLeastRecentlyUsedResults() throws IOException {
+        JsonRpcResultCache.Key key1 = cache.getKey(request("eth_getBlockByNumber", "\"0x1\",false"));
+        JsonRpcResultCache.Key key2 = cache.getKey(request("eth_getBlockByNumber", "\"0x2\",false"));
+
+        // a large result is not kept
+        cache.put(key1, new byte[2048]);
+        Assert.assertEquals(0, cache.getSize());
+
+        cache.put(key1, new byte[600]);
+        long bytes = cache.getBytes();
+        cache.put(key1, new byte[600]);
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertEquals(bytes, cache.getBytes());
+
+        cache.put(key2, new byte[600]);
+
+        for (int k = 0; k < 30; k++) {
+            cache.get(key1);
+            cache.put(cache.getKey(request("eth_getBlockByNumber", "\"0x1\"," + k)), new byte[600]);
+        }
+
+        Assert.assertTrue(cache.getBytes() <= 16 * 1024);
+        Assert.assertNotNull(cache.get(key1));
+        Assert.assertNull(cache.get(key2));
+    }
+
+    @Test
+    public void removeResultsOutOfTheMainChainAfterAReorganization() throws IOException {
+        JsonRpcResultCache.Key key1 = cache.getKey(request("eth_getBlockByNumber", "\"0x1\",false"));
+        JsonRpcResultCache.Key key2 = cache.getKey(request("eth_getBlockByNumber", "\"0x2\",false"));
+
+        when(blockchain.getBestBlock()).thenReturn(block2);
+        listener.onBlock(block2, null);
+
+        cache.put(key1, new byte[] { 0x01 });
+        cache.put(key2, new byte[] { 0x02 });
+
+        // a child of the best block
+        Block block3 = createBlock(3, 0x03, 0x02);
+        mainChain(block1, block2, block3);
+        listener.onBlock(block3, null);
+        Assert.assertEquals(2, cache.getSize());
+
+        // a new main chain from block 2
+        Block otherBlock2 = createBlock(2, 0x12, 0x01);
+        Block otherBlock3 = createBlock(3, 0x13, 0x12);
+        mainChain(block1, otherBlock2, otherBlock3);
+        listener.onBlock(otherBlock3, null);
+
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertNotNull(cache.get(key1));
+        Assert.assertNull(cache.get(key2));
+        Assert.assertNotEquals(key2.toString(), cache.getKey(request("eth_getBlockByNumber", "\"0x2\",false")).toString());
+    }
+
+    @Test
+    public void resultOfAKeyResolvedBeforeAReorganizationNotCached() throws IOException {
+        when(blockchain.getBestBlock()).thenReturn(block2);
+        listener.onBlock(block2, null);
+
+        JsonRpcResultCache.Key key = cache.getKey(request("eth_getBlockByNumber", "\"0x2\",false"));
+
+        // the request is executed on the new main chain
+        Block otherBlock2 = createBlock(2, 0x12, 0x01);
+        mainChain(block1, otherBlock2);
+        listener.onBlock(otherBlock2, null);
+
+        cache.put(key, new byte[] { 0x02 });
+
+        Assert.assertEquals(0, cache.getSize());
+
+        JsonRpcResultCache.Key newKey = cache.getKey(request("eth_getBlockByNumber", "\"0x2\",false"));
+        cache.put(newKey, new byte[] { 0x12 });
+
+        Assert.assertArrayEquals(new byte[] { 0x12 }, cache.get(newKey));
+    }
+
+    private void mainChain(Block... blocks) {
+        reset(blockchain);
+
+        for (Block block : blocks) {
+            when(blockchain.getBlockByNumber(block.getNumber())).thenReturn(block);
+            when(blockchain.getBlockByHash(block.getHash().getBytes())).thenReturn(block);
+        }
+
+        when(blockchain.getBestBlock()).thenReturn(blocks[blocks.length - 1]);
+    }
+
+    private static Block createBlock(long number, int hash, int parentHash) {
+        Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(createHash(hash));
+        when(block.getParentHash()).thenReturn(createHash(parentHash));
+        return block;
+    }
+
+    private static Keccak256 createHash(int value) {
+        byte[] bytes = new byte[32];
+        bytes[31] = (byte) value;
+        return new Keccak256(bytes);
+    }
+
+    private static JsonNode request(String method, String params) throws IOException {
+        return OBJECT_MAPPER.readTree("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"" + method + "\",\"params\":[" + params + "]}");
+    }
+}
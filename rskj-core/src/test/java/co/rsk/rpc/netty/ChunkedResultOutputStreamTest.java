@@ -0,0 +1,89 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ChunkedResultOutputStreamTest {
+    private static final int CHUNK_SIZE = 4;
+
+    private ChannelHandlerContext ctx;
+    private Channel channel;
+    private List<Web3ResultChunk> chunks;
+
+    @Before
+    public void setup() {
+        ctx = mock(ChannelHandlerContext.class);
+        channel = mock(Channel.class);
+        chunks = new ArrayList<>();
+
+        when(ctx.channel()).thenReturn(channel);
+        when(ctx.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        // the promises are completed out of the thread writing the chunks, as in the event loop
+        when(ctx.newPromise()).thenAnswer(invocation -> new DefaultChannelPromise(channel, GlobalEventExecutor.INSTANCE));
+        when(ctx.fireChannelRead(any())).thenAnswer(invocation -> {
+            chunks.add((Web3ResultChunk) invocation.getArguments()[0]);
+            return ctx;
+        });
+    }
+
+    @Test
+    public void writeChunksWhileTheChannelIsWritable() throws Exception {
+        when(channel.isWritable()).thenReturn(true);
+
+        ChunkedResultOutputStream os = new ChunkedResultOutputStream(ctx, CHUNK_SIZE, 100);
+        os.write(new byte[10], 0, 10);
+        os.close();
+
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(10, os.getWrittenBytes());
+        verify(channel, never()).close();
+    }
+
+    @Test(timeout = 5000)
+    public void failWhenThePreviousChunkIsNotWrittenInTime() throws Exception {
+        when(channel.isWritable()).thenReturn(false);
+
+        ChunkedResultOutputStream os = new ChunkedResultOutputStream(ctx, CHUNK_SIZE, 100);
+
+        try {
+            os.write(new byte[10], 0, 10);
+            Assert.fail();
+        } catch (ChunkedResultOutputStream.WriteTimeoutException e) {
+            os.abort();
+        }
+
+        Assert.assertEquals(1, chunks.size());
+        verify(channel).close();
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import co.rsk.blockchain.utils.BlockGenerator;
+import co.rsk.crypto.Keccak256;
+import co.rsk.rpc.JsonRpcMethodFilter;
+import co.rsk.rpc.ModuleDescription;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.facade.Ethereum;
+import org.ethereum.rpc.TypeConverter;
+import org.ethereum.vm.LogInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
+
+public class EthSubscriptionHandlerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String ADDRESS1 = "0x0000000000000000000000000000000000000001";
+    private static final String ADDRESS2 = "0x0000000000000000000000000000000000000002";
+
+    private static final JsonRpcMethodFilter METHOD_FILTER = new JsonRpcMethodFilter(Collections.singletonList(
+            new ModuleDescription("eth", "1.0", true, Collections.emptyList(), Collections.emptyList())));
+
+    private Blockchain blockchain;
+    private EthSubscriptionNotifier notifier;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setup() {
+        blockchain = mock(Blockchain.class);
+        notifier = new EthSubscriptionNotifier(mock(Ethereum.class), blockchain);
+        channel = new EmbeddedChannel(new EthSubscriptionHandler(notifier, METHOD_FILTER));
+    }
+
+    @Test
+    public void subscribeToNewHeads() throws Exception {
+        String id = subscribe("[\"newHeads\"]");
+
+        Block block = new BlockGenerator().getGenesisBlock();
+        onBestBlock(block, Collections.emptyList());
+
+        JsonNode notification = readOutbound();
+        Assert.assertEquals("eth_subscription", notification.get("method").asText());
+        Assert.assertEquals(id, notification.at("/params/subscription").asText());
+        Assert.assertEquals(block.getHashJsonString(), notification.at("/params/result/hash").asText());
+        Assert.assertEquals("0x0", notification.at("/params/result/number").asText());
+        Assert.assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void subscribeToLogsOfAnAddress() throws Exception {
+        String id = subscribe("[\"logs\",{\"address\":\"" + ADDRESS1 + "\"}]");
+
+        LogInfo log1 = new LogInfo(TypeConverter.stringHexToByteArray(ADDRESS1), new ArrayList<>(), new byte[] { 0x0a });
+        LogInfo log2 = new LogInfo(TypeConverter.stringHexToByteArray(ADDRESS2), new ArrayList<>(), new byte[] { 0x0b });
+        LogInfo log3 = new LogInfo(TypeConverter.stringHexToByteArray(ADDRESS1), new ArrayList<>(), new byte[] { 0x0c });
+
+        Bloom bloom = new Bloom();
+        bloom.or(log1.getBloom());
+        bloom.or(log2.getBloom());
+
+        Transaction tx1 = createTransaction("tx1");
+        Transaction tx2 = createTransaction("tx2");
+
+        Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(7L);
+        when(block.getHash()).thenReturn(new Keccak256(HashUtil.keccak256("block".getBytes())));
+        when(block.getLogBloom()).thenReturn(bloom.getData());
+        when(block.getTransactionsList()).thenReturn(Arrays.asList(tx1, tx2));
+
+        onBestBlock(block, Arrays.asList(createReceipt(log1, log2), createReceipt(log3)));
+
+        JsonNode notification = readOutbound();
+        Assert.assertEquals(id, notification.at("/params/subscription").asText());
+        Assert.assertEquals("0x0a", notification.at("/params/result/data").asText());
+        Assert.assertEquals(tx1.getHash().toJsonString(), notification.at("/params/result/transactionHash").asText());
+
+        notification = readOutbound();
+        Assert.assertEquals("0x0c", notification.at("/params/result/data").asText());
+        Assert.assertEquals("0x1", notification.at("/params/result/transactionIndex").asText());
+        Assert.assertEquals("0x0", notification.at("/params/result/logIndex").asText());
+
+        Assert.assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void newHeadsOfTheMainChainAfterAReorganization() throws Exception {
+        String id = subscribe("[\"newHeads\"]");
+
+        BlockGenerator blockGenerator = new BlockGenerator();
+        Block genesis = blockGenerator.getGenesisBlock();
+        Block block1 = blockGenerator.createChildBlock(genesis);
+        Block block2 = blockGenerator.createChildBlock(block1, 0, 1);
+        Block otherBlock2 = blockGenerator.createChildBlock(block1, 0, 2);
+        Block otherBlock3 = blockGenerator.createChildBlock(otherBlock2);
+
+        mainChain(genesis, block1, block2);
+        notifier.onBlock(block2, Collections.emptyList());
+        Assert.assertEquals(block2.getHashJsonString(), readOutbound().at("/params/result/hash").asText());
+
+        // a block out of the main chain is not notified
+        notifier.onBlock(otherBlock2, Collections.emptyList());
+        Assert.assertNull(channel.readOutbound());
+
+        mainChain(genesis, block1, otherBlock2, otherBlock3);
+        notifier.onBlock(otherBlock3, Collections.emptyList());
+
+        JsonNode notification = readOutbound();
+        Assert.assertEquals(id, notification.at("/params/subscription").asText());
+        Assert.assertEquals(otherBlock2.getHashJsonString(), notification.at("/params/result/hash").asText());
+        Assert.assertEquals(otherBlock3.getHashJsonString(), readOutbound().at("/params/result/hash").asText());
+        Assert.assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void removedLogsAfterAReorganization() throws Exception {
+        subscribe("[\"logs\",{\"address\":\"" + ADDRESS1 + "\"}]");
+
+        LogInfo log1 = new LogInfo(TypeConverter.stringHexToByteArray(ADDRESS1), new ArrayList<>(), new byte[] { 0x0a });
+        LogInfo log2 = new LogInfo(TypeConverter.stringHexToByteArray(ADDRESS1), new ArrayList<>(), new byte[] { 0x0b });
+        List<TransactionReceipt> receipts2 = Collections.singletonList(createReceipt(log1));
+        List<TransactionReceipt> otherReceipts3 = Collections.singletonList(createReceipt(log2));
+
+        Block block1 = createBlock(1, "block1", "block0", Collections.emptyList());
+        Block block2 = createBlock(2, "block2", "block1", receipts2);
+        Block otherBlock2 = createBlock(2, "otherBlock2", "block1", Collections.emptyList());
+        Block otherBlock3 = createBlock(3, "otherBlock3", "otherBlock2", otherReceipts3);
+
+        mainChain(block1, block2);
+        notifier.onBlock(block2, receipts2);
+
+        JsonNode notification = readOutbound();
+        Assert.assertEquals("0x0a", notification.at("/params/result/data").asText());
+        Assert.assertFalse(notification.at("/params/result/removed").asBoolean());
+
+        mainChain(block1, otherBlock2, otherBlock3);
+        when(blockchain.getBlockReceipts(block2)).thenReturn(receipts2);
+        when(blockchain.getBlockReceipts(otherBlock2)).thenReturn(Collections.emptyList());
+        notifier.onBlock(otherBlock3, otherReceipts3);
+
+        notification = readOutbound();
+        Assert.assertEquals("0x0a", notification.at("/params/result/data").asText());
+        Assert.assertEquals(block2.getHashJsonString(), notification.at("/params/result/blockHash").asText());
+        Assert.assertTrue(notification.at("/params/result/removed").asBoolean());
+
+        notification = readOutbound();
+        Assert.assertEquals("0x0b", notification.at("/params/result/data").asText());
+        Assert.assertFalse(notification.at("/params/result/removed").asBoolean());
+        Assert.assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void subscribeToNewPendingTransactions() throws Exception {
+        String id = subscribe("[\"newPendingTransactions\"]");
+
+        Transaction tx = createTransaction("tx");
+        notifier.onPendingTransactions(Collections.singletonList(tx));
+        onBestBlock(new BlockGenerator().getGenesisBlock(), Collections.emptyList());
+
+        JsonNode notification = readOutbound();
+        Assert.assertEquals(id, notification.at("/params/subscription").asText());
+        Assert.assertEquals(tx.getHash().toJsonString(), notification.at("/params/result").asText());
+        Assert.assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void unsubscribe() throws Exception {
+        String id = subscribe("[\"newHeads\"]");
+
+        EmbeddedChannel otherChannel = new EmbeddedChannel(new EthSubscriptionHandler(notifier, METHOD_FILTER));
+        otherChannel.writeInbound(createRequest(3, "eth_unsubscribe", "[\"" + id + "\"]"));
+        Assert.assertFalse(readOutbound(otherChannel).get("result").asBoolean());
+
+        channel.writeInbound(createRequest(2, "eth_unsubscribe", "[\"" + id + "\"]"));
+        JsonNode response = readOutbound();
+        Assert.assertEquals(2, response.get("id").asInt());
+        Assert.assertTrue(response.get("result").asBoolean());
+        Assert.assertEquals(0, notifier.getSubscriptionCount());
+    }
+
+    @Test
+    public void subscriptionsRemovedWhenTheChannelIsClosed() throws Exception {
+        subscribe("[\"newHeads\"]");
+        subscribe("[\"logs\"]");
+        Assert.assertEquals(2, notifier.getSubscriptionCount());
+
+        channel.close();
+
+        Assert.assertEquals(0, notifier.getSubscriptionCount());
+    }
+
+    @Test
+    public void unknownSubscriptionTypeAndOtherRequests() throws Exception {
+        channel.writeInbound(createRequest(1, "eth_subscribe", "[\"syncing\"]"));
+        Assert.assertEquals(-32602, readOutbound().at("/error/code").asInt());
+
+        TextWebSocketFrame request = createRequest(2, "eth_blockNumber", "[]");
+        channel.writeInbound(request);
+        Assert.assertSame(request, channel.readInbound());
+        Assert.assertNull(channel.readOutbound());
+        request.release();
+    }
+
+    @Test
+    public void subscribeOfADisabledModulePassedToTheNextHandler() throws Exception {
+        JsonRpcMethodFilter filter = new JsonRpcMethodFilter(Collections.singletonList(
+                new ModuleDescription("eth", "1.0", false, Collections.emptyList(), Collections.emptyList())));
+        EmbeddedChannel disabledChannel = new EmbeddedChannel(new EthSubscriptionHandler(notifier, filter));
+
+        TextWebSocketFrame request = createRequest(1, "eth_subscribe", "[\"newHeads\"]");
+        disabledChannel.writeInbound(request);
+
+        Assert.assertSame(request, disabledChannel.readInbound());
+        Assert.assertNull(disabledChannel.readOutbound());
+        Assert.assertEquals(0, notifier.getSubscriptionCount());
+        request.release();
+    }
+
+    private void onBestBlock(Block block, List<TransactionReceipt> receipts) {
+        when(blockchain.getBestBlock()).thenReturn(block);
+        notifier.onBlock(block, receipts);
+    }
+
+    private void mainChain(Block... blocks) {
+        reset(blockchain);
+
+        for (Block block : blocks) {
+            when(blockchain.getBlockByNumber(block.getNumber())).thenReturn(block);
+            when(blockchain.getBlockByHash(block.getHash().getBytes())).thenReturn(block);
+        }
+
+        when(blockchain.getBestBlock()).thenReturn(blocks[blocks.length - 1]);
+    }
+
+    private String subscribe(String params) throws Exception {
+        channel.writeInbound(createRequest(1, "eth_subscribe", params));
+        JsonNode response = readOutbound();
+
+        Assert.assertEquals(1, response.get("id").asInt());
+        Assert.assertTrue(response.get("result").asText().startsWith("0x"));
+
+        return response.get("result").asText();
+    }
+
+    private JsonNode readOutbound() throws Exception {
+        return readOutbound(channel);
+    }
+
+    private static JsonNode readOutbound(EmbeddedChannel channel) throws Exception {
+        TextWebSocketFrame frame = (TextWebSocketFrame) channel.readOutbound();
+        Assert.assertNotNull(frame);
+        JsonNode node = OBJECT_MAPPER.readTree(frame.text());
+        frame.release();
+        return node;
+    }
+
+    private static TextWebSocketFrame createRequest(int id, String method, String params) {
+        return new TextWebSocketFrame(String.format("{\"jsonrpc\":\"2.0\",\"id\":%d,\"method\":\"%s\",\"params\":%s}", id, method, params));
+    }
+
+    private static Transaction createTransaction(String seed) {
+        Transaction tx = mock(Transaction.class);
+        when(tx.getHash()).thenReturn(new Keccak256(HashUtil.keccak256(seed.getBytes())));
+        return tx;
+    }
+
+    private static Block createBlock(long number, String hash, String parentHash, List<TransactionReceipt> receipts) {
+        Bloom bloom = new Bloom();
+        List<Transaction> transactions = new ArrayList<>();
+
+        for (TransactionReceipt receipt : receipts) {
+            receipt.getLogInfoList().forEach(log -> bloom.or(log.getBloom()));
+            transactions.add(createTransaction(hash + transactions.size()));
+        }
+
+        Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(new Keccak256(HashUtil.keccak256(hash.getBytes())));
+        when(block.getHashJsonString()).thenReturn(new Keccak256(HashUtil.keccak256(hash.getBytes())).toJsonString());
+        when(block.getParentHash()).thenReturn(new Keccak256(HashUtil.keccak256(parentHash.getBytes())));
+        when(block.getLogBloom()).thenReturn(bloom.getData());
+        when(block.getTransactionsList()).thenReturn(transactions);
+        return block;
+    }
+
+    private static TransactionReceipt createReceipt(LogInfo... logs) {
+        TransactionReceipt receipt = mock(TransactionReceipt.class);
+        when(receipt.getLogInfoList()).thenReturn(Arrays.asList(logs));
+        return receipt;
+    }
+}
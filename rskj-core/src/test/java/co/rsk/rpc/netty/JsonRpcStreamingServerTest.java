@@ -0,0 +1,120 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.rpc.netty;
+
+import co.rsk.rpc.JsonRpcMethodFilter;
+import co.rsk.rpc.ModuleDescription;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcBasicServer;
+import org.ethereum.rpc.Web3;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class JsonRpcStreamingServerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private Web3 web3Mock;
+    private JsonRpcMethodFilter methodFilter;
+
+    @Before
+    public void setup() throws Exception {
+        web3Mock = mock(Web3.class);
+
+        Web3.BlockResult block = new Web3.BlockResult();
+        block.number = "0x1";
+        block.hash = "0x0102";
+        block.transactions = new Object[] { Collections.singletonMap("hash", "0x03") };
+        when(web3Mock.eth_getBlockByNumber("0x1", true)).thenReturn(block);
+
+        Map<String, Object> log = new HashMap<>();
+        log.put("logIndex", "0x0");
+        log.put("topics", new String[] { "0x04", "0x05" });
+        when(web3Mock.eth_getLogs(any())).thenReturn(new Object[] { log, log });
+
+        when(web3Mock.txpool_content()).thenReturn("{\"pending\":{},\"queued\":{}}");
+
+        // txpool is not an enabled module
+        List<ModuleDescription> modules = Collections.singletonList(new ModuleDescription("eth", "1.0", true, Collections.emptyList(), Collections.emptyList()));
+        methodFilter = new JsonRpcMethodFilter(modules);
+    }
+
+    @Test
+    public void streamTheSameResponsesAsTheServer() throws Exception {
+        // all the methods enabled
+        methodFilter = mock(JsonRpcMethodFilter.class);
+
+        assertSameResponse("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getBlockByNumber\",\"params\":[\"0x1\",true]}");
+        assertSameResponse("{\"jsonrpc\":\"2.0\",\"id\":\"a\",\"method\":\"eth_getLogs\",\"params\":[{\"fromBlock\":\"0x0\"}]}");
+        assertSameResponse("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"txpool_content\",\"params\":[]}");
+    }
+
+    @Test
+    public void streamOnlyBlocksWithFullTransactions() throws IOException {
+        JsonRpcStreamingServer server = new JsonRpcStreamingServer(web3Mock, methodFilter, OBJECT_MAPPER);
+
+        Assert.assertTrue(server.isStreamed(readTree("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getBlockByNumber\",\"params\":[\"0x1\",true]}")));
+        Assert.assertFalse(server.isStreamed(readTree("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getBlockByNumber\",\"params\":[\"0x1\",false]}")));
+        Assert.assertFalse(server.isStreamed(readTree("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getBlockByHash\",\"params\":[\"0x01\",true]}")));
+        Assert.assertFalse(server.isStreamed(readTree("{\"jsonrpc\":\"2.0\",\"method\":\"eth_getLogs\",\"params\":[{}]}")));
+        Assert.assertFalse(server.isStreamed(readTree("[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_getLogs\",\"params\":[{}]}]")));
+    }
+
+    @Test(expected = IOException.class)
+    public void disabledMethodNotInvoked() throws Exception {
+        JsonRpcStreamingServer server = new JsonRpcStreamingServer(web3Mock, methodFilter, OBJECT_MAPPER);
+
+        try {
+            server.invoke(readTree("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"txpool_content\",\"params\":[]}"));
+        } finally {
+            verify(web3Mock, never()).txpool_content();
+        }
+    }
+
+    private void assertSameResponse(String request) throws Exception {
+        JsonNode requestNode = readTree(request);
+        JsonRpcStreamingServer streamingServer = new JsonRpcStreamingServer(web3Mock, methodFilter, OBJECT_MAPPER);
+        Assert.assertTrue(streamingServer.isStreamed(requestNode));
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        streamingServer.write(requestNode, streamingServer.invoke(requestNode), streamed);
+
+        ByteArrayOutputStream served = new ByteArrayOutputStream();
+        new JsonRpcBasicServer(web3Mock, Web3.class).handleRequest(new ByteArrayInputStream(request.getBytes()), served);
+
+        Assert.assertEquals(readTree(served.toString()), readTree(streamed.toString()));
+    }
+
+    private static JsonNode readTree(String json) throws IOException {
+        return OBJECT_MAPPER.readTree(json);
+    }
+}
@@ -1,16 +1,27 @@
 package co.rsk.rpc.netty;
 
 import co.rsk.rpc.CorsConfiguration;
+import co.rsk.crypto.Keccak256;
+import co.rsk.rpc.JsonRpcExecutor;
+import co.rsk.rpc.JsonRpcMetrics;
+import co.rsk.rpc.JsonRpcResultCache;
 import co.rsk.rpc.ModuleDescription;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.squareup.okhttp.*;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import org.ethereum.core.Block;
+import org.ethereum.core.Blockchain;
+import org.ethereum.facade.Ethereum;
 import org.ethereum.rpc.Web3;
+import org.ethereum.rpc.exception.RskJsonRpcRequestException;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.spongycastle.util.encoders.Hex;
 
 import javax.net.ssl.*;
 import java.io.IOException;
@@ -19,6 +30,7 @@ import java.net.URL;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
@@ -78,6 +90,305 @@ public class Web3HttpServerTest {
         smokeTest(APPLICATION_JSON, google.getHostAddress(), google, new ArrayList<>());
     }
 
+    @Test
+    public void batchRequestAnsweredInOrder() throws Exception {
+        Response response = batchTest(10, 1000);
+        JsonNode jsonRpcResponse = OBJECT_MAPPER.readTree(response.body().string());
+
+        assertThat(response.code(), is(HttpResponseStatus.OK.code()));
+        assertThat(jsonRpcResponse.size(), is(10));
+
+        for (int k = 0; k < 10; k++) {
+            assertThat(jsonRpcResponse.get(k).at("/id").asInt(), is(k));
+            assertThat(jsonRpcResponse.get(k).at("/result").asText(), is("output" + k));
+        }
+    }
+
+    @Test
+    public void batchOfNotificationsNotAnswered() throws Exception {
+        Response response = batchTest(3, 1000, false);
+
+        assertThat(response.code(), is(HttpResponseStatus.OK.code()));
+        assertThat(response.body().string(), is(""));
+    }
+
+    @Test
+    public void batchRequestLargerThanTheMaximumRejected() throws Exception {
+        Response response = batchTest(10, 5);
+        JsonNode jsonRpcResponse = OBJECT_MAPPER.readTree(response.body().string());
+
+        assertThat(jsonRpcResponse.at("/error/code").asInt(), is(-32600));
+    }
+
+    @Test
+    public void largeResultStreamedInChunks() throws Exception {
+        Web3 web3Mock = Mockito.mock(Web3.class);
+        Object[] logs = new Object[5000];
+
+        for (int k = 0; k < logs.length; k++) {
+            logs[k] = Collections.singletonMap("data", "0x" + k);
+        }
+
+        Mockito.when(web3Mock.eth_getLogs(Mockito.any())).thenReturn(logs);
+        CorsConfiguration mockCorsConfiguration = Mockito.mock(CorsConfiguration.class);
+
+        int randomPort = 9999;
+
+        List<ModuleDescription> filteredModules = Collections.singletonList(new ModuleDescription("eth", "1.0", true, Collections.emptyList(), Collections.emptyList()));
+        JsonRpcWeb3FilterHandler filterHandler = new JsonRpcWeb3FilterHandler("*", InetAddress.getLoopbackAddress(), new ArrayList<>());
+        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Mock, filteredModules);
+        Web3HttpServer server = new Web3HttpServer(InetAddress.getLoopbackAddress(), randomPort, 0, Boolean.TRUE, mockCorsConfiguration, filterHandler, serverHandler);
+        server.start();
+        try {
+            String body = "{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"eth_getLogs\",\"params\":[{\"fromBlock\":\"0x0\"}]}";
+            RequestBody requestBody = RequestBody.create(MediaType.parse(APPLICATION_JSON), body);
+            URL url = new URL("http", "localhost", randomPort, "/");
+            Request request = new Request.Builder().url(url)
+                    .addHeader("Host", "127.0.0.1")
+                    .addHeader("Accept-Encoding", "identity")
+                    .post(requestBody).build();
+            Response response = getUnsafeOkHttpClient().newCall(request).execute();
+            JsonNode jsonRpcResponse = OBJECT_MAPPER.readTree(response.body().string());
+
+            assertThat(response.code(), is(HttpResponseStatus.OK.code()));
+            assertThat(response.header("Transfer-Encoding"), is("chunked"));
+            assertThat(jsonRpcResponse.at("/id").asInt(), is(7));
+            assertThat(jsonRpcResponse.at("/result").size(), is(logs.length));
+            assertThat(jsonRpcResponse.at("/result/4999/data").asText(), is("0x4999"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void streamedMethodErrorAnsweredWithoutInvokingItAgain() throws Exception {
+        Web3 web3Mock = Mockito.mock(Web3.class);
+        Mockito.when(web3Mock.eth_getLogs(Mockito.any())).thenThrow(new RskJsonRpcRequestException(-32602, "Invalid filter"));
+        CorsConfiguration mockCorsConfiguration = Mockito.mock(CorsConfiguration.class);
+
+        int randomPort = 9999;
+
+        List<ModuleDescription> filteredModules = Collections.singletonList(new ModuleDescription("eth", "1.0", true, Collections.emptyList(), Collections.emptyList()));
+        JsonRpcWeb3FilterHandler filterHandler = new JsonRpcWeb3FilterHandler("*", InetAddress.getLoopbackAddress(), new ArrayList<>());
+        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Mock, filteredModules);
+        Web3HttpServer server = new Web3HttpServer(InetAddress.getLoopbackAddress(), randomPort, 0, Boolean.TRUE, mockCorsConfiguration, filterHandler, serverHandler);
+        server.start();
+        try {
+            String body = "{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"eth_getLogs\",\"params\":[{\"fromBlock\":\"0x0\"}]}";
+            Request request = new Request.Builder().url(new URL("http", "localhost", randomPort, "/"))
+                    .addHeader("Host", "127.0.0.1")
+                    .post(RequestBody.create(MediaType.parse(APPLICATION_JSON), body)).build();
+            JsonNode jsonRpcResponse = OBJECT_MAPPER.readTree(getUnsafeOkHttpClient().newCall(request).execute().body().string());
+
+            assertThat(jsonRpcResponse.at("/id").asInt(), is(7));
+            assertThat(jsonRpcResponse.at("/error/code").asInt(), is(-32602));
+            assertThat(jsonRpcResponse.at("/error/message").asText(), is("Invalid filter"));
+            Mockito.verify(web3Mock, Mockito.times(1)).eth_getLogs(Mockito.any());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void cachedResultAnsweredWithTheRequestId() throws Exception {
+        byte[] hash = new byte[32];
+        hash[31] = 0x01;
+        Block block = Mockito.mock(Block.class);
+        Mockito.when(block.getHash()).thenReturn(new Keccak256(hash));
+        Blockchain blockchain = Mockito.mock(Blockchain.class);
+        Mockito.when(blockchain.getBlockByHash(hash)).thenReturn(block);
+
+        Web3 web3Mock = Mockito.mock(Web3.class);
+        Web3.BlockResult blockResult = new Web3.BlockResult();
+        blockResult.hash = "0x01";
+        Mockito.when(web3Mock.eth_getBlockByHash(Mockito.anyString(), Mockito.anyBoolean())).thenReturn(blockResult);
+        CorsConfiguration mockCorsConfiguration = Mockito.mock(CorsConfiguration.class);
+
+        int randomPort = 9999;
+
+        List<ModuleDescription> filteredModules = Collections.singletonList(new ModuleDescription("eth", "1.0", true, Collections.emptyList(), Collections.emptyList()));
+        JsonRpcWeb3FilterHandler filterHandler = new JsonRpcWeb3FilterHandler("*", InetAddress.getLoopbackAddress(), new ArrayList<>());
+        JsonRpcExecutor executor = new JsonRpcExecutor(4, 10, Collections.emptyMap());
+        JsonRpcResultCache resultCache = new JsonRpcResultCache(Mockito.mock(Ethereum.class), blockchain, 1024 * 1024);
+        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Mock, filteredModules, executor, 1000, resultCache, new JsonRpcMetrics(0));
+        Web3HttpServer server = new Web3HttpServer(InetAddress.getLoopbackAddress(), randomPort, 0, Boolean.TRUE, mockCorsConfiguration, filterHandler, serverHandler);
+        server.start();
+        try {
+            for (int id = 1; id <= 3; id++) {
+                String body = "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"eth_getBlockByHash\",\"params\":[\"0x" + Hex.toHexString(hash) + "\",false]}";
+                RequestBody requestBody = RequestBody.create(MediaType.parse(APPLICATION_JSON), body);
+                Request request = new Request.Builder().url(new URL("http", "localhost", randomPort, "/"))
+                        .addHeader("Host", "127.0.0.1")
+                        .post(requestBody).build();
+                Response response = getUnsafeOkHttpClient().newCall(request).execute();
+                JsonNode jsonRpcResponse = OBJECT_MAPPER.readTree(response.body().string());
+
+                assertThat(response.code(), is(HttpResponseStatus.OK.code()));
+                assertThat(jsonRpcResponse.at("/id").asInt(), is(id));
+                assertThat(jsonRpcResponse.at("/result/hash").asText(), is("0x01"));
+            }
+
+            Mockito.verify(web3Mock, Mockito.times(1)).eth_getBlockByHash(Mockito.anyString(), Mockito.anyBoolean());
+            assertThat(resultCache.getHits(), is(2L));
+        } finally {
+            server.stop();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void metricsAnsweredByRpcAndExposition() throws Exception {
+        Web3 web3Mock = Mockito.mock(Web3.class);
+        Mockito.when(web3Mock.web3_sha3(Mockito.anyString())).thenReturn("output");
+        CorsConfiguration mockCorsConfiguration = Mockito.mock(CorsConfiguration.class);
+
+        int randomPort = 9999;
+
+        List<ModuleDescription> filteredModules = Arrays.asList(
+                new ModuleDescription("web3", "1.0", true, Collections.emptyList(), Collections.emptyList()),
+                new ModuleDescription("rpc", "1.0", true, Collections.emptyList(), Collections.emptyList()));
+        JsonRpcWeb3FilterHandler filterHandler = new JsonRpcWeb3FilterHandler("*", InetAddress.getLoopbackAddress(), new ArrayList<>());
+        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Mock, filteredModules);
+        Web3HttpServer server = new Web3HttpServer(InetAddress.getLoopbackAddress(), randomPort, 0, Boolean.TRUE, mockCorsConfiguration, filterHandler, serverHandler);
+        server.start();
+        try {
+            sendJsonRpcMessage(randomPort, APPLICATION_JSON, "127.0.0.1").body().close();
+            sendJsonRpcMessage(randomPort, APPLICATION_JSON, "127.0.0.1").body().close();
+
+            String body = "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"rpc_metrics\",\"params\":[]}";
+            Request request = new Request.Builder().url(new URL("http", "localhost", randomPort, "/"))
+                    .addHeader("Host", "127.0.0.1")
+                    .post(RequestBody.create(MediaType.parse(APPLICATION_JSON), body)).build();
+            JsonNode jsonRpcResponse = OBJECT_MAPPER.readTree(getUnsafeOkHttpClient().newCall(request).execute().body().string());
+
+            assertThat(jsonRpcResponse.at("/id").asInt(), is(3));
+            assertThat(jsonRpcResponse.at("/result/methods/web3_sha3/calls").asLong(), is(2L));
+            assertThat(jsonRpcResponse.at("/result/methods/web3_sha3/errors").asLong(), is(0L));
+            assertThat(jsonRpcResponse.at("/result/methods/web3_sha3/inFlight").asLong(), is(0L));
+            assertThat(jsonRpcResponse.at("/result/methods/rpc_metrics/inFlight").asLong(), is(1L));
+
+            Request metricsRequest = new Request.Builder().url(new URL("http", "localhost", randomPort, Web3MetricsHttpHandler.PATH))
+                    .addHeader("Host", "127.0.0.1")
+                    .get().build();
+            Response response = getUnsafeOkHttpClient().newCall(metricsRequest).execute();
+            String text = response.body().string();
+
+            assertThat(response.code(), is(HttpResponseStatus.OK.code()));
+            assertThat(text.contains("rsk_rpc_calls_total{method=\"web3_sha3\"} 2\n"), is(true));
+            assertThat(text.contains("rsk_rpc_calls_total{method=\"rpc_metrics\"} 1\n"), is(true));
+            assertThat(text.contains("rsk_rpc_latency_seconds_count{method=\"web3_sha3\"} 2\n"), is(true));
+            assertThat(text.contains("rsk_rpc_queue_depth 0\n"), is(true));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void metricsExpositionNotFoundWithTheMethodDisabled() throws Exception {
+        Web3 web3Mock = Mockito.mock(Web3.class);
+        CorsConfiguration mockCorsConfiguration = Mockito.mock(CorsConfiguration.class);
+
+        int randomPort = 9999;
+
+        List<ModuleDescription> filteredModules = Collections.singletonList(new ModuleDescription("web3", "1.0", true, Collections.emptyList(), Collections.emptyList()));
+        JsonRpcWeb3FilterHandler filterHandler = new JsonRpcWeb3FilterHandler("*", InetAddress.getLoopbackAddress(), new ArrayList<>());
+        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Mock, filteredModules);
+        Web3HttpServer server = new Web3HttpServer(InetAddress.getLoopbackAddress(), randomPort, 0, Boolean.TRUE, mockCorsConfiguration, filterHandler, serverHandler);
+        server.start();
+        try {
+            Request metricsRequest = new Request.Builder().url(new URL("http", "localhost", randomPort, Web3MetricsHttpHandler.PATH))
+                    .addHeader("Host", "127.0.0.1")
+                    .get().build();
+            Response response = getUnsafeOkHttpClient().newCall(metricsRequest).execute();
+
+            assertThat(response.code(), is(HttpResponseStatus.NOT_FOUND.code()));
+            assertThat(response.body().string().contains("rsk_rpc"), is(false));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void unknownMethodsTimedAsUnknownAndExecutorStoppedWithTheServer() throws Exception {
+        Web3 web3Mock = Mockito.mock(Web3.class);
+        CorsConfiguration mockCorsConfiguration = Mockito.mock(CorsConfiguration.class);
+
+        int randomPort = 9999;
+
+        List<ModuleDescription> filteredModules = Collections.singletonList(new ModuleDescription("web3", "1.0", true, Collections.emptyList(), Collections.emptyList()));
+        JsonRpcWeb3FilterHandler filterHandler = new JsonRpcWeb3FilterHandler("*", InetAddress.getLoopbackAddress(), new ArrayList<>());
+        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Mock, filteredModules);
+        Web3HttpServer server = new Web3HttpServer(InetAddress.getLoopbackAddress(), randomPort, 0, Boolean.TRUE, mockCorsConfiguration, filterHandler, serverHandler);
+        server.start();
+        try {
+            // methods of the service that are not of the modules
+            String[] methods = { "foo_bar", "stop", "hashCode" };
+
+            for (int id = 1; id <= methods.length; id++) {
+                String body = "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"" + methods[id - 1] + "\",\"params\":[]}";
+                Request request = new Request.Builder().url(new URL("http", "localhost", randomPort, "/"))
+                        .addHeader("Host", "127.0.0.1")
+                        .post(RequestBody.create(MediaType.parse(APPLICATION_JSON), body)).build();
+                getUnsafeOkHttpClient().newCall(request).execute().body().close();
+            }
+        } finally {
+            server.stop();
+        }
+
+        JsonRpcExecutor executor = serverHandler.getExecutor();
+
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        assertThat(executor.getLatencyHistograms().keySet(), is(Collections.singleton(JsonRpcExecutor.UNKNOWN)));
+        assertThat(executor.getLatencyHistogram(JsonRpcExecutor.UNKNOWN).getCount(), is(3L));
+    }
+
+    private Response batchTest(int batchSize, int maxBatchSize) throws Exception {
+        return batchTest(batchSize, maxBatchSize, true);
+    }
+
+    private Response batchTest(int batchSize, int maxBatchSize, boolean withIds) throws Exception {
+        Web3 web3Mock = Mockito.mock(Web3.class);
+        Mockito.when(web3Mock.web3_sha3(Mockito.anyString())).thenAnswer(invocation -> {
+            // the first elements take longer, so they would finish last
+            String value = (String) invocation.getArguments()[0];
+            Thread.sleep(10 * (batchSize - Integer.parseInt(value.substring(5))));
+            return "output" + value.substring(5);
+        });
+        CorsConfiguration mockCorsConfiguration = Mockito.mock(CorsConfiguration.class);
+
+        int randomPort = 9999;
+
+        List<ModuleDescription> filteredModules = Collections.singletonList(new ModuleDescription("web3", "1.0", true, Collections.emptyList(), Collections.emptyList()));
+        JsonRpcWeb3FilterHandler filterHandler = new JsonRpcWeb3FilterHandler("*", InetAddress.getLoopbackAddress(), new ArrayList<>());
+        JsonRpcExecutor executor = new JsonRpcExecutor(4, 10, Collections.emptyMap());
+        JsonRpcWeb3ServerHandler serverHandler = new JsonRpcWeb3ServerHandler(web3Mock, filteredModules, executor, maxBatchSize, null, new JsonRpcMetrics(0));
+        Web3HttpServer server = new Web3HttpServer(InetAddress.getLoopbackAddress(), randomPort, 0, Boolean.TRUE, mockCorsConfiguration, filterHandler, serverHandler);
+        server.start();
+        try {
+            ArrayNode batch = JSON_NODE_FACTORY.arrayNode();
+
+            for (int k = 0; k < batchSize; k++) {
+                ObjectNode element = batch.addObject()
+                        .put("jsonrpc", "2.0")
+                        .put("method", "web3_sha3");
+                element.set("params", JSON_NODE_FACTORY.arrayNode().add("value" + k));
+
+                if (withIds) {
+                    element.put("id", k);
+                }
+            }
+
+            RequestBody requestBody = RequestBody.create(MediaType.parse(APPLICATION_JSON), batch.toString());
+            URL url = new URL("http", "localhost", randomPort, "/");
+            Request request = new Request.Builder().url(url)
+                    .addHeader("Host", "127.0.0.1")
+                    .post(requestBody).build();
+            return getUnsafeOkHttpClient().newCall(request).execute();
+        } finally {
+            server.stop();
+            executor.shutdown();
+        }
+    }
 
     private void smokeTest(String contentType, String host) throws Exception {
         smokeTest(contentType, host, InetAddress.getLoopbackAddress(), new ArrayList<>());
@@ -0,0 +1,169 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package co.rsk.trie;
+
+import co.rsk.crypto.Keccak256;
+import org.ethereum.datasource.HashMapDB;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.ethereum.crypto.Keccak256Helper.keccak256;
+
+public class TrieNodeCacheTest {
+    @Test
+    public void getUnknownNodeCountsMiss() {
+        TrieNodeCache cache = new TrieNodeCache(1024 * 1024);
+
+        Assert.assertNull(cache.get(new Keccak256(keccak256("foo".getBytes()))));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void putAndGetNode() {
+        TrieNodeCache cache = new TrieNodeCache(1024 * 1024);
+        TrieImpl trie = (TrieImpl) new TrieImpl().put("foo", "bar".getBytes());
+        Keccak256 hash = trie.getHash();
+
+        cache.put(hash, trie, trie.toMessage().length);
+
+        Assert.assertSame(trie, cache.get(hash));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+        Assert.assertEquals(1, cache.getCount());
+        Assert.assertTrue(cache.getSizeInBytes() > trie.toMessage().length);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedNodesWhenSizeIsExceeded() {
+        TrieImpl trie1 = (TrieImpl) new TrieImpl().put("foo", new byte[100]);
+        TrieImpl trie2 = (TrieImpl) new TrieImpl().put("bar", new byte[100]);
+        TrieImpl trie3 = (TrieImpl) new TrieImpl().put("baz", new byte[100]);
+
+        TrieNodeCache cache = new TrieNodeCache(800);
+
+        cache.put(trie1.getHash(), trie1, 100);
+        cache.put(trie2.getHash(), trie2, 100);
+
+        Assert.assertNotNull(cache.get(trie1.getHash()));
+
+        cache.put(trie3.getHash(), trie3, 100);
+
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(2, cache.getCount());
+        Assert.assertNotNull(cache.get(trie1.getHash()));
+        Assert.assertNull(cache.get(trie2.getHash()));
+        Assert.assertNotNull(cache.get(trie3.getHash()));
+        Assert.assertTrue(cache.getSizeInBytes() <= cache.getMaxSizeInBytes());
+    }
+
+    @Test
+    public void skipNodeLargerThanCache() {
+        TrieImpl trie = (TrieImpl) new TrieImpl().put("foo", new byte[2000]);
+
+        TrieNodeCache cache = new TrieNodeCache(1000);
+
+        cache.put(trie.getHash(), trie, 2000);
+
+        Assert.assertEquals(0, cache.getCount());
+        Assert.assertEquals(0, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void removeAndClear() {
+        TrieImpl trie1 = (TrieImpl) new TrieImpl().put("foo", "bar".getBytes());
+        TrieImpl trie2 = (TrieImpl) new TrieImpl().put("bar", "foo".getBytes());
+
+        TrieNodeCache cache = new TrieNodeCache(1024 * 1024);
+
+        cache.put(trie1.getHash(), trie1, 10);
+        cache.put(trie2.getHash(), trie2, 10);
+
+        cache.remove(trie1.getHash());
+
+        Assert.assertEquals(1, cache.getCount());
+        Assert.assertNull(cache.get(trie1.getHash()));
+
+        cache.clear();
+
+        Assert.assertEquals(0, cache.getCount());
+        Assert.assertEquals(0, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void retrieveFromStoreUsingCache() {
+        HashMapDB map = new HashMapDB();
+        TrieNodeCache cache = new TrieNodeCache(1024 * 1024);
+        TrieStoreImpl store = new TrieStoreImpl(map, cache);
+
+        Trie trie = new TrieImpl(store, false)
+                .put("foo", "bar".getBytes())
+                .put("bar", new byte[100]);
+
+        trie.save();
+
+        Keccak256 hash = trie.getHash();
+
+        map.delete(hash.getBytes());
+
+        Trie trie2 = store.retrieve(hash.getBytes());
+
+        Assert.assertNotNull(trie2);
+        Assert.assertEquals(hash, trie2.getHash());
+        Assert.assertArrayEquals("bar".getBytes(), trie2.get("foo"));
+        Assert.assertArrayEquals(new byte[100], trie2.get("bar"));
+        Assert.assertTrue(cache.getHits() > 0);
+    }
+
+    @Test
+    public void retrievedNodesAreNotShared() {
+        HashMapDB map = new HashMapDB();
+        TrieNodeCache cache = new TrieNodeCache(1024 * 1024);
+        TrieStoreImpl store = new TrieStoreImpl(map, cache);
+
+        Trie trie = new TrieImpl(store, false)
+                .put("foo", "bar".getBytes())
+                .put("bar", "baz".getBytes());
+
+        trie.save();
+
+        byte[] hash = trie.getHash().getBytes();
+
+        Trie trie1 = store.retrieve(hash);
+        Trie trie2 = store.retrieve(hash);
+
+        Assert.assertNotSame(trie1, trie2);
+
+        Trie trie3 = trie1.put("foo", "qux".getBytes());
+
+        Assert.assertArrayEquals("bar".getBytes(), trie2.get("foo"));
+        Assert.assertArrayEquals("qux".getBytes(), trie3.get("foo"));
+        Assert.assertEquals(trie.getHash(), store.retrieve(hash).getHash());
+    }
+
+    @Test
+    public void retrieveUnknownHashFromStoreUsingCache() {
+        TrieNodeCache cache = new TrieNodeCache(1024 * 1024);
+        TrieStoreImpl store = new TrieStoreImpl(new HashMapDB(), cache);
+
+        Assert.assertNull(store.retrieve(keccak256("foo".getBytes())));
+        Assert.assertEquals(0, cache.getCount());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+}
@@ -23,6 +23,8 @@ import org.ethereum.datasource.HashMapDB;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.*;
+
 import static org.ethereum.crypto.Keccak256Helper.keccak256;
 
 /**
@@ -160,6 +162,47 @@ public class TrieStoreImplTest {
         Assert.assertEquals(trie.trieSize() + 2, store.getSaveCount());
     }
 
+    @Test
+    public void saveFullTrieInOneBatch() {
+        CountingHashMapDB map = new CountingHashMapDB();
+        TrieStoreImpl store = new TrieStoreImpl(map);
+
+        Trie trie = new TrieImpl(store, false)
+                .put("foo", TrieImplValueTest.makeValue(100))
+                .put("bar", "foo".getBytes())
+                .put("baz", "qux".getBytes());
+
+        TrieBatchStats.take();
+        trie.save();
+
+        Assert.assertEquals(0, map.puts);
+        Assert.assertEquals(1, map.batches);
+        Assert.assertEquals(trie.trieSize() + 1, map.keys().size());
+
+        TrieBatchStats stats = TrieBatchStats.take();
+
+        Assert.assertEquals(1, stats.getBatches());
+        Assert.assertEquals(trie.trieSize() + 1, stats.getRows());
+        Assert.assertTrue(stats.getBytes() > 100);
+    }
+
+    @Test
+    public void sumBatchesOfSeveralStores() {
+        Trie trie1 = new TrieImpl(new TrieStoreImpl(new HashMapDB()), false).put("foo", "bar".getBytes());
+        Trie trie2 = new TrieImpl(new TrieStoreImpl(new HashMapDB()), false).put("bar", "foo".getBytes()).put("baz", "qux".getBytes());
+
+        TrieBatchStats.take();
+        trie1.save();
+        trie2.save();
+
+        TrieBatchStats stats = TrieBatchStats.take();
+
+        Assert.assertEquals(2, stats.getBatches());
+        Assert.assertEquals(trie1.trieSize() + trie2.trieSize(), stats.getRows());
+
+        Assert.assertEquals(0, TrieBatchStats.take().getBatches());
+    }
+
     @Test
     public void saveFullTrieTwice() {
         HashMapDB map = new HashMapDB();
@@ -266,4 +309,81 @@ public class TrieStoreImplTest {
         Assert.assertArrayEquals("bar".getBytes(), result.get("foo"));
         Assert.assertArrayEquals("foo".getBytes(), result.get("bar"));
     }
+
+    @Test
+    public void markReachableNodesAndLongValues() {
+        HashMapDB map = new HashMapDB();
+        TrieStoreImpl store = new TrieStoreImpl(map);
+
+        Trie trie = new TrieImpl(store, false)
+                .put("foo", "bar".getBytes())
+                .put("bar", new byte[100]);
+
+        trie.save();
+
+        HashMapDB marksMap = new HashMapDB();
+        TrieMarks marked = new TrieMarks(marksMap, 3);
+
+        Assert.assertEquals(map.keys().size(), store.mark(trie.getHash().getBytes(), marked));
+        Assert.assertEquals(map.keys().size(), marked.size());
+        // the marks are written to the data source in batches, the last one is still buffered
+        Assert.assertEquals(3, marksMap.keys().size());
+
+        Assert.assertEquals(0, store.mark(trie.getHash().getBytes(), marked));
+        Assert.assertEquals(0, store.mark(keccak256("unknown".getBytes()), marked));
+    }
+
+    @Test
+    public void sweepSkipsMarkedAndWrittenKeys() {
+        HashMapDB map = new HashMapDB();
+        TrieStoreImpl store = new TrieStoreImpl(map);
+
+        Trie trie1 = new TrieImpl(store, false).put("foo", "bar".getBytes());
+        Trie trie2 = new TrieImpl(store, false).put("bar", "foo".getBytes());
+        Trie trie3 = new TrieImpl(store, false).put("baz", "foo".getBytes());
+
+        trie1.save();
+        trie2.save();
+
+        store.startSweep();
+
+        TrieMarks marked = new TrieMarks(new HashMapDB(), 100);
+        store.mark(trie1.getHash().getBytes(), marked);
+
+        trie3.save();
+
+        List<byte[]> deleted = store.sweep(new ArrayList<>(map.keys()), marked);
+
+        store.stopSweep();
+
+        Assert.assertEquals(1, deleted.size());
+        Assert.assertArrayEquals(trie2.getHash().getBytes(), deleted.get(0));
+        Assert.assertNotNull(store.retrieve(trie1.getHash().getBytes()));
+        Assert.assertNull(store.retrieve(trie2.getHash().getBytes()));
+        Assert.assertNotNull(store.retrieve(trie3.getHash().getBytes()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sweepWithoutStartingIt() {
+        TrieStoreImpl store = new TrieStoreImpl(new HashMapDB());
+
+        store.sweep(Collections.singletonList(keccak256("foo".getBytes())), new TrieMarks(new HashMapDB(), 100));
+    }
+
+    private static class CountingHashMapDB extends HashMapDB {
+        private int puts;
+        private int batches;
+
+        @Override
+        public byte[] put(byte[] key, byte[] value) {
+            puts++;
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized void updateBatch(Map<byte[], byte[]> rows) {
+            batches++;
+            super.updateBatch(rows);
+        }
+    }
 }
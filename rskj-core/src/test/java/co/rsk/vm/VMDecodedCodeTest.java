@@ -0,0 +1,172 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.vm;
+
+import co.rsk.config.TestSystemProperties;
+import co.rsk.config.VmConfig;
+import org.ethereum.config.BlockchainConfig;
+import org.ethereum.config.blockchain.RegTestConfig;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.PrecompiledContracts;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.program.DecodedCode;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * Plays the same codes running the decoded code and step by step, comparing the results
+ */
+public class VMDecodedCodeTest {
+    private final TestSystemProperties config = new TestSystemProperties();
+    private final PrecompiledContracts precompiledContracts = new PrecompiledContracts(config);
+    private final BlockchainConfig blockchainConfig = new RegTestConfig();
+
+    @Test
+    public void decodeBlocks() {
+        // PUSH1 1, PUSH1 2, ADD, JUMPDEST, DUP1, MSTORE, PUSH1 3, JUMP, STOP
+        byte[] code = Hex.decode("60016002015b805260035600");
+        Program program = new Program(config.getVmConfig(), precompiledContracts, blockchainConfig, code, new ProgramInvokeMockImpl(), null);
+        DecodedCode decoded = program.getDecodedCode();
+
+        Assert.assertEquals(0, decoded.getBlockAt(0));
+        Assert.assertEquals(1, decoded.getBlockAt(5));
+        Assert.assertEquals(2, decoded.getBlockAt(8));
+        Assert.assertEquals(-1, decoded.getBlockAt(1));
+        Assert.assertEquals(-1, decoded.getBlockAt(7));
+        Assert.assertEquals(-1, decoded.getBlockAt(11));
+
+        Assert.assertEquals(9, decoded.getBlockGas(0));
+        Assert.assertEquals(0, decoded.getBlockRequiredStack(0));
+        Assert.assertEquals(2, decoded.getBlockMaxStackGrowth(0));
+        Assert.assertEquals(new DataWord(2), decoded.getPushWord(decoded.getBlockFirst(0) + 1));
+
+        Assert.assertEquals(4, decoded.getBlockGas(1));
+        Assert.assertEquals(1, decoded.getBlockRequiredStack(1));
+        Assert.assertEquals(1, decoded.getBlockMaxStackGrowth(1));
+
+        Assert.assertEquals(11, decoded.getBlockGas(2));
+        Assert.assertEquals(0, decoded.getBlockRequiredStack(2));
+        Assert.assertEquals(1, decoded.getBlockMaxStackGrowth(2));
+        Assert.assertEquals(decoded.getBlockFirst(2) + 1, decoded.getBlockLast(2));
+    }
+
+    @Test
+    public void playLoop() {
+        // PUSH2 1000, JUMPDEST, PUSH1 1, SWAP1, SUB, DUP1, PUSH1 3, JUMPI
+        assertSameResults("6103e8" + "5b600190038060035700", 1000000);
+    }
+
+    @Test
+    public void playArithmetic() {
+        // SIGNEXTEND, BYTE, SDIV, SMOD, ADDMOD, MULMOD, NOT, comparisons, and the results returned
+        assertSameResults("60ff60000b" + "601f7f0102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f201a"
+                + "6003600019056005600003076007600560030860076005600309"
+                + "601019600a6014106014600a11600a60001360016000121460006000f3", 1000000);
+    }
+
+    @Test
+    public void playWithMemoryAndReturn() {
+        // stores 0x2a at 0 between the blocks, and returns the word
+        assertSameResults("602a6001600190036000" + "52" + "60206000f3", 1000000);
+    }
+
+    @Test
+    public void failWithStackUnderflowInBlock() {
+        assertSameResults("6001600201" + "01" + "6001", 1000000);
+    }
+
+    @Test
+    public void failWithStackOverflowInLoop() {
+        // JUMPDEST, PUSH1 1, PUSH1 0, JUMP
+        assertSameResults("5b600160005600", 1000000);
+    }
+
+    @Test
+    public void runOutOfGasInBlock() {
+        assertSameResults("6103e8" + "5b600190038060035700", 1000);
+    }
+
+    @Test
+    public void failWithBadJump() {
+        assertSameResults("60016002016004" + "56" + "00", 1000000);
+    }
+
+    @Test
+    public void playTruncatedPush() {
+        assertSameResults("600160020161ff", 1000000);
+    }
+
+    @Test
+    public void codeWithoutHashNotShared() {
+        byte[] code = Hex.decode("6103e8" + "5b600190038060035700");
+
+        Program program = new Program(config.getVmConfig(), precompiledContracts, blockchainConfig, code, new ProgramInvokeMockImpl(), null);
+        Program shared = new Program(config.getVmConfig(), precompiledContracts, blockchainConfig, code, HashUtil.keccak256(code), new ProgramInvokeMockImpl(), null);
+
+        Assert.assertFalse(program.hasSharedCodeAnalysis());
+        Assert.assertTrue(shared.hasSharedCodeAnalysis());
+    }
+
+    private void assertSameResults(String hexCode, long gasLimit) {
+        byte[] code = Hex.decode(hexCode);
+
+        VmConfig stepsConfig = vmConfig(false);
+        VM stepsVm = new VM(stepsConfig, precompiledContracts);
+        Program steps = play(stepsConfig, stepsVm, code, gasLimit);
+
+        VmConfig decodedConfig = vmConfig(true);
+        VM decodedVm = new VM(decodedConfig, precompiledContracts);
+        Program decoded = play(decodedConfig, decodedVm, code, gasLimit);
+
+        Assert.assertEquals(stepsVm.getVmCounter(), decodedVm.getVmCounter());
+        Assert.assertEquals(steps.getResult().getGasUsed(), decoded.getResult().getGasUsed());
+        Assert.assertArrayEquals(steps.getResult().getHReturn(), decoded.getResult().getHReturn());
+        Assert.assertArrayEquals(steps.getStack().toArray(), decoded.getStack().toArray());
+        Assert.assertEquals(steps.getPC(), decoded.getPC());
+
+        if (steps.getResult().getException() == null) {
+            Assert.assertNull(decoded.getResult().getException());
+        } else {
+            Assert.assertEquals(steps.getResult().getException().getClass(), decoded.getResult().getException().getClass());
+            Assert.assertEquals(steps.getResult().getException().getMessage(), decoded.getResult().getException().getMessage());
+        }
+    }
+
+    private VmConfig vmConfig(boolean decodedCode) {
+        return new VmConfig(config.vmTrace(), config.vmTraceInitStorageLimit(), config.dumpBlock(), config.dumpStyle(), decodedCode, config.vmCodeCacheSize());
+    }
+
+    // the code is run with its hash, as the code of an account
+    private Program play(VmConfig vmConfig, VM vm, byte[] code, long gasLimit) {
+        ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl();
+        invoke.setGasLimit(gasLimit);
+
+        Program program = new Program(vmConfig, precompiledContracts, blockchainConfig, code, HashUtil.keccak256(code), invoke, null);
+        vm.play(program);
+
+        invoke.getRepository().close();
+
+        return program;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package co.rsk.vm;
+
+import co.rsk.config.TestSystemProperties;
+import co.rsk.config.VmConfig;
+import org.ethereum.config.BlockchainConfig;
+import org.ethereum.config.blockchain.RegTestConfig;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.vm.PrecompiledContracts;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * Measures the interpreter on representative bytecode loops, in nanoseconds per loop iteration.
+ * Each loop counts down from LOOPS, and its body exercises a part of the interpreter:
+ * the stack, the arithmetic, the memory.
+ * Each loop is measured running the decoded code and step by step.
+ *
+ * To execute as a standalone application, run main.
+ */
+public class VMInterpreterPerformanceTest {
+    private static final int LOOPS = 100000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 50;
+
+    // PUSH3 LOOPS, JUMPDEST, PUSH1 1, SWAP1, SUB, DUP1, PUSH1 4, JUMPI
+    private static final String COUNTER = "62%s" + "5b600190038060045700";
+    // acc = acc * 3 + 7 on each iteration
+    private static final String ARITHMETIC = "600162%s" + "5b906003026007019060019003806006" + "5700";
+    // 16 words below the counter, shuffled by DUP16 SWAP16 POP DUP8 SWAP8 POP
+    private static final String STACK = "6001600260036004600560066007600860096010601160126013601460156016" + "62%s"
+            + "5b8f9f508797506001900380602457" + "00";
+    // stores the counter at (counter & 0x3ff) and loads the word at 0x20
+    private static final String MEMORY = "62%s" + "5b80806103ff1652602051506001900380600457" + "00";
+
+    private final TestSystemProperties config = new TestSystemProperties();
+    private final PrecompiledContracts precompiledContracts = new PrecompiledContracts(config);
+    private final BlockchainConfig blockchainConfig = new RegTestConfig();
+
+    public static void main(String[] args) {
+        new VMInterpreterPerformanceTest().measureLoops();
+    }
+
+    @Ignore
+    @Test
+    public void measureLoops() {
+        for (boolean decoded : new boolean[] { false, true }) {
+            VmConfig vmConfig = new VmConfig(config.vmTrace(), config.vmTraceInitStorageLimit(), config.dumpBlock(),
+                    config.dumpStyle(), decoded, config.vmCodeCacheSize());
+            String engine = decoded ? "decoded" : "steps";
+
+            measure(vmConfig, "COUNTER", engine, COUNTER);
+            measure(vmConfig, "ARITHMETIC", engine, ARITHMETIC);
+            measure(vmConfig, "STACK", engine, STACK);
+            measure(vmConfig, "MEMORY", engine, MEMORY);
+        }
+    }
+
+    private void measure(VmConfig vmConfig, String name, String engine, String template) {
+        byte[] code = Hex.decode(String.format(template, String.format("%06x", LOOPS)));
+
+        for (int k = 0; k < WARMUP_ROUNDS; k++) {
+            run(vmConfig, code);
+        }
+
+        long start = System.nanoTime();
+        long gasUsed = 0;
+
+        for (int k = 0; k < ROUNDS; k++) {
+            gasUsed = run(vmConfig, code);
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format("%-12s %-8s time/loop: %6d nano time/gas: %6.2f nano",
+                name, engine, elapsed / ((long) ROUNDS * LOOPS), (double) elapsed / ((double) ROUNDS * gasUsed)));
+    }
+
+    private long run(VmConfig vmConfig, byte[] code) {
+        ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl();
+        invoke.setGasLimit(100000000L);
+
+        Program program = new Program(vmConfig, precompiledContracts, blockchainConfig, code, HashUtil.keccak256(code), invoke, null);
+        new VM(vmConfig, precompiledContracts).play(program);
+
+        Assert.assertNull(program.getResult().getException());
+
+        return program.getResult().getGasUsed();
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.ethereum.core.genesis;
 
+import co.rsk.config.DatabaseProfile;
 import co.rsk.config.TestSystemProperties;
 import co.rsk.core.Coin;
 import co.rsk.core.RskAddress;
@@ -53,6 +54,7 @@ public class BlockchainLoaderTest {
         Mockito.when(blockchainNetConfig.getCommonConstants()).thenReturn(constants);
 
         Mockito.when(systemProperties.databaseDir()).thenReturn(new TestSystemProperties().databaseDir());
+        Mockito.when(systemProperties.databaseProfile(Mockito.anyString())).thenReturn(DatabaseProfile.DEFAULT);
         Mockito.when(systemProperties.getBlockchainConfig()).thenReturn(blockchainNetConfig);
         Mockito.when(systemProperties.genesisInfo()).thenReturn(jsonFile);
 
@@ -284,6 +284,27 @@ public class ECKeyTest {
         assertArrayEquals(pubKey, key.getPubKey());
     }
 
+    @Test
+    public void testSignatureToKeyWithoutBase64() throws SignatureException {
+        byte[] messageHash = HashUtil.keccak256(exampleMessage.getBytes());
+        ECKey key = ECKey.fromPrivate(privateKey);
+        ECDSASignature signature = key.sign(messageHash);
+
+        ECKey recovered = ECKey.signatureToKey(messageHash, signature);
+
+        assertArrayEquals(key.getPubKey(), recovered.getPubKey());
+        assertArrayEquals(ECKey.signatureToKey(messageHash, signature.toBase64()).getPubKey(), recovered.getPubKey());
+    }
+
+    @Test(expected = SignatureException.class)
+    public void testSignatureToKeyWithInvalidHeader() throws SignatureException {
+        byte[] messageHash = HashUtil.keccak256(exampleMessage.getBytes());
+        ECDSASignature signature = ECKey.fromPrivate(privateKey).sign(messageHash);
+        signature.v = 26;
+
+        ECKey.signatureToKey(messageHash, signature);
+    }
+
     @Test
     public void testGetPrivKeyBytes() {
         ECKey key = new ECKey();
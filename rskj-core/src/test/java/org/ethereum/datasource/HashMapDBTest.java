@@ -0,0 +1,161 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.ethereum.datasource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+public class HashMapDBTest {
+    @Test
+    public void iterateEmptyDatabase() {
+        HashMapDB db = new HashMapDB();
+
+        try (KeyValueIterator iterator = db.iterator()) {
+            Assert.assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextOnExhaustedIteratorThrows() {
+        HashMapDB db = new HashMapDB();
+
+        try (KeyValueIterator iterator = db.iterator()) {
+            iterator.next();
+        }
+    }
+
+    @Test
+    public void iterateInUnsignedKeyOrder() {
+        HashMapDB db = new HashMapDB();
+
+        db.put(new byte[] { (byte) 0x80 }, new byte[] { 3 });
+        db.put(new byte[] { 0x01, 0x02 }, new byte[] { 2 });
+        db.put(new byte[] { 0x01 }, new byte[] { 1 });
+
+        List<Map.Entry<byte[], byte[]>> entries = collect(db.iterator());
+
+        Assert.assertEquals(3, entries.size());
+        Assert.assertArrayEquals(new byte[] { 0x01 }, entries.get(0).getKey());
+        Assert.assertArrayEquals(new byte[] { 1 }, entries.get(0).getValue());
+        Assert.assertArrayEquals(new byte[] { 0x01, 0x02 }, entries.get(1).getKey());
+        Assert.assertArrayEquals(new byte[] { 2 }, entries.get(1).getValue());
+        Assert.assertArrayEquals(new byte[] { (byte) 0x80 }, entries.get(2).getKey());
+        Assert.assertArrayEquals(new byte[] { 3 }, entries.get(2).getValue());
+    }
+
+    @Test
+    public void iterateRange() {
+        HashMapDB db = new HashMapDB();
+
+        for (int k = 0; k < 10; k++) {
+            db.put(new byte[] { (byte) k }, new byte[] { (byte) (k * 2) });
+        }
+
+        List<Map.Entry<byte[], byte[]>> entries = collect(db.iterator(new byte[] { 3 }, new byte[] { 6 }));
+
+        Assert.assertEquals(3, entries.size());
+        Assert.assertArrayEquals(new byte[] { 3 }, entries.get(0).getKey());
+        Assert.assertArrayEquals(new byte[] { 4 }, entries.get(1).getKey());
+        Assert.assertArrayEquals(new byte[] { 5 }, entries.get(2).getKey());
+        Assert.assertArrayEquals(new byte[] { 10 }, entries.get(2).getValue());
+    }
+
+    @Test
+    public void iterateByPrefix() {
+        HashMapDB db = new HashMapDB();
+
+        db.put(new byte[] { 0x01, (byte) 0xff }, new byte[] { 1 });
+        db.put(new byte[] { 0x01, 0x00 }, new byte[] { 2 });
+        db.put(new byte[] { 0x01 }, new byte[] { 3 });
+        db.put(new byte[] { 0x02 }, new byte[] { 4 });
+        db.put(new byte[] { 0x00, 0x01 }, new byte[] { 5 });
+
+        List<Map.Entry<byte[], byte[]>> entries = collect(db.prefixIterator(new byte[] { 0x01 }));
+
+        Assert.assertEquals(3, entries.size());
+        Assert.assertArrayEquals(new byte[] { 0x01 }, entries.get(0).getKey());
+        Assert.assertArrayEquals(new byte[] { 0x01, 0x00 }, entries.get(1).getKey());
+        Assert.assertArrayEquals(new byte[] { 0x01, (byte) 0xff }, entries.get(2).getKey());
+    }
+
+    @Test
+    public void iterateByPrefixEndingWithFF() {
+        HashMapDB db = new HashMapDB();
+
+        db.put(new byte[] { 0x01, (byte) 0xff }, new byte[] { 1 });
+        db.put(new byte[] { 0x01, (byte) 0xff, 0x00 }, new byte[] { 2 });
+        db.put(new byte[] { 0x02 }, new byte[] { 3 });
+        db.put(new byte[] { 0x02, 0x00 }, new byte[] { 4 });
+
+        List<Map.Entry<byte[], byte[]>> entries = collect(db.prefixIterator(new byte[] { 0x01, (byte) 0xff }));
+
+        Assert.assertEquals(2, entries.size());
+        Assert.assertArrayEquals(new byte[] { 0x01, (byte) 0xff }, entries.get(0).getKey());
+        Assert.assertArrayEquals(new byte[] { 0x01, (byte) 0xff, 0x00 }, entries.get(1).getKey());
+    }
+
+    @Test
+    public void iterateByPrefixAtTheEndOfTheKeySpace() {
+        HashMapDB db = new HashMapDB();
+
+        db.put(new byte[] { (byte) 0xff, 0x01 }, new byte[] { 1 });
+        db.put(new byte[] { (byte) 0xfe }, new byte[] { 2 });
+
+        List<Map.Entry<byte[], byte[]>> entries = collect(db.prefixIterator(new byte[] { (byte) 0xff }));
+
+        Assert.assertEquals(1, entries.size());
+        Assert.assertArrayEquals(new byte[] { (byte) 0xff, 0x01 }, entries.get(0).getKey());
+        Assert.assertEquals(2, collect(db.prefixIterator(new byte[0])).size());
+    }
+
+    @Test
+    public void skipKeysDeletedWhileIterating() {
+        HashMapDB db = new HashMapDB();
+
+        db.put(new byte[] { 1 }, new byte[] { 1 });
+        db.put(new byte[] { 2 }, new byte[] { 2 });
+        db.put(new byte[] { 3 }, new byte[] { 3 });
+
+        try (KeyValueIterator iterator = db.iterator()) {
+            Assert.assertArrayEquals(new byte[] { 1 }, iterator.next().getKey());
+
+            db.delete(new byte[] { 2 });
+
+            Assert.assertArrayEquals(new byte[] { 3 }, iterator.next().getKey());
+            Assert.assertFalse(iterator.hasNext());
+        }
+    }
+
+    private static List<Map.Entry<byte[], byte[]>> collect(KeyValueIterator iterator) {
+        List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>();
+
+        try (KeyValueIterator it = iterator) {
+            while (it.hasNext()) {
+                entries.add(it.next());
+            }
+        }
+
+        return entries;
+    }
+}
@@ -27,6 +27,11 @@ import org.ethereum.vm.DataWord;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
 import static org.ethereum.TestUtils.randomAddress;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -151,4 +156,26 @@ public class DetailsDataStoreTest {
         ContractDetails contractDetails = dds.get(c_key);
         assertNull(contractDetails);
     }
+
+    @Test
+    public void visitCachedAndStoredKeysOnce() {
+        DatabaseImpl db = new DatabaseImpl(new HashMapDB());
+        DetailsDataStore dds = new DetailsDataStore(config, db);
+
+        RskAddress stored = new RskAddress("0000000000000000000000000000000000001a2b");
+        RskAddress cached = new RskAddress("0000000000000000000000000000000000001a2c");
+
+        dds.update(stored, new ContractDetailsImpl(config));
+        dds.flush();
+
+        dds.update(stored, new ContractDetailsImpl(config));
+        dds.update(cached, new ContractDetailsImpl(config));
+
+        List<RskAddress> keys = new ArrayList<>();
+        dds.forEachKey(keys::add);
+
+        assertEquals(2, keys.size());
+        assertEquals(new HashSet<>(Arrays.asList(stored, cached)), new HashSet<>(keys));
+        assertEquals(new HashSet<>(keys), dds.keys());
+    }
 }
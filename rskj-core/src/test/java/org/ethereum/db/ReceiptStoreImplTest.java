@@ -19,17 +19,25 @@
 
 package org.ethereum.db;
 
+import co.rsk.core.Coin;
 import co.rsk.test.World;
+import co.rsk.test.builders.AccountBuilder;
 import co.rsk.test.builders.BlockBuilder;
+import co.rsk.test.builders.TransactionBuilder;
 import org.ethereum.core.*;
 import org.ethereum.datasource.HashMapDB;
+import org.ethereum.util.RLP;
 import org.ethereum.vm.LogInfo;
 import org.junit.Assert;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by ajlopez on 3/1/2016.
@@ -270,6 +278,181 @@ public class ReceiptStoreImplTest {
         Assert.assertNull(result);
     }
 
+    @Test
+    public void saveMultipleWritesASingleBatch() {
+        CountingHashMapDB ds = new CountingHashMapDB();
+        ReceiptStore store = new ReceiptStoreImpl(ds);
+
+        List<TransactionReceipt> receipts = new ArrayList<>();
+
+        for (int k = 0; k < 3; k++) {
+            TransactionReceipt receipt = createReceipt();
+            receipt.setTransaction(new Transaction(new byte[] { (byte) k }, null, null, null, null, null));
+            receipts.add(receipt);
+        }
+
+        byte[] blockHash = Hex.decode("0102030405060708");
+
+        store.saveMultiple(blockHash, receipts);
+
+        Assert.assertEquals(1, ds.batches);
+        Assert.assertEquals(0, ds.puts);
+
+        for (int k = 0; k < 3; k++) {
+            TransactionInfo result = store.get(receipts.get(k).getTransaction().getHash().getBytes());
+
+            Assert.assertNotNull(result);
+            Assert.assertArrayEquals(blockHash, result.getBlockHash());
+            Assert.assertEquals(k, result.getIndex());
+        }
+    }
+
+    @Test
+    public void addTwoTransactionsReopenAndGetLastTransaction() {
+        HashMapDB ds = new HashMapDB();
+        ReceiptStore store = new ReceiptStoreImpl(ds);
+
+        TransactionReceipt receipt = createReceipt();
+        byte[] blockHash0 = Hex.decode("01020304050607080900");
+        byte[] blockHash = Hex.decode("0102030405060708");
+
+        store.add(blockHash0, 3, receipt);
+
+        store = new ReceiptStoreImpl(ds);
+        store.add(blockHash, 42, receipt);
+
+        TransactionInfo result = store.get(receipt.getTransaction().getHash().getBytes());
+
+        Assert.assertNotNull(result);
+        Assert.assertArrayEquals(blockHash, result.getBlockHash());
+        Assert.assertEquals(42, result.getIndex());
+        Assert.assertEquals(2, store.getAll(receipt.getTransaction().getHash().getBytes()).size());
+    }
+
+    @Test
+    public void getTransactionsSavedInLegacyFormat() {
+        HashMapDB ds = new HashMapDB();
+
+        TransactionReceipt receipt = createReceipt();
+        byte[] txHash = receipt.getTransaction().getHash().getBytes();
+        byte[] blockHash0 = Hex.decode("0102030405060708090000000000000000000000000000000000000000000000");
+        byte[] blockHash = Hex.decode("0102030405060708000000000000000000000000000000000000000000000000");
+
+        TransactionInfo legacyInfo = new TransactionInfo(receipt, blockHash0, 3);
+        ds.put(txHash, RLP.encodeList(legacyInfo.getEncoded()));
+
+        ReceiptStore store = new ReceiptStoreImpl(ds);
+
+        TransactionInfo result = store.get(txHash);
+
+        Assert.assertNotNull(result);
+        Assert.assertArrayEquals(blockHash0, result.getBlockHash());
+        Assert.assertEquals(3, result.getIndex());
+
+        store.add(blockHash, 42, receipt);
+
+        List<TransactionInfo> results = store.getAll(txHash);
+
+        Assert.assertEquals(2, results.size());
+        Assert.assertArrayEquals(blockHash0, results.get(0).getBlockHash());
+        Assert.assertArrayEquals(blockHash, results.get(1).getBlockHash());
+        Assert.assertArrayEquals(blockHash, store.get(txHash, blockHash, null).getBlockHash());
+    }
+
+    @Test
+    public void saveMultipleAndGetBlockReceipts() {
+        ReceiptStore store = new ReceiptStoreImpl(new HashMapDB(), new HashMapDB());
+
+        TransactionReceipt receipt0 = createReceipt();
+        TransactionReceipt receipt1 = createReceipt();
+        receipt1.setTransaction(new Transaction(new byte[] { 0x01 }, null, null, null, null, null));
+
+        byte[] blockHash = Hex.decode("0102030405060708");
+
+        Assert.assertNull(store.getBlockReceipts(blockHash));
+
+        store.saveMultiple(blockHash, Arrays.asList(receipt0, receipt1));
+
+        List<TransactionReceipt> result = store.getBlockReceipts(blockHash);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals(2, result.size());
+        Assert.assertArrayEquals(receipt0.getEncoded(), result.get(0).getEncoded());
+        Assert.assertArrayEquals(receipt1.getEncoded(), result.get(1).getEncoded());
+    }
+
+    @Test
+    public void blockReceiptsFoundWhenTheReceiptsByTransactionAreNotWritten() {
+        CountingHashMapDB ds = new CountingHashMapDB();
+        ReceiptStore store = new ReceiptStoreImpl(ds, new HashMapDB());
+
+        TransactionReceipt receipt = createReceipt();
+        byte[] blockHash = Hex.decode("0102030405060708");
+
+        // the node stops writing the receipts by transaction
+        ds.failing = true;
+
+        try {
+            store.saveMultiple(blockHash, Collections.singletonList(receipt));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        List<TransactionReceipt> result = store.getBlockReceipts(blockHash);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals(1, result.size());
+        Assert.assertArrayEquals(receipt.getEncoded(), result.get(0).getEncoded());
+    }
+
+    @Test
+    public void getInMainChainFromTheTransactionIndex() {
+        ReceiptStore store = new ReceiptStoreImpl(new HashMapDB(), new HashMapDB());
+        World world = new World(store);
+
+        Transaction tx = createTransaction(world);
+        Block genesis = world.getBlockChain().getBestBlock();
+        Block block1 = new BlockBuilder(world).parent(genesis).transactions(Collections.singletonList(tx)).build();
+
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, world.getBlockChain().tryToConnect(block1));
+
+        // no block store, found in the index
+        TransactionInfo result = store.getInMainChain(tx.getHash().getBytes(), null);
+
+        Assert.assertNotNull(result);
+        Assert.assertArrayEquals(block1.getHash().getBytes(), result.getBlockHash());
+        Assert.assertEquals(0, result.getIndex());
+
+        store.removeFromMainChain(block1);
+
+        Assert.assertNull(store.getInMainChain(tx.getHash().getBytes(), null));
+        Assert.assertNotNull(store.getInMainChain(tx.getHash().getBytes(), world.getBlockChain().getBlockStore()));
+    }
+
+    @Test
+    public void updateTransactionIndexOnRebranch() {
+        ReceiptStore store = new ReceiptStoreImpl(new HashMapDB(), new HashMapDB());
+        World world = new World(store);
+
+        Transaction tx = createTransaction(world);
+        Block genesis = world.getBlockChain().getBestBlock();
+        Block block1 = new BlockBuilder(world).parent(genesis).difficulty(3l).transactions(Collections.singletonList(tx)).build();
+        Block block1b = new BlockBuilder(world).parent(genesis).difficulty(2l).build();
+        Block block2b = new BlockBuilder(world).parent(block1b).difficulty(2l).transactions(Collections.singletonList(tx)).build();
+        Block block3b = new BlockBuilder(world).parent(block2b).difficulty(2l).build();
+
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, world.getBlockChain().tryToConnect(block1));
+        Assert.assertArrayEquals(block1.getHash().getBytes(), store.getInMainChain(tx.getHash().getBytes(), null).getBlockHash());
+
+        Assert.assertEquals(ImportResult.IMPORTED_NOT_BEST, world.getBlockChain().tryToConnect(block1b));
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, world.getBlockChain().tryToConnect(block2b));
+        Assert.assertArrayEquals(block2b.getHash().getBytes(), store.getInMainChain(tx.getHash().getBytes(), null).getBlockHash());
+
+        Assert.assertEquals(ImportResult.IMPORTED_BEST, world.getBlockChain().tryToConnect(block3b));
+        Assert.assertArrayEquals(block2b.getHash().getBytes(), store.getInMainChain(tx.getHash().getBytes(), null).getBlockHash());
+    }
+
     // from TransactionTest
     private static TransactionReceipt createReceipt() {
         byte[] stateRoot = Hex.decode("f5ff3fbd159773816a7c707a9b8cb6bb778b934a8f6466c7830ed970498f4b68");
@@ -292,4 +475,32 @@ public class ReceiptStoreImplTest {
 
         return receipt;
     }
+
+    private static Transaction createTransaction(World world) {
+        Account sender = new AccountBuilder(world).name("sender").balance(Coin.valueOf(2000000)).build();
+        Account receiver = new AccountBuilder().name("receiver").build();
+        return new TransactionBuilder().sender(sender).receiver(receiver).value(BigInteger.valueOf(1000)).build();
+    }
+
+    private static class CountingHashMapDB extends HashMapDB {
+        private int puts;
+        private int batches;
+        private boolean failing;
+
+        @Override
+        public byte[] put(byte[] key, byte[] value) {
+            puts++;
+            return super.put(key, value);
+        }
+
+        @Override
+        public void updateBatch(Map<byte[], byte[]> rows) {
+            if (failing) {
+                throw new IllegalStateException("Data source closed");
+            }
+
+            batches++;
+            super.updateBatch(rows);
+        }
+    }
 }
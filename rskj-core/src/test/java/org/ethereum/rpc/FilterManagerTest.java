@@ -0,0 +1,173 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.rpc;
+
+import co.rsk.core.RskAddress;
+import co.rsk.crypto.Keccak256;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.facade.Ethereum;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FilterManagerTest {
+    private static final RskAddress ADDRESS1 = new RskAddress("0000000000000000000000000000000000000001");
+    private static final RskAddress ADDRESS2 = new RskAddress("0000000000000000000000000000000000000002");
+    private static final Topic TOPIC1 = new Topic(HashUtil.keccak256("topic1".getBytes()));
+    private static final Topic TOPIC2 = new Topic(HashUtil.keccak256("topic2".getBytes()));
+
+    private FilterManager filterManager;
+
+    @Before
+    public void setup() {
+        filterManager = new FilterManager(mock(Ethereum.class));
+    }
+
+    @Test
+    public void routeLogsByAddress() {
+        int filter1 = registerLogFilter(new RskAddress[] { ADDRESS1 }, null, false);
+        int filter2 = registerLogFilter(new RskAddress[] { ADDRESS2 }, null, false);
+        int filter12 = registerLogFilter(new RskAddress[] { ADDRESS1, ADDRESS2 }, null, false);
+        int any = registerLogFilter(new RskAddress[0], null, false);
+
+        newBlock(1, createLog(ADDRESS1), createLog(ADDRESS2), createLog(ADDRESS1));
+
+        Assert.assertEquals(2, filterManager.getFilterEvents(filter1, false).length);
+        Assert.assertEquals(1, filterManager.getFilterEvents(filter2, false).length);
+        Assert.assertEquals(3, filterManager.getFilterEvents(filter12, false).length);
+        Assert.assertEquals(3, filterManager.getFilterEvents(any, false).length);
+
+        // the logs are in block order, shared by the filters
+        Object[] events = filterManager.getFilterEvents(filter12, false);
+        Assert.assertEquals("0x2", ((LogFilterElement) events[2]).transactionIndex);
+        Assert.assertSame(filterManager.getFilterEvents(filter1, false)[0], events[0]);
+    }
+
+    @Test
+    public void routeLogsByFirstTopic() {
+        int filter1 = registerLogFilter(new RskAddress[0], new Topic[] { TOPIC1 }, false);
+        int filter2 = registerLogFilter(new RskAddress[0], new Topic[] { TOPIC2 }, false);
+        int filterAddress = registerLogFilter(new RskAddress[] { ADDRESS2 }, new Topic[] { TOPIC2 }, false);
+
+        newBlock(1, createLog(ADDRESS1, TOPIC1), createLog(ADDRESS2, TOPIC2), createLog(ADDRESS1, TOPIC2), createLog(ADDRESS1));
+
+        Assert.assertEquals(1, filterManager.getFilterEvents(filter1, false).length);
+        Assert.assertEquals(2, filterManager.getFilterEvents(filter2, false).length);
+        Assert.assertEquals(1, filterManager.getFilterEvents(filterAddress, false).length);
+    }
+
+    @Test
+    public void keepOnlyTheLogsOfTheLatestBlock() {
+        int fromLatest = registerLogFilter(new RskAddress[] { ADDRESS1 }, null, true);
+        int toLatest = registerLogFilter(new RskAddress[] { ADDRESS1 }, null, false);
+
+        newBlock(1, createLog(ADDRESS1));
+        newBlock(2, createLog(ADDRESS2));
+
+        Assert.assertEquals(0, filterManager.getFilterEvents(fromLatest, false).length);
+        Assert.assertEquals(1, filterManager.getFilterEvents(toLatest, false).length);
+
+        newBlock(3, createLog(ADDRESS1));
+
+        Assert.assertEquals(1, filterManager.getFilterEvents(fromLatest, false).length);
+        Assert.assertEquals(2, filterManager.getFilterEvents(toLatest, false).length);
+    }
+
+    @Test
+    public void removedFilterNotReceivingLogs() {
+        int filter = registerLogFilter(new RskAddress[] { ADDRESS1 }, null, false);
+        int other = registerLogFilter(new RskAddress[] { ADDRESS1 }, null, false);
+
+        Assert.assertTrue(filterManager.removeFilter(filter));
+        Assert.assertFalse(filterManager.removeFilter(filter));
+
+        newBlock(1, createLog(ADDRESS1));
+
+        Assert.assertNull(filterManager.getFilterEvents(filter, false));
+        Assert.assertEquals(1, filterManager.getFilterEvents(other, false).length);
+    }
+
+    @Test
+    public void newBlockAndPendingTransactionFilters() {
+        int blockFilter = filterManager.registerFilter(new NewBlockFilter());
+        int txFilter = filterManager.registerFilter(new PendingTransactionFilter());
+
+        Block block = newBlock(1, createLog(ADDRESS1));
+        filterManager.newPendingTx(Collections.singletonList(createTransaction("tx")));
+
+        Assert.assertEquals(block.getHash().toJsonString(), filterManager.getFilterEvents(blockFilter, true)[0]);
+        Assert.assertEquals(1, filterManager.getFilterEvents(txFilter, true).length);
+    }
+
+    private int registerLogFilter(RskAddress[] addresses, Topic[] topics, boolean fromLatestBlock) {
+        return filterManager.registerFilter(new LogFilter(new AddressesTopicsFilter(addresses, topics), null, fromLatestBlock, true));
+    }
+
+    private Block newBlock(long number, LogInfo... logs) {
+        List<Transaction> transactions = new ArrayList<>();
+        List<TransactionReceipt> receipts = new ArrayList<>();
+
+        // a transaction for each log
+        for (LogInfo log : logs) {
+            TransactionReceipt receipt = mock(TransactionReceipt.class);
+            when(receipt.getLogInfoList()).thenReturn(Collections.singletonList(log));
+            receipts.add(receipt);
+            transactions.add(createTransaction("tx" + number + transactions.size()));
+        }
+
+        Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(new Keccak256(HashUtil.keccak256(("block" + number).getBytes())));
+        when(block.getTransactionsList()).thenReturn(transactions);
+
+        filterManager.newBlockReceived(block, receipts);
+
+        return block;
+    }
+
+    private static LogInfo createLog(RskAddress address, Topic... topics) {
+        List<DataWord> words = new ArrayList<>();
+
+        for (Topic topic : topics) {
+            words.add(new DataWord(topic.getBytes()));
+        }
+
+        return new LogInfo(address.getBytes(), words, new byte[0]);
+    }
+
+    private static Transaction createTransaction(String seed) {
+        Transaction tx = mock(Transaction.class);
+        when(tx.getHash()).thenReturn(new Keccak256(HashUtil.keccak256(seed.getBytes())));
+        return tx;
+    }
+}
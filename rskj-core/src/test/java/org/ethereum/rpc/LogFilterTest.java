@@ -21,7 +21,11 @@ package org.ethereum.rpc;
 import co.rsk.blockchain.utils.BlockGenerator;
 import co.rsk.core.RskAddress;
 import co.rsk.core.bc.BlockChainImpl;
+import co.rsk.db.BloomBitsIndex;
+import co.rsk.test.builders.BlockBuilder;
 import org.ethereum.core.Block;
+import org.ethereum.core.ImportResult;
+import org.ethereum.datasource.HashMapDB;
 import org.ethereum.util.RskTestFactory;
 import org.junit.Assert;
 import org.junit.Test;
@@ -109,4 +113,41 @@ public class LogFilterTest {
         Assert.assertNotNull(result);
         Assert.assertEquals(1, result.length);
     }
+
+    @Test
+    public void sameEventsFromBloomBitsIndex() throws Exception {
+        BlockChainImpl blockchain = new RskTestFactory().getBlockchain();
+        Web3ImplLogsTest.addEmptyBlockToBlockchain(blockchain);
+
+        for (int k = 0; k < 6; k++) {
+            Block block = new BlockBuilder(blockchain).parent(blockchain.getBestBlock()).build();
+            Assert.assertEquals(ImportResult.IMPORTED_BEST, blockchain.tryToConnect(block));
+        }
+
+        Web3.FilterRequest fr = new Web3.FilterRequest();
+        fr.fromBlock = "earliest";
+        fr.toBlock = "latest";
+
+        Object[] expected = LogFilter.fromFilterRequest(fr, blockchain).getEvents();
+
+        BloomBitsIndex index = new BloomBitsIndex(new HashMapDB(), 2);
+
+        // indexing the sections, and using them
+        for (int k = 0; k < 2; k++) {
+            Object[] result = LogFilter.fromFilterRequest(fr, blockchain, index).getEvents();
+
+            Assert.assertEquals(1, expected.length);
+            Assert.assertEquals(expected.length, result.length);
+
+            for (int j = 0; j < expected.length; j++) {
+                LogFilterElement expectedLog = (LogFilterElement) expected[j];
+                LogFilterElement log = (LogFilterElement) result[j];
+
+                Assert.assertEquals(expectedLog.blockNumber, log.blockNumber);
+                Assert.assertEquals(expectedLog.blockHash, log.blockHash);
+                Assert.assertEquals(expectedLog.transactionHash, log.transactionHash);
+                Assert.assertEquals(expectedLog.logIndex, log.logIndex);
+            }
+        }
+    }
 }
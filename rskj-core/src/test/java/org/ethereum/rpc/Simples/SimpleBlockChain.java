@@ -77,11 +77,21 @@ public class SimpleBlockChain implements org.ethereum.core.Blockchain {
 
     }
 
+    @Override
+    public void stop() {
+
+    }
+
     @Override
     public TransactionInfo getTransactionInfo(byte[] hash) {
         return null;
     }
 
+    @Override
+    public List<TransactionReceipt> getBlockReceipts(Block block) {
+        return null;
+    }
+
     @Override
     public void close() {
 
@@ -153,4 +163,13 @@ public class SimpleBlockChain implements org.ethereum.core.Blockchain {
         return false;
     }
 
+    @Override
+    public void suspendProcess() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void resumeProcess() {
+        throw new UnsupportedOperationException();
+    }
 }
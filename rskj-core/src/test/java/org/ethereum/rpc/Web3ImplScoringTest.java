@@ -380,6 +380,7 @@ public class Web3ImplScoringTest {
                 null,
                 null,
                 null,
+                null,
                 null
         );
     }
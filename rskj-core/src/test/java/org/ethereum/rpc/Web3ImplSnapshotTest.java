@@ -224,6 +224,7 @@ public class Web3ImplSnapshotTest {
                 null,
                 null,
                 null,
+                null,
                 null
         );
     }
@@ -274,6 +274,7 @@ public class Web3ImplTest {
                 null,
                 null,
                 null,
+                null,
                 null
         );
 
@@ -969,6 +970,7 @@ public class Web3ImplTest {
                 null,
                 null,
                 null,
+                null,
                 null
         );
 
@@ -1290,6 +1292,7 @@ public class Web3ImplTest {
                 peerServer,
                 null,
                 null,
+                null,
                 null
         );
     }
@@ -1343,7 +1346,8 @@ public class Web3ImplTest {
                 null,
                 nodeBlockProcessor,
                 null,
-                configCapabilities
+                configCapabilities,
+                null
         );
     }
 
@@ -1382,6 +1386,7 @@ public class Web3ImplTest {
                 null,
                 null,
                 null,
+                null,
                 null
         );
         String contract = "pragma solidity ^0.4.1; contract rsk { function multiply(uint a) returns(uint d) {   return a * 7;   } }";
@@ -1435,6 +1440,7 @@ public class Web3ImplTest {
                 null,
                 null,
                 null,
+                null,
                 null
         );
 
@@ -0,0 +1,111 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.vm;
+
+import org.ethereum.util.ByteUtil;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.function.BinaryOperator;
+
+/**
+ * Compares the time of the arithmetic operations of DataWord with the BigInteger
+ * ones they replaced, on random 256-bit and 128-bit operands.
+ *
+ * To execute as a standalone application, run main.
+ */
+public class DataWordPerformanceTest {
+    private static final int OPERANDS = 1024;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 1000;
+
+    private final byte[][] first = new byte[OPERANDS][];
+    private final byte[][] second = new byte[OPERANDS][];
+    private final byte[][] third = new byte[OPERANDS][];
+
+    public static void main(String[] args) {
+        new DataWordPerformanceTest().compareWithBigInteger();
+    }
+
+    @Ignore
+    @Test
+    public void compareWithBigInteger() {
+        Random random = new Random(42);
+
+        for (int k = 0; k < OPERANDS; k++) {
+            first[k] = ByteUtil.copyToArray(new BigInteger(256, random));
+            second[k] = ByteUtil.copyToArray(new BigInteger(128, random));
+            third[k] = ByteUtil.copyToArray(new BigInteger(200, random));
+        }
+
+        compare("MUL", (a, b) -> a.multiply(b).and(DataWord.MAX_VALUE), DataWord::mul);
+        compare("SUB", (a, b) -> a.subtract(b).and(DataWord.MAX_VALUE), DataWord::sub);
+        compare("DIV", BigInteger::divide, DataWord::div);
+        compare("SDIV", (a, b) -> new BigInteger(ByteUtil.copyToArray(a)).divide(b).and(DataWord.MAX_VALUE), DataWord::sDiv);
+        compare("MOD", BigInteger::mod, DataWord::mod);
+        compare("EXP", (a, b) -> a.modPow(b, DataWord._2_256), DataWord::exp);
+
+        long bigInteger = measure(k -> {
+            BigInteger result = new BigInteger(1, first[k]).multiply(new BigInteger(1, second[k])).mod(new BigInteger(1, third[k]));
+            ByteUtil.copyToArray(result.and(DataWord.MAX_VALUE));
+        });
+        long dataWord = measure(k -> new DataWord(first[k].clone()).mulmod(new DataWord(second[k]), new DataWord(third[k])));
+        print("MULMOD", bigInteger, dataWord);
+    }
+
+    private void compare(String name, BinaryOperator<BigInteger> bigIntegerOperation, WordOperation wordOperation) {
+        long bigInteger = measure(k -> ByteUtil.copyToArray(bigIntegerOperation.apply(new BigInteger(1, first[k]), new BigInteger(1, second[k])).and(DataWord.MAX_VALUE)));
+        long dataWord = measure(k -> wordOperation.apply(new DataWord(first[k].clone()), new DataWord(second[k])));
+        print(name, bigInteger, dataWord);
+    }
+
+    private static long measure(Operation operation) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (int k = 0; k < OPERANDS; k++) {
+                operation.apply(k);
+            }
+        }
+
+        long start = System.nanoTime();
+
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int k = 0; k < OPERANDS; k++) {
+                operation.apply(k);
+            }
+        }
+
+        return (System.nanoTime() - start) / ((long) ROUNDS * OPERANDS);
+    }
+
+    private static void print(String name, long bigInteger, long dataWord) {
+        System.out.println(String.format("%-8s BigInteger: %6d nano DataWord: %6d nano speedup: %.2f",
+                name, bigInteger, dataWord, (double) bigInteger / dataWord));
+    }
+
+    private interface Operation {
+        void apply(int index);
+    }
+
+    private interface WordOperation {
+        void apply(DataWord word1, DataWord word2);
+    }
+}
@@ -530,6 +530,66 @@ public class MemoryTest {
         assertTrue(zero == 10);
     }
 
+    @Test
+    public void copyFillingWithZeros() {
+
+        Memory memoryBuffer = new Memory();
+        memoryBuffer.write(0, new byte[] { 9, 9, 9, 9, 9, 9 }, 6, false);
+
+        memoryBuffer.copy(1, new byte[] { 1, 2, 3 }, 1, 4);
+
+        assertArrayEquals(new byte[] { 9, 2, 3, 0, 0, 9 }, memoryBuffer.read(0, 6));
+        assertTrue(memoryBuffer.size() == 32);
+
+        memoryBuffer.copy(40, new byte[] { 1, 2, 3 }, 3, 2);
+
+        assertArrayEquals(new byte[] { 0, 0 }, memoryBuffer.read(40, 2));
+        assertTrue(memoryBuffer.size() == 64);
+
+        memoryBuffer.copy(0, new byte[] { 1, 2, 3 }, Integer.MAX_VALUE, 2);
+
+        assertArrayEquals(new byte[] { 0, 0, 3 }, memoryBuffer.read(0, 3));
+        assertTrue(memoryBuffer.size() == 64);
+    }
+
+    @Test
+    public void readAndWriteWords() {
+
+        Memory memoryBuffer = new Memory();
+        DataWord value = new DataWord(Hex.decode("0102030405060708091011121314151617181920212223242526272829303132"));
+
+        memoryBuffer.writeWord(1020, value);
+        memoryBuffer.writeByte(1019, (byte) 0xff);
+
+        assertTrue(memoryBuffer.size() == 1056);
+        assertTrue(memoryBuffer.getChunks().size() == 2);
+
+        DataWord word = new DataWord(1);
+        assertTrue(word == memoryBuffer.readWord(1020, word));
+        assertArrayEquals(value.getData(), word.getData());
+        assertEquals(value, memoryBuffer.readWord(1020));
+
+        assertTrue((byte) 0xff == memoryBuffer.readByte(1019));
+        assertTrue(1 == memoryBuffer.readByte(1020));
+    }
 
+    @Test
+    public void keepDataWhenGrowing() {
+
+        Memory memoryBuffer = new Memory();
+        byte[] data = new byte[100];
+        Arrays.fill(data, (byte) 7);
+
+        for (int k = 0; k < 100; k++) {
+            memoryBuffer.write(k * 1000, data, data.length, false);
+        }
+
+        assertEquals(calcSize(99100, WORD_SIZE), memoryBuffer.size());
+        assertEquals(calcSize(99100, CHUNK_SIZE), memoryBuffer.internalSize());
 
-}
\ No newline at end of file
+        for (int k = 0; k < 100; k++) {
+            assertArrayEquals(data, memoryBuffer.read(k * 1000, data.length));
+            assertTrue(0 == memoryBuffer.readByte(k * 1000 + data.length));
+        }
+    }
+}
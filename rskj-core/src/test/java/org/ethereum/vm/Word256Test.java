@@ -0,0 +1,272 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.vm;
+
+import org.ethereum.util.ByteUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BinaryOperator;
+
+/**
+ * Checks the operations of the words against the previous BigInteger implementation of DataWord,
+ * with random values of random sizes and the edge values
+ */
+public class Word256Test {
+    private static final BigInteger MAX_VALUE = DataWord.MAX_VALUE;
+    private static final int ROUNDS = 20000;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void mul() {
+        checkBinaryOperation("mul", (a, b) -> a.multiply(b).and(MAX_VALUE), (w1, w2) -> w1.mul(w2));
+    }
+
+    @Test
+    public void sub() {
+        checkBinaryOperation("sub", (a, b) -> a.subtract(b).and(MAX_VALUE), (w1, w2) -> w1.sub(w2));
+    }
+
+    @Test
+    public void add() {
+        checkBinaryOperation("add", (a, b) -> a.add(b).and(MAX_VALUE), (w1, w2) -> w1.add(w2));
+    }
+
+    @Test
+    public void div() {
+        checkBinaryOperation("div", (a, b) -> b.signum() == 0 ? BigInteger.ZERO : a.divide(b), (w1, w2) -> w1.div(w2));
+    }
+
+    @Test
+    public void sDiv() {
+        checkBinaryOperation("sDiv", (a, b) -> b.signum() == 0 ? BigInteger.ZERO : signed(a).divide(signed(b)).and(MAX_VALUE), (w1, w2) -> w1.sDiv(w2));
+    }
+
+    @Test
+    public void mod() {
+        checkBinaryOperation("mod", (a, b) -> b.signum() == 0 ? BigInteger.ZERO : a.mod(b), (w1, w2) -> w1.mod(w2));
+    }
+
+    @Test
+    public void sMod() {
+        checkBinaryOperation("sMod", (a, b) -> {
+            if (b.signum() == 0) {
+                return BigInteger.ZERO;
+            }
+
+            BigInteger result = signed(a).abs().mod(signed(b).abs());
+            return (signed(a).signum() == -1 ? result.negate() : result).and(MAX_VALUE);
+        }, (w1, w2) -> w1.sMod(w2));
+    }
+
+    @Test
+    public void exp() {
+        checkBinaryOperation("exp", (a, b) -> a.modPow(b, DataWord._2_256), (w1, w2) -> w1.exp(w2));
+    }
+
+    @Test
+    public void addmod() {
+        for (int k = 0; k < ROUNDS; k++) {
+            BigInteger a = randomValue();
+            BigInteger b = randomValue();
+            BigInteger m = randomValue();
+
+            BigInteger expected = BigInteger.ZERO;
+
+            // the reduced words are added modulo 2^256, as the previous implementation
+            if (m.signum() != 0) {
+                BigInteger x = a;
+                BigInteger y = b;
+
+                if (a.shiftRight(248).signum() != 0 || b.shiftRight(248).signum() != 0) {
+                    x = a.mod(m);
+                    y = b.mod(m);
+                }
+
+                expected = x.add(y).and(MAX_VALUE).mod(m);
+            }
+
+            DataWord word = toDataWord(a);
+            word.addmod(toDataWord(b), toDataWord(m));
+
+            assertEquals("addmod", expected, word, a, b, m);
+        }
+    }
+
+    @Test
+    public void mulmod() {
+        for (int k = 0; k < ROUNDS; k++) {
+            BigInteger a = randomValue();
+            BigInteger b = randomValue();
+            BigInteger m = randomValue();
+
+            BigInteger expected = m.signum() == 0 ? BigInteger.ZERO : a.multiply(b).mod(m);
+
+            DataWord word = toDataWord(a);
+            word.mulmod(toDataWord(b), toDataWord(m));
+
+            assertEquals("mulmod", expected, word, a, b, m);
+        }
+    }
+
+    @Test
+    public void signExtend() {
+        for (int k = 0; k < ROUNDS; k++) {
+            BigInteger a = randomValue();
+            int bytes = random.nextInt(32);
+            BigInteger mask = BigInteger.ONE.shiftLeft(bytes * 8 + 8).subtract(BigInteger.ONE);
+            BigInteger expected = a.testBit(bytes * 8 + 7) ? a.or(MAX_VALUE.xor(mask)) : a.and(mask);
+
+            DataWord word = toDataWord(a);
+            word.signExtend((byte) bytes);
+            assertEquals("signExtend", expected, word, a, BigInteger.valueOf(bytes));
+        }
+    }
+
+    @Test
+    public void comparisons() {
+        for (int k = 0; k < ROUNDS; k++) {
+            BigInteger a = randomValue();
+            BigInteger b = random.nextInt(10) == 0 ? a : randomValue();
+
+            Word256 w1 = new Word256(ByteUtil.copyToArray(a));
+            Word256 w2 = new Word256(ByteUtil.copyToArray(b));
+
+            Assert.assertEquals(a.compareTo(b), w1.compareTo(w2));
+            Assert.assertEquals(signed(a).compareTo(signed(b)), w1.sCompareTo(w2));
+            Assert.assertEquals(a.compareTo(b), toDataWord(a).compareTo(toDataWord(b)));
+            Assert.assertEquals(signed(a).compareTo(signed(b)), toDataWord(a).sCompareTo(toDataWord(b)));
+            Assert.assertEquals(a.equals(b), w1.equals(w2));
+            Assert.assertEquals(a.signum() == 0, w1.isZero());
+        }
+    }
+
+    @Test
+    public void divideCorrectingTheEstimatedDigits() {
+        // digits of 32 bits where the first estimation of a quotient digit is too large
+        BigInteger[][] cases = {
+            { new BigInteger("7fffffff800000000000000000000000", 16), new BigInteger("800000000000000000000001", 16) },
+            { new BigInteger("800000000000000000000003", 16), new BigInteger("200000000000000000000001", 16) },
+            { new BigInteger("fffffffffffffffffffffffffffffffe00000000000000000000000000000000", 16), new BigInteger("ffffffffffffffffffffffffffffffff", 16) },
+            { MAX_VALUE, new BigInteger("100000000000000000000000000000001", 16) },
+        };
+
+        for (BigInteger[] operands : cases) {
+            BigInteger a = operands[0];
+            BigInteger b = operands[1];
+
+            DataWord quotient = toDataWord(a);
+            quotient.div(toDataWord(b));
+            assertEquals("div", a.divide(b), quotient, a, b);
+
+            DataWord rest = toDataWord(a);
+            rest.mod(toDataWord(b));
+            assertEquals("mod", a.mod(b), rest, a, b);
+
+            DataWord product = toDataWord(a);
+            product.mulmod(toDataWord(a), toDataWord(b));
+            assertEquals("mulmod", a.multiply(a).mod(b), product, a, b);
+        }
+    }
+
+    @Test
+    public void loadShortValues() {
+        Assert.assertEquals(toHex(BigInteger.valueOf(0x0102)), new Word256(new byte[] { 0x01, 0x02 }).toString());
+        Assert.assertTrue(new Word256(new byte[0]).isZero());
+
+        DataWord empty = new DataWord(new byte[0]);
+        empty.mul(new DataWord(2));
+        Assert.assertEquals(32, empty.getData().length);
+        Assert.assertTrue(empty.isZero());
+    }
+
+    private void checkBinaryOperation(String name, BinaryOperator<BigInteger> expected, WordOperation operation) {
+        for (int k = 0; k < ROUNDS; k++) {
+            BigInteger a = randomValue();
+            BigInteger b = randomValue();
+
+            DataWord word = toDataWord(a);
+            operation.apply(word, toDataWord(b));
+
+            assertEquals(name, expected.apply(a, b), word, a, b);
+        }
+    }
+
+    /**
+     * Gets values of random bit lengths, and edge values as zero, one, powers of two,
+     * and the minimum and maximum signed and unsigned values
+     */
+    private BigInteger randomValue() {
+        switch (random.nextInt(8)) {
+            case 0:
+                return getEdgeValues().get(random.nextInt(getEdgeValues().size()));
+            case 1:
+                return BigInteger.ONE.shiftLeft(random.nextInt(256));
+            case 2:
+                return BigInteger.ONE.shiftLeft(random.nextInt(257)).subtract(BigInteger.ONE);
+            case 3:
+                // a negative value of random size
+                return MAX_VALUE.subtract(new BigInteger(random.nextInt(256) + 1, random));
+            default:
+                return new BigInteger(random.nextInt(256) + 1, random);
+        }
+    }
+
+    private static List<BigInteger> getEdgeValues() {
+        List<BigInteger> values = new ArrayList<>();
+        values.add(BigInteger.ZERO);
+        values.add(BigInteger.ONE);
+        values.add(BigInteger.valueOf(2));
+        values.add(BigInteger.valueOf(0xffffffffL));
+        values.add(BigInteger.ONE.shiftLeft(32));
+        values.add(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE));
+        values.add(BigInteger.ONE.shiftLeft(64));
+        values.add(BigInteger.ONE.shiftLeft(255));
+        values.add(BigInteger.ONE.shiftLeft(255).subtract(BigInteger.ONE));
+        values.add(MAX_VALUE);
+        values.add(MAX_VALUE.subtract(BigInteger.ONE));
+        return values;
+    }
+
+    private static void assertEquals(String name, BigInteger expected, DataWord word, BigInteger... operands) {
+        Assert.assertEquals(name + " of " + java.util.Arrays.toString(operands), toHex(expected), word.toString());
+    }
+
+    private static BigInteger signed(BigInteger value) {
+        return value.testBit(255) ? value.subtract(DataWord._2_256) : value;
+    }
+
+    private static DataWord toDataWord(BigInteger value) {
+        return new DataWord(ByteUtil.copyToArray(value));
+    }
+
+    private static String toHex(BigInteger value) {
+        return String.format("%064x", value);
+    }
+
+    private interface WordOperation {
+        void apply(DataWord word1, DataWord word2);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of RskJ
+ * Copyright (C) 2018 RSK Labs Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.ethereum.vm.program;
+
+import org.ethereum.crypto.HashUtil;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+public class CodeAnalysisCacheTest {
+    // PUSH1 0x5b JUMPDEST PUSH2 0x5b5b JUMPDEST
+    private static final byte[] CODE = Hex.decode("605b5b615b5b5b");
+    // HEADER exe 1 script 2 with an extended header of 1 byte, JUMPDEST
+    private static final byte[] CODE_WITH_HEADER = Hex.decode("fc010201005b");
+
+    @Test
+    public void analyzeJumpDestsSkippingPushData() {
+        CodeAnalysis analysis = CodeAnalysis.analyze(CODE);
+
+        Assert.assertEquals(CODE.length, analysis.getCodeLength());
+        Assert.assertEquals(0, analysis.getStartAddr());
+        Assert.assertEquals(0, analysis.getExeVersion());
+
+        for (int k = 0; k < CODE.length; k++) {
+            Assert.assertEquals(k == 2 || k == 6, analysis.getJumpdestSet().get(k));
+        }
+    }
+
+    @Test
+    public void analyzeHeader() {
+        CodeAnalysis analysis = CodeAnalysis.analyze(CODE_WITH_HEADER);
+
+        Assert.assertEquals(1, analysis.getExeVersion());
+        Assert.assertEquals(2, analysis.getScriptVersion());
+        Assert.assertEquals(5, analysis.getStartAddr());
+        Assert.assertTrue(analysis.getJumpdestSet().get(5));
+        Assert.assertFalse(analysis.getJumpdestSet().get(4));
+    }
+
+    @Test
+    public void reuseAnalysisByCodeHash() {
+        CodeAnalysisCache cache = new CodeAnalysisCache(1024);
+        byte[] hash = HashUtil.keccak256(CODE);
+
+        CodeAnalysis analysis = cache.getAnalysis(CODE, hash);
+
+        Assert.assertSame(analysis, cache.getAnalysis(CODE.clone(), hash.clone()));
+        Assert.assertTrue(analysis.isShared());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void analyzeWithoutCodeHash() {
+        CodeAnalysisCache cache = new CodeAnalysisCache(1024);
+
+        CodeAnalysis analysis = cache.getAnalysis(CODE, null);
+
+        Assert.assertNotSame(analysis, cache.getAnalysis(CODE, null));
+        Assert.assertFalse(analysis.isShared());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void analyzeCodeLargerThanTheCache() {
+        CodeAnalysisCache cache = new CodeAnalysisCache(CODE.length);
+        byte[] hash = HashUtil.keccak256(CODE);
+        cache.getAnalysis(CODE, hash);
+
+        byte[] code = new byte[CODE.length + 1];
+        CodeAnalysis analysis = cache.getAnalysis(code, HashUtil.keccak256(code));
+
+        Assert.assertFalse(analysis.isShared());
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.getAnalysis(CODE, hash).isShared());
+    }
+
+    @Test
+    public void analyzeAgainCodeOfOtherLength() {
+        CodeAnalysisCache cache = new CodeAnalysisCache(1024);
+        byte[] hash = HashUtil.keccak256(CODE);
+
+        cache.getAnalysis(CODE, hash);
+        CodeAnalysis analysis = cache.getAnalysis(CODE_WITH_HEADER, hash);
+
+        Assert.assertEquals(5, analysis.getStartAddr());
+        Assert.assertSame(analysis, cache.getAnalysis(CODE_WITH_HEADER, hash));
+        Assert.assertEquals(CODE_WITH_HEADER.length, cache.getCodeSize());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedAnalyses() {
+        CodeAnalysisCache cache = new CodeAnalysisCache(3 * 100);
+        byte[][] codes = new byte[4][];
+
+        for (int k = 0; k < codes.length; k++) {
+            codes[k] = new byte[100];
+            codes[k][0] = (byte) k;
+        }
+
+        CodeAnalysis first = cache.getAnalysis(codes[0], HashUtil.keccak256(codes[0]));
+        cache.getAnalysis(codes[1], HashUtil.keccak256(codes[1]));
+        cache.getAnalysis(codes[2], HashUtil.keccak256(codes[2]));
+        cache.getAnalysis(codes[0], HashUtil.keccak256(codes[0]));
+        cache.getAnalysis(codes[3], HashUtil.keccak256(codes[3]));
+
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(300, cache.getCodeSize());
+        Assert.assertSame(first, cache.getAnalysis(codes[0], HashUtil.keccak256(codes[0])));
+        Assert.assertEquals(4, cache.getMisses());
+
+        // the least recently used was the second one
+        cache.getAnalysis(codes[1], HashUtil.keccak256(codes[1]));
+        Assert.assertEquals(5, cache.getMisses());
+    }
+}